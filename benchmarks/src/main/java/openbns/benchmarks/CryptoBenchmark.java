@@ -0,0 +1,112 @@
+package openbns.benchmarks;
+
+import openbns.loginserver.Config;
+import openbns.loginserver.crypt.HashHelper;
+import openbns.loginserver.crypt.KeyManager;
+import openbns.loginserver.crypt.SessionKeyPool;
+import openbns.loginserver.model.Account;
+import openbns.loginserver.net.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static openbns.commons.util.CryptUtil.bigIntegerToByteArray;
+
+/**
+ * Each step of the login key exchange on its own, in the order a login runs them: the per-connection keys
+ * {@link SessionKeyPool} generates, the {@code /Auth/LoginStart} reply key, and the {@code /Auth/KeyData} proof with
+ * the {@link KeyManager} steps it is made of.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CryptoBenchmark
+{
+  private final KeyManager keyManager = KeyManager.getInstance();
+
+  private Session session;
+  private BigInteger exponent;
+  private byte[] clientKey;
+  private byte[] sessionKey;
+  private byte[] serverExchangeKey;
+  private byte[] sharedSecret;
+  private byte[] rootKey;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    Config.LOGIN_POSTFIX = "@plaync.co.kr";
+    Random random = new Random( 42 );
+    Account account = new Account();
+    account.setLogin( "bench" );
+    account.setPassword( HashHelper.passwordHash( "bench", "secret" ) );
+    session = new Session();
+    session.init();
+    session.setAccount( account );
+    exponent = new BigInteger( 256, random );
+    clientKey = bigIntegerToByteArray( keyManager.powG( new BigInteger( 256, random ) ) );
+    sessionKey = bigIntegerToByteArray( session.getSessionKey() );
+    serverExchangeKey = bigIntegerToByteArray( session.generateServerExchangeKey() );
+    sharedSecret = bigIntegerToByteArray( keyManager.dualPow( session.getPrivateKey(), exponent, new BigInteger( 1, clientKey ) ) );
+    rootKey = keyManager.generateEncryptionKeyRoot( sharedSecret );
+  }
+
+  @Benchmark
+  public Object sessionKeys()
+  {
+    return SessionKeyPool.getInstance().generate();
+  }
+
+  @Benchmark
+  public BigInteger powG()
+  {
+    return keyManager.powG( exponent );
+  }
+
+  @Benchmark
+  public BigInteger generatePrivateKey() throws Exception
+  {
+    return keyManager.generatePrivateKey();
+  }
+
+  @Benchmark
+  public BigInteger generateServerExchangeKey() throws Exception
+  {
+    return session.generateServerExchangeKey();
+  }
+
+  @Benchmark
+  public BigInteger generateAIIKey() throws Exception
+  {
+    return keyManager.generateAIIKey( sessionKey, serverExchangeKey );
+  }
+
+  @Benchmark
+  public BigInteger dualPow()
+  {
+    return keyManager.dualPow( session.getPrivateKey(), exponent, new BigInteger( 1, clientKey ) );
+  }
+
+  @Benchmark
+  public byte[] generateEncryptionKeyRoot() throws Exception
+  {
+    return keyManager.generateEncryptionKeyRoot( sharedSecret );
+  }
+
+  @Benchmark
+  public byte[] generate256BytesKey()
+  {
+    return keyManager.generate256BytesKey( rootKey );
+  }
+
+  @Benchmark
+  public byte[][] generateServerKey() throws Exception
+  {
+    return session.generateServerKey( clientKey );
+  }
+}
@@ -0,0 +1,74 @@
+package openbns.benchmarks;
+
+import openbns.loginserver.crypt.FixedBaseModPow;
+import openbns.loginserver.crypt.KeyManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link FixedBaseModPow} with {@link BigInteger#modPow} for {@code 2^x mod N} and 256-bit exponents,
+ * as used by the login handshake. The setup checks both give the same results for the exponents it measures;
+ * {@code FixedBaseModPowTest} in the login server covers the other window sizes and edge cases.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class FixedBaseModPowBenchmark
+{
+  private static final int EXPONENTS = 1024;
+
+  @Param( { "4", "6", "8" } )
+  public int windowBits;
+
+  private FixedBaseModPow engine;
+  private BigInteger[] exponents;
+  private int index;
+
+  @Setup
+  public void setup()
+  {
+    engine = new FixedBaseModPow( KeyManager.G, KeyManager.N, windowBits, 256 );
+    exponents = randomExponents( new Random( 42 ), EXPONENTS );
+    for( BigInteger exponent : exponents )
+      check( engine, exponent );
+  }
+
+  @Benchmark
+  public BigInteger modPow()
+  {
+    return KeyManager.G.modPow( next(), KeyManager.N );
+  }
+
+  @Benchmark
+  public BigInteger fixedBase()
+  {
+    return engine.pow( next() );
+  }
+
+  private BigInteger next()
+  {
+    return exponents[ index++ & (EXPONENTS - 1) ];
+  }
+
+  private static BigInteger[] randomExponents( Random random, int count )
+  {
+    BigInteger[] exponents = new BigInteger[ count ];
+    for( int i = 0; i < count; i++ )
+      exponents[ i ] = new BigInteger( 256, random );
+    return exponents;
+  }
+
+  private static void check( FixedBaseModPow engine, BigInteger exponent )
+  {
+    BigInteger expected = KeyManager.G.modPow( exponent, KeyManager.N );
+    BigInteger actual = engine.pow( exponent );
+    if( !expected.equals( actual ) )
+      throw new AssertionError( "2^" + exponent.toString( 16 ) + " mod N: expected " + expected.toString( 16 ) + ", got " + actual.toString( 16 ) );
+  }
+}
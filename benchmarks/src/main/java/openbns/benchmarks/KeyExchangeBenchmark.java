@@ -0,0 +1,136 @@
+package openbns.benchmarks;
+
+import openbns.loginserver.Config;
+import openbns.loginserver.crypt.HashHelper;
+import openbns.loginserver.crypt.KeyManager;
+import openbns.loginserver.model.Account;
+import openbns.loginserver.net.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static openbns.commons.util.CryptUtil.*;
+
+/**
+ * Compares {@link Session#generateServerKey} and {@link KeyManager#generateAIIKey}, on per-thread digests with
+ * segments hashed one after another, with the code they replace: a digest looked up per hash, arrays merged before
+ * hashing, words reversed through data streams and hashes turned into numbers through hex strings. The setup first
+ * checks both give the same results.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class KeyExchangeBenchmark
+{
+  private static final KeyManager keyManager = KeyManager.getInstance();
+
+  private Session session;
+  private byte[] clientKey;
+  private byte[] sessionKey;
+  private byte[] serverExchangeKey;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    Config.LOGIN_POSTFIX = "@plaync.co.kr";
+    Random random = new Random( 42 );
+    Account account = new Account();
+    account.setLogin( "someone" );
+    account.setPassword( HashHelper.passwordHash( "someone", "secret" ) );
+    session = new Session();
+    session.init();
+    session.setAccount( account );
+    session.generateServerExchangeKey();
+    clientKey = bigIntegerToByteArray( keyManager.powG( new BigInteger( 256, random ) ) );
+    sessionKey = bigIntegerToByteArray( session.getSessionKey() );
+    serverExchangeKey = bigIntegerToByteArray( session.getServerExchangeKey() );
+    check();
+  }
+
+  @Benchmark
+  public byte[][] generateServerKey() throws Exception
+  {
+    return session.generateServerKey( clientKey );
+  }
+
+  @Benchmark
+  public byte[][] legacyGenerateServerKey() throws Exception
+  {
+    return legacyGenerateServerKey( session, clientKey );
+  }
+
+  @Benchmark
+  public BigInteger generateAIIKey() throws Exception
+  {
+    return keyManager.generateAIIKey( sessionKey, serverExchangeKey );
+  }
+
+  @Benchmark
+  public BigInteger legacyGenerateAIIKey() throws Exception
+  {
+    return legacyGenerateAIIKey( sessionKey, serverExchangeKey );
+  }
+
+  private void check() throws Exception
+  {
+    if( !Arrays.deepEquals( session.generateServerKey( clientKey ), legacyGenerateServerKey( session, clientKey ) ) )
+      throw new AssertionError( "generateServerKey differs" );
+    if( !keyManager.generateAIIKey( sessionKey, serverExchangeKey ).equals( legacyGenerateAIIKey( sessionKey, serverExchangeKey ) ) )
+      throw new AssertionError( "generateAIIKey differs" );
+    if( !Arrays.equals( HashHelper.passwordHash( "someone", "secret" ), legacyDigest( String.format( "%s%s:%s", "someone", Config.LOGIN_POSTFIX, "secret" ).getBytes() ) ) )
+      throw new AssertionError( "passwordHash differs" );
+    if( !Arrays.equals( HashHelper.loginHash( "someone" ), legacyDigest( ("someone" + Config.LOGIN_POSTFIX).getBytes() ) ) )
+      throw new AssertionError( "loginHash differs" );
+  }
+
+  private static byte[][] legacyGenerateServerKey( Session session, byte[] array ) throws Exception
+  {
+    byte[] userNameHash = legacyDigest( (session.getAccount().getLogin() + Config.LOGIN_POSTFIX).getBytes() );
+    byte[] passwordHash = session.getAccount().getPassword();
+
+    BigInteger hash1 = legacyGenerateAIIKey( array, bigIntegerToByteArray( session.getServerExchangeKey() ) );
+    BigInteger hash2 = legacyGenerateAIIKey( bigIntegerToByteArray( session.getSessionKey() ), passwordHash );
+
+    BigInteger v27 = new BigInteger( hexToString( array ), 16 );
+    BigInteger v21 = keyManager.dualPow( session.getPrivateKey(), hash1.multiply( hash2 ), v27 );
+
+    byte[] rootKey = keyManager.generateEncryptionKeyRoot( bigIntegerToByteArray( v21 ) );
+
+    byte[] calcHash1 = legacyDigest( mergeArrays( KeyManager.STATIC_KEY, userNameHash, bigIntegerToByteArray( session.getSessionKey() ), array, bigIntegerToByteArray( session.getServerExchangeKey() ), rootKey ) );
+    byte[] calcHash2 = legacyDigest( mergeArrays( array, calcHash1, rootKey ) );
+    return new byte[][] { calcHash1, calcHash2 };
+  }
+
+  private static BigInteger legacyGenerateAIIKey( byte[] tmp1, byte[] tmp2 ) throws NoSuchAlgorithmException, IOException
+  {
+    byte[] sharedArray = new byte[ tmp1.length + tmp2.length ];
+    System.arraycopy( tmp1, 0, sharedArray, 0, tmp1.length );
+    System.arraycopy( tmp2, 0, sharedArray, tmp1.length, tmp2.length );
+
+    byte[] hash = legacyDigest( sharedArray );
+    ByteArrayOutputStream bos = new ByteArrayOutputStream( hash.length );
+    DataOutputStream dos = new DataOutputStream( bos );
+    DataInputStream dis = new DataInputStream( new ByteArrayInputStream( hash ) );
+    while( dis.available() > 0 )
+      dos.writeInt( Integer.reverseBytes( dis.readInt() ) );
+    dos.close();
+
+    return new BigInteger( hexToString( bos.toByteArray() ), 16 );
+  }
+
+  private static byte[] legacyDigest( byte[] data ) throws NoSuchAlgorithmException
+  {
+    MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+    digest.update( data );
+    return digest.digest();
+  }
+}
@@ -0,0 +1,146 @@
+package openbns.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import openbns.commons.util.CryptUtil;
+import openbns.commons.xml.codec.StsXmlCodec;
+import openbns.loginserver.Config;
+import openbns.loginserver.crypt.KeyManager;
+import openbns.loginserver.net.LoginServerInitializer;
+import openbns.loginserver.net.client.dto.*;
+import openbns.loginserver.service.AccountRegistration;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole login through the server's pipeline on an {@link EmbeddedChannel}: the connection is set up, then
+ * {@code /Sts/Connect}, {@code /Auth/LoginStart} and {@code /Auth/KeyData} are read, executed and answered. Accounts
+ * come from the in-memory store and every packet runs inline, so the score is the server's own work for one login,
+ * session keys included, without a database or thread hand-offs. The key data carries a valid client key with a
+ * made-up proof, which costs the server the same as a real one.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class LoginHandshakeBenchmark
+{
+  private static final String LOGIN = "bench";
+
+  private ByteBuf connect;
+  private ByteBuf loginStart;
+  private ByteBuf keyData;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    Config.load();
+    // Before the server's singletons read them
+    Config.ACCOUNT_STORE_MEMORY = true;
+    Config.SESSION_KEY_POOL_SIZE = 0;
+    Config.EXECUTOR_CPU_THREADS = 0;
+    Config.EXECUTOR_BLOCKING_THREADS = 0;
+    AccountRegistration.getInstance().createAccount( LOGIN, "secret" );
+
+    ConnectDTO connectDTO = new ConnectDTO();
+    connectDTO.setConnType( 400 );
+    connectDTO.setAddress( "127.0.0.1" );
+    connectDTO.setAppIndex( 1 );
+    connectDTO.setEpoch( 1391272467 );
+    connectDTO.setProgram( 2 );
+    connectDTO.setBuild( 3061 );
+    connectDTO.setProcess( 3296 );
+    connect = request( "/Sts/Connect", 0, connectDTO, ConnectDTOXmlCodec.INSTANCE );
+
+    LoginStartDTO loginStartDTO = new LoginStartDTO();
+    loginStartDTO.setLoginName( LOGIN + Config.LOGIN_POSTFIX );
+    loginStart = request( "/Auth/LoginStart", 1, loginStartDTO, LoginStartDTOXmlCodec.INSTANCE );
+
+    KeyDataDTO keyDataDTO = new KeyDataDTO();
+    keyDataDTO.setKeyData( keyData() );
+    keyData = request( "/Auth/KeyData", 2, keyDataDTO, KeyDataDTOXmlCodec.INSTANCE );
+
+    String replies = login( true );
+    if( !replies.startsWith( "STS/1.0 200 OK" ) || !replies.contains( "<KeyData>" ) )
+      throw new IllegalStateException( "Login failed:\n" + replies );
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    connect.unwrap().release();
+    loginStart.unwrap().release();
+    keyData.unwrap().release();
+  }
+
+  @Benchmark
+  public int login() throws Exception
+  {
+    return login( false ).length();
+  }
+
+  /**
+   * @return the replies if {@code keep} is set, otherwise an empty string
+   */
+  private String login( boolean keep )
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new LoginServerInitializer() );
+    // The initializer's handlers went in behind the one EmbeddedChannel collects inbound messages with, and nothing
+    // is passed on past the server's handler anyway
+    channel.pipeline().removeFirst();
+    channel.config().setOption( ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT );
+    StringBuilder replies = keep ? new StringBuilder() : null;
+    exchange( channel, connect, replies );
+    exchange( channel, loginStart, replies );
+    exchange( channel, keyData, replies );
+    channel.finish();
+    return keep ? replies.toString() : "";
+  }
+
+  private static void exchange( EmbeddedChannel channel, ByteBuf request, StringBuilder replies )
+  {
+    channel.writeInbound( request.duplicate() );
+    // Replies are flushed once a read completes, which EmbeddedChannel does not signal by itself
+    channel.pipeline().fireChannelReadComplete();
+    Object out;
+    while( (out = channel.readOutbound()) != null )
+    {
+      ByteBuf buf = (ByteBuf) out;
+      if( replies != null )
+        replies.append( buf.toString( CharsetUtil.UTF_8 ) );
+      buf.release();
+    }
+  }
+
+  /**
+   * @return key data holding the exchange key of a random client and a proof the server will not accept
+   */
+  private static String keyData()
+  {
+    byte[] exchangeKey = CryptUtil.bigIntegerToByteArray( KeyManager.getInstance().powG( new BigInteger( 256, new Random( 42 ) ) ) );
+    byte[] proof = CryptUtil.base64( new byte[ 32 ] ).getBytes( CharsetUtil.US_ASCII );
+    ByteBuffer buffer = ByteBuffer.allocate( exchangeKey.length + proof.length + 8 ).order( ByteOrder.LITTLE_ENDIAN );
+    buffer.putInt( exchangeKey.length ).put( exchangeKey ).putInt( proof.length ).put( proof );
+    return CryptUtil.base64( buffer.array() );
+  }
+
+  private static <T> ByteBuf request( String uri, int sessionNumber, T body, StsXmlCodec<T> codec )
+  {
+    ByteBuf content = Unpooled.buffer();
+    codec.encode( body, content );
+    String head = "POST " + uri + " STS/1.0\r\nl:" + content.readableBytes() + "\r\n" + (sessionNumber > 0 ? "s:" + sessionNumber + "\r\n" : "") + "\r\n";
+    // The decoder releases what it reads, and the same bytes are read by every login
+    return Unpooled.unreleasableBuffer( Unpooled.directBuffer().writeBytes( head.getBytes( CharsetUtil.US_ASCII ) ).writeBytes( content ) );
+  }
+}
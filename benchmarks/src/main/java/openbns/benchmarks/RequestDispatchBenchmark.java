@@ -0,0 +1,60 @@
+package openbns.benchmarks;
+
+import openbns.loginserver.net.client.RequestPacketHandler;
+import openbns.loginserver.net.client.impl.RequestConnect;
+import openbns.loginserver.net.client.impl.RequestKeyData;
+import openbns.loginserver.net.client.impl.RequestLoginStart;
+import openbns.loginserver.net.client.impl.RequestPing;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the packet for a request URI with {@link RequestPacketHandler}, against the {@code switch} on the URI and new
+ * packet per request it replaced. The URIs are shared strings, as the decoder hands over known URIs, and include one
+ * without a packet.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RequestDispatchBenchmark
+{
+  private static final String[] URIS = { "/Sts/Connect", "/Sts/Ping", "/Auth/LoginStart", "/Auth/KeyData", "/Auth/LoginFinish" };
+
+  private final RequestPacketHandler handler = RequestPacketHandler.getInstance();
+  private int index;
+
+  @Benchmark
+  public Object registry()
+  {
+    return handler.getPacket( next() );
+  }
+
+  @Benchmark
+  public Object stringSwitch()
+  {
+    switch( next() )
+    {
+      case "/Sts/Connect":
+        return new RequestConnect();
+      case "/Sts/Ping":
+        return new RequestPing();
+      case "/Auth/LoginStart":
+        return new RequestLoginStart();
+      case "/Auth/KeyData":
+        return new RequestKeyData();
+      default:
+        return null;
+    }
+  }
+
+  private String next()
+  {
+    String uri = URIS[ index ];
+    index = index + 1 == URIS.length ? 0 : index + 1;
+    return uri;
+  }
+}
@@ -0,0 +1,34 @@
+package openbns.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. Takes the usual JMH command line, so a subset runs with a name pattern and
+ * {@code -l} lists the benchmarks, but writes the results as JSON to {@value #RESULT_FILE} unless {@code -rf} or
+ * {@code -rff} say otherwise, so every run leaves a file to compare with the last release's.
+ */
+public class RunBenchmarks
+{
+  static final String RESULT_FILE = "jmh-result.json";
+
+  public static void main( String[] args ) throws Exception
+  {
+    CommandLineOptions cmd = new CommandLineOptions( args );
+    ChainedOptionsBuilder options = new OptionsBuilder().parent( cmd );
+    if( !cmd.getResultFormat().hasValue() )
+      options.resultFormat( ResultFormatType.JSON );
+    if( !cmd.getResult().hasValue() )
+      options.result( RESULT_FILE );
+    if( cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers() || cmd.shouldListResultFormats() )
+    {
+      // Lists and help are what JMH's own entry point does best
+      org.openjdk.jmh.Main.main( args );
+      return;
+    }
+    new Runner( options.build() ).run();
+  }
+}
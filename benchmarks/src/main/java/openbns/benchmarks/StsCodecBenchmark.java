@@ -0,0 +1,116 @@
+package openbns.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.CharsetUtil;
+import openbns.commons.net.codec.sts.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips through the login server's codec stack: request bytes decoded by either {@link HttpObjectDecoder}
+ * subclass and aggregated by {@link StsContentAggregator}, then a reply encoded by {@link StsResponseEncoder}. The
+ * request bytes are a shared buffer read from the start each time, so only the codecs allocate. Returns the number of
+ * buffers written.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StsCodecBenchmark
+{
+  private static final ByteBuf PING = request( "POST /Sts/Ping STS/1.0\r\nl:0\r\n\r\n" );
+  private static final ByteBuf LOGIN_START = request( "POST /Auth/LoginStart STS/1.0\r\nl:62\r\ns:1\r\n\r\n<Request>\n<LoginName>test@plaync.co.kr</LoginName>\n</Request>\n" );
+  private static final ByteBuf REPLY = request( "<Reply>\n<KeyData>AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA</KeyData>\n</Reply>\n" );
+
+  private static final StsContentAggregator.ContentLimits LIMITS = new StsContentAggregator.ContentLimits()
+  {
+    @Override
+    public int getMaxContentLength( StsRequest request )
+    {
+      return 16384;
+    }
+  };
+
+  @Param( { "incremental", "replaying" } )
+  public String decoder;
+
+  private EmbeddedChannel channel;
+
+  @Setup
+  public void setup()
+  {
+    channel = new EmbeddedChannel( new StsServerCodec( newDecoder() ), new StsContentAggregator( LIMITS ) );
+    channel.config().setOption( ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT );
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    channel.finish();
+  }
+
+  @Benchmark
+  public int ping()
+  {
+    FullStsRequest request = read( PING );
+    request.release();
+    channel.writeOutbound( new DefaultFullStsResponse( StsResponseStatus.OK, Unpooled.EMPTY_BUFFER ) );
+    return drain();
+  }
+
+  @Benchmark
+  public int loginStart()
+  {
+    FullStsRequest request = read( LOGIN_START );
+    String s = request.headers().get( StsHeaders.Names.SESSION_NUMBER );
+    request.release();
+    FullStsResponse response = new DefaultFullStsResponse( StsResponseStatus.OK, REPLY.duplicate(), new CompactStsHeaders() );
+    response.headers().add( StsHeaders.Names.CONTENT_LENGTH, REPLY.readableBytes() );
+    response.headers().add( StsHeaders.Names.SESSION_NUMBER, s + "R" );
+    channel.writeOutbound( response );
+    return drain();
+  }
+
+  private ByteToMessageDecoder newDecoder()
+  {
+    if( "replaying".equals( decoder ) )
+      return new StsRequestDecoder( 4096, 8192, 8192, true, true, true );
+    return new IncrementalStsRequestDecoder( 4096, 8192, 8192, true, true, true );
+  }
+
+  private FullStsRequest read( ByteBuf bytes )
+  {
+    channel.writeInbound( bytes.duplicate() );
+    FullStsRequest request = (FullStsRequest) channel.readInbound();
+    if( request == null || !request.getDecoderResult().isSuccess() )
+      throw new IllegalStateException( "Request not decoded: " + request );
+    return request;
+  }
+
+  private int drain()
+  {
+    int buffers = 0;
+    Object out;
+    while( (out = channel.readOutbound()) != null )
+    {
+      ByteBuf buf = (ByteBuf) out;
+      if( buf.isReadable() )
+        buffers++;
+      buf.release();
+    }
+    return buffers;
+  }
+
+  private static ByteBuf request( String s )
+  {
+    return Unpooled.unreleasableBuffer( Unpooled.directBuffer().writeBytes( s.getBytes( CharsetUtil.US_ASCII ) ) );
+  }
+}
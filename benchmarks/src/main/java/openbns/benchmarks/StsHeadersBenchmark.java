@@ -0,0 +1,73 @@
+package openbns.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import openbns.commons.net.codec.sts.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DefaultStsHeaders} with {@link CompactStsHeaders} on what the login server does with headers: a
+ * decoded request's {@code l} and {@code s} are added and read back, and a reply's are added and encoded.
+ * <p/>
+ * Run with {@code -prof gc}: as every operation builds its message from scratch, the bytes allocated per operation
+ * are the footprint of a message with two headers.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StsHeadersBenchmark
+{
+  @Param( { "default", "compact" } )
+  public String headers;
+
+  private EmbeddedChannel channel;
+
+  @Setup
+  public void setup()
+  {
+    channel = new EmbeddedChannel( new StsResponseEncoder() );
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    channel.finish();
+  }
+
+  @Benchmark
+  public long request()
+  {
+    StsRequest request = new DefaultStsRequest( StsVersion.STS_1_0, StsMethod.POST, "/Auth/KeyData", newHeaders() );
+    request.headers().add( StsHeaders.Names.CONTENT_LENGTH, "94" );
+    request.headers().add( StsHeaders.Names.SESSION_NUMBER, "2" );
+    return StsHeaders.getContentLength( request, -1 ) + request.headers().get( StsHeaders.Names.SESSION_NUMBER ).length();
+  }
+
+  @Benchmark
+  public int response()
+  {
+    FullStsResponse response = "compact".equals( headers ) ? new DefaultFullStsResponse( StsResponseStatus.OK, Unpooled.EMPTY_BUFFER, new CompactStsHeaders() ) : new DefaultFullStsResponse( StsResponseStatus.OK, Unpooled.EMPTY_BUFFER );
+    response.headers().add( StsHeaders.Names.CONTENT_LENGTH, 94 );
+    response.headers().add( StsHeaders.Names.SESSION_NUMBER, "2R" );
+    channel.writeOutbound( response );
+    int length = 0;
+    Object out;
+    while( (out = channel.readOutbound()) != null )
+    {
+      length += ((ByteBuf) out).readableBytes();
+      ((ByteBuf) out).release();
+    }
+    return length;
+  }
+
+  private StsHeaders newHeaders()
+  {
+    return "compact".equals( headers ) ? new CompactStsHeaders() : new DefaultStsHeaders();
+  }
+}
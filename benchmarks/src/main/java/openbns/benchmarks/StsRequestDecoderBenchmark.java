@@ -0,0 +1,86 @@
+package openbns.benchmarks;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import openbns.commons.net.codec.sts.CompactStsHeaders;
+import openbns.commons.net.codec.sts.IncrementalStsRequestDecoder;
+import openbns.commons.net.codec.sts.LastStsContent;
+import openbns.commons.net.codec.sts.StsRequestDecoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a login handshake's requests with {@link StsRequestDecoder} and {@link IncrementalStsRequestDecoder}, the
+ * latter also with content slices instead of copies, and with slices and {@link CompactStsHeaders}, with the bytes
+ * arriving whole or in fragments of {@code fragmentSize} bytes. Correctness is covered by the login server's
+ * {@code StsRequestDecoderParityTest}.
+ * <p/>
+ * Run with {@code -prof gc} for the bytes allocated per operation, that is per four decoded requests.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StsRequestDecoderBenchmark
+{
+  private static final String REQUESTS =
+          request( "POST /Sts/Connect STS/1.0", "<Connect>\n<ConnType>400</ConnType>\n<ProductType>0</ProductType>\n<AppIndex>1</AppIndex>\n<Epoch>1391094473</Epoch>\n<Program>10</Program>\n<Build>1012</Build>\n<Process>5392</Process>\n</Connect>\n" ) +
+          request( "POST /Auth/LoginStart STS/1.0\r\ns:1", "<Request>\n<LoginName>someone@plaync.co.kr</LoginName>\n<NetAddress>127.0.0.1</NetAddress>\n</Request>\n" ) +
+          request( "POST /Sts/Ping STS/1.0", "" ) +
+          request( "POST /Auth/KeyData STS/1.0\r\ns:2", "<Request>\n<KeyData>AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA</KeyData>\n</Request>\n" );
+  private static final int REQUEST_COUNT = 4;
+
+  @Param( { "replaying", "incremental", "incrementalSliced", "incrementalCompact" } )
+  public String decoder;
+
+  @Param( { "1460", "64", "8" } )
+  public int fragmentSize;
+
+  private byte[] bytes;
+  private EmbeddedChannel channel;
+
+  @Setup
+  public void setup()
+  {
+    bytes = REQUESTS.getBytes( CharsetUtil.US_ASCII );
+    if( "replaying".equals( decoder ) )
+      channel = new EmbeddedChannel( new StsRequestDecoder() );
+    else
+      channel = new EmbeddedChannel( new IncrementalStsRequestDecoder( 4096, 8192, 8192, true, !"incremental".equals( decoder ), "incrementalCompact".equals( decoder ) ) );
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    channel.finish();
+  }
+
+  @Benchmark
+  public int decode()
+  {
+    for( int offset = 0; offset < bytes.length; offset += fragmentSize )
+      channel.writeInbound( Unpooled.wrappedBuffer( bytes, offset, Math.min( fragmentSize, bytes.length - offset ) ) );
+
+    int decoded = 0;
+    Object msg;
+    while( (msg = channel.readInbound()) != null )
+    {
+      if( msg instanceof LastStsContent )
+        decoded++;
+      ReferenceCountUtil.release( msg );
+    }
+    if( decoded != REQUEST_COUNT )
+      throw new IllegalStateException( "Decoded " + decoded + " requests instead of " + REQUEST_COUNT );
+    return decoded;
+  }
+
+  private static String request( String head, String body )
+  {
+    return head + "\r\nl:" + body.length() + "\r\n\r\n" + body;
+  }
+}
@@ -0,0 +1,74 @@
+package openbns.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import openbns.commons.net.codec.sts.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes the login server's replies with {@link StsResponseEncoder}: a {@code /Sts/Ping} reply without headers or
+ * content, and a reply with {@code l} and {@code s} and a body. Returns the number of buffers written, so a head and
+ * body merged into one buffer shows as 1.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StsResponseEncoderBenchmark
+{
+  private static final ByteBuf BODY = Unpooled.unreleasableBuffer( Unpooled.directBuffer().writeBytes( "<Reply>\n<KeyData>AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA</KeyData>\n</Reply>\n".getBytes( CharsetUtil.US_ASCII ) ) );
+
+  private EmbeddedChannel channel;
+
+  @Setup
+  public void setup()
+  {
+    channel = new EmbeddedChannel( new StsResponseEncoder() );
+    channel.config().setOption( ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT );
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    channel.finish();
+  }
+
+  @Benchmark
+  public int noHeaders()
+  {
+    channel.writeOutbound( new DefaultFullStsResponse( StsResponseStatus.OK, Unpooled.EMPTY_BUFFER ) );
+    return drain();
+  }
+
+  @Benchmark
+  public int withBody()
+  {
+    FullStsResponse response = new DefaultFullStsResponse( StsResponseStatus.OK, BODY.duplicate(), new CompactStsHeaders() );
+    response.headers().add( StsHeaders.Names.CONTENT_LENGTH, BODY.readableBytes() );
+    response.headers().add( StsHeaders.Names.SESSION_NUMBER, "2R" );
+    channel.writeOutbound( response );
+    return drain();
+  }
+
+  private int drain()
+  {
+    int buffers = 0;
+    Object out;
+    while( (out = channel.readOutbound()) != null )
+    {
+      ByteBuf buf = (ByteBuf) out;
+      if( buf.isReadable() )
+        buffers++;
+      buf.release();
+    }
+    return buffers;
+  }
+}
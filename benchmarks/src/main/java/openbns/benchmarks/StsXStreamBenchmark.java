@@ -0,0 +1,151 @@
+package openbns.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.CharsetUtil;
+import openbns.commons.xml.StsXStream;
+import openbns.commons.xml.StsXStreamRegistry;
+import openbns.commons.xml.codec.StsXmlCodec;
+import openbns.loginserver.net.client.dto.*;
+import openbns.loginserver.net.server.dto.ReplyErrorDTO;
+import openbns.loginserver.net.server.dto.ReplyErrorDTOXmlCodec;
+import openbns.loginserver.net.server.dto.ReplyKeyData;
+import openbns.loginserver.net.server.dto.ReplyKeyDataXmlCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marshals and unmarshals each login server DTO with its shared {@link StsXStream} from {@link StsXStreamRegistry}
+ * and with its generated {@link StsXmlCodec}, the XStream results standing as the baseline for the codecs. The
+ * codecs write to a pooled buffer and read from a copy of the XML XStream produced. {@code xstreamUnmarshalFresh}
+ * builds its {@link StsXStream} per call, as packets did before the registry.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StsXStreamBenchmark
+{
+  @Param( { "Connect", "LoginStart", "KeyData", "RequestToken", "ReplyError", "ReplyKeyData" } )
+  public String dto;
+
+  private Object value;
+  private StsXmlCodec<Object> codec;
+  private StsXStream stream;
+  private String xml;
+  private ByteBuf bytes;
+  private ByteBuf out;
+
+  @Setup
+  public void setup()
+  {
+    switch( dto )
+    {
+      case "Connect":
+        ConnectDTO connect = new ConnectDTO();
+        connect.setConnType( 400 );
+        connect.setAddress( "127.0.0.1" );
+        connect.setAppIndex( 1 );
+        connect.setEpoch( 1391272467 );
+        connect.setProgram( 2 );
+        connect.setBuild( 3061 );
+        connect.setProcess( 3296 );
+        init( connect, ConnectDTOXmlCodec.INSTANCE );
+        break;
+      case "LoginStart":
+        LoginStartDTO loginStart = new LoginStartDTO();
+        loginStart.setLoginName( "test@plaync.co.kr" );
+        init( loginStart, LoginStartDTOXmlCodec.INSTANCE );
+        break;
+      case "KeyData":
+        KeyDataDTO keyData = new KeyDataDTO();
+        keyData.setKeyData( base64Filler( 352 ) );
+        init( keyData, KeyDataDTOXmlCodec.INSTANCE );
+        break;
+      case "RequestToken":
+        RequestTokenDTO requestToken = new RequestTokenDTO();
+        requestToken.setAppId( "F5D1BB7A-0C1B-4C1E-B6F2-C0D2D6B7E1C4" );
+        init( requestToken, RequestTokenDTOXmlCodec.INSTANCE );
+        break;
+      case "ReplyError":
+        ReplyErrorDTO error = new ReplyErrorDTO();
+        error.setCode( 3002 );
+        error.setServer( 1001 );
+        error.setModule( 1 );
+        error.setLine( 458 );
+        init( error, ReplyErrorDTOXmlCodec.INSTANCE );
+        break;
+      case "ReplyKeyData":
+        ReplyKeyData replyKeyData = new ReplyKeyData();
+        replyKeyData.setKeyData( base64Filler( 352 ) );
+        init( replyKeyData, ReplyKeyDataXmlCodec.INSTANCE );
+        break;
+      default:
+        throw new IllegalArgumentException( "Unknown DTO " + dto );
+    }
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private void init( Object value, StsXmlCodec<?> codec )
+  {
+    this.value = value;
+    this.codec = (StsXmlCodec<Object>) codec;
+    stream = StsXStreamRegistry.getInstance().get( value.getClass() );
+    xml = stream.toXML( value );
+    bytes = PooledByteBufAllocator.DEFAULT.directBuffer().writeBytes( xml.getBytes( CharsetUtil.UTF_8 ) );
+    out = PooledByteBufAllocator.DEFAULT.directBuffer();
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    bytes.release();
+    out.release();
+  }
+
+  @Benchmark
+  public String xstreamMarshal()
+  {
+    return stream.toXML( value );
+  }
+
+  @Benchmark
+  public Object xstreamUnmarshal()
+  {
+    return stream.fromXML( new ByteBufInputStream( bytes.duplicate() ) );
+  }
+
+  @Benchmark
+  public Object xstreamUnmarshalFresh()
+  {
+    StsXStream fresh = new StsXStream();
+    fresh.processAnnotations( value.getClass() );
+    return fresh.fromXML( new ByteBufInputStream( bytes.duplicate() ) );
+  }
+
+  @Benchmark
+  public int codecEncode()
+  {
+    out.clear();
+    codec.encode( value, out );
+    return out.writerIndex();
+  }
+
+  @Benchmark
+  public Object codecDecode()
+  {
+    return codec.decode( bytes.duplicate() );
+  }
+
+  private static String base64Filler( int length )
+  {
+    StringBuilder sb = new StringBuilder( length );
+    for( int i = 0; i < length; i++ )
+      sb.append( (char) ('A' + i % 26) );
+    return sb.toString();
+  }
+}
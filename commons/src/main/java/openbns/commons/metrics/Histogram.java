@@ -0,0 +1,160 @@
+package openbns.commons.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, such as latencies in nanoseconds, in the layout of an HDR histogram:
+ * values below {@value #SUB_BUCKETS} are counted exactly, larger ones in buckets {@value #SUB_BUCKETS}/2 to a power
+ * of two, so any value is known to within 1/64 of itself whatever its magnitude. Values above the highest trackable
+ * one are counted as that value.
+ * <p/>
+ * {@link #record} is a few atomic adds on preallocated counters and never allocates, so any number of threads may
+ * record into one histogram. Percentiles are read from a {@link #snapshot()}, which copies the counters; a snapshot
+ * taken while values are recorded may miss some of them but is consistent in itself.
+ */
+public class Histogram
+{
+  private static final int SUB_BUCKET_BITS = 7;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF = SUB_BUCKETS / 2;
+
+  private final long highestTrackableValue;
+  private final AtomicLongArray counts;
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * @param highestTrackableValue the largest value told apart from larger ones, at least 1
+   */
+  public Histogram( long highestTrackableValue )
+  {
+    if( highestTrackableValue < 1 )
+      throw new IllegalArgumentException( "highestTrackableValue: " + highestTrackableValue );
+    this.highestTrackableValue = highestTrackableValue;
+    counts = new AtomicLongArray( index( highestTrackableValue ) + 1 );
+  }
+
+  public void record( long value )
+  {
+    if( value < 0 )
+      value = 0;
+    else if( value > highestTrackableValue )
+      value = highestTrackableValue;
+    counts.incrementAndGet( index( value ) );
+    count.incrementAndGet();
+    sum.addAndGet( value );
+    long current;
+    while( value > (current = max.get()) && !max.compareAndSet( current, value ) )
+      ;
+  }
+
+  public long getCount()
+  {
+    return count.get();
+  }
+
+  public long getHighestTrackableValue()
+  {
+    return highestTrackableValue;
+  }
+
+  /**
+   * Clears the histogram. Values recorded at the same time may be partly kept.
+   */
+  public void reset()
+  {
+    for( int i = 0; i < counts.length(); i++ )
+      counts.set( i, 0 );
+    count.set( 0 );
+    sum.set( 0 );
+    max.set( 0 );
+  }
+
+  public Snapshot snapshot()
+  {
+    long[] copy = new long[ counts.length() ];
+    long total = 0;
+    for( int i = 0; i < copy.length; i++ )
+    {
+      copy[ i ] = counts.get( i );
+      total += copy[ i ];
+    }
+    return new Snapshot( copy, total, sum.get(), max.get() );
+  }
+
+  static int index( long value )
+  {
+    if( value < SUB_BUCKETS )
+      return (int) value;
+    int shift = 64 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+    return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+  }
+
+  /**
+   * @return the highest value counted in bucket {@code index}
+   */
+  static long highestValue( int index )
+  {
+    if( index < SUB_BUCKETS )
+      return index;
+    int shift = (index - SUB_BUCKETS) / HALF + 1;
+    long top = (index - SUB_BUCKETS) % HALF + HALF;
+    return ((top + 1) << shift) - 1;
+  }
+
+  /**
+   * Counts of a {@link Histogram} at one point in time.
+   */
+  public static class Snapshot
+  {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Snapshot( long[] counts, long count, long sum, long max )
+    {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount()
+    {
+      return count;
+    }
+
+    public long getMax()
+    {
+      return max;
+    }
+
+    public double getMean()
+    {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the smallest value that {@code percentile} percent of the values are at most, to the bucket's
+     * precision and never above the largest value recorded; 0 if nothing was recorded
+     */
+    public long getValueAtPercentile( double percentile )
+    {
+      if( count == 0 )
+        return 0;
+      long rank = Math.max( 1, (long) Math.ceil( Math.min( percentile, 100 ) / 100 * count ) );
+      long seen = 0;
+      for( int i = 0; i < counts.length; i++ )
+      {
+        seen += counts[ i ];
+        if( seen >= rank )
+          return Math.min( highestValue( i ), max );
+      }
+      return max;
+    }
+  }
+}
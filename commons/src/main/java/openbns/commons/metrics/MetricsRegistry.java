@@ -0,0 +1,129 @@
+package openbns.commons.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link RequestMetrics} of a server by name, and the MBeans it exports. With JMX enabled each metrics object,
+ * and anything else {@link #register registered}, is an MBean named {@code <domain>:type=<type>,name="<name>"} on
+ * the platform MBean server, so jconsole or any JMX client can read it.
+ * <p/>
+ * Metrics are looked up when request handlers are set up, not per request.
+ */
+public class MetricsRegistry
+{
+  private static final Log log = LogFactory.getLog( MetricsRegistry.class );
+
+  private final String domain;
+  private final boolean jmx;
+  private final ConcurrentMap<String, RequestMetrics> requests = new ConcurrentHashMap<>();
+
+  /**
+   * @param domain JMX domain of the MBeans
+   * @param jmx    whether to export MBeans
+   */
+  public MetricsRegistry( String domain, boolean jmx )
+  {
+    this.domain = domain;
+    this.jmx = jmx;
+  }
+
+  /**
+   * @return the metrics named {@code name}, created and exported the first time
+   */
+  public RequestMetrics getRequestMetrics( String name )
+  {
+    RequestMetrics metrics = requests.get( name );
+    if( metrics != null )
+      return metrics;
+    RequestMetrics created = new RequestMetrics( name );
+    metrics = requests.putIfAbsent( name, created );
+    if( metrics != null )
+      return metrics;
+    register( "Request", name, created );
+    return created;
+  }
+
+  /**
+   * @return every request metrics, by name
+   */
+  public List<RequestMetrics> getRequestMetrics()
+  {
+    List<RequestMetrics> list = new ArrayList<>( requests.values() );
+    Collections.sort( list, new Comparator<RequestMetrics>()
+    {
+      @Override
+      public int compare( RequestMetrics o1, RequestMetrics o2 )
+      {
+        return o1.getName().compareTo( o2.getName() );
+      }
+    } );
+    return list;
+  }
+
+  /**
+   * Exports {@code mbean}, a standard MBean, if JMX is enabled. A failure is logged, never thrown: metrics are not
+   * worth failing the server for.
+   */
+  public void register( String type, String name, Object mbean )
+  {
+    if( !jmx )
+      return;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try
+    {
+      ObjectName objectName = new ObjectName( domain + ":type=" + type + ",name=" + ObjectName.quote( name ) );
+      // A registry created again, as in tests, takes over the name
+      if( server.isRegistered( objectName ) )
+        server.unregisterMBean( objectName );
+      server.registerMBean( mbean, objectName );
+    }
+    catch( JMException e )
+    {
+      log.warn( "Cannot export " + type + " " + name + " over JMX", e );
+    }
+  }
+
+  /**
+   * Appends the metrics as XML, one {@code Request} element per metrics object with times in microseconds.
+   */
+  public void appendXml( StringBuilder sb )
+  {
+    for( RequestMetrics metrics : getRequestMetrics() )
+    {
+      sb.append( "<Request name=\"" ).append( metrics.getName() )
+              .append( "\" requests=\"" ).append( metrics.getRequests() )
+              .append( "\" errors=\"" ).append( metrics.getErrors() )
+              .append( "\" bytesIn=\"" ).append( metrics.getBytesIn() )
+              .append( "\" bytesOut=\"" ).append( metrics.getBytesOut() ).append( "\">\n" );
+      appendXml( sb, "Decode", metrics.getDecode() );
+      appendXml( sb, "Queue", metrics.getQueue() );
+      appendXml( sb, "Execute", metrics.getExecute() );
+      sb.append( "</Request>\n" );
+    }
+  }
+
+  private static void appendXml( StringBuilder sb, String element, Histogram histogram )
+  {
+    Histogram.Snapshot s = histogram.snapshot();
+    sb.append( '<' ).append( element )
+            .append( " count=\"" ).append( s.getCount() )
+            .append( "\" mean=\"" ).append( Math.round( s.getMean() / 1000 ) )
+            .append( "\" p50=\"" ).append( s.getValueAtPercentile( 50 ) / 1000 )
+            .append( "\" p90=\"" ).append( s.getValueAtPercentile( 90 ) / 1000 )
+            .append( "\" p99=\"" ).append( s.getValueAtPercentile( 99 ) / 1000 )
+            .append( "\" p999=\"" ).append( s.getValueAtPercentile( 99.9 ) / 1000 )
+            .append( "\" max=\"" ).append( s.getMax() / 1000 ).append( "\"/>\n" );
+  }
+}
@@ -0,0 +1,194 @@
+package openbns.commons.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of one kind of request: how long its body took to decode, how long it waited to
+ * run, how long it ran, and the body bytes read and written. Times are recorded in nanoseconds.
+ * <p/>
+ * Recording is a few atomic adds on counters allocated up front, so it never allocates and may be done from any
+ * thread.
+ */
+public class RequestMetrics implements RequestMetricsMBean
+{
+  /**
+   * Longest time told apart from longer ones.
+   */
+  public static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos( 1 );
+
+  private final String name;
+  private final Histogram decode = new Histogram( HIGHEST_NANOS );
+  private final Histogram queue = new Histogram( HIGHEST_NANOS );
+  private final Histogram execute = new Histogram( HIGHEST_NANOS );
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong bytesIn = new AtomicLong();
+  private final AtomicLong bytesOut = new AtomicLong();
+
+  public RequestMetrics( String name )
+  {
+    this.name = name;
+  }
+
+  /**
+   * Counts a request whose body of {@code bytes} bytes was decoded in {@code nanos}.
+   */
+  public void recordDecode( long nanos, int bytes )
+  {
+    decode.record( nanos );
+    bytesIn.addAndGet( bytes );
+  }
+
+  /**
+   * @param nanos time from being decoded to starting to run
+   */
+  public void recordQueue( long nanos )
+  {
+    queue.record( nanos );
+  }
+
+  /**
+   * @param nanos time from starting to run to being done, whether it failed or not
+   */
+  public void recordExecute( long nanos )
+  {
+    execute.record( nanos );
+  }
+
+  /**
+   * Counts a request that failed to decode or to run.
+   */
+  public void recordError()
+  {
+    errors.incrementAndGet();
+  }
+
+  public void recordBytesOut( int bytes )
+  {
+    bytesOut.addAndGet( bytes );
+  }
+
+  @Override
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * @return requests decoded
+   */
+  @Override
+  public long getRequests()
+  {
+    return decode.getCount();
+  }
+
+  @Override
+  public long getErrors()
+  {
+    return errors.get();
+  }
+
+  @Override
+  public long getBytesIn()
+  {
+    return bytesIn.get();
+  }
+
+  @Override
+  public long getBytesOut()
+  {
+    return bytesOut.get();
+  }
+
+  public Histogram getDecode()
+  {
+    return decode;
+  }
+
+  public Histogram getQueue()
+  {
+    return queue;
+  }
+
+  public Histogram getExecute()
+  {
+    return execute;
+  }
+
+  @Override
+  public double getDecodeMeanMicros()
+  {
+    return decode.snapshot().getMean() / 1000;
+  }
+
+  @Override
+  public double getDecode99thPercentileMicros()
+  {
+    return micros( decode, 99 );
+  }
+
+  @Override
+  public double getQueueMeanMicros()
+  {
+    return queue.snapshot().getMean() / 1000;
+  }
+
+  @Override
+  public double getQueue99thPercentileMicros()
+  {
+    return micros( queue, 99 );
+  }
+
+  @Override
+  public double getExecuteMeanMicros()
+  {
+    return execute.snapshot().getMean() / 1000;
+  }
+
+  @Override
+  public double getExecute50thPercentileMicros()
+  {
+    return micros( execute, 50 );
+  }
+
+  @Override
+  public double getExecute99thPercentileMicros()
+  {
+    return micros( execute, 99 );
+  }
+
+  @Override
+  public double getExecuteMaxMicros()
+  {
+    return execute.snapshot().getMax() / 1000.0;
+  }
+
+  private static double micros( Histogram histogram, double percentile )
+  {
+    return histogram.snapshot().getValueAtPercentile( percentile ) / 1000.0;
+  }
+
+  @Override
+  public void reset()
+  {
+    decode.reset();
+    queue.reset();
+    execute.reset();
+    errors.set( 0 );
+    bytesIn.set( 0 );
+    bytesOut.set( 0 );
+  }
+
+  @Override
+  public String toString()
+  {
+    return "RequestMetrics{" +
+            "name='" + name + '\'' +
+            ", requests=" + getRequests() +
+            ", errors=" + errors +
+            ", bytesIn=" + bytesIn +
+            ", bytesOut=" + bytesOut +
+            '}';
+  }
+}
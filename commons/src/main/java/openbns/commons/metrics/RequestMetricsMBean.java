@@ -0,0 +1,36 @@
+package openbns.commons.metrics;
+
+/**
+ * What {@link RequestMetrics} shows over JMX. Times are in microseconds and read from a snapshot taken per call, so
+ * attributes read one after another may cover slightly different requests.
+ */
+public interface RequestMetricsMBean
+{
+  String getName();
+
+  long getRequests();
+
+  long getErrors();
+
+  long getBytesIn();
+
+  long getBytesOut();
+
+  double getDecodeMeanMicros();
+
+  double getDecode99thPercentileMicros();
+
+  double getQueueMeanMicros();
+
+  double getQueue99thPercentileMicros();
+
+  double getExecuteMeanMicros();
+
+  double getExecute50thPercentileMicros();
+
+  double getExecute99thPercentileMicros();
+
+  double getExecuteMaxMicros();
+
+  void reset();
+}
@@ -0,0 +1,278 @@
+package openbns.commons.net;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link PooledByteBufAllocator} built from explicit settings rather than Netty's system properties, with the
+ * usage of its arenas and the direct memory the JVM holds.
+ * <p/>
+ * This Netty has no metrics API, so arenas are read through the allocator's private fields; if a Netty version lays
+ * them out differently, arena statistics are empty and the direct memory figures still work. Its thread caches only
+ * bind each thread to an arena and hold no buffers, so there is nothing about them to configure or report.
+ */
+public class BufferPool implements BufferPoolMBean
+{
+  private static final Log log = LogFactory.getLog( BufferPool.class );
+
+  private static final String[] CHUNK_LISTS = { "qInit", "q000", "q025", "q050", "q075", "q100" };
+  private static final Fields fields = Fields.load();
+
+  private final PooledByteBufAllocator allocator;
+  private final int heapArenas;
+  private final int directArenas;
+  private final int pageSize;
+  private final int chunkSize;
+
+  /**
+   * @param chunkSize bytes an arena allocates from the system at a time; a power of two times {@code pageSize}
+   */
+  public BufferPool( boolean preferDirect, int heapArenas, int directArenas, int pageSize, int chunkSize )
+  {
+    int maxOrder = Integer.numberOfTrailingZeros( chunkSize / Math.max( pageSize, 1 ) );
+    if( pageSize <= 0 || chunkSize != pageSize << maxOrder )
+      throw new IllegalArgumentException( "Chunk size " + chunkSize + " is not a power of two times the page size " + pageSize );
+    allocator = new PooledByteBufAllocator( preferDirect, heapArenas, directArenas, pageSize, maxOrder );
+    this.heapArenas = heapArenas;
+    this.directArenas = directArenas;
+    this.pageSize = pageSize;
+    this.chunkSize = chunkSize;
+  }
+
+  public PooledByteBufAllocator getAllocator()
+  {
+    return allocator;
+  }
+
+  public List<ArenaStats> getHeapArenas()
+  {
+    return arenas( fields == null ? null : fields.heapArenas );
+  }
+
+  public List<ArenaStats> getDirectArenas()
+  {
+    return arenas( fields == null ? null : fields.directArenas );
+  }
+
+  @Override
+  public int getHeapChunks()
+  {
+    return sum( getHeapArenas() ).getChunks();
+  }
+
+  @Override
+  public long getHeapCapacity()
+  {
+    return sum( getHeapArenas() ).getCapacity();
+  }
+
+  @Override
+  public long getHeapUsed()
+  {
+    return sum( getHeapArenas() ).getUsed();
+  }
+
+  @Override
+  public int getDirectChunks()
+  {
+    return sum( getDirectArenas() ).getChunks();
+  }
+
+  @Override
+  public long getDirectCapacity()
+  {
+    return sum( getDirectArenas() ).getCapacity();
+  }
+
+  @Override
+  public long getDirectUsed()
+  {
+    return sum( getDirectArenas() ).getUsed();
+  }
+
+  /**
+   * @return bytes held by the JVM's direct buffers, pooled chunks and the rest, or -1 if unknown
+   */
+  public static long getDirectMemoryUsed()
+  {
+    BufferPoolMXBean direct = directBufferPool();
+    return direct == null ? -1 : direct.getMemoryUsed();
+  }
+
+  /**
+   * @return the number of the JVM's direct buffers, or -1 if unknown
+   */
+  public static long getDirectBufferCount()
+  {
+    BufferPoolMXBean direct = directBufferPool();
+    return direct == null ? -1 : direct.getCount();
+  }
+
+  private static BufferPoolMXBean directBufferPool()
+  {
+    for( BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans( BufferPoolMXBean.class ) )
+    {
+      if( "direct".equals( pool.getName() ) )
+        return pool;
+    }
+    return null;
+  }
+
+  private List<ArenaStats> arenas( Field field )
+  {
+    if( field == null )
+      return Collections.emptyList();
+    try
+    {
+      Object[] arenas = (Object[]) field.get( allocator );
+      List<ArenaStats> stats = new ArrayList<>( arenas.length );
+      for( Object arena : arenas )
+        stats.add( fields.read( arena ) );
+      return stats;
+    }
+    catch( IllegalAccessException e )
+    {
+      return Collections.emptyList();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "BufferPool{heap=" + sum( getHeapArenas() ) + ", direct=" + sum( getDirectArenas() ) + ", heapArenas=" + heapArenas + ", directArenas=" + directArenas + ", pageSize=" + pageSize + ", chunkSize=" + chunkSize + ", directMemoryUsed=" + getDirectMemoryUsed() + ", directBuffers=" + getDirectBufferCount() + '}';
+  }
+
+  private static ArenaStats sum( List<ArenaStats> arenas )
+  {
+    int chunks = 0;
+    long capacity = 0;
+    long used = 0;
+    for( ArenaStats arena : arenas )
+    {
+      chunks += arena.chunks;
+      capacity += arena.capacity;
+      used += arena.used;
+    }
+    return new ArenaStats( chunks, capacity, used );
+  }
+
+  /**
+   * Chunks of one arena and the bytes allocated from them.
+   */
+  public static class ArenaStats
+  {
+    private final int chunks;
+    private final long capacity;
+    private final long used;
+
+    private ArenaStats( int chunks, long capacity, long used )
+    {
+      this.chunks = chunks;
+      this.capacity = capacity;
+      this.used = used;
+    }
+
+    public int getChunks()
+    {
+      return chunks;
+    }
+
+    /**
+     * @return bytes of the arena's chunks
+     */
+    public long getCapacity()
+    {
+      return capacity;
+    }
+
+    /**
+     * @return bytes handed out from the chunks, in whole pages and subpages
+     */
+    public long getUsed()
+    {
+      return used;
+    }
+
+    @Override
+    public String toString()
+    {
+      return "{chunks=" + chunks + ", capacity=" + capacity + ", used=" + used + '}';
+    }
+  }
+
+  /**
+   * The allocator internals arena statistics are read from.
+   */
+  private static class Fields
+  {
+    private Field heapArenas;
+    private Field directArenas;
+    private Field[] chunkLists;
+    private Field head;
+    private Field next;
+    private Field chunkSize;
+    private Field freeBytes;
+
+    private static Fields load()
+    {
+      try
+      {
+        Fields f = new Fields();
+        f.heapArenas = field( PooledByteBufAllocator.class, "heapArenas" );
+        f.directArenas = field( PooledByteBufAllocator.class, "directArenas" );
+        Class<?> arena = Class.forName( "io.netty.buffer.PoolArena" );
+        f.chunkLists = new Field[ CHUNK_LISTS.length ];
+        for( int i = 0; i < CHUNK_LISTS.length; i++ )
+          f.chunkLists[ i ] = field( arena, CHUNK_LISTS[ i ] );
+        f.head = field( Class.forName( "io.netty.buffer.PoolChunkList" ), "head" );
+        Class<?> chunk = Class.forName( "io.netty.buffer.PoolChunk" );
+        f.next = field( chunk, "next" );
+        f.chunkSize = field( chunk, "chunkSize" );
+        f.freeBytes = field( chunk, "freeBytes" );
+        return f;
+      }
+      catch( ReflectiveOperationException | RuntimeException e )
+      {
+        log.warn( "Buffer pool arenas cannot be read, only direct memory is reported: " + e );
+        return null;
+      }
+    }
+
+    private static Field field( Class<?> type, String name ) throws NoSuchFieldException
+    {
+      Field field = type.getDeclaredField( name );
+      field.setAccessible( true );
+      return field;
+    }
+
+    private ArenaStats read( Object arena ) throws IllegalAccessException
+    {
+      int chunks = 0;
+      long capacity = 0;
+      long used = 0;
+      // Arenas allocate and free under their own lock
+      synchronized( arena )
+      {
+        for( Field list : chunkLists )
+        {
+          for( Object chunk = head.get( list.get( arena ) ); chunk != null; chunk = next.get( chunk ) )
+          {
+            int size = chunkSize.getInt( chunk );
+            chunks++;
+            capacity += size;
+            used += size - freeBytes.getInt( chunk );
+          }
+        }
+      }
+      return new ArenaStats( chunks, capacity, used );
+    }
+  }
+}
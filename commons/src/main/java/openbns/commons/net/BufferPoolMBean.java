@@ -0,0 +1,20 @@
+package openbns.commons.net;
+
+/**
+ * What {@link BufferPool} shows over JMX: its arenas summed by kind. The JVM's own direct memory figures are on the
+ * platform's {@code java.nio:type=BufferPool,name=direct} MBean.
+ */
+public interface BufferPoolMBean
+{
+  int getHeapChunks();
+
+  long getHeapCapacity();
+
+  long getHeapUsed();
+
+  int getDirectChunks();
+
+  long getDirectCapacity();
+
+  long getDirectUsed();
+}
@@ -1,16 +1,29 @@
 package openbns.commons.net;
 
+import io.netty.buffer.ByteBuf;
+
 /**
  * Created with IntelliJ IDEA.
  * User: Eugene Chipachenko
  * Date: 19.01.14
  * Time: 22:58
+ * <p/>
+ * The S-box is kept as ints, so no byte needs masking. Heap {@link ByteBuf}s go through their array; others are
+ * copied through a small chunk array in bulk and run through the same loop, which is as fast as the array itself
+ * where a byte or long at a time through the buffer was not.
  */
 public class RC4
 {
-  private byte state[] = new byte[ 256 ];
+  /**
+   * Bytes copied out of a buffer without an array per step; one chunk per cipher, as it lives as long as the
+   * connection.
+   */
+  private static final int CHUNK = 256;
+
+  private final int[] state = new int[ 256 ];
   private int x;
   private int y;
+  private byte[] chunk;
 
   /**
    * Инициализация потока.
@@ -31,7 +44,7 @@ public class RC4
 
     for( int i = 0; i < 256; i++ )
     {
-      state[ i ] = (byte) i;
+      state[ i ] = i;
     }
 
     x = 0;
@@ -40,7 +53,7 @@ public class RC4
     int index1 = 0;
     int index2 = 0;
 
-    byte tmp;
+    int tmp;
 
     if( key == null || key.length == 0 )
     {
@@ -50,7 +63,7 @@ public class RC4
     for( int i = 0; i < 256; i++ )
     {
 
-      index2 = ((key[ index1 ] & 0xff) + (state[ i ] & 0xff) + index2) & 0xff;
+      index2 = ((key[ index1 ] & 0xff) + state[ i ] + index2) & 0xff;
 
       tmp = state[ i ];
       state[ i ] = state[ index2 ];
@@ -65,21 +78,49 @@ public class RC4
    */
   public void rc4( byte[] buf, final int offset, final int size )
   {
-    int xorIndex;
-    byte tmp;
-
-    for( int i = 0; i < size; i++ )
+    final int[] state = this.state;
+    int x = this.x;
+    int y = this.y;
+    for( int i = offset, end = offset + size; i < end; i++ )
     {
-
       x = (x + 1) & 0xff;
-      y = ((state[ x ] & 0xff) + y) & 0xff;
+      int sx = state[ x ];
+      y = (y + sx) & 0xff;
+      int sy = state[ y ];
+      state[ x ] = sy;
+      state[ y ] = sx;
+      buf[ i ] ^= state[ (sx + sy) & 0xff ];
+    }
+    this.x = x;
+    this.y = y;
+  }
 
-      tmp = state[ x ];
-      state[ x ] = state[ y ];
-      state[ y ] = tmp;
+  /**
+   * Encrypts or decrypts {@code buf[index, index + length)} in place.
+   */
+  public void rc4( ByteBuf buf, int index, int length )
+  {
+    if( buf.hasArray() )
+      rc4( buf.array(), buf.arrayOffset() + index, length );
+    else
+      rc4( buf, index, buf, index, length );
+  }
 
-      xorIndex = ((state[ x ] & 0xff) + (state[ y ] & 0xff)) & 0xff;
-      buf[ offset + i ] ^= state[ xorIndex ];
+  /**
+   * Writes {@code src[srcIndex, srcIndex + length)} encrypted or decrypted to {@code dst} from {@code dstIndex}. The
+   * buffers may be the same, with the same index, for in place; neither's indexes change.
+   */
+  public void rc4( ByteBuf src, int srcIndex, ByteBuf dst, int dstIndex, int length )
+  {
+    byte[] chunk = this.chunk;
+    if( chunk == null )
+      chunk = this.chunk = new byte[ CHUNK ];
+    for( int i = 0; i < length; i += CHUNK )
+    {
+      int n = Math.min( CHUNK, length - i );
+      src.getBytes( srcIndex + i, chunk, 0, n );
+      rc4( chunk, 0, n );
+      dst.setBytes( dstIndex + i, chunk, 0, n );
     }
   }
 }
@@ -0,0 +1,121 @@
+package openbns.commons.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Decrypts every buffer read from the channel and encrypts every buffer written to it with {@link RC4}, one cipher
+ * per direction. Received buffers are decrypted in place. Written ones may be shared, like cached reply heads and
+ * shared bodies, so each is encrypted into a new buffer from the channel's allocator in the same pass, heap or
+ * direct.
+ * <p/>
+ * {@link #install} puts the handler at the head of the pipeline, in front of the codec, and is meant to be called once
+ * the key exchange succeeded. The login server does not install it yet: the stream keys are not derived from the
+ * exchange ({@code Session.generateServerKey} leaves {@code KeyManager.generate256BytesKey} unused), so only RC4Test
+ * exercises it. Reading is decrypted from then on: bytes the decoder already holds are plain, so the client must wait for
+ * the reply before it encrypts. Writing is encrypted only after {@link #START_ENCRYPTION} is written, so replies
+ * written before it in request order, such as the one finishing the key exchange, still go out plain.
+ */
+public class RC4Handler extends ChannelDuplexHandler
+{
+  public static final String NAME = "rc4";
+
+  /**
+   * Written after the last plain reply; everything written after it is encrypted.
+   */
+  public static final Object START_ENCRYPTION = new Object()
+  {
+    @Override
+    public String toString()
+    {
+      return "RC4Handler.START_ENCRYPTION";
+    }
+  };
+
+  private final RC4 decrypt;
+  private final RC4 encrypt;
+  private boolean encrypting;
+
+  public RC4Handler( byte[] decryptKey, byte[] encryptKey )
+  {
+    this( new RC4( decryptKey ), new RC4( encryptKey ) );
+  }
+
+  public RC4Handler( RC4 decrypt, RC4 encrypt )
+  {
+    this.decrypt = decrypt;
+    this.encrypt = encrypt;
+  }
+
+  /**
+   * Adds {@code handler} at the head of {@code channel}'s pipeline. May be called from any thread.
+   */
+  public static void install( Channel channel, RC4Handler handler )
+  {
+    channel.pipeline().addFirst( NAME, handler );
+  }
+
+  @Override
+  public void channelRead( ChannelHandlerContext ctx, Object msg ) throws Exception
+  {
+    if( msg instanceof ByteBuf )
+    {
+      ByteBuf buf = (ByteBuf) msg;
+      decrypt.rc4( buf, buf.readerIndex(), buf.readableBytes() );
+    }
+    ctx.fireChannelRead( msg );
+  }
+
+  @Override
+  public void write( ChannelHandlerContext ctx, Object msg, ChannelPromise promise ) throws Exception
+  {
+    if( msg == START_ENCRYPTION )
+    {
+      encrypting = true;
+      promise.setSuccess();
+      return;
+    }
+    if( !encrypting )
+    {
+      ctx.write( msg, promise );
+      return;
+    }
+    if( !(msg instanceof ByteBuf) )
+    {
+      // Anything else, like a FileRegion, would leave unencrypted
+      ReferenceCountUtil.release( msg );
+      promise.setFailure( new UnsupportedOperationException( "Cannot encrypt " + msg.getClass().getSimpleName() ) );
+      return;
+    }
+
+    ByteBuf buf = (ByteBuf) msg;
+    int length = buf.readableBytes();
+    if( length == 0 )
+    {
+      ctx.write( buf, promise );
+      return;
+    }
+    ByteBuf out = null;
+    try
+    {
+      out = ctx.alloc().buffer( length );
+      encrypt.rc4( buf, buf.readerIndex(), out, 0, length );
+      out.writerIndex( length );
+    }
+    catch( RuntimeException e )
+    {
+      if( out != null )
+        out.release();
+      throw e;
+    }
+    finally
+    {
+      buf.release();
+    }
+    ctx.write( out, promise );
+  }
+}
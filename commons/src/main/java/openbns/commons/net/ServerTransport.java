@@ -0,0 +1,91 @@
+package openbns.commons.net;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Event loops and the listening channel of a server on the NIO transport: one acceptor thread, a configurable number
+ * of I/O threads for the accepted connections, and the socket options of both.
+ * <p/>
+ * NIO is the only transport: the native epoll transport, and with it {@code SO_REUSEPORT} listeners sharing a port,
+ * first shipped with Netty 4.0.17 and this build is on 4.0.14.
+ */
+public final class ServerTransport
+{
+  private static final Log log = LogFactory.getLog( ServerTransport.class );
+
+  private final EventLoopGroup bossGroup;
+  private final EventLoopGroup workerGroup;
+  private final Map<ChannelOption<?>, Object> options = new LinkedHashMap<>();
+  private final Map<ChannelOption<?>, Object> childOptions = new LinkedHashMap<>();
+
+  /**
+   * @param workerThreads I/O threads for accepted connections, 0 for Netty's default of twice the cores
+   */
+  public ServerTransport( int workerThreads )
+  {
+    bossGroup = new NioEventLoopGroup( 1 );
+    workerGroup = new NioEventLoopGroup( workerThreads );
+    log.info( "Transport: NIO, " + (workerThreads > 0 ? workerThreads : "default") + " worker thread(s)" );
+  }
+
+  /**
+   * Sets an option of the listening channel.
+   */
+  public <T> ServerTransport option( ChannelOption<T> option, T value )
+  {
+    options.put( option, value );
+    return this;
+  }
+
+  /**
+   * Sets an option of the accepted channels.
+   */
+  public <T> ServerTransport childOption( ChannelOption<T> option, T value )
+  {
+    childOptions.put( option, value );
+    return this;
+  }
+
+  /**
+   * Binds the listening channel, whose accepted connections are set up by {@code childHandler}.
+   */
+  public Channel bind( String host, int port, ChannelHandler childHandler ) throws InterruptedException
+  {
+    ServerBootstrap b = new ServerBootstrap();
+    b.group( bossGroup, workerGroup ).channel( NioServerSocketChannel.class ).childHandler( childHandler );
+    for( Map.Entry<ChannelOption<?>, Object> e : options.entrySet() )
+      setOption( b, e.getKey(), e.getValue() );
+    for( Map.Entry<ChannelOption<?>, Object> e : childOptions.entrySet() )
+      setChildOption( b, e.getKey(), e.getValue() );
+    return b.bind( host, port ).sync().channel();
+  }
+
+  public void shutdown()
+  {
+    bossGroup.shutdownGracefully();
+    workerGroup.shutdownGracefully();
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static <T> void setOption( ServerBootstrap b, ChannelOption<T> option, Object value )
+  {
+    b.option( option, (T) value );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static <T> void setChildOption( ServerBootstrap b, ChannelOption<T> option, Object value )
+  {
+    b.childOption( option, (T) value );
+  }
+}
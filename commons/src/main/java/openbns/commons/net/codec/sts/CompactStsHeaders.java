@@ -0,0 +1,440 @@
+package openbns.commons.net.codec.sts;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * {@link StsHeaders} kept in one array of name and value pairs that is scanned linearly, for messages with a handful
+ * of headers, which is all STS ever sends. Unlike {@link DefaultStsHeaders} there is no bucket table, no linked entry
+ * per header and no hashing, and nothing is allocated until the first header is added.
+ * <p/>
+ * Integral numbers such as {@link Names#CONTENT_LENGTH} are kept as {@code long}s: they are written straight to the
+ * buffer by {@link StsHeaders#encode(StsHeaders, ByteBuf)}, read back by {@link #getLong} without parsing, and only
+ * turned into a {@link String} when asked for one. Other values are kept as the {@link CharSequence} given, so
+ * entities from {@link StsHeaders#newEntity} are encoded from their bytes.
+ * <p/>
+ * Entries returned by {@link #iterator()} and {@link #entries()} refer to a position, and are only valid until a
+ * header is removed.
+ */
+public class CompactStsHeaders extends StsHeaders
+{
+  private static final int INITIAL_CAPACITY = 4;
+
+  private final boolean validate;
+  // name, value pairs; a null value is held in numbers
+  private CharSequence[] entries;
+  private long[] numbers;
+  private int size;
+
+  public CompactStsHeaders()
+  {
+    this( true );
+  }
+
+  public CompactStsHeaders( boolean validate )
+  {
+    this.validate = validate;
+  }
+
+  @Override
+  public StsHeaders add( String name, Object value )
+  {
+    return add( (CharSequence) name, value );
+  }
+
+  @Override
+  public StsHeaders add( CharSequence name, Object value )
+  {
+    if( validate )
+      validateHeaderName( name );
+    add0( name, value );
+    return this;
+  }
+
+  @Override
+  public StsHeaders add( String name, Iterable<?> values )
+  {
+    return add( (CharSequence) name, values );
+  }
+
+  @Override
+  public StsHeaders add( CharSequence name, Iterable<?> values )
+  {
+    if( validate )
+      validateHeaderName( name );
+    for( Object v : values )
+      add0( name, v );
+    return this;
+  }
+
+  @Override
+  public StsHeaders set( String name, Object value )
+  {
+    return set( (CharSequence) name, value );
+  }
+
+  @Override
+  public StsHeaders set( CharSequence name, Object value )
+  {
+    if( validate )
+      validateHeaderName( name );
+    remove0( name );
+    add0( name, value );
+    return this;
+  }
+
+  @Override
+  public StsHeaders set( String name, Iterable<?> values )
+  {
+    return set( (CharSequence) name, values );
+  }
+
+  @Override
+  public StsHeaders set( CharSequence name, Iterable<?> values )
+  {
+    if( values == null )
+      throw new NullPointerException( "values" );
+    if( validate )
+      validateHeaderName( name );
+
+    remove0( name );
+    for( Object v : values )
+    {
+      if( v == null )
+        break;
+      add0( name, v );
+    }
+    return this;
+  }
+
+  private void add0( CharSequence name, Object value )
+  {
+    if( entries == null )
+      entries = new CharSequence[ INITIAL_CAPACITY << 1 ];
+    else if( size << 1 == entries.length )
+      entries = Arrays.copyOf( entries, entries.length << 1 );
+
+    if( value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte )
+    {
+      if( numbers == null )
+        numbers = new long[ entries.length >> 1 ];
+      else if( numbers.length <= size )
+        numbers = Arrays.copyOf( numbers, entries.length >> 1 );
+      numbers[ size ] = ((Number) value).longValue();
+      entries[ (size << 1) + 1 ] = null;
+    }
+    else
+    {
+      CharSequence strVal = DefaultStsHeaders.toCharSequence( value );
+      if( validate )
+        validateHeaderValue( strVal );
+      entries[ (size << 1) + 1 ] = strVal;
+    }
+    entries[ size << 1 ] = name;
+    size++;
+  }
+
+  @Override
+  public StsHeaders remove( String name )
+  {
+    return remove( (CharSequence) name );
+  }
+
+  @Override
+  public StsHeaders remove( CharSequence name )
+  {
+    if( name == null )
+      throw new NullPointerException( "name" );
+    remove0( name );
+    return this;
+  }
+
+  private void remove0( CharSequence name )
+  {
+    int kept = 0;
+    for( int i = 0; i < size; i++ )
+    {
+      if( matches( name, i ) )
+        continue;
+      if( kept != i )
+      {
+        entries[ kept << 1 ] = entries[ i << 1 ];
+        entries[ (kept << 1) + 1 ] = entries[ (i << 1) + 1 ];
+        if( numbers != null && i < numbers.length )
+          numbers[ kept ] = numbers[ i ];
+      }
+      kept++;
+    }
+    if( kept < size )
+      Arrays.fill( entries, kept << 1, size << 1, null );
+    size = kept;
+  }
+
+  @Override
+  public StsHeaders clear()
+  {
+    if( entries != null )
+      Arrays.fill( entries, 0, size << 1, null );
+    size = 0;
+    return this;
+  }
+
+  @Override
+  public String get( String name )
+  {
+    return get( (CharSequence) name );
+  }
+
+  @Override
+  public String get( CharSequence name )
+  {
+    int i = indexOf( name );
+    return i < 0 ? null : value( i );
+  }
+
+  /**
+   * Returns the first value of the header as a number, without parsing it if it was added as one.
+   *
+   * @return the value, or {@code defaultValue} if there is no such header or its value is not a number
+   */
+  public long getLong( CharSequence name, long defaultValue )
+  {
+    int i = indexOf( name );
+    if( i < 0 )
+      return defaultValue;
+    CharSequence value = entries[ (i << 1) + 1 ];
+    if( value == null )
+      return numbers[ i ];
+    try
+    {
+      return Long.parseLong( value.toString() );
+    }
+    catch( NumberFormatException e )
+    {
+      return defaultValue;
+    }
+  }
+
+  private int indexOf( CharSequence name )
+  {
+    if( name == null )
+      throw new NullPointerException( "name" );
+
+    for( int i = 0; i < size; i++ )
+    {
+      if( matches( name, i ) )
+        return i;
+    }
+    return -1;
+  }
+
+  /**
+   * With a handful of headers, comparing names beats hashing them. The decoder hands out shared names, so most
+   * matches are found by identity.
+   */
+  private boolean matches( CharSequence name, int i )
+  {
+    CharSequence key = entries[ i << 1 ];
+    if( key == name )
+      return true;
+    if( key.length() != name.length() )
+      return false;
+    return equalsIgnoreCase( name, key );
+  }
+
+  private String value( int i )
+  {
+    CharSequence value = entries[ (i << 1) + 1 ];
+    return value == null ? Long.toString( numbers[ i ] ) : value.toString();
+  }
+
+  @Override
+  public List<String> getAll( String name )
+  {
+    return getAll( (CharSequence) name );
+  }
+
+  @Override
+  public List<String> getAll( CharSequence name )
+  {
+    if( name == null )
+      throw new NullPointerException( "name" );
+
+    List<String> all = new ArrayList<String>( 2 );
+    for( int i = 0; i < size; i++ )
+    {
+      if( matches( name, i ) )
+        all.add( value( i ) );
+    }
+    return all;
+  }
+
+  @Override
+  public List<Entry<String, String>> entries()
+  {
+    List<Entry<String, String>> all = new ArrayList<Entry<String, String>>( size );
+    for( int i = 0; i < size; i++ )
+      all.add( new HeaderEntry( i ) );
+    return all;
+  }
+
+  @Override
+  public Iterator<Entry<String, String>> iterator()
+  {
+    return new HeaderIterator();
+  }
+
+  @Override
+  public boolean contains( String name )
+  {
+    return indexOf( name ) >= 0;
+  }
+
+  @Override
+  public boolean contains( CharSequence name )
+  {
+    return indexOf( name ) >= 0;
+  }
+
+  @Override
+  public boolean contains( String name, String value, boolean ignoreCaseValue )
+  {
+    return contains( (CharSequence) name, (CharSequence) value, ignoreCaseValue );
+  }
+
+  @Override
+  public boolean contains( CharSequence name, CharSequence value, boolean ignoreCaseValue )
+  {
+    if( name == null )
+      throw new NullPointerException( "name" );
+
+    for( int i = 0; i < size; i++ )
+    {
+      if( matches( name, i ) )
+      {
+        String v = value( i );
+        if( ignoreCaseValue ? equalsIgnoreCase( v, value ) : v.equals( value.toString() ) )
+          return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  @Override
+  public Set<String> names()
+  {
+    Set<String> all = new LinkedHashSet<String>();
+    for( int i = 0; i < size; i++ )
+      all.add( entries[ i << 1 ].toString() );
+    return all;
+  }
+
+  void encode( ByteBuf buf )
+  {
+    for( int i = 0; i < size; i++ )
+    {
+      encodeAscii( entries[ i << 1 ], buf );
+      buf.writeBytes( HEADER_SEPERATOR );
+      CharSequence value = entries[ (i << 1) + 1 ];
+      if( value == null )
+        encodeDecimal( numbers[ i ], buf );
+      else
+        encodeAscii( value, buf );
+      buf.writeBytes( CRLF );
+    }
+  }
+
+  private static void encodeDecimal( long n, ByteBuf buf )
+  {
+    if( n < 0 )
+    {
+      encodeAscii0( Long.toString( n ), buf );
+      return;
+    }
+
+    int digits = 1;
+    for( long rest = n / 10; rest > 0; rest /= 10 )
+      digits++;
+    buf.ensureWritable( digits );
+    int index = buf.writerIndex() + digits;
+    do
+    {
+      buf.setByte( --index, (int) ('0' + n % 10) );
+      n /= 10;
+    }
+    while( n > 0 );
+    buf.writerIndex( buf.writerIndex() + digits );
+  }
+
+  private final class HeaderIterator implements Iterator<Entry<String, String>>
+  {
+    private int next;
+
+    @Override
+    public boolean hasNext()
+    {
+      return next < size;
+    }
+
+    @Override
+    public Entry<String, String> next()
+    {
+      if( next >= size )
+        throw new NoSuchElementException();
+      return new HeaderEntry( next++ );
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final class HeaderEntry implements Entry<String, String>
+  {
+    private final int index;
+
+    HeaderEntry( int index )
+    {
+      this.index = index;
+    }
+
+    @Override
+    public String getKey()
+    {
+      return entries[ index << 1 ].toString();
+    }
+
+    @Override
+    public String getValue()
+    {
+      return value( index );
+    }
+
+    @Override
+    public String setValue( String value )
+    {
+      if( value == null )
+        throw new NullPointerException( "value" );
+      validateHeaderValue( value );
+      String oldValue = value( index );
+      entries[ (index << 1) + 1 ] = value;
+      return oldValue;
+    }
+
+    @Override
+    public String toString()
+    {
+      return getKey() + '=' + getValue();
+    }
+  }
+}
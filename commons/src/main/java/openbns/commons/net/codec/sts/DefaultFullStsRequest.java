@@ -50,6 +50,21 @@ public class DefaultFullStsRequest extends DefaultStsRequest implements FullStsR
     this.validateHeaders = validateHeaders;
   }
 
+  /**
+   * Creates a request that keeps {@code headers} instead of a copy, such as the headers of the request it completes.
+   */
+  public DefaultFullStsRequest( StsVersion stsVersion, StsMethod method, String uri, StsHeaders headers, ByteBuf content )
+  {
+    super( stsVersion, method, uri, headers );
+    if( content == null )
+    {
+      throw new NullPointerException( "content" );
+    }
+    this.content = content;
+    trailingHeader = new DefaultStsHeaders( false );
+    validateHeaders = false;
+  }
+
   @Override
   public StsHeaders trailingHeaders()
   {
@@ -40,13 +40,26 @@ public class DefaultFullStsResponse extends DefaultStsResponse implements FullSt
 
   public DefaultFullStsResponse( StsResponseStatus status, ByteBuf content, boolean validateHeaders )
   {
-    super( status, validateHeaders );
+    this( status, content, new DefaultStsHeaders( validateHeaders ), new DefaultStsHeaders( validateHeaders ), validateHeaders );
+  }
+
+  /**
+   * Creates a response keeping its headers, and its trailing headers, in {@link CompactStsHeaders}.
+   */
+  public DefaultFullStsResponse( StsResponseStatus status, ByteBuf content, CompactStsHeaders headers )
+  {
+    this( status, content, headers, new CompactStsHeaders(), true );
+  }
+
+  private DefaultFullStsResponse( StsResponseStatus status, ByteBuf content, StsHeaders headers, StsHeaders trailingHeaders, boolean validateHeaders )
+  {
+    super( status, headers );
     if( content == null )
     {
       throw new NullPointerException( "content" );
     }
     this.content = content;
-    trailingHeaders = new DefaultStsHeaders( validateHeaders );
+    this.trailingHeaders = trailingHeaders;
     this.validateHeaders = validateHeaders;
   }
 
@@ -104,7 +117,7 @@ public class DefaultFullStsResponse extends DefaultStsResponse implements FullSt
   @Override
   public FullStsResponse copy()
   {
-    DefaultFullStsResponse copy = new DefaultFullStsResponse( getStatus(), content().copy(), validateHeaders );
+    DefaultFullStsResponse copy = newResponse( content().copy() );
     copy.headers().set( headers() );
     copy.trailingHeaders().set( trailingHeaders() );
     return copy;
@@ -113,9 +126,18 @@ public class DefaultFullStsResponse extends DefaultStsResponse implements FullSt
   @Override
   public FullStsResponse duplicate()
   {
-    DefaultFullStsResponse duplicate = new DefaultFullStsResponse( getStatus(), content().duplicate(), validateHeaders );
+    DefaultFullStsResponse duplicate = newResponse( content().duplicate() );
     duplicate.headers().set( headers() );
     duplicate.trailingHeaders().set( trailingHeaders() );
     return duplicate;
   }
+
+  private DefaultFullStsResponse newResponse( ByteBuf content )
+  {
+    if( headers() instanceof CompactStsHeaders )
+    {
+      return new DefaultFullStsResponse( getStatus(), content, new CompactStsHeaders() );
+    }
+    return new DefaultFullStsResponse( getStatus(), content, validateHeaders );
+  }
 }
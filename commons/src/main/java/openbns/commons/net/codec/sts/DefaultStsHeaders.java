@@ -456,7 +456,7 @@ public class DefaultStsHeaders extends StsHeaders
     return names;
   }
 
-  private static CharSequence toCharSequence( Object value )
+  static CharSequence toCharSequence( Object value )
   {
     if( value == null )
     {
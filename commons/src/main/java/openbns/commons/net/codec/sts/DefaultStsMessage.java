@@ -14,7 +14,19 @@ public abstract class DefaultStsMessage extends DefaultStsObject implements StsM
 
   protected DefaultStsMessage( boolean validate )
   {
-    headers = new DefaultStsHeaders( validate );
+    this( new DefaultStsHeaders( validate ) );
+  }
+
+  /**
+   * @param headers the empty headers to keep, such as {@link CompactStsHeaders}
+   */
+  protected DefaultStsMessage( StsHeaders headers )
+  {
+    if( headers == null )
+    {
+      throw new NullPointerException( "headers" );
+    }
+    this.headers = headers;
   }
 
   @Override
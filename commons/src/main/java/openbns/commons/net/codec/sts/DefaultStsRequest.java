@@ -48,7 +48,20 @@ public class DefaultStsRequest extends DefaultStsMessage implements StsRequest
    */
   public DefaultStsRequest( StsVersion stsVersion, StsMethod method, String uri, boolean validateHeaders )
   {
-    super( validateHeaders );
+    this( stsVersion, method, uri, new DefaultStsHeaders( validateHeaders ) );
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param stsVersion the HTTP version of the request
+   * @param method     the HTTP getMethod of the request
+   * @param uri        the URI or path of the request
+   * @param headers    the empty headers to fill, such as {@link CompactStsHeaders}
+   */
+  public DefaultStsRequest( StsVersion stsVersion, StsMethod method, String uri, StsHeaders headers )
+  {
+    super( headers );
     if( method == null )
     {
       throw new NullPointerException( "method" );
@@ -28,7 +28,18 @@ public class DefaultStsResponse extends DefaultStsMessage implements StsResponse
    */
   public DefaultStsResponse( StsResponseStatus status, boolean validateHeaders )
   {
-    super( validateHeaders );
+    this( status, new DefaultStsHeaders( validateHeaders ) );
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param status  the getStatus of this response
+   * @param headers the empty headers to fill, such as {@link CompactStsHeaders}
+   */
+  public DefaultStsResponse( StsResponseStatus status, StsHeaders headers )
+  {
+    super( headers );
     if( status == null )
     {
       throw new NullPointerException( "status" );
@@ -89,6 +89,11 @@ import static io.netty.buffer.ByteBufUtil.readBytes;
  * {@link io.netty.channel.ChannelPipeline}.  However, please note that your server might not
  * be as memory efficient as without the aggregator.
  * <p/>
+ * <h3>Content slices</h3>
+ * <p/>
+ * With {@code sliceContent}, content is handed out as retained slices of the received bytes instead of copies where
+ * {@link #readContent} finds that safe. Releasing the content releases the slice as usual.
+ * <p/>
  * <h3>Extensibility</h3>
  * <p/>
  * Please note that this decoder is designed to be extended to implement
@@ -106,6 +111,7 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
   private final int maxChunkSize;
   private final boolean chunkedSupported;
   protected final boolean validateHeaders;
+  private final boolean sliceContent;
 
   private StsMessage message;
   private long chunkSize;
@@ -113,6 +119,8 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
   private long contentLength = Long.MIN_VALUE;
   private final AppendableCharSequence sb = new AppendableCharSequence( 128 );
 
+  static final int MAX_PIN_RATIO = 8;
+
   /**
    * The internal state of {@link HttpObjectDecoder}.
    * <em>Internal use only</em>.
@@ -156,6 +164,15 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
   protected HttpObjectDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize, boolean chunkedSupported,
                                boolean validateHeaders )
   {
+    this( maxInitialLineLength, maxHeaderSize, maxChunkSize, chunkedSupported, validateHeaders, false );
+  }
+
+  /**
+   * Creates a new instance with the specified parameters.
+   */
+  protected HttpObjectDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize, boolean chunkedSupported,
+                               boolean validateHeaders, boolean sliceContent )
+  {
 
     super( State.SKIP_CONTROL_CHARS );
 
@@ -176,6 +193,7 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
     this.maxChunkSize = maxChunkSize;
     this.chunkedSupported = chunkedSupported;
     this.validateHeaders = validateHeaders;
+    this.sliceContent = sliceContent;
   }
 
   @Override
@@ -270,7 +288,7 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
         int toRead = Math.min( actualReadableBytes(), maxChunkSize );
         if( toRead > 0 )
         {
-          ByteBuf content = readBytes( ctx.alloc(), buffer, toRead );
+          ByteBuf content = readContent( ctx, buffer, toRead, actualReadableBytes(), internalBuffer(), sliceContent );
           if( buffer.isReadable() )
           {
             out.add( new DefaultStsContent( content ) );
@@ -310,7 +328,7 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
         {
           toRead = (int) chunkSize;
         }
-        ByteBuf content = readBytes( ctx.alloc(), buffer, toRead );
+        ByteBuf content = readContent( ctx, buffer, toRead, readLimit, internalBuffer(), sliceContent );
         chunkSize -= toRead;
 
         if( chunkSize == 0 )
@@ -355,7 +373,7 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
         assert chunkSize <= Integer.MAX_VALUE;
         int toRead = Math.min( (int) chunkSize, maxChunkSize );
 
-        StsContent chunk = new DefaultStsContent( readBytes( ctx.alloc(), buffer, toRead ) );
+        StsContent chunk = new DefaultStsContent( readContent( ctx, buffer, toRead, actualReadableBytes(), internalBuffer(), sliceContent ) );
         chunkSize -= toRead;
 
         out.add( chunk );
@@ -694,6 +712,23 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
     return sb;
   }
 
+  /**
+   * Reads {@code length} content bytes from {@code buffer}, which has {@code readable} bytes left of the decoder's
+   * {@code cumulation}. With {@code slice}, a retained slice is returned instead of a copy when
+   * <ul>
+   * <li>the content takes all readable bytes, so the decoder releases the cumulation instead of compacting it or
+   * reading more into it while the slice is alive, and</li>
+   * <li>the content is at least 1/{@value #MAX_PIN_RATIO} of the cumulation's capacity, so a small body does not keep
+   * a large buffer alive while its request is processed.</li>
+   * </ul>
+   */
+  static ByteBuf readContent( ChannelHandlerContext ctx, ByteBuf buffer, int length, int readable, ByteBuf cumulation, boolean slice )
+  {
+    if( slice && length == readable && (long) length * MAX_PIN_RATIO >= cumulation.capacity() )
+      return buffer.readSlice( length ).retain();
+    return readBytes( ctx.alloc(), buffer, length );
+  }
+
   protected abstract boolean isDecodingRequest();
 
   protected abstract StsMessage createMessage( String[] initialLine ) throws Exception;
@@ -753,7 +788,7 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
     }
   }
 
-  private static String[] splitInitialLine( AppendableCharSequence sb )
+  static String[] splitInitialLine( AppendableCharSequence sb )
   {
     int aStart;
     int aEnd;
@@ -774,7 +809,7 @@ public abstract class HttpObjectDecoder extends ReplayingDecoder<HttpObjectDecod
     return new String[] { sb.substring( aStart, aEnd ), sb.substring( bStart, bEnd ), cStart < cEnd ? sb.substring( cStart, cEnd ) : "" };
   }
 
-  private static String[] splitHeader( AppendableCharSequence sb )
+  static String[] splitHeader( AppendableCharSequence sb )
   {
     final int length = sb.length();
     int nameStart;
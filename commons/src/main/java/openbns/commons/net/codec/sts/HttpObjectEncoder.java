@@ -48,6 +48,12 @@ public abstract class HttpObjectEncoder<H extends StsMessage> extends MessageToM
   private static final ByteBuf CRLF_BUF = unreleasableBuffer( directBuffer( CRLF.length ).writeBytes( CRLF ) );
   private static final ByteBuf ZERO_CRLF_CRLF_BUF = unreleasableBuffer( directBuffer( ZERO_CRLF_CRLF.length ).writeBytes( ZERO_CRLF_CRLF ) );
 
+  /**
+   * Content up to this size is copied into the head's buffer, so head and content go out as one buffer.
+   */
+  private static final int MAX_MERGED_CONTENT = 4096;
+  private static final int DEFAULT_HEAD_LENGTH = 256;
+
   private static final int ST_INIT = 0;
   private static final int ST_CONTENT_NON_CHUNK = 1;
 
@@ -69,11 +75,20 @@ public abstract class HttpObjectEncoder<H extends StsMessage> extends MessageToM
       @SuppressWarnings({ "unchecked", "CastConflictsWithInstanceof" })
       H m = (H) msg;
 
-      buf = ctx.alloc().buffer();
-      // Encode the message.
-      encodeInitialLine( buf, m );
-      StsHeaders.encode( m.headers(), buf );
-      buf.writeBytes( CRLF );
+      buf = m.headers().isEmpty() ? encodedHead( m ) : null;
+      if( buf == null )
+      {
+        int merged = 0;
+        if( msg instanceof StsContent && ((StsContent) msg).content().readableBytes() <= MAX_MERGED_CONTENT )
+        {
+          merged = ((StsContent) msg).content().readableBytes();
+        }
+        buf = ctx.alloc().buffer( estimateHeadLength( m ) + merged );
+        // Encode the message.
+        encodeInitialLine( buf, m );
+        StsHeaders.encode( m.headers(), buf );
+        buf.writeBytes( CRLF );
+      }
       state = ST_CONTENT_NON_CHUNK;
     }
     if( msg instanceof StsContent || msg instanceof ByteBuf || msg instanceof FileRegion )
@@ -183,4 +198,23 @@ public abstract class HttpObjectEncoder<H extends StsMessage> extends MessageToM
   }
 
   protected abstract void encodeInitialLine( ByteBuf buf, H message ) throws Exception;
+
+  /**
+   * Returns the whole head of a message without headers if it is encoded already, to be written instead of encoding
+   * it again. The buffer is written as is, so it should be an unreleasable duplicate.
+   *
+   * @return the head, or {@code null} to encode it
+   */
+  protected ByteBuf encodedHead( H message )
+  {
+    return null;
+  }
+
+  /**
+   * Returns the expected size of the message's head, so the buffer it is encoded into also fits small content.
+   */
+  protected int estimateHeadLength( H message )
+  {
+    return DEFAULT_HEAD_LENGTH;
+  }
 }
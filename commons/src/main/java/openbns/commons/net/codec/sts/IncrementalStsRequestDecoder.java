@@ -0,0 +1,529 @@
+package openbns.commons.net.codec.sts;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufProcessor;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+import openbns.commons.util.ByteTrie;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes {@link ByteBuf}s into {@link StsRequest}s and {@link StsContent}s like {@link StsRequestDecoder}, without
+ * replaying. Bytes are consumed as they arrive: lines are scanned with {@link ByteBuf#forEachByte} and a partial line
+ * or header block is kept in the decoder until the rest of it arrives, instead of being parsed again from a
+ * checkpoint on every read.
+ * <p/>
+ * The limits mean the same as for {@link StsRequestDecoder}. Requests without a valid {@code l} header have no
+ * content; chunked transfer encoding is not supported, as {@link StsRequestDecoder} never selects it either. With
+ * {@code sliceContent}, content is handed out as slices of the received bytes where possible, see
+ * {@link HttpObjectDecoder}.
+ * <p/>
+ * Lines are kept as bytes, and the known methods, versions and header names are recognized from them, so the
+ * shared constants are used instead of new {@link String}s. A connection's URIs and small numeric header values are
+ * cached as well. Anything else is decoded into a {@link String} and goes through the same
+ * {@link StsMethod#valueOf}/{@link StsVersion#valueOf} path as in {@link StsRequestDecoder}.
+ */
+public class IncrementalStsRequestDecoder extends ByteToMessageDecoder
+{
+  private enum State
+  {
+    SKIP_CONTROL_CHARS,
+    READ_INITIAL,
+    READ_HEADER,
+    READ_FIXED_LENGTH_CONTENT,
+    BAD_MESSAGE
+  }
+
+  private static final ByteBufProcessor FIND_NON_CONTROL = new ByteBufProcessor()
+  {
+    @Override
+    public boolean process( byte value ) throws Exception
+    {
+      char c = (char) (value & 0xFF);
+      return Character.isISOControl( c ) || Character.isWhitespace( c );
+    }
+  };
+
+  private static final ByteTrie<StsMethod> METHODS = new ByteTrie<>();
+  private static final ByteTrie<StsVersion> VERSIONS = new ByteTrie<>();
+  private static final ByteTrie<String> HEADER_NAMES = new ByteTrie<>();
+
+  static
+  {
+    METHODS.put( StsMethod.GET.name().getBytes( CharsetUtil.US_ASCII ), StsMethod.GET );
+    METHODS.put( StsMethod.POST.name().getBytes( CharsetUtil.US_ASCII ), StsMethod.POST );
+    VERSIONS.put( StsVersion.STS_1_0.text().getBytes( CharsetUtil.US_ASCII ), StsVersion.STS_1_0 );
+    HEADER_NAMES.put( StsHeaders.Names.CONTENT_LENGTH.getBytes( CharsetUtil.US_ASCII ), StsHeaders.Names.CONTENT_LENGTH );
+    HEADER_NAMES.put( StsHeaders.Names.SESSION_NUMBER.getBytes( CharsetUtil.US_ASCII ), StsHeaders.Names.SESSION_NUMBER );
+  }
+
+  /**
+   * Decimal header values below this, such as content lengths and session numbers, are shared.
+   */
+  private static final int MAX_CACHED_NUMBER = 4096;
+  // Filled on first use; a racing thread at worst builds an equal String, which is safe to publish
+  private static final String[] NUMBERS = new String[ MAX_CACHED_NUMBER ];
+
+  /**
+   * URIs a single connection keeps, so a client repeating the same few requests does not make a String each time.
+   */
+  private static final int MAX_CACHED_URIS = 32;
+
+  private final ByteTrie<String> uris = new ByteTrie<>();
+  private final int maxChunkSize;
+  private final boolean validateHeaders;
+  private final boolean sliceContent;
+  private final boolean compactHeaders;
+  private final LineParser initialLineParser;
+  private final LineParser headerParser;
+
+  private State state = State.SKIP_CONTROL_CHARS;
+  private StsMessage message;
+  private String name;
+  private String value;
+  private long chunkSize;
+
+  /**
+   * Creates a new instance with the default {@code maxInitialLineLength (4096}}, {@code maxHeaderSize (8192)}, and
+   * {@code maxChunkSize (8192)}.
+   */
+  public IncrementalStsRequestDecoder()
+  {
+    this( 4096, 8192, 8192 );
+  }
+
+  public IncrementalStsRequestDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize )
+  {
+    this( maxInitialLineLength, maxHeaderSize, maxChunkSize, true );
+  }
+
+  public IncrementalStsRequestDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize, boolean validateHeaders )
+  {
+    this( maxInitialLineLength, maxHeaderSize, maxChunkSize, validateHeaders, false );
+  }
+
+  public IncrementalStsRequestDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize, boolean validateHeaders, boolean sliceContent )
+  {
+    this( maxInitialLineLength, maxHeaderSize, maxChunkSize, validateHeaders, sliceContent, false );
+  }
+
+  /**
+   * @param compactHeaders keep request headers in {@link CompactStsHeaders} instead of {@link DefaultStsHeaders}
+   */
+  public IncrementalStsRequestDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize, boolean validateHeaders, boolean sliceContent, boolean compactHeaders )
+  {
+    if( maxInitialLineLength <= 0 )
+    {
+      throw new IllegalArgumentException( "maxInitialLineLength must be a positive integer: " + maxInitialLineLength );
+    }
+    if( maxHeaderSize <= 0 )
+    {
+      throw new IllegalArgumentException( "maxHeaderSize must be a positive integer: " + maxHeaderSize );
+    }
+    if( maxChunkSize <= 0 )
+    {
+      throw new IllegalArgumentException( "maxChunkSize must be a positive integer: " + maxChunkSize );
+    }
+    this.maxChunkSize = maxChunkSize;
+    this.validateHeaders = validateHeaders;
+    this.sliceContent = sliceContent;
+    this.compactHeaders = compactHeaders;
+    initialLineParser = new LineParser( maxInitialLineLength, false );
+    headerParser = new LineParser( maxHeaderSize, true );
+  }
+
+  @Override
+  protected void decode( ChannelHandlerContext ctx, ByteBuf buffer, List<Object> out ) throws Exception
+  {
+    switch( state )
+    {
+      case SKIP_CONTROL_CHARS:
+      {
+        int start = buffer.forEachByte( FIND_NON_CONTROL );
+        if( start < 0 )
+        {
+          buffer.skipBytes( buffer.readableBytes() );
+          return;
+        }
+        buffer.readerIndex( start );
+        state = State.READ_INITIAL;
+      }
+      case READ_INITIAL:
+        try
+        {
+          if( !initialLineParser.parse( buffer ) )
+            return;
+
+          readInitialLine( initialLineParser.bytes, initialLineParser.length );
+          headerParser.reset();
+          state = State.READ_HEADER;
+        }
+        catch( Exception e )
+        {
+          out.add( invalidMessage( buffer, e ) );
+          return;
+        }
+      case READ_HEADER:
+        try
+        {
+          if( !readHeaders( buffer ) )
+            return;
+
+          long contentLength = StsHeaders.getContentLength( message, -1 );
+          out.add( message );
+          if( contentLength <= 0 )
+          {
+            out.add( LastStsContent.EMPTY_LAST_CONTENT );
+            reset();
+            return;
+          }
+
+          chunkSize = contentLength;
+          state = State.READ_FIXED_LENGTH_CONTENT;
+          return;
+        }
+        catch( Exception e )
+        {
+          out.add( invalidMessage( buffer, e ) );
+          return;
+        }
+      case READ_FIXED_LENGTH_CONTENT:
+      {
+        int readable = buffer.readableBytes();
+        int toRead = Math.min( readable, maxChunkSize );
+        if( toRead == 0 )
+          return;
+        if( toRead > chunkSize )
+          toRead = (int) chunkSize;
+
+        ByteBuf content = HttpObjectDecoder.readContent( ctx, buffer, toRead, readable, internalBuffer(), sliceContent );
+        chunkSize -= toRead;
+        if( chunkSize == 0 )
+        {
+          out.add( new DefaultLastStsContent( content, validateHeaders ) );
+          reset();
+        }
+        else
+          out.add( new DefaultStsContent( content ) );
+        return;
+      }
+      case BAD_MESSAGE:
+      {
+        // Keep discarding until disconnection.
+        buffer.skipBytes( buffer.readableBytes() );
+        break;
+      }
+    }
+  }
+
+  @Override
+  protected void decodeLast( ChannelHandlerContext ctx, ByteBuf in, List<Object> out ) throws Exception
+  {
+    decode( ctx, in, out );
+
+    // A request cut off by the closure is dropped.
+    if( message != null )
+      reset();
+  }
+
+  /**
+   * Splits the line like {@link HttpObjectDecoder#splitInitialLine} and creates the request.
+   */
+  private void readInitialLine( byte[] line, int length )
+  {
+    int methodStart = findNonWhitespace( line, 0, length );
+    int methodEnd = findWhitespace( line, methodStart, length );
+    int uriStart = findNonWhitespace( line, methodEnd, length );
+    int uriEnd = findWhitespace( line, uriStart, length );
+    int versionStart = findNonWhitespace( line, uriEnd, length );
+    int versionEnd = Math.max( findEndOfString( line, length ), versionStart );
+
+    StsVersion version = VERSIONS.get( line, versionStart, versionEnd - versionStart );
+    if( version == null )
+      version = StsVersion.valueOf( string( line, versionStart, versionEnd ) );
+    StsMethod method = METHODS.get( line, methodStart, methodEnd - methodStart );
+    if( method == null )
+      method = StsMethod.valueOf( string( line, methodStart, methodEnd ) );
+    StsHeaders headers = compactHeaders ? new CompactStsHeaders( validateHeaders ) : new DefaultStsHeaders( validateHeaders );
+    message = new DefaultStsRequest( version, method, uri( line, uriStart, uriEnd ), headers );
+  }
+
+  private String uri( byte[] line, int start, int end )
+  {
+    String uri = uris.get( line, start, end - start );
+    if( uri == null )
+    {
+      uri = string( line, start, end );
+      if( uris.size() < MAX_CACHED_URIS )
+        uris.put( Arrays.copyOfRange( line, start, end ), uri );
+    }
+    return uri;
+  }
+
+  /**
+   * Reads header lines as far as the buffer goes.
+   *
+   * @return {@code true} once the blank line ending the headers was read
+   */
+  private boolean readHeaders( ByteBuf buffer )
+  {
+    StsHeaders headers = message.headers();
+    for( ; ; )
+    {
+      if( !headerParser.parse( buffer ) )
+        return false;
+
+      byte[] line = headerParser.bytes;
+      int length = headerParser.length;
+      if( length == 0 )
+      {
+        if( name != null )
+          headers.add( name, value );
+        name = null;
+        value = null;
+        return true;
+      }
+
+      byte firstByte = line[ 0 ];
+      if( name != null && (firstByte == ' ' || firstByte == '\t') )
+      {
+        value = value + ' ' + string( line, 0, length ).trim();
+      }
+      else
+      {
+        if( name != null )
+          headers.add( name, value );
+        readHeader( line, length );
+      }
+    }
+  }
+
+  /**
+   * Splits the line like {@link HttpObjectDecoder#splitHeader} into {@link #name} and {@link #value}.
+   */
+  private void readHeader( byte[] line, int length )
+  {
+    int nameStart = findNonWhitespace( line, 0, length );
+    int nameEnd;
+    for( nameEnd = nameStart; nameEnd < length; nameEnd++ )
+    {
+      byte b = line[ nameEnd ];
+      if( b == ':' || isWhitespace( b ) )
+        break;
+    }
+
+    int colonEnd;
+    for( colonEnd = nameEnd; colonEnd < length; colonEnd++ )
+    {
+      if( line[ colonEnd ] == ':' )
+      {
+        colonEnd++;
+        break;
+      }
+    }
+
+    name = HEADER_NAMES.get( line, nameStart, nameEnd - nameStart );
+    if( name == null )
+      name = string( line, nameStart, nameEnd );
+
+    int valueStart = findNonWhitespace( line, colonEnd, length );
+    if( valueStart == length )
+    {
+      value = "";
+      return;
+    }
+    int valueEnd = findEndOfString( line, length );
+    value = number( line, valueStart, valueEnd );
+    if( value == null )
+      value = string( line, valueStart, valueEnd );
+  }
+
+  /**
+   * @return the shared String for a decimal below {@link #MAX_CACHED_NUMBER} written without leading zeros, or
+   * {@code null}
+   */
+  private static String number( byte[] bytes, int start, int end )
+  {
+    int length = end - start;
+    if( length > 4 || (length > 1 && bytes[ start ] == '0') )
+      return null;
+
+    int n = 0;
+    for( int i = start; i < end; i++ )
+    {
+      int digit = bytes[ i ] - '0';
+      if( digit < 0 || digit > 9 )
+        return null;
+      n = n * 10 + digit;
+    }
+    if( n >= MAX_CACHED_NUMBER )
+      return null;
+
+    String s = NUMBERS[ n ];
+    if( s == null )
+      NUMBERS[ n ] = s = String.valueOf( n );
+    return s;
+  }
+
+  private static String string( byte[] bytes, int start, int end )
+  {
+    return new String( bytes, start, end - start, CharsetUtil.ISO_8859_1 );
+  }
+
+  private static boolean isWhitespace( byte b )
+  {
+    return Character.isWhitespace( (char) (b & 0xFF) );
+  }
+
+  private static int findNonWhitespace( byte[] bytes, int offset, int length )
+  {
+    int result;
+    for( result = offset; result < length; result++ )
+    {
+      if( !isWhitespace( bytes[ result ] ) )
+        break;
+    }
+    return result;
+  }
+
+  private static int findWhitespace( byte[] bytes, int offset, int length )
+  {
+    int result;
+    for( result = offset; result < length; result++ )
+    {
+      if( isWhitespace( bytes[ result ] ) )
+        break;
+    }
+    return result;
+  }
+
+  private static int findEndOfString( byte[] bytes, int length )
+  {
+    int result;
+    for( result = length; result > 0; result-- )
+    {
+      if( !isWhitespace( bytes[ result - 1 ] ) )
+        break;
+    }
+    return result;
+  }
+
+  private void reset()
+  {
+    message = null;
+    name = null;
+    value = null;
+    initialLineParser.reset();
+    state = State.SKIP_CONTROL_CHARS;
+  }
+
+  private StsMessage invalidMessage( ByteBuf buffer, Exception cause )
+  {
+    // Nothing after a bad message is decoded, and the decoder has to consume something along with its output
+    buffer.skipBytes( buffer.readableBytes() );
+    state = State.BAD_MESSAGE;
+    if( message == null )
+      message = new DefaultStsRequest( StsVersion.STS_1_0, StsMethod.GET, "/bad-request", validateHeaders );
+    message.setDecoderResult( DecoderResult.failure( cause ) );
+    return message;
+  }
+
+  /**
+   * Collects the bytes of one line across reads, without its CRLF or LF. Once a line is complete, it stays in
+   * {@link #bytes} until the next {@link #parse} starts a new one.
+   */
+  private static final class LineParser implements ByteBufProcessor
+  {
+    private final int maxLength;
+    private final int limit;
+    private final boolean countLineBreaks;
+    private byte[] bytes = new byte[ 128 ];
+    private int length;
+    private int size;
+    private boolean cr;
+    private boolean complete;
+
+    private LineParser( int maxLength, boolean countLineBreaks )
+    {
+      this.maxLength = maxLength;
+      this.countLineBreaks = countLineBreaks;
+      // StsRequestDecoder fails the header block when it reaches maxHeaderSize, a line when it goes past maxLength
+      limit = countLineBreaks ? maxLength - 1 : maxLength;
+    }
+
+    /**
+     * @return whether a line is complete; its bytes are consumed either way
+     */
+    boolean parse( ByteBuf buffer )
+    {
+      if( complete )
+      {
+        length = 0;
+        complete = false;
+      }
+
+      int lf = buffer.forEachByte( this );
+      if( lf < 0 )
+      {
+        buffer.skipBytes( buffer.readableBytes() );
+        return false;
+      }
+      buffer.readerIndex( lf + 1 );
+      complete = true;
+      cr = false;
+      return true;
+    }
+
+    /**
+     * Starts over, also resetting the size counted towards {@code maxLength}.
+     */
+    void reset()
+    {
+      length = 0;
+      size = 0;
+      cr = false;
+      complete = false;
+    }
+
+    @Override
+    public boolean process( byte value ) throws Exception
+    {
+      if( value == StsConstants.LF )
+      {
+        if( countLineBreaks )
+          size++;
+        else
+          size = 0;
+        return false;
+      }
+
+      if( cr )
+        append( StsConstants.CR );
+      cr = value == StsConstants.CR;
+      if( cr )
+      {
+        if( countLineBreaks )
+          size++;
+        return true;
+      }
+
+      append( value );
+      return true;
+    }
+
+    private void append( byte value ) throws TooLongFrameException
+    {
+      if( size >= limit )
+        throw new TooLongFrameException( (countLineBreaks ? "HTTP header is larger than " : "An HTTP line is larger than ") + maxLength + " bytes." );
+      size++;
+      if( length == bytes.length )
+        bytes = Arrays.copyOf( bytes, length << 1 );
+      bytes[ length++ ] = value;
+    }
+  }
+}
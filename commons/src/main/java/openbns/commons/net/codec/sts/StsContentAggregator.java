@@ -0,0 +1,220 @@
+package openbns.commons.net.codec.sts;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.List;
+
+/**
+ * Aggregates a request and its {@link StsContent}s into a {@link FullStsRequest} without copying the body: a body
+ * received in one chunk is that chunk's buffer, a longer one a {@link CompositeByteBuf} of the chunks' buffers, each
+ * retained as one component. The request's own headers are kept as they are.
+ * <p/>
+ * Unlike {@link HttpObjectAggregator}, the content limit is looked up per request from {@link ContentLimits}. A
+ * request declaring a longer body than its limit is rejected before any of the body is received, and one whose chunks
+ * exceed it releases what it holds at once. Either way a {@link FullStsRequest} with an empty body and a
+ * {@link TooLongFrameException} as its failed {@link DecoderResult} is passed on right away and the rest of the body
+ * is discarded, so the connection stays usable.
+ * <p/>
+ * Requests whose limit is {@link ContentLimits#STREAM} are passed on as they arrive, for handlers that consume the
+ * {@link StsContent}s one at a time.
+ */
+public class StsContentAggregator extends MessageToMessageDecoder<StsObject>
+{
+  /**
+   * Looks up the content limit of a request, typically by its URI.
+   */
+  public interface ContentLimits
+  {
+    /**
+     * Passes the request and its {@link StsContent}s on without aggregating them.
+     */
+    int STREAM = -1;
+
+    /**
+     * @return the most body bytes {@code request} may carry, or {@link #STREAM}
+     */
+    int getMaxContentLength( StsRequest request );
+  }
+
+  private enum State
+  {
+    IDLE,
+    AGGREGATE,
+    STREAM,
+    DISCARD
+  }
+
+  private final ContentLimits limits;
+  private final int maxCumulationBufferComponents;
+
+  private State state = State.IDLE;
+  private StsRequest request;
+  private int maxContentLength;
+  // The body so far: null, the first chunk's buffer, or a composite of all chunks' buffers
+  private ByteBuf content;
+
+  public StsContentAggregator( ContentLimits limits )
+  {
+    this( limits, HttpObjectAggregator.DEFAULT_MAX_COMPOSITEBUFFER_COMPONENTS );
+  }
+
+  /**
+   * @param maxCumulationBufferComponents chunks a body is kept in before they are consolidated into one buffer,
+   *                                      which copies them
+   */
+  public StsContentAggregator( ContentLimits limits, int maxCumulationBufferComponents )
+  {
+    if( limits == null )
+      throw new NullPointerException( "limits" );
+    if( maxCumulationBufferComponents < 2 )
+      throw new IllegalArgumentException( "maxCumulationBufferComponents: " + maxCumulationBufferComponents + " (expected: >= 2)" );
+    this.limits = limits;
+    this.maxCumulationBufferComponents = maxCumulationBufferComponents;
+  }
+
+  @Override
+  protected void decode( ChannelHandlerContext ctx, StsObject msg, List<Object> out ) throws Exception
+  {
+    if( msg instanceof StsRequest && !(msg instanceof FullStsRequest) )
+    {
+      // A request cut short by a bad message leaves no last content behind
+      reset();
+
+      StsRequest req = (StsRequest) msg;
+      if( !req.getDecoderResult().isSuccess() )
+      {
+        out.add( ReferenceCountUtil.retain( msg ) );
+        return;
+      }
+
+      int max = limits.getMaxContentLength( req );
+      if( max == ContentLimits.STREAM )
+      {
+        state = State.STREAM;
+        out.add( ReferenceCountUtil.retain( msg ) );
+        return;
+      }
+
+      request = req;
+      maxContentLength = max;
+      state = State.AGGREGATE;
+      if( StsHeaders.getContentLength( req, -1 ) > max )
+        tooLong( out );
+      return;
+    }
+
+    if( !(msg instanceof StsContent) || msg instanceof FullStsRequest )
+    {
+      // Nothing to aggregate
+      out.add( ReferenceCountUtil.retain( msg ) );
+      return;
+    }
+
+    StsContent chunk = (StsContent) msg;
+    boolean last = chunk instanceof LastStsContent || !chunk.getDecoderResult().isSuccess();
+    switch( state )
+    {
+      case STREAM:
+        out.add( chunk.retain() );
+        break;
+      case AGGREGATE:
+        ByteBuf buf = chunk.content();
+        int length = content == null ? 0 : content.readableBytes();
+        if( buf.readableBytes() > maxContentLength - length )
+        {
+          tooLong( out );
+          break;
+        }
+        append( ctx, buf );
+        if( last )
+        {
+          out.add( fullRequest( chunk ) );
+          content = null;
+          request = null;
+        }
+        break;
+      default:
+        // Content of a rejected request, or after a bad message
+        break;
+    }
+    if( last )
+      state = State.IDLE;
+  }
+
+  private void append( ChannelHandlerContext ctx, ByteBuf buf )
+  {
+    if( !buf.isReadable() )
+      return;
+    buf.retain();
+    if( content == null )
+    {
+      content = buf;
+      return;
+    }
+
+    CompositeByteBuf composite;
+    if( content instanceof CompositeByteBuf )
+      composite = (CompositeByteBuf) content;
+    else
+    {
+      composite = ctx.alloc().compositeBuffer( maxCumulationBufferComponents );
+      composite.addComponent( content );
+      composite.writerIndex( content.readableBytes() );
+      content = composite;
+    }
+    composite.addComponent( buf );
+    composite.writerIndex( composite.writerIndex() + buf.readableBytes() );
+  }
+
+  private FullStsRequest fullRequest( StsContent last )
+  {
+    ByteBuf body = content == null ? Unpooled.EMPTY_BUFFER : content;
+    FullStsRequest full = new DefaultFullStsRequest( request.getProtocolVersion(), request.getMethod(), request.getUri(), request.headers(), body );
+    if( last instanceof LastStsContent && !((LastStsContent) last).trailingHeaders().isEmpty() )
+      full.headers().add( ((LastStsContent) last).trailingHeaders() );
+    if( !last.getDecoderResult().isSuccess() )
+      full.setDecoderResult( DecoderResult.failure( last.getDecoderResult().cause() ) );
+    return full;
+  }
+
+  private void tooLong( List<Object> out )
+  {
+    FullStsRequest full = new DefaultFullStsRequest( request.getProtocolVersion(), request.getMethod(), request.getUri(), request.headers(), Unpooled.EMPTY_BUFFER );
+    full.setDecoderResult( DecoderResult.failure( new TooLongFrameException( "STS content length exceeded " + maxContentLength + " bytes." ) ) );
+    out.add( full );
+    reset();
+    state = State.DISCARD;
+  }
+
+  private void reset()
+  {
+    if( content != null )
+    {
+      content.release();
+      content = null;
+    }
+    request = null;
+    state = State.IDLE;
+  }
+
+  @Override
+  public void channelInactive( ChannelHandlerContext ctx ) throws Exception
+  {
+    super.channelInactive( ctx );
+    reset();
+  }
+
+  @Override
+  public void handlerRemoved( ChannelHandlerContext ctx ) throws Exception
+  {
+    super.handlerRemoved( ctx );
+    reset();
+  }
+}
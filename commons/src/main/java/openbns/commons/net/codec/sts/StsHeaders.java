@@ -33,8 +33,8 @@ import static openbns.commons.net.codec.sts.StsConstants.LF;
 public abstract class StsHeaders implements Iterable<Entry<String, String>>
 {
 
-  private static final byte[] HEADER_SEPERATOR = { StsConstants.COLON, StsConstants.SP };
-  private static final byte[] CRLF = { CR, LF };
+  static final byte[] HEADER_SEPERATOR = { StsConstants.COLON, StsConstants.SP };
+  static final byte[] CRLF = { CR, LF };
   private static final CharSequence CONTENT_LENGTH_ENTITY = newEntity( Names.CONTENT_LENGTH );
 
   public static final StsHeaders EMPTY_HEADERS = new StsHeaders()
@@ -400,6 +400,10 @@ public abstract class StsHeaders implements Iterable<Entry<String, String>>
    */
   public static long getContentLength( StsMessage message, long defaultValue )
   {
+    if( message.headers() instanceof CompactStsHeaders )
+    {
+      return ((CompactStsHeaders) message.headers()).getLong( CONTENT_LENGTH_ENTITY, defaultValue );
+    }
     String contentLength = message.headers().get( CONTENT_LENGTH_ENTITY );
     if( contentLength != null )
     {
@@ -637,6 +641,10 @@ public abstract class StsHeaders implements Iterable<Entry<String, String>>
     {
       ((DefaultStsHeaders) headers).encode( buf );
     }
+    else if( headers instanceof CompactStsHeaders )
+    {
+      ((CompactStsHeaders) headers).encode( buf );
+    }
     else
     {
       for( Entry<String, String> header : headers )
@@ -49,6 +49,7 @@ package openbns.commons.net.codec.sts;
  */
 public class StsRequestDecoder extends HttpObjectDecoder
 {
+  private final boolean compactHeaders;
 
   /**
    * Creates a new instance with the default
@@ -57,6 +58,7 @@ public class StsRequestDecoder extends HttpObjectDecoder
    */
   public StsRequestDecoder()
   {
+    this( 4096, 8192, 8192 );
   }
 
   /**
@@ -64,18 +66,42 @@ public class StsRequestDecoder extends HttpObjectDecoder
    */
   public StsRequestDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize )
   {
-    super( maxInitialLineLength, maxHeaderSize, maxChunkSize, true );
+    this( maxInitialLineLength, maxHeaderSize, maxChunkSize, true );
   }
 
   public StsRequestDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize, boolean validateHeaders )
   {
-    super( maxInitialLineLength, maxHeaderSize, maxChunkSize, true, validateHeaders );
+    this( maxInitialLineLength, maxHeaderSize, maxChunkSize, validateHeaders, false );
+  }
+
+  /**
+   * Creates a new instance that hands out content as slices of the received bytes where possible, see
+   * {@link HttpObjectDecoder}.
+   */
+  public StsRequestDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize, boolean validateHeaders, boolean sliceContent )
+  {
+    this( maxInitialLineLength, maxHeaderSize, maxChunkSize, validateHeaders, sliceContent, false );
+  }
+
+  /**
+   * Creates a new instance that also keeps request headers in {@link CompactStsHeaders} if {@code compactHeaders}.
+   */
+  public StsRequestDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize, boolean validateHeaders, boolean sliceContent, boolean compactHeaders )
+  {
+    super( maxInitialLineLength, maxHeaderSize, maxChunkSize, true, validateHeaders, sliceContent );
+    this.compactHeaders = compactHeaders;
   }
 
   @Override
   protected StsMessage createMessage( String[] initialLine ) throws Exception
   {
-    return new DefaultStsRequest( StsVersion.valueOf( initialLine[ 2 ] ), StsMethod.valueOf( initialLine[ 0 ] ), initialLine[ 1 ], validateHeaders );
+    StsVersion version = StsVersion.valueOf( initialLine[ 2 ] );
+    StsMethod method = StsMethod.valueOf( initialLine[ 0 ] );
+    if( compactHeaders )
+    {
+      return new DefaultStsRequest( version, method, initialLine[ 1 ], new CompactStsHeaders( validateHeaders ) );
+    }
+    return new DefaultStsRequest( version, method, initialLine[ 1 ], validateHeaders );
   }
 
   @Override
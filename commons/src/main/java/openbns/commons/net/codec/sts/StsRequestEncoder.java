@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package openbns.commons.net.codec.sts;
+
+import io.netty.buffer.ByteBuf;
+
+import static io.netty.handler.codec.http.HttpConstants.*;
+
+/**
+ * Encodes an {@link StsRequest} or an {@link StsContent} into a {@link ByteBuf}, the client side counterpart of
+ * {@link StsResponseEncoder}. The content length is written only if the request's headers carry it.
+ */
+public class StsRequestEncoder extends HttpObjectEncoder<StsRequest>
+{
+  private static final byte[] CRLF = { CR, LF };
+
+  @Override
+  public boolean acceptOutboundMessage( Object msg ) throws Exception
+  {
+    return super.acceptOutboundMessage( msg ) && !(msg instanceof StsResponse);
+  }
+
+  @Override
+  protected void encodeInitialLine( ByteBuf buf, StsRequest request ) throws Exception
+  {
+    request.getMethod().encode( buf );
+    buf.writeByte( SP );
+    StsHeaders.encodeAscii0( request.getUri(), buf );
+    buf.writeByte( SP );
+    request.getProtocolVersion().encode( buf );
+    buf.writeBytes( CRLF );
+  }
+}
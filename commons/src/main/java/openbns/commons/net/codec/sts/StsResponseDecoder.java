@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package openbns.commons.net.codec.sts;
+
+import io.netty.channel.ChannelPipeline;
+
+/**
+ * Decodes {@link io.netty.buffer.ByteBuf}s into {@link StsResponse}s and {@link StsContent}s, the client side
+ * counterpart of {@link StsRequestDecoder} with the same limits. As with requests, a response without a content
+ * length has no content. Insert {@link HttpObjectAggregator} after this decoder in the {@link ChannelPipeline} to
+ * receive {@link FullStsResponse}s.
+ */
+public class StsResponseDecoder extends HttpObjectDecoder
+{
+  private static final StsResponseStatus UNKNOWN_STATUS = new StsResponseStatus( 999, "Unknown" );
+
+  /**
+   * Creates a new instance with the default
+   * {@code maxInitialLineLength (4096}}, {@code maxHeaderSize (8192)}, and
+   * {@code maxChunkSize (8192)}.
+   */
+  public StsResponseDecoder()
+  {
+    this( 4096, 8192, 8192 );
+  }
+
+  /**
+   * Creates a new instance with the specified parameters.
+   */
+  public StsResponseDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize )
+  {
+    this( maxInitialLineLength, maxHeaderSize, maxChunkSize, true );
+  }
+
+  public StsResponseDecoder( int maxInitialLineLength, int maxHeaderSize, int maxChunkSize, boolean validateHeaders )
+  {
+    super( maxInitialLineLength, maxHeaderSize, maxChunkSize, true, validateHeaders, false );
+  }
+
+  @Override
+  protected StsMessage createMessage( String[] initialLine )
+  {
+    // DefaultStsResponse is always STS/1.0, the only version there is
+    return new DefaultStsResponse( new StsResponseStatus( Integer.parseInt( initialLine[ 1 ] ), initialLine[ 2 ] ), validateHeaders );
+  }
+
+  @Override
+  protected StsMessage createInvalidMessage()
+  {
+    return new DefaultStsResponse( UNKNOWN_STATUS, validateHeaders );
+  }
+
+  /**
+   * An STS server gives the length of every body, so a response without {@code l} has none rather than one that lasts
+   * until the connection closes.
+   */
+  @Override
+  protected boolean isContentAlwaysEmpty( StsMessage msg )
+  {
+    return super.isContentAlwaysEmpty( msg ) || !msg.headers().contains( StsHeaders.Names.CONTENT_LENGTH );
+  }
+
+  @Override
+  protected boolean isDecodingRequest()
+  {
+    return false;
+  }
+}
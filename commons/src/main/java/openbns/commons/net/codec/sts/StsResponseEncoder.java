@@ -7,6 +7,8 @@ import static io.netty.handler.codec.http.HttpConstants.*;
 public class StsResponseEncoder extends HttpObjectEncoder<StsResponse>
 {
   private static final byte[] CRLF = { CR, LF };
+  // STS replies carry a content length and a session number
+  private static final int HEADERS_LENGTH = 32;
 
   @Override
   public boolean acceptOutboundMessage( Object msg ) throws Exception
@@ -17,9 +19,29 @@ public class StsResponseEncoder extends HttpObjectEncoder<StsResponse>
   @Override
   protected void encodeInitialLine( ByteBuf buf, StsResponse response ) throws Exception
   {
+    StsResponseHeads heads = StsResponseHeads.get( response.getProtocolVersion(), response.getStatus() );
+    if( heads != null )
+    {
+      buf.writeBytes( heads.initialLine() );
+      return;
+    }
     response.getProtocolVersion().encode( buf );
     buf.writeByte( SP );
     response.getStatus().encode( buf );
     buf.writeBytes( CRLF );
   }
+
+  @Override
+  protected ByteBuf encodedHead( StsResponse response )
+  {
+    StsResponseHeads heads = StsResponseHeads.get( response.getProtocolVersion(), response.getStatus() );
+    return heads == null ? null : heads.head();
+  }
+
+  @Override
+  protected int estimateHeadLength( StsResponse response )
+  {
+    StsResponseHeads heads = StsResponseHeads.get( response.getProtocolVersion(), response.getStatus() );
+    return (heads == null ? 64 : heads.initialLine().length) + HEADERS_LENGTH + CRLF.length;
+  }
 }
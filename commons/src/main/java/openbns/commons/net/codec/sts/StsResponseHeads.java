@@ -0,0 +1,75 @@
+package openbns.commons.net.codec.sts;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import static io.netty.handler.codec.http.HttpConstants.*;
+
+/**
+ * Response heads encoded once, for {@link StsVersion#STS_1_0} and every {@link StsResponseStatus} constant: the
+ * initial line as bytes, and the whole head of a response without headers as an unreleasable direct buffer that is
+ * written as is. Other versions and statuses, such as ones made with a custom reason phrase, are not cached.
+ */
+final class StsResponseHeads
+{
+  private static final int MAX_CODE = 600;
+  private static final StsResponseHeads[] HEADS = new StsResponseHeads[ MAX_CODE ];
+
+  static
+  {
+    for( int code = 0; code < MAX_CODE; code++ )
+    {
+      StsResponseStatus status = StsResponseStatus.valueOf( code );
+      // Only the constants come back as the same instance; other codes get a new status each time
+      if( status == StsResponseStatus.valueOf( code ) )
+        HEADS[ code ] = new StsResponseHeads( status );
+    }
+  }
+
+  private final StsResponseStatus status;
+  private final byte[] initialLine;
+  private final ByteBuf head;
+
+  private StsResponseHeads( StsResponseStatus status )
+  {
+    this.status = status;
+    ByteBuf buf = Unpooled.buffer();
+    StsVersion.STS_1_0.encode( buf );
+    buf.writeByte( SP );
+    status.encode( buf );
+    buf.writeByte( CR ).writeByte( LF );
+    initialLine = new byte[ buf.readableBytes() ];
+    buf.getBytes( 0, initialLine );
+    head = Unpooled.unreleasableBuffer( Unpooled.directBuffer( initialLine.length + 2 ).writeBytes( initialLine ).writeByte( CR ).writeByte( LF ) );
+  }
+
+  /**
+   * @return the cached heads, or {@code null} if the version and status are not cached
+   */
+  static StsResponseHeads get( StsVersion version, StsResponseStatus status )
+  {
+    if( version != StsVersion.STS_1_0 )
+      return null;
+    int code = status.code();
+    if( code >= MAX_CODE )
+      return null;
+    StsResponseHeads heads = HEADS[ code ];
+    return heads != null && heads.status == status ? heads : null;
+  }
+
+  /**
+   * @return the initial line with its CRLF
+   */
+  byte[] initialLine()
+  {
+    return initialLine;
+  }
+
+  /**
+   * @return a duplicate of the head of a response without headers: the initial line and a blank line
+   */
+  ByteBuf head()
+  {
+    return head.duplicate();
+  }
+}
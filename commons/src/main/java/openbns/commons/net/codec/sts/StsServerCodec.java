@@ -16,12 +16,14 @@
 package openbns.commons.net.codec.sts;
 
 import io.netty.channel.CombinedChannelDuplexHandler;
+import io.netty.handler.codec.ByteToMessageDecoder;
 
 /**
  * A combination of {@link StsRequestDecoder} and {@link StsResponseEncoder}
- * which enables easier server side HTTP implementation.
+ * which enables easier server side HTTP implementation. The request decoder can be replaced with
+ * {@link IncrementalStsRequestDecoder}.
  */
-public final class StsServerCodec extends CombinedChannelDuplexHandler<StsRequestDecoder, StsResponseEncoder>
+public final class StsServerCodec extends CombinedChannelDuplexHandler<ByteToMessageDecoder, StsResponseEncoder>
 {
 
   /**
@@ -49,4 +51,13 @@ public final class StsServerCodec extends CombinedChannelDuplexHandler<StsReques
   {
     super( new StsRequestDecoder( maxInitialLineLength, maxHeaderSize, maxChunkSize, validateHeaders ), new StsResponseEncoder() );
   }
+
+  /**
+   * Creates a new instance with the given request decoder, such as {@link StsRequestDecoder} or
+   * {@link IncrementalStsRequestDecoder}.
+   */
+  public StsServerCodec( ByteToMessageDecoder requestDecoder )
+  {
+    super( requestDecoder, new StsResponseEncoder() );
+  }
 }
@@ -0,0 +1,104 @@
+package openbns.commons.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over strings. {@link #mightContain} never answers {@code false} for an added string and answers
+ * {@code true} for others with about the configured false-positive probability, as long as no more than the
+ * expected number of strings are added. Safe for concurrent use without locking.
+ */
+public class BloomFilter
+{
+  private final AtomicLongArray words;
+  private final long bits;
+  private final int hashes;
+
+  public BloomFilter( long expectedInsertions, double falsePositiveProbability )
+  {
+    if( falsePositiveProbability <= 0 || falsePositiveProbability >= 1 )
+      throw new IllegalArgumentException( "falsePositiveProbability must be in (0, 1): " + falsePositiveProbability );
+
+    long n = Math.max( expectedInsertions, 1 );
+    long m = (long) Math.ceil( -n * Math.log( falsePositiveProbability ) / (Math.log( 2 ) * Math.log( 2 )) );
+    long wordCount = Math.max( (m + 63) >>> 6, 1 );
+    if( wordCount > Integer.MAX_VALUE )
+      throw new IllegalArgumentException( "Bloom filter too large: " + m + " bits" );
+
+    words = new AtomicLongArray( (int) wordCount );
+    bits = wordCount << 6;
+    hashes = Math.max( 1, (int) Math.round( (double) bits / n * Math.log( 2 ) ) );
+  }
+
+  public void add( CharSequence value )
+  {
+    long hash1 = hash( value );
+    long hash2 = mix( hash1 ^ 0x9E3779B97F4A7C15L ) | 1;
+    long combined = hash1;
+    for( int i = 0; i < hashes; i++, combined += hash2 )
+    {
+      long bit = (combined & Long.MAX_VALUE) % bits;
+      int index = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      for( ; ; )
+      {
+        long word = words.get( index );
+        if( (word & mask) != 0 || words.compareAndSet( index, word, word | mask ) )
+          break;
+      }
+    }
+  }
+
+  public boolean mightContain( CharSequence value )
+  {
+    long hash1 = hash( value );
+    long hash2 = mix( hash1 ^ 0x9E3779B97F4A7C15L ) | 1;
+    long combined = hash1;
+    for( int i = 0; i < hashes; i++, combined += hash2 )
+    {
+      long bit = (combined & Long.MAX_VALUE) % bits;
+      if( (words.get( (int) (bit >>> 6) ) & (1L << bit)) == 0 )
+        return false;
+    }
+    return true;
+  }
+
+  public long getBitSize()
+  {
+    return bits;
+  }
+
+  public int getHashCount()
+  {
+    return hashes;
+  }
+
+  /**
+   * @return size of the bit array in bytes
+   */
+  public long getMemoryBytes()
+  {
+    return bits >>> 3;
+  }
+
+  private static long hash( CharSequence value )
+  {
+    // FNV-1a over UTF-16 code units, finished with a strong mixer
+    long h = 0xCBF29CE484222325L;
+    for( int i = 0; i < value.length(); i++ )
+    {
+      h ^= value.charAt( i );
+      h *= 0x100000001B3L;
+    }
+    return mix( h );
+  }
+
+  private static long mix( long h )
+  {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB93FE1A85A53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
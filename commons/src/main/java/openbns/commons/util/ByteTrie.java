@@ -0,0 +1,136 @@
+package openbns.commons.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Radix tree from byte strings to values, for lookups straight from decoded bytes without building a {@link String}.
+ * <p/>
+ * Lookups are safe from any thread once the trie is no longer modified.
+ */
+public class ByteTrie<V>
+{
+  private static final byte[] EMPTY = new byte[ 0 ];
+
+  private final Node<V> root = new Node<>( EMPTY );
+  private int size;
+
+  public void put( byte[] key, V value )
+  {
+    if( value == null )
+      throw new NullPointerException( "value" );
+
+    Node<V> node = root;
+    int pos = 0;
+    for( ; ; )
+    {
+      if( pos == key.length )
+      {
+        if( node.value == null )
+          size++;
+        node.value = value;
+        return;
+      }
+
+      int index = node.indexOf( key[ pos ] );
+      if( index < 0 )
+      {
+        Node<V> leaf = new Node<>( Arrays.copyOfRange( key, pos, key.length ) );
+        leaf.value = value;
+        node.addChild( leaf );
+        size++;
+        return;
+      }
+
+      Node<V> child = node.children.get( index );
+      byte[] label = child.label;
+      int common = 0;
+      while( common < label.length && pos + common < key.length && label[ common ] == key[ pos + common ] )
+        common++;
+
+      if( common < label.length )
+      {
+        // Split the edge: parent -> middle(common prefix) -> child(rest)
+        Node<V> middle = new Node<>( Arrays.copyOf( label, common ) );
+        child.label = Arrays.copyOfRange( label, common, label.length );
+        middle.addChild( child );
+        node.children.set( index, middle );
+        child = middle;
+      }
+      node = child;
+      pos += common;
+    }
+  }
+
+  public V get( byte[] key )
+  {
+    return get( key, 0, key.length );
+  }
+
+  /**
+   * Looks up the bytes {@code key[offset, offset + length)}.
+   */
+  public V get( byte[] key, int offset, int length )
+  {
+    Node<V> node = root;
+    int pos = offset;
+    int end = offset + length;
+    for( ; ; )
+    {
+      if( pos == end )
+        return node.value;
+
+      int index = node.indexOf( key[ pos ] );
+      if( index < 0 )
+        return null;
+      node = node.children.get( index );
+      byte[] label = node.label;
+      if( end - pos < label.length )
+        return null;
+      for( int i = 0; i < label.length; i++ )
+      {
+        if( label[ i ] != key[ pos + i ] )
+          return null;
+      }
+      pos += label.length;
+    }
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  private static final class Node<V>
+  {
+    byte[] label;
+    V value;
+    byte[] firstBytes = EMPTY;
+    final List<Node<V>> children = new ArrayList<>( 1 );
+
+    Node( byte[] label )
+    {
+      this.label = label;
+    }
+
+    int indexOf( byte b )
+    {
+      byte[] firstBytes = this.firstBytes;
+      for( int i = 0; i < firstBytes.length; i++ )
+      {
+        if( firstBytes[ i ] == b )
+          return i;
+      }
+      return -1;
+    }
+
+    void addChild( Node<V> child )
+    {
+      int n = firstBytes.length;
+      firstBytes = Arrays.copyOf( firstBytes, n + 1 );
+      firstBytes[ n ] = child.label[ 0 ];
+      children.add( child );
+    }
+  }
+}
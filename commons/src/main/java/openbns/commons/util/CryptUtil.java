@@ -15,6 +15,24 @@ public class CryptUtil
 {
   private static final char[] hexArray = "0123456789ABCDEF".toCharArray();
 
+  // MessageDigest.getInstance looks the provider up on every call; a digest is reset once it returns a hash
+  private static final ThreadLocal<MessageDigest> sha256 = new ThreadLocal<MessageDigest>()
+  {
+    @Override
+    protected MessageDigest initialValue()
+    {
+      try
+      {
+        return MessageDigest.getInstance( "SHA-256" );
+      }
+      catch( NoSuchAlgorithmException e )
+      {
+        // Every Java platform has to support SHA-256
+        throw new IllegalStateException( e );
+      }
+    }
+  };
+
   public static String hexToString( byte[] bytes )
   {
     char[] hexChars = new char[ bytes.length * 2 ];
@@ -41,18 +59,48 @@ public class CryptUtil
 
   public static String sha256( byte[] data ) throws NoSuchAlgorithmException
   {
-    MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
-    digest.update( data );
-    return CryptUtil.hexToString( digest.digest() );
+    return hexToString( sha256bytes( data ) );
   }
 
-  public static byte[] sha256bytes( byte[] data ) throws NoSuchAlgorithmException
+  /**
+   * Hashes the segments one after another, same as hashing them merged into one array.
+   */
+  public static byte[] sha256bytes( byte[]... segments ) throws NoSuchAlgorithmException
   {
-    MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
-    digest.update( data );
+    MessageDigest digest = sha256Digest();
+    for( byte[] segment : segments )
+      digest.update( segment );
     return digest.digest();
   }
 
+  /**
+   * @return the calling thread's SHA-256 digest, reset; it has to be finished with {@code digest()} before the next
+   *         call on the same thread
+   */
+  public static MessageDigest sha256Digest()
+  {
+    MessageDigest digest = sha256.get();
+    digest.reset();
+    return digest;
+  }
+
+  /**
+   * Reverses the byte order of each 4-byte word of {@code array} in place; trailing bytes short of a word are left
+   * as they are.
+   */
+  public static void reverseInts( byte[] array )
+  {
+    for( int i = 0; i <= array.length - 4; i += 4 )
+    {
+      byte b0 = array[ i ];
+      byte b1 = array[ i + 1 ];
+      array[ i ] = array[ i + 3 ];
+      array[ i + 1 ] = array[ i + 2 ];
+      array[ i + 2 ] = b1;
+      array[ i + 3 ] = b0;
+    }
+  }
+
   public static String base64( byte[] data )
   {
     return DatatypeConverter.printBase64Binary( data );
@@ -23,4 +23,16 @@ public class ExProperties extends Properties
     String v = getProperty( key );
     return v == null ? defaultValue : Integer.parseInt( v );
   }
+
+  public double getProperty( String key, double defaultValue )
+  {
+    String v = getProperty( key );
+    return v == null ? defaultValue : Double.parseDouble( v );
+  }
+
+  public boolean getProperty( String key, boolean defaultValue )
+  {
+    String v = getProperty( key );
+    return v == null ? defaultValue : Boolean.parseBoolean( v.trim() );
+  }
 }
@@ -0,0 +1,65 @@
+package openbns.commons.xml;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared, thread-safe cache of configured {@link StsXStream} marshallers.
+ * <p/>
+ * Building an XStream instance and processing the annotations of a DTO is far more expensive than
+ * the marshalling itself, so each DTO gets exactly one instance, built at startup by
+ * {@link #register(Class[])} (or lazily on first use) and shared by every channel afterwards.
+ * A configured XStream is safe to use concurrently for marshalling and unmarshalling.
+ */
+public class StsXStreamRegistry
+{
+  private static StsXStreamRegistry ourInstance = new StsXStreamRegistry();
+
+  private final ConcurrentMap<Class<?>, StsXStream> streams = new ConcurrentHashMap<>();
+
+  public static StsXStreamRegistry getInstance()
+  {
+    return ourInstance;
+  }
+
+  private StsXStreamRegistry()
+  {
+  }
+
+  /**
+   * Builds and caches marshallers for the given DTO classes.
+   */
+  public void register( Class<?>... types )
+  {
+    for( Class<?> type : types )
+      get( type );
+  }
+
+  /**
+   * Returns the marshaller configured for the given DTO class, building it if it was not registered.
+   */
+  public StsXStream get( Class<?> type )
+  {
+    StsXStream stream = streams.get( type );
+    if( stream == null )
+    {
+      StsXStream created = create( type );
+      stream = streams.putIfAbsent( type, created );
+      if( stream == null )
+        stream = created;
+    }
+    return stream;
+  }
+
+  public int size()
+  {
+    return streams.size();
+  }
+
+  private static StsXStream create( Class<?> type )
+  {
+    StsXStream stream = new StsXStream();
+    stream.processAnnotations( type );
+    return stream;
+  }
+}
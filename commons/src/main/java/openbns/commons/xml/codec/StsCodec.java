@@ -0,0 +1,20 @@
+package openbns.commons.xml.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an XStream-annotated DTO for which {@link openbns.commons.xml.codec.processor.StsCodecProcessor}
+ * generates a {@link StsXmlCodec} named {@code <SimpleName>XmlCodec} in the same package.
+ * <p/>
+ * Supported field types are {@code String}, {@code int}, {@code long} and {@code boolean}; fields are mapped
+ * with {@code @XStreamAlias} / {@code @XStreamAsAttribute} exactly as XStream would map them, and are accessed
+ * through their bean getters and setters.
+ */
+@Target( ElementType.TYPE )
+@Retention( RetentionPolicy.SOURCE )
+public @interface StsCodec
+{
+}
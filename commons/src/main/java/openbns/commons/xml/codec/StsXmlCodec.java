@@ -0,0 +1,20 @@
+package openbns.commons.xml.codec;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Reflection-free XML codec for a single DTO, generated for classes marked with {@link StsCodec}.
+ * Implementations are stateless and shared.
+ */
+public interface StsXmlCodec<T>
+{
+  /**
+   * Parses the readable bytes of the buffer, consuming them.
+   */
+  T decode( ByteBuf buf );
+
+  /**
+   * Writes the same UTF-8 bytes {@link openbns.commons.xml.StsPrintWriter} would produce for the value.
+   */
+  void encode( T value, ByteBuf buf );
+}
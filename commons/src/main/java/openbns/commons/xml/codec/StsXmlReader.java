@@ -0,0 +1,611 @@
+package openbns.commons.xml.codec;
+
+import com.thoughtworks.xstream.io.StreamException;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Minimal forward-only XML reader working on the bytes of a {@link ByteBuf}, used by generated
+ * {@link StsXmlCodec}s. It understands what STS clients send: an optional prolog, one root element with
+ * attributes and flat child elements, comments, CDATA sections and the predefined and numeric character
+ * references. Unknown child elements are skipped.
+ * <p/>
+ * Typical use:
+ * <pre>
+ * reader.readRoot( ROOT );
+ * while( reader.nextAttribute() ) { ... }
+ * if( !reader.isEmptyElement() )
+ *   while( reader.nextChild() ) { ... reader.readString() ... }
+ * reader.finish();
+ * </pre>
+ */
+public final class StsXmlReader
+{
+  private static final byte[] COMMENT_START = { '<', '!', '-', '-' };
+  private static final byte[] COMMENT_END = { '-', '-', '>' };
+  private static final byte[] CDATA_START = { '<', '!', '[', 'C', 'D', 'A', 'T', 'A', '[' };
+  private static final byte[] CDATA_END = { ']', ']', '>' };
+  private static final byte[] PI_END = { '?', '>' };
+  private static final byte[] BOM = { (byte) 0xef, (byte) 0xbb, (byte) 0xbf };
+
+  private final ByteBuf buf;
+  private final int end;
+  private int index;
+
+  private int rootStart;
+  private int rootEnd;
+  private int nameStart;
+  private int nameEnd;
+  private boolean emptyElement;
+
+  private int attributeNameStart;
+  private int attributeNameEnd;
+  private int attributeValueStart;
+  private int attributeValueEnd;
+
+  public StsXmlReader( ByteBuf buf )
+  {
+    this.buf = buf;
+    index = buf.readerIndex();
+    end = buf.writerIndex();
+  }
+
+  /**
+   * Skips the prolog and reads the start tag of the root element, which must have the given name.
+   */
+  public void readRoot( byte[] name )
+  {
+    skipProlog();
+    readStartTag();
+    if( !nameIs( name ) )
+      throw error( "Unexpected root element " + name() );
+    rootStart = nameStart;
+    rootEnd = nameEnd;
+  }
+
+  /**
+   * Advances to the next attribute of the current start tag.
+   *
+   * @return {@code false} once the start tag has been closed
+   */
+  public boolean nextAttribute()
+  {
+    skipWhitespace();
+    byte b = peek();
+    if( b == '/' )
+    {
+      index++;
+      expect( '>' );
+      emptyElement = true;
+      return false;
+    }
+    if( b == '>' )
+    {
+      index++;
+      return false;
+    }
+
+    attributeNameStart = index;
+    while( index < end )
+    {
+      b = buf.getByte( index );
+      if( b == '=' || isWhitespace( b ) )
+        break;
+      index++;
+    }
+    attributeNameEnd = index;
+    skipWhitespace();
+    expect( '=' );
+    skipWhitespace();
+
+    byte quote = next();
+    if( quote != '"' && quote != '\'' )
+      throw error( "Attribute value is not quoted" );
+    attributeValueStart = index;
+    attributeValueEnd = buf.indexOf( index, end, quote );
+    if( attributeValueEnd < 0 )
+      throw error( "Unterminated attribute value" );
+    index = attributeValueEnd + 1;
+    return true;
+  }
+
+  public boolean attributeNameIs( byte[] name )
+  {
+    return equals( attributeNameStart, attributeNameEnd, name );
+  }
+
+  public String attributeString()
+  {
+    return decode( attributeValueStart, attributeValueEnd );
+  }
+
+  public int attributeInt()
+  {
+    return toInt( attributeLong() );
+  }
+
+  public long attributeLong()
+  {
+    return parseLong( attributeValueStart, attributeValueEnd );
+  }
+
+  public boolean attributeBoolean()
+  {
+    return "true".equalsIgnoreCase( attributeString().trim() );
+  }
+
+  /**
+   * Whether the last start tag read was self-closing.
+   */
+  public boolean isEmptyElement()
+  {
+    return emptyElement;
+  }
+
+  /**
+   * Advances to the start tag of the next child element of the root element, consuming its attributes.
+   *
+   * @return {@code false} once the end tag of the root element has been consumed
+   */
+  public boolean nextChild()
+  {
+    for(; ; )
+    {
+      skipTo( '<' );
+      if( startsWith( COMMENT_START ) )
+      {
+        skipPast( COMMENT_END );
+      }
+      else if( startsWith( CDATA_START ) )
+      {
+        skipPast( CDATA_END );
+      }
+      else if( index + 1 < end && buf.getByte( index + 1 ) == '/' )
+      {
+        nameStart = rootStart;
+        nameEnd = rootEnd;
+        readEndTag();
+        return false;
+      }
+      else
+      {
+        readStartTag();
+        while( nextAttribute() )
+        {
+          // attributes of child elements are not mapped
+        }
+        return true;
+      }
+    }
+  }
+
+  public boolean nameIs( byte[] name )
+  {
+    return equals( nameStart, nameEnd, name );
+  }
+
+  /**
+   * Reads the text of the current element and consumes its end tag.
+   */
+  public String readString()
+  {
+    if( emptyElement )
+      return "";
+
+    int start = index;
+    int lt = buf.indexOf( index, end, (byte) '<' );
+    if( lt < 0 )
+      throw error( "Unexpected end of document" );
+
+    String text;
+    if( lt + 1 < end && buf.getByte( lt + 1 ) == '/' )
+    {
+      // common case: plain text directly followed by the end tag
+      index = lt;
+      text = decode( start, lt );
+    }
+    else
+    {
+      text = readMixedText();
+    }
+    readEndTag();
+    return text;
+  }
+
+  public int readInt()
+  {
+    return toInt( readLong() );
+  }
+
+  public long readLong()
+  {
+    if( emptyElement )
+      throw new NumberFormatException( "For input string: \"\"" );
+
+    int start = index;
+    int lt = buf.indexOf( index, end, (byte) '<' );
+    if( lt < 0 || lt + 1 >= end || buf.getByte( lt + 1 ) != '/' )
+      return Long.parseLong( readString().trim() );
+
+    index = lt;
+    long value = parseLong( start, lt );
+    readEndTag();
+    return value;
+  }
+
+  public boolean readBoolean()
+  {
+    return "true".equalsIgnoreCase( readString().trim() );
+  }
+
+  /**
+   * Skips the current element including all of its content.
+   */
+  public void skipElement()
+  {
+    if( emptyElement )
+      return;
+
+    int depth = 1;
+    while( depth > 0 )
+    {
+      skipTo( '<' );
+      if( startsWith( COMMENT_START ) )
+      {
+        skipPast( COMMENT_END );
+      }
+      else if( startsWith( CDATA_START ) )
+      {
+        skipPast( CDATA_END );
+      }
+      else if( index + 1 < end && buf.getByte( index + 1 ) == '?' )
+      {
+        skipPast( PI_END );
+      }
+      else if( index + 1 < end && buf.getByte( index + 1 ) == '/' )
+      {
+        skipPast( '>' );
+        depth--;
+      }
+      else
+      {
+        readStartTag();
+        while( nextAttribute() )
+        {
+          // skipped
+        }
+        if( !emptyElement )
+          depth++;
+      }
+    }
+    emptyElement = false;
+  }
+
+  /**
+   * Marks the whole buffer as consumed.
+   */
+  public void finish()
+  {
+    buf.readerIndex( end );
+  }
+
+  public String name()
+  {
+    return buf.toString( nameStart, nameEnd - nameStart, CharsetUtil.UTF_8 );
+  }
+
+  private void readStartTag()
+  {
+    expect( '<' );
+    nameStart = index;
+    while( index < end )
+    {
+      byte b = buf.getByte( index );
+      if( b == '>' || b == '/' || isWhitespace( b ) )
+        break;
+      index++;
+    }
+    nameEnd = index;
+    if( nameStart == nameEnd )
+      throw error( "Empty element name" );
+    emptyElement = false;
+  }
+
+  private void readEndTag()
+  {
+    expect( '<' );
+    expect( '/' );
+    int start = index;
+    skipTo( '>' );
+    int nameLength = nameEnd - nameStart;
+    if( index - start < nameLength || !equals( start, start + nameLength, nameStart ) )
+      throw error( "Unexpected end tag, expected </" + name() + ">" );
+    for( int i = start + nameLength; i < index; i++ )
+    {
+      if( !isWhitespace( buf.getByte( i ) ) )
+        throw error( "Unexpected end tag, expected </" + name() + ">" );
+    }
+    index++;
+  }
+
+  /**
+   * Slow path for text containing comments or CDATA sections.
+   */
+  private String readMixedText()
+  {
+    ByteBuf scratch = buf.alloc().heapBuffer();
+    try
+    {
+      for(; ; )
+      {
+        int lt = buf.indexOf( index, end, (byte) '<' );
+        if( lt < 0 )
+          throw error( "Unexpected end of document" );
+        appendDecoded( scratch, index, lt );
+        index = lt;
+        if( startsWith( CDATA_START ) )
+        {
+          int start = index + CDATA_START.length;
+          skipPast( CDATA_END );
+          scratch.writeBytes( buf, start, index - CDATA_END.length - start );
+        }
+        else if( startsWith( COMMENT_START ) )
+        {
+          skipPast( COMMENT_END );
+        }
+        else if( lt + 1 < end && buf.getByte( lt + 1 ) == '/' )
+        {
+          return scratch.toString( CharsetUtil.UTF_8 );
+        }
+        else
+        {
+          throw error( "Unexpected element inside text of " + name() );
+        }
+      }
+    }
+    finally
+    {
+      scratch.release();
+    }
+  }
+
+  private String decode( int start, int stop )
+  {
+    if( buf.indexOf( start, stop, (byte) '&' ) < 0 )
+      return buf.toString( start, stop - start, CharsetUtil.UTF_8 );
+
+    ByteBuf scratch = buf.alloc().heapBuffer( stop - start );
+    try
+    {
+      appendDecoded( scratch, start, stop );
+      return scratch.toString( CharsetUtil.UTF_8 );
+    }
+    finally
+    {
+      scratch.release();
+    }
+  }
+
+  private void appendDecoded( ByteBuf dst, int start, int stop )
+  {
+    int i = start;
+    while( i < stop )
+    {
+      int amp = buf.indexOf( i, stop, (byte) '&' );
+      if( amp < 0 )
+      {
+        dst.writeBytes( buf, i, stop - i );
+        return;
+      }
+      dst.writeBytes( buf, i, amp - i );
+      int semicolon = buf.indexOf( amp, stop, (byte) ';' );
+      if( semicolon < 0 )
+        throw error( "Unterminated entity reference" );
+      appendEntity( dst, amp + 1, semicolon );
+      i = semicolon + 1;
+    }
+  }
+
+  private void appendEntity( ByteBuf dst, int start, int stop )
+  {
+    int length = stop - start;
+    if( length > 1 && buf.getByte( start ) == '#' )
+    {
+      int cp = 0;
+      boolean hex = buf.getByte( start + 1 ) == 'x';
+      int first = start + (hex ? 2 : 1);
+      if( first == stop )
+        throw error( "Invalid character reference" );
+      for( int i = first; i < stop; i++ )
+      {
+        int digit = Character.digit( buf.getByte( i ), hex ? 16 : 10 );
+        if( digit < 0 )
+          throw error( "Invalid character reference" );
+        cp = cp * (hex ? 16 : 10) + digit;
+        // Checked per digit so that a long reference cannot overflow back into range
+        if( cp > Character.MAX_CODE_POINT )
+          throw error( "Character reference out of range" );
+      }
+      dst.writeBytes( new String( Character.toChars( cp ) ).getBytes( CharsetUtil.UTF_8 ) );
+      return;
+    }
+
+    String name = buf.toString( start, length, CharsetUtil.US_ASCII );
+    switch( name )
+    {
+      case "lt":
+        dst.writeByte( '<' );
+        break;
+      case "gt":
+        dst.writeByte( '>' );
+        break;
+      case "amp":
+        dst.writeByte( '&' );
+        break;
+      case "quot":
+        dst.writeByte( '"' );
+        break;
+      case "apos":
+        dst.writeByte( '\'' );
+        break;
+      default:
+        throw error( "Unknown entity &" + name + ";" );
+    }
+  }
+
+  private long parseLong( int start, int stop )
+  {
+    while( start < stop && isWhitespace( buf.getByte( start ) ) )
+      start++;
+    while( stop > start && isWhitespace( buf.getByte( stop - 1 ) ) )
+      stop--;
+
+    boolean negative = false;
+    int i = start;
+    if( i < stop && (buf.getByte( i ) == '-' || buf.getByte( i ) == '+') )
+    {
+      negative = buf.getByte( i ) == '-';
+      i++;
+    }
+    if( i == stop || stop - i > 18 )
+      return Long.parseLong( decode( start, stop ) );
+
+    long value = 0;
+    for(; i < stop; i++ )
+    {
+      int digit = buf.getByte( i ) - '0';
+      if( digit < 0 || digit > 9 )
+        return Long.parseLong( decode( start, stop ) );
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  private static int toInt( long value )
+  {
+    if( value < Integer.MIN_VALUE || value > Integer.MAX_VALUE )
+      throw new NumberFormatException( "Value out of range: " + value );
+    return (int) value;
+  }
+
+  private void skipProlog()
+  {
+    if( startsWith( BOM ) )
+      index += BOM.length;
+
+    for(; ; )
+    {
+      skipWhitespace();
+      if( index + 1 >= end || buf.getByte( index ) != '<' )
+        return;
+
+      byte b = buf.getByte( index + 1 );
+      if( startsWith( COMMENT_START ) )
+        skipPast( COMMENT_END );
+      else if( b == '?' )
+        skipPast( PI_END );
+      else if( b == '!' )
+        skipPast( '>' );
+      else
+        return;
+    }
+  }
+
+  private void skipWhitespace()
+  {
+    while( index < end && isWhitespace( buf.getByte( index ) ) )
+      index++;
+  }
+
+  private void skipTo( char c )
+  {
+    int i = buf.indexOf( index, end, (byte) c );
+    if( i < 0 )
+      throw error( "Unexpected end of document" );
+    index = i;
+  }
+
+  private void skipPast( char c )
+  {
+    skipTo( c );
+    index++;
+  }
+
+  private void skipPast( byte[] marker )
+  {
+    for(; ; )
+    {
+      skipTo( (char) marker[ 0 ] );
+      if( startsWith( marker ) )
+      {
+        index += marker.length;
+        return;
+      }
+      index++;
+    }
+  }
+
+  private boolean startsWith( byte[] marker )
+  {
+    if( end - index < marker.length )
+      return false;
+    for( int i = 0; i < marker.length; i++ )
+    {
+      if( buf.getByte( index + i ) != marker[ i ] )
+        return false;
+    }
+    return true;
+  }
+
+  private boolean equals( int start, int stop, byte[] name )
+  {
+    if( stop - start != name.length )
+      return false;
+    for( int i = 0; i < name.length; i++ )
+    {
+      if( buf.getByte( start + i ) != name[ i ] )
+        return false;
+    }
+    return true;
+  }
+
+  private boolean equals( int start, int stop, int otherStart )
+  {
+    for( int i = 0; i < stop - start; i++ )
+    {
+      if( buf.getByte( start + i ) != buf.getByte( otherStart + i ) )
+        return false;
+    }
+    return true;
+  }
+
+  private byte peek()
+  {
+    if( index >= end )
+      throw error( "Unexpected end of document" );
+    return buf.getByte( index );
+  }
+
+  private byte next()
+  {
+    byte b = peek();
+    index++;
+    return b;
+  }
+
+  private void expect( char c )
+  {
+    if( next() != c )
+      throw error( "Expected '" + c + "'" );
+  }
+
+  private static boolean isWhitespace( byte b )
+  {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+  }
+
+  private StreamException error( String message )
+  {
+    return new StreamException( message + " at offset " + (index - buf.readerIndex()) );
+  }
+}
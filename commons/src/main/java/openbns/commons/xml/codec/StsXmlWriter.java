@@ -0,0 +1,265 @@
+package openbns.commons.xml.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Writes XML straight into a {@link ByteBuf} using the layout and escaping of
+ * {@link openbns.commons.xml.StsPrintWriter} in quirks mode with an empty indent:
+ * <pre>
+ * &lt;Reply&gt;
+ * &lt;KeyData&gt;...&lt;/KeyData&gt;
+ * &lt;/Reply&gt;
+ * </pre>
+ * Used by generated {@link StsXmlCodec}s.
+ */
+public final class StsXmlWriter
+{
+  private static final byte[] NULL = "&#x0;".getBytes( CharsetUtil.US_ASCII );
+  private static final byte[] AMP = "&amp;".getBytes( CharsetUtil.US_ASCII );
+  private static final byte[] LT = "&lt;".getBytes( CharsetUtil.US_ASCII );
+  private static final byte[] GT = "&gt;".getBytes( CharsetUtil.US_ASCII );
+  private static final byte[] CR = "&#xd;".getBytes( CharsetUtil.US_ASCII );
+  private static final byte[] QUOT = "&quot;".getBytes( CharsetUtil.US_ASCII );
+  private static final byte[] APOS = "&apos;".getBytes( CharsetUtil.US_ASCII );
+  private static final byte[] TRUE = "true".getBytes( CharsetUtil.US_ASCII );
+  private static final byte[] FALSE = "false".getBytes( CharsetUtil.US_ASCII );
+
+  private StsXmlWriter()
+  {
+  }
+
+  public static byte[] name( String name )
+  {
+    return name.getBytes( CharsetUtil.UTF_8 );
+  }
+
+  /**
+   * Writes {@code <name}; attributes may follow.
+   */
+  public static void startElement( ByteBuf buf, byte[] name )
+  {
+    buf.writeByte( '<' );
+    buf.writeBytes( name );
+  }
+
+  public static void attribute( ByteBuf buf, byte[] name, String value )
+  {
+    startAttribute( buf, name );
+    writeText( buf, value, true );
+    buf.writeByte( '"' );
+  }
+
+  public static void attribute( ByteBuf buf, byte[] name, long value )
+  {
+    startAttribute( buf, name );
+    writeDecimal( buf, value );
+    buf.writeByte( '"' );
+  }
+
+  public static void attribute( ByteBuf buf, byte[] name, boolean value )
+  {
+    startAttribute( buf, name );
+    buf.writeBytes( value ? TRUE : FALSE );
+    buf.writeByte( '"' );
+  }
+
+  /**
+   * Writes a child element holding text.
+   *
+   * @param first whether no child has been written into the parent yet
+   * @return the new value of {@code first}, always {@code false}
+   */
+  public static boolean element( ByteBuf buf, byte[] name, String value, boolean first )
+  {
+    startChild( buf, name, first );
+    writeText( buf, value, false );
+    endChild( buf, name );
+    return false;
+  }
+
+  public static boolean element( ByteBuf buf, byte[] name, long value, boolean first )
+  {
+    startChild( buf, name, first );
+    writeDecimal( buf, value );
+    endChild( buf, name );
+    return false;
+  }
+
+  public static boolean element( ByteBuf buf, byte[] name, boolean value, boolean first )
+  {
+    startChild( buf, name, first );
+    buf.writeBytes( value ? TRUE : FALSE );
+    endChild( buf, name );
+    return false;
+  }
+
+  /**
+   * Closes the root element and writes the trailing new line.
+   *
+   * @param empty whether no child element has been written
+   */
+  public static void endElement( ByteBuf buf, byte[] name, boolean empty )
+  {
+    if( empty )
+    {
+      buf.writeByte( '/' );
+      buf.writeByte( '>' );
+    }
+    else
+    {
+      buf.writeByte( '\n' );
+      buf.writeByte( '<' );
+      buf.writeByte( '/' );
+      buf.writeBytes( name );
+      buf.writeByte( '>' );
+    }
+    buf.writeByte( '\n' );
+  }
+
+  private static void startAttribute( ByteBuf buf, byte[] name )
+  {
+    buf.writeByte( ' ' );
+    buf.writeBytes( name );
+    buf.writeByte( '=' );
+    buf.writeByte( '"' );
+  }
+
+  private static void startChild( ByteBuf buf, byte[] name, boolean first )
+  {
+    if( first )
+      buf.writeByte( '>' );
+    buf.writeByte( '\n' );
+    buf.writeByte( '<' );
+    buf.writeBytes( name );
+    buf.writeByte( '>' );
+  }
+
+  private static void endChild( ByteBuf buf, byte[] name )
+  {
+    buf.writeByte( '<' );
+    buf.writeByte( '/' );
+    buf.writeBytes( name );
+    buf.writeByte( '>' );
+  }
+
+  static void writeDecimal( ByteBuf buf, long value )
+  {
+    if( value == Long.MIN_VALUE )
+    {
+      buf.writeBytes( Long.toString( value ).getBytes( CharsetUtil.US_ASCII ) );
+      return;
+    }
+    if( value < 0 )
+    {
+      buf.writeByte( '-' );
+      value = -value;
+    }
+
+    int digits = 1;
+    for( long v = value; v >= 10; v /= 10 )
+      digits++;
+
+    buf.ensureWritable( digits );
+    int index = buf.writerIndex() + digits;
+    buf.writerIndex( index );
+    do
+    {
+      buf.setByte( --index, (int) ('0' + value % 10) );
+      value /= 10;
+    }
+    while( value != 0 );
+  }
+
+  /**
+   * Same escaping rules as {@code StsPrintWriter.writeText} in quirks mode, encoded as UTF-8.
+   */
+  static void writeText( ByteBuf buf, String text, boolean attribute )
+  {
+    int length = text.length();
+    for( int i = 0; i < length; i++ )
+    {
+      char c = text.charAt( i );
+      switch( c )
+      {
+        case '\0':
+          buf.writeBytes( NULL );
+          break;
+        case '&':
+          buf.writeBytes( AMP );
+          break;
+        case '<':
+          buf.writeBytes( LT );
+          break;
+        case '>':
+          buf.writeBytes( GT );
+          break;
+        case '"':
+          buf.writeBytes( QUOT );
+          break;
+        case '\'':
+          buf.writeBytes( APOS );
+          break;
+        case '\r':
+          buf.writeBytes( CR );
+          break;
+        case '\t':
+        case '\n':
+          if( !attribute )
+          {
+            buf.writeByte( c );
+            break;
+          }
+        default:
+          if( c < 0x80 && c >= 0x20 && c != 0x7f )
+          {
+            buf.writeByte( c );
+          }
+          else if( Character.isDefined( c ) && !Character.isISOControl( c ) )
+          {
+            i = writeUtf8( buf, text, i, c );
+          }
+          else
+          {
+            buf.writeByte( '&' );
+            buf.writeByte( '#' );
+            buf.writeByte( 'x' );
+            buf.writeBytes( Integer.toHexString( c ).getBytes( CharsetUtil.US_ASCII ) );
+            buf.writeByte( ';' );
+          }
+      }
+    }
+  }
+
+  private static int writeUtf8( ByteBuf buf, String text, int i, char c )
+  {
+    if( c < 0x800 )
+    {
+      buf.writeByte( 0xc0 | (c >> 6) );
+      buf.writeByte( 0x80 | (c & 0x3f) );
+    }
+    else if( Character.isSurrogate( c ) )
+    {
+      if( Character.isHighSurrogate( c ) && i + 1 < text.length() && Character.isLowSurrogate( text.charAt( i + 1 ) ) )
+      {
+        int cp = Character.toCodePoint( c, text.charAt( ++i ) );
+        buf.writeByte( 0xf0 | (cp >> 18) );
+        buf.writeByte( 0x80 | ((cp >> 12) & 0x3f) );
+        buf.writeByte( 0x80 | ((cp >> 6) & 0x3f) );
+        buf.writeByte( 0x80 | (cp & 0x3f) );
+      }
+      else
+      {
+        // String.getBytes() replaces unpaired surrogates the same way
+        buf.writeByte( '?' );
+      }
+    }
+    else
+    {
+      buf.writeByte( 0xe0 | (c >> 12) );
+      buf.writeByte( 0x80 | ((c >> 6) & 0x3f) );
+      buf.writeByte( 0x80 | (c & 0x3f) );
+    }
+    return i;
+  }
+}
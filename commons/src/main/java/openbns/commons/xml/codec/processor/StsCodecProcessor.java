@@ -0,0 +1,253 @@
+package openbns.commons.xml.codec.processor;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import com.thoughtworks.xstream.annotations.XStreamOmitField;
+import openbns.commons.xml.codec.StsCodec;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@link openbns.commons.xml.codec.StsXmlCodec} for every class annotated with {@link StsCodec}.
+ * Picked up automatically by javac from the commons jar.
+ */
+@SupportedAnnotationTypes( "openbns.commons.xml.codec.StsCodec" )
+public class StsCodecProcessor extends AbstractProcessor
+{
+  private static final String SUFFIX = "XmlCodec";
+
+  @Override
+  public SourceVersion getSupportedSourceVersion()
+  {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process( Set<? extends TypeElement> annotations, RoundEnvironment roundEnv )
+  {
+    for( TypeElement type : ElementFilter.typesIn( roundEnv.getElementsAnnotatedWith( StsCodec.class ) ) )
+    {
+      try
+      {
+        generate( type );
+      }
+      catch( IOException e )
+      {
+        error( type, "Cannot write codec: " + e.getMessage() );
+      }
+    }
+    return true;
+  }
+
+  private void generate( TypeElement type ) throws IOException
+  {
+    XStreamAlias rootAlias = type.getAnnotation( XStreamAlias.class );
+    if( rootAlias == null )
+    {
+      error( type, "@StsCodec requires @XStreamAlias on the class" );
+      return;
+    }
+    if( type.getSuperclass().getKind() == TypeKind.DECLARED && !type.getSuperclass().toString().equals( Object.class.getName() ) )
+    {
+      error( type, "@StsCodec does not support inherited fields" );
+      return;
+    }
+
+    List<Field> attributes = new ArrayList<>();
+    List<Field> elements = new ArrayList<>();
+    for( VariableElement element : ElementFilter.fieldsIn( type.getEnclosedElements() ) )
+    {
+      Set<Modifier> modifiers = element.getModifiers();
+      if( modifiers.contains( Modifier.STATIC ) || modifiers.contains( Modifier.TRANSIENT ) || element.getAnnotation( XStreamOmitField.class ) != null )
+        continue;
+
+      Field field = field( type, element );
+      if( field == null )
+        return;
+      if( element.getAnnotation( XStreamAsAttribute.class ) != null )
+        attributes.add( field );
+      else
+        elements.add( field );
+    }
+
+    String packageName = processingEnv.getElementUtils().getPackageOf( type ).getQualifiedName().toString();
+    String dto = type.getSimpleName().toString();
+    String codec = dto + SUFFIX;
+
+    StringBuilder sb = new StringBuilder();
+    if( !packageName.isEmpty() )
+      sb.append( "package " ).append( packageName ).append( ";\n\n" );
+    sb.append( "import io.netty.buffer.ByteBuf;\n" );
+    sb.append( "import openbns.commons.xml.codec.StsXmlCodec;\n" );
+    sb.append( "import openbns.commons.xml.codec.StsXmlReader;\n" );
+    sb.append( "import openbns.commons.xml.codec.StsXmlWriter;\n\n" );
+    sb.append( "@javax.annotation.Generated( \"" ).append( getClass().getName() ).append( "\" )\n" );
+    sb.append( "public final class " ).append( codec ).append( " implements StsXmlCodec<" ).append( dto ).append( ">\n{\n" );
+    sb.append( "  public static final " ).append( codec ).append( " INSTANCE = new " ).append( codec ).append( "();\n\n" );
+    sb.append( "  private static final byte[] ROOT = StsXmlWriter.name( " ).append( literal( rootAlias.value() ) ).append( " );\n" );
+    for( int i = 0; i < attributes.size(); i++ )
+      sb.append( "  private static final byte[] A" ).append( i ).append( " = StsXmlWriter.name( " ).append( literal( attributes.get( i ).alias ) ).append( " );\n" );
+    for( int i = 0; i < elements.size(); i++ )
+      sb.append( "  private static final byte[] E" ).append( i ).append( " = StsXmlWriter.name( " ).append( literal( elements.get( i ).alias ) ).append( " );\n" );
+
+    sb.append( "\n  private " ).append( codec ).append( "()\n  {\n  }\n\n" );
+
+    // decode
+    sb.append( "  @Override\n  public " ).append( dto ).append( " decode( ByteBuf buf )\n  {\n" );
+    sb.append( "    StsXmlReader reader = new StsXmlReader( buf );\n" );
+    sb.append( "    reader.readRoot( ROOT );\n" );
+    sb.append( "    " ).append( dto ).append( " value = new " ).append( dto ).append( "();\n" );
+    sb.append( "    while( reader.nextAttribute() )\n    {\n" );
+    for( int i = 0; i < attributes.size(); i++ )
+    {
+      Field f = attributes.get( i );
+      sb.append( "      " ).append( i == 0 ? "if" : "else if" ).append( "( reader.attributeNameIs( A" ).append( i ).append( " ) )\n" );
+      sb.append( "        value." ).append( f.setter ).append( "( reader.attribute" ).append( f.kind ).append( "() );\n" );
+    }
+    sb.append( "    }\n" );
+    sb.append( "    if( !reader.isEmptyElement() )\n    {\n" );
+    sb.append( "      while( reader.nextChild() )\n      {\n" );
+    for( int i = 0; i < elements.size(); i++ )
+    {
+      Field f = elements.get( i );
+      sb.append( "        " ).append( i == 0 ? "if" : "else if" ).append( "( reader.nameIs( E" ).append( i ).append( " ) )\n" );
+      sb.append( "          value." ).append( f.setter ).append( "( reader.read" ).append( f.kind ).append( "() );\n" );
+    }
+    sb.append( "        " ).append( elements.isEmpty() ? "" : "else\n          " ).append( "reader.skipElement();\n" );
+    sb.append( "      }\n    }\n" );
+    sb.append( "    reader.finish();\n" );
+    sb.append( "    return value;\n  }\n\n" );
+
+    // encode
+    sb.append( "  @Override\n  public void encode( " ).append( dto ).append( " value, ByteBuf buf )\n  {\n" );
+    sb.append( "    StsXmlWriter.startElement( buf, ROOT );\n" );
+    for( int i = 0; i < attributes.size(); i++ )
+    {
+      Field f = attributes.get( i );
+      String call = "StsXmlWriter.attribute( buf, A" + i + ", value." + f.getter + "() );\n";
+      if( f.nullable )
+        sb.append( "    if( value." ).append( f.getter ).append( "() != null )\n      " ).append( call );
+      else
+        sb.append( "    " ).append( call );
+    }
+    sb.append( "    boolean empty = true;\n" );
+    for( int i = 0; i < elements.size(); i++ )
+    {
+      Field f = elements.get( i );
+      String call = "empty = StsXmlWriter.element( buf, E" + i + ", value." + f.getter + "(), empty );\n";
+      if( f.nullable )
+        sb.append( "    if( value." ).append( f.getter ).append( "() != null )\n      " ).append( call );
+      else
+        sb.append( "    " ).append( call );
+    }
+    sb.append( "    StsXmlWriter.endElement( buf, ROOT, empty );\n  }\n" );
+    sb.append( "}\n" );
+
+    String name = packageName.isEmpty() ? codec : packageName + '.' + codec;
+    try (Writer writer = processingEnv.getFiler().createSourceFile( name, type ).openWriter())
+    {
+      writer.write( sb.toString() );
+    }
+  }
+
+  private Field field( TypeElement type, VariableElement element )
+  {
+    TypeMirror mirror = element.asType();
+    String kind;
+    boolean nullable = false;
+    switch( mirror.getKind() )
+    {
+      case INT:
+        kind = "Int";
+        break;
+      case LONG:
+        kind = "Long";
+        break;
+      case BOOLEAN:
+        kind = "Boolean";
+        break;
+      case DECLARED:
+        if( mirror.toString().equals( String.class.getName() ) )
+        {
+          kind = "String";
+          nullable = true;
+          break;
+        }
+      default:
+        error( element, "@StsCodec does not support fields of type " + mirror );
+        return null;
+    }
+
+    String name = element.getSimpleName().toString();
+    String capitalized = Character.toUpperCase( name.charAt( 0 ) ) + name.substring( 1 );
+    String getter = (mirror.getKind() == TypeKind.BOOLEAN ? "is" : "get") + capitalized;
+    String setter = "set" + capitalized;
+    if( !hasMethod( type, getter, 0 ) || !hasMethod( type, setter, 1 ) )
+    {
+      error( element, "@StsCodec requires " + getter + "() and " + setter + "(...) for field " + name );
+      return null;
+    }
+
+    XStreamAlias alias = element.getAnnotation( XStreamAlias.class );
+    return new Field( alias != null ? alias.value() : name, kind, getter, setter, nullable );
+  }
+
+  private static boolean hasMethod( TypeElement type, String name, int parameters )
+  {
+    for( ExecutableElement method : ElementFilter.methodsIn( type.getEnclosedElements() ) )
+    {
+      if( method.getSimpleName().contentEquals( name ) && method.getParameters().size() == parameters && !method.getModifiers().contains( Modifier.PRIVATE ) )
+        return true;
+    }
+    return false;
+  }
+
+  private static String literal( String s )
+  {
+    StringBuilder sb = new StringBuilder( "\"" );
+    for( int i = 0; i < s.length(); i++ )
+    {
+      char c = s.charAt( i );
+      if( c == '"' || c == '\\' )
+        sb.append( '\\' );
+      sb.append( c );
+    }
+    return sb.append( '"' ).toString();
+  }
+
+  private void error( Element element, String message )
+  {
+    processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, message, element );
+  }
+
+  private static final class Field
+  {
+    final String alias;
+    final String kind;
+    final String getter;
+    final String setter;
+    final boolean nullable;
+
+    Field( String alias, String kind, String getter, String setter, boolean nullable )
+    {
+      this.alias = alias;
+      this.kind = kind;
+      this.getter = getter;
+      this.setter = setter;
+      this.nullable = nullable;
+    }
+  }
+}
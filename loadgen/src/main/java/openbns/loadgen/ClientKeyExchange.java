@@ -0,0 +1,83 @@
+package openbns.loadgen;
+
+import io.netty.util.CharsetUtil;
+import openbns.loginserver.crypt.HashHelper;
+import openbns.loginserver.crypt.KeyManager;
+import openbns.loginserver.net.Session;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static openbns.commons.util.CryptUtil.*;
+
+/**
+ * The client's half of the key exchange {@link Session} runs on the server. The client picks a private key {@code a}
+ * and sends {@code A = g^a}. The {@code /Auth/LoginStart} reply carries the session key and
+ * {@code B = g^b + P * g^x}, where {@code x} hashes the session key with the password hash. Both sides then share
+ * {@code g^(b * (a + u * x))}, where {@code u} hashes {@code A} with {@code B}: the server as
+ * {@code (g^(u * x) * A)^b}, the client as {@code (B - P * g^x)^(a + u * x)}. The client proves it with the hash
+ * the server expects in {@code /Auth/KeyData}, and the server proves it back in its reply.
+ */
+public class ClientKeyExchange
+{
+  private final KeyManager keyManager = KeyManager.getInstance();
+
+  private final String login;
+  private final String password;
+  private final BigInteger privateKey;
+  private final byte[] exchangeKey;
+
+  private byte[] proof;
+  private byte[] rootKey;
+
+  /**
+   * @param login the account's login without the postfix, as it was registered
+   */
+  public ClientKeyExchange( String login, String password, Random random )
+  {
+    this.login = login;
+    this.password = password;
+    privateKey = new BigInteger( 256, random );
+    exchangeKey = bigIntegerToByteArray( keyManager.powG( privateKey ) );
+  }
+
+  /**
+   * @param serverKeyData the key data of the {@code /Auth/LoginStart} reply
+   * @return the key data of {@code /Auth/KeyData}: the client's exchange key and its proof
+   */
+  public String keyData( String serverKeyData ) throws NoSuchAlgorithmException, IOException
+  {
+    ByteBuffer in = ByteBuffer.wrap( base64( serverKeyData ) ).order( ByteOrder.LITTLE_ENDIAN );
+    byte[] sessionKey = new byte[ in.getInt() ];
+    in.get( sessionKey );
+    byte[] serverExchangeKey = new byte[ in.getInt() ];
+    in.get( serverExchangeKey );
+
+    BigInteger x = keyManager.generateAIIKey( sessionKey, HashHelper.passwordHash( login, password ) );
+    BigInteger u = keyManager.generateAIIKey( exchangeKey, serverExchangeKey );
+    BigInteger serverKey = new BigInteger( 1, serverExchangeKey ).subtract( keyManager.powG( x ).multiply( KeyManager.P ) ).mod( KeyManager.N );
+    BigInteger secret = serverKey.modPow( privateKey.add( u.multiply( x ) ), KeyManager.N );
+
+    rootKey = keyManager.generateEncryptionKeyRoot( bigIntegerToByteArray( secret ) );
+    proof = sha256bytes( KeyManager.STATIC_KEY, HashHelper.loginHash( login ), sessionKey, exchangeKey, serverExchangeKey, rootKey );
+
+    byte[] check = base64( proof ).getBytes( CharsetUtil.US_ASCII );
+    ByteBuffer out = ByteBuffer.allocate( exchangeKey.length + check.length + 8 ).order( ByteOrder.LITTLE_ENDIAN );
+    out.putInt( exchangeKey.length ).put( exchangeKey ).putInt( check.length ).put( check );
+    return base64( out.array() );
+  }
+
+  /**
+   * @param serverProof the key data of the {@code /Auth/KeyData} reply
+   * @return whether the server shares the secret
+   */
+  public boolean checkServerProof( String serverProof ) throws NoSuchAlgorithmException
+  {
+    return Arrays.equals( sha256bytes( exchangeKey, proof, rootKey ), base64( serverProof ) );
+  }
+}
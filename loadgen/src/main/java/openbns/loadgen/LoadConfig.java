@@ -0,0 +1,69 @@
+package openbns.loadgen;
+
+import openbns.commons.util.ExProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Settings of the load generator, from {@code loadgen.properties} with {@code key=value} command line arguments
+ * taking precedence.
+ */
+public class LoadConfig
+{
+  private static final String CONFIG_FILE = "/loadgen.properties";
+
+  public static boolean EMBEDDED;
+  public static String HOST;
+  public static int PORT;
+  public static int ACCOUNTS;
+  public static String PASSWORD;
+
+  public static int THREADS;
+  public static int CRYPTO_THREADS;
+  public static double RATE;
+  public static int DURATION;
+  public static int MAX_CONCURRENT;
+  public static int THINK_TIME;
+  public static int TIMEOUT;
+  public static int REPORT_INTERVAL;
+
+  public static double ERROR_UNKNOWN_LOGIN;
+  public static double ERROR_WRONG_PASSWORD;
+  public static double ERROR_DISCONNECT;
+
+  public static void load( String[] args ) throws IOException
+  {
+    InputStream is = LoadConfig.class.getResourceAsStream( CONFIG_FILE );
+    ExProperties properties = new ExProperties( is );
+    is.close();
+    for( String arg : args )
+    {
+      int eq = arg.indexOf( '=' );
+      if( eq <= 0 )
+        throw new IllegalArgumentException( "Expected key=value: " + arg );
+      properties.setProperty( arg.substring( 0, eq ).trim(), arg.substring( eq + 1 ).trim() );
+    }
+
+    EMBEDDED = properties.getProperty( "loadgen.embedded", true );
+    HOST = properties.getProperty( "loadgen.host", "127.0.0.1" );
+    PORT = properties.getProperty( "loadgen.port", 0 );
+    ACCOUNTS = properties.getProperty( "loadgen.accounts", 1000 );
+    PASSWORD = properties.getProperty( "loadgen.password", "secret" );
+
+    THREADS = properties.getProperty( "loadgen.threads", 0 );
+    CRYPTO_THREADS = properties.getProperty( "loadgen.cryptoThreads", 0 );
+    RATE = properties.getProperty( "loadgen.rate", 200.0 );
+    DURATION = properties.getProperty( "loadgen.duration", 30 );
+    MAX_CONCURRENT = properties.getProperty( "loadgen.maxConcurrent", 5000 );
+    THINK_TIME = properties.getProperty( "loadgen.thinkTime", 100 );
+    TIMEOUT = properties.getProperty( "loadgen.timeout", 10000 );
+    REPORT_INTERVAL = properties.getProperty( "loadgen.reportInterval", 5 );
+
+    ERROR_UNKNOWN_LOGIN = properties.getProperty( "loadgen.error.unknownLogin", 0.0 );
+    ERROR_WRONG_PASSWORD = properties.getProperty( "loadgen.error.wrongPassword", 0.0 );
+    ERROR_DISCONNECT = properties.getProperty( "loadgen.error.disconnect", 0.0 );
+
+    properties.clear();
+  }
+}
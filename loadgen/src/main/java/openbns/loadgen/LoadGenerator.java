@@ -0,0 +1,180 @@
+package openbns.loadgen;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
+import openbns.StartLoginServer;
+import openbns.commons.net.ServerTransport;
+import openbns.commons.net.codec.sts.HttpObjectAggregator;
+import openbns.commons.net.codec.sts.StsClientCodec;
+import openbns.loginserver.Config;
+import openbns.loginserver.net.LoginServerInitializer;
+import openbns.loginserver.net.RequestExecutor;
+import openbns.loginserver.service.AccountRegistration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a login server with simulated clients logging in, see {@link SimulatedLogin}. Logins arrive at a fixed rate
+ * whatever the server's speed, an open workload, so a slow server shows as longer latencies and more logins in
+ * progress rather than as fewer requests. By default the server runs in this JVM on localhost with its accounts in
+ * memory, so no database is needed.
+ * <p/>
+ * Settings are in {@code loadgen.properties} and can be given as {@code key=value} arguments, such as
+ * {@code loadgen.rate=1000 loadgen.error.wrongPassword=0.05}. Progress is logged as it goes, and throughput and
+ * latency percentiles per URI are printed at the end.
+ */
+public class LoadGenerator
+{
+  private static final Log log = LogFactory.getLog( LoadGenerator.class );
+  private static final long TICK_MILLIS = 10;
+  private static final int MAX_CONTENT_LENGTH = 65536;
+
+  private final LoadStats stats = new LoadStats( SimulatedLogin.URIS );
+  private final AtomicInteger nextAccount = new AtomicInteger();
+  private final EventLoopGroup group;
+  private final EventExecutorGroup crypto;
+  private final Bootstrap bootstrap;
+
+  /**
+   * @param crypto runs the clients' key exchange, off the event loops that time the replies
+   */
+  public LoadGenerator( EventLoopGroup group, EventExecutorGroup crypto, String host, int port )
+  {
+    this.group = group;
+    this.crypto = crypto;
+    bootstrap = new Bootstrap().group( group ).channel( NioSocketChannel.class ).remoteAddress( host, port );
+    bootstrap.option( ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT );
+    bootstrap.option( ChannelOption.TCP_NODELAY, true );
+    bootstrap.option( ChannelOption.CONNECT_TIMEOUT_MILLIS, LoadConfig.TIMEOUT );
+  }
+
+  public static void main( String[] args ) throws Exception
+  {
+    LoadConfig.load( args );
+    Config.load();
+    int port = LoadConfig.PORT > 0 ? LoadConfig.PORT : Config.LS_PORT;
+
+    ServerTransport server = null;
+    if( LoadConfig.EMBEDDED )
+      server = startServer( port );
+
+    EventLoopGroup group = new NioEventLoopGroup( LoadConfig.THREADS );
+    int cryptoThreads = LoadConfig.CRYPTO_THREADS > 0 ? LoadConfig.CRYPTO_THREADS : Runtime.getRuntime().availableProcessors();
+    EventExecutorGroup crypto = new DefaultEventExecutorGroup( cryptoThreads, new DefaultThreadFactory( "loadgen-crypto", true ) );
+    try
+    {
+      LoadGenerator generator = new LoadGenerator( group, crypto, LoadConfig.HOST, port );
+      generator.run( LoadConfig.RATE, LoadConfig.DURATION, LoadConfig.MAX_CONCURRENT );
+      System.out.print( generator.stats.report() );
+    }
+    finally
+    {
+      group.shutdownGracefully();
+      crypto.shutdownGracefully();
+      if( server != null )
+      {
+        server.shutdown();
+        RequestExecutor.getInstance().shutdown();
+      }
+    }
+  }
+
+  /**
+   * Starts the login server in this JVM with {@code loadgen.accounts} accounts in memory.
+   */
+  private static ServerTransport startServer( int port ) throws Exception
+  {
+    // Before the server's singletons read it
+    Config.ACCOUNT_STORE_MEMORY = true;
+    for( int i = 0; i < LoadConfig.ACCOUNTS; i++ )
+      AccountRegistration.getInstance().createAccount( "load" + i, LoadConfig.PASSWORD );
+    ServerTransport transport = StartLoginServer.newTransport();
+    transport.bind( LoadConfig.HOST, port, new LoginServerInitializer() );
+    log.info( "Login server started on " + LoadConfig.HOST + ":" + port + " with " + LoadConfig.ACCOUNTS + " accounts in memory" );
+    return transport;
+  }
+
+  /**
+   * Starts {@code rate} logins a second for {@code duration} seconds, then waits for those in progress to finish.
+   */
+  public void run( double rate, int duration, int maxConcurrent ) throws InterruptedException
+  {
+    log.info( "Starting " + rate + " logins/s for " + duration + " s, at most " + maxConcurrent + " at a time" );
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos( duration );
+    long reportInterval = TimeUnit.SECONDS.toNanos( Math.max( LoadConfig.REPORT_INTERVAL, 1 ) );
+    long nextReport = start + reportInterval;
+    long arrivals = 0;
+    for( long now = start; now < end; now = System.nanoTime() )
+    {
+      // Logins due by now, so arrivals missed while this thread was late are caught up
+      long due = (long) (rate * (now - start) / 1e9);
+      for( ; arrivals < due; arrivals++ )
+        if( stats.start( maxConcurrent ) )
+          startLogin();
+      if( now >= nextReport )
+      {
+        log.info( stats.progress() );
+        nextReport += reportInterval;
+      }
+      Thread.sleep( TICK_MILLIS );
+    }
+
+    long drainEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( LoadConfig.TIMEOUT ) * SimulatedLogin.URIS.length;
+    while( stats.getInFlight() > 0 && System.nanoTime() < drainEnd )
+      Thread.sleep( TICK_MILLIS );
+  }
+
+  public LoadStats getStats()
+  {
+    return stats;
+  }
+
+  private void startLogin()
+  {
+    String login = "load" + Math.abs( nextAccount.getAndIncrement() % Math.max( LoadConfig.ACCOUNTS, 1 ) );
+    final SimulatedLogin simulated = new SimulatedLogin( stats, crypto, login, LoadConfig.PASSWORD, pickFault(), System.nanoTime() );
+    Bootstrap b = bootstrap.clone().handler( new ChannelInitializer<Channel>()
+    {
+      @Override
+      protected void initChannel( Channel ch ) throws Exception
+      {
+        ChannelPipeline p = ch.pipeline();
+        p.addLast( "codec", new StsClientCodec() );
+        p.addLast( "aggregator", new HttpObjectAggregator( MAX_CONTENT_LENGTH ) );
+        p.addLast( "login", simulated );
+      }
+    } );
+    b.connect().addListener( new ChannelFutureListener()
+    {
+      @Override
+      public void operationComplete( ChannelFuture future ) throws Exception
+      {
+        if( !future.isSuccess() )
+          simulated.connectFailed( future.cause() );
+      }
+    } );
+  }
+
+  private static SimulatedLogin.Fault pickFault()
+  {
+    double r = ThreadLocalRandom.current().nextDouble();
+    if( (r -= LoadConfig.ERROR_UNKNOWN_LOGIN) < 0 )
+      return SimulatedLogin.Fault.UNKNOWN_LOGIN;
+    if( (r -= LoadConfig.ERROR_WRONG_PASSWORD) < 0 )
+      return SimulatedLogin.Fault.WRONG_PASSWORD;
+    if( (r -= LoadConfig.ERROR_DISCONNECT) < 0 )
+      return SimulatedLogin.Fault.DISCONNECT;
+    return SimulatedLogin.Fault.NONE;
+  }
+}
@@ -0,0 +1,142 @@
+package openbns.loadgen;
+
+import openbns.commons.metrics.Histogram;
+
+import java.util.Formatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What the simulated logins did: for each URI, and for connecting and whole logins, how long it took and how often
+ * the answer was not the expected one; and how each login ended. Updated from every client thread.
+ */
+public class LoadStats
+{
+  public static final String CONNECT = "(connect)";
+  public static final String LOGIN = "(login)";
+
+  private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos( 1 );
+
+  /**
+   * How a login ended.
+   */
+  public enum Outcome
+  {
+    /** Logged in and the server's proof checked out */
+    SUCCEEDED,
+    /** Refused as the injected error should have it */
+    REJECTED,
+    /** Closed by the client as the injected error should have it */
+    ABORTED,
+    /** Anything else: an unexpected reply, a timeout, a closed or refused connection */
+    FAILED
+  }
+
+  private final Map<String, Latency> latencies = new LinkedHashMap<>();
+  private final AtomicLong[] outcomes = new AtomicLong[ Outcome.values().length ];
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final long startTime = System.nanoTime();
+
+  public LoadStats( String... uris )
+  {
+    latencies.put( CONNECT, new Latency() );
+    for( String uri : uris )
+      latencies.put( uri, new Latency() );
+    latencies.put( LOGIN, new Latency() );
+    for( int i = 0; i < outcomes.length; i++ )
+      outcomes[ i ] = new AtomicLong();
+  }
+
+  /**
+   * @return whether a login may start, {@code false} if {@code maxConcurrent} are in progress
+   */
+  public boolean start( int maxConcurrent )
+  {
+    if( inFlight.incrementAndGet() > maxConcurrent )
+    {
+      inFlight.decrementAndGet();
+      dropped.incrementAndGet();
+      return false;
+    }
+    started.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * @param nanos the whole login, or -1 if it did not get as far as a reply
+   */
+  public void finish( Outcome outcome, long nanos )
+  {
+    inFlight.decrementAndGet();
+    outcomes[ outcome.ordinal() ].incrementAndGet();
+    if( nanos >= 0 )
+      record( LOGIN, nanos, outcome != Outcome.SUCCEEDED );
+  }
+
+  /**
+   * @param uri a request URI, {@link #CONNECT} or {@link #LOGIN}
+   * @param error whether the answer was not the one expected
+   */
+  public void record( String uri, long nanos, boolean error )
+  {
+    Latency latency = latencies.get( uri );
+    latency.histogram.record( nanos );
+    if( error )
+      latency.errors.incrementAndGet();
+  }
+
+  public int getInFlight()
+  {
+    return inFlight.get();
+  }
+
+  public long getOutcome( Outcome outcome )
+  {
+    return outcomes[ outcome.ordinal() ].get();
+  }
+
+  /**
+   * @return one line of totals so far
+   */
+  public String progress()
+  {
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    return String.format( "%6.1fs: %d started (%.0f/s), %d in progress, %d dropped, %d succeeded, %d rejected, %d aborted, %d failed",
+            seconds, started.get(), started.get() / seconds, inFlight.get(), dropped.get(), getOutcome( Outcome.SUCCEEDED ),
+            getOutcome( Outcome.REJECTED ), getOutcome( Outcome.ABORTED ), getOutcome( Outcome.FAILED ) );
+  }
+
+  /**
+   * @return a table of count, errors, throughput and latency percentiles in milliseconds per URI
+   */
+  public String report()
+  {
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    Formatter f = new Formatter();
+    f.format( "%s%n", progress() );
+    f.format( "%-18s %9s %7s %9s %9s %9s %9s %9s %9s %9s%n", "URI", "count", "errors", "per s", "mean ms", "p50", "p90", "p99", "p99.9", "max" );
+    for( Map.Entry<String, Latency> entry : latencies.entrySet() )
+    {
+      Histogram.Snapshot s = entry.getValue().histogram.snapshot();
+      f.format( "%-18s %9d %7d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", entry.getKey(), s.getCount(), entry.getValue().errors.get(),
+              s.getCount() / seconds, s.getMean() / 1e6, millis( s, 50 ), millis( s, 90 ), millis( s, 99 ), millis( s, 99.9 ), s.getMax() / 1e6 );
+    }
+    return f.toString();
+  }
+
+  private static double millis( Histogram.Snapshot snapshot, double percentile )
+  {
+    return snapshot.getValueAtPercentile( percentile ) / 1e6;
+  }
+
+  private static class Latency
+  {
+    private final Histogram histogram = new Histogram( HIGHEST_LATENCY );
+    private final AtomicLong errors = new AtomicLong();
+  }
+}
@@ -0,0 +1,332 @@
+package openbns.loadgen;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
+import openbns.commons.net.codec.sts.*;
+import openbns.loginserver.Config;
+import openbns.loginserver.net.client.dto.*;
+import openbns.loginserver.net.server.dto.ReplyKeyDataXmlCodec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One client logging in over its own connection: {@code /Sts/Connect}, {@code /Auth/LoginStart} and
+ * {@code /Auth/KeyData}, one request at a time with a think time between a reply and the next request, then the
+ * connection is closed. Records how long each reply took and how the login ended in {@link LoadStats}.
+ * <p/>
+ * The client's share of the key exchange is run on a separate executor: its modular exponentiations would otherwise
+ * hold up the replies of every other login on the same event loop and add to their latencies.
+ */
+public class SimulatedLogin extends SimpleChannelInboundHandler<FullStsResponse>
+{
+  private static final Log log = LogFactory.getLog( SimulatedLogin.class );
+
+  static final String CONNECT = "/Sts/Connect";
+  static final String LOGIN_START = "/Auth/LoginStart";
+  static final String KEY_DATA = "/Auth/KeyData";
+  static final String[] URIS = { CONNECT, LOGIN_START, KEY_DATA };
+
+  /**
+   * An error injected into a login.
+   */
+  public enum Fault
+  {
+    NONE,
+    /** Logs in to a login there is no account for */
+    UNKNOWN_LOGIN,
+    /** Proves a password other than the account's */
+    WRONG_PASSWORD,
+    /** Closes the connection right after sending one of the requests */
+    DISCONNECT
+  }
+
+  private final LoadStats stats;
+  private final String login;
+  private final String password;
+  private final Fault fault;
+  private final EventExecutorGroup crypto;
+  private final int disconnectStep;
+  private final long connectStart;
+
+  private ChannelHandlerContext ctx;
+  private int step;
+  private long loginStart;
+  private long sent;
+  private ScheduledFuture<?> timeout;
+  private boolean finished;
+  // Set on the crypto executor before the hand-back to the event loop that publishes it
+  private ClientKeyExchange exchange;
+
+  /**
+   * @param crypto       runs the client's key exchange
+   * @param connectStart {@link System#nanoTime()} when the connection was opened
+   */
+  public SimulatedLogin( LoadStats stats, EventExecutorGroup crypto, String login, String password, Fault fault, long connectStart )
+  {
+    this.stats = stats;
+    this.crypto = crypto;
+    this.login = fault == Fault.UNKNOWN_LOGIN ? "unknown" + login : login;
+    this.password = fault == Fault.WRONG_PASSWORD ? password + "-wrong" : password;
+    this.fault = fault;
+    this.connectStart = connectStart;
+    disconnectStep = ThreadLocalRandom.current().nextInt( URIS.length );
+  }
+
+  /**
+   * Counts a connection that could not be opened.
+   */
+  public void connectFailed( Throwable cause )
+  {
+    log.debug( "Connection failed", cause );
+    stats.record( LoadStats.CONNECT, System.nanoTime() - connectStart, true );
+    finish( LoadStats.Outcome.FAILED );
+  }
+
+  @Override
+  public void channelActive( ChannelHandlerContext ctx ) throws Exception
+  {
+    this.ctx = ctx;
+    loginStart = System.nanoTime();
+    stats.record( LoadStats.CONNECT, loginStart - connectStart, false );
+    send( new ConnectRequest() );
+    super.channelActive( ctx );
+  }
+
+  @Override
+  protected void channelRead0( ChannelHandlerContext ctx, FullStsResponse response ) throws Exception
+  {
+    if( finished )
+      return;
+    timeout.cancel( false );
+    long latency = System.nanoTime() - sent;
+    boolean ok = response.getStatus().code() == StsResponseStatus.OK.code();
+    switch( step )
+    {
+      case 0:
+        if( reply( latency, ok, false ) )
+          next( new LoginStartRequest() );
+        break;
+      case 1:
+        if( reply( latency, ok, fault == Fault.UNKNOWN_LOGIN ) )
+          answerKeyData( keyData( response ) );
+        break;
+      default:
+        if( reply( latency, ok && (fault == Fault.WRONG_PASSWORD || exchange.checkServerProof( keyData( response ) )), fault == Fault.WRONG_PASSWORD ) )
+          finish( LoadStats.Outcome.SUCCEEDED );
+        break;
+    }
+  }
+
+  /**
+   * Records the reply to the current request and finishes the login unless it goes on.
+   *
+   * @param ok whether the request was granted
+   * @param refusal whether the request should have been refused
+   * @return whether the login goes on
+   */
+  private boolean reply( long latency, boolean ok, boolean refusal )
+  {
+    stats.record( URIS[ step ], latency, ok == refusal );
+    if( ok == refusal )
+    {
+      log.debug( login + ": unexpected reply for " + URIS[ step ] );
+      finish( LoadStats.Outcome.FAILED );
+    }
+    else if( !ok )
+      finish( LoadStats.Outcome.REJECTED );
+    return ok && !refusal;
+  }
+
+  /**
+   * Computes the answer to the server's key data on the crypto executor and sends it from the event loop.
+   */
+  private void answerKeyData( final String serverKeyData )
+  {
+    crypto.submit( new Callable<String>()
+    {
+      @Override
+      public String call() throws Exception
+      {
+        exchange = new ClientKeyExchange( login, password, ThreadLocalRandom.current() );
+        return exchange.keyData( serverKeyData );
+      }
+    } ).addListener( new GenericFutureListener<Future<String>>()
+    {
+      @Override
+      public void operationComplete( final Future<String> future ) throws Exception
+      {
+        ctx.executor().execute( new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            if( finished )
+              return;
+            if( future.isSuccess() )
+              next( new KeyDataRequest( future.getNow() ) );
+            else
+            {
+              log.debug( login + ": key exchange failed", future.cause() );
+              finish( LoadStats.Outcome.FAILED );
+            }
+          }
+        } );
+      }
+    } );
+  }
+
+  private static String keyData( FullStsResponse response )
+  {
+    return ReplyKeyDataXmlCodec.INSTANCE.decode( response.content() ).getKeyData();
+  }
+
+  @Override
+  public void channelInactive( ChannelHandlerContext ctx ) throws Exception
+  {
+    if( !finished )
+    {
+      log.debug( login + ": connection closed at " + URIS[ step ] );
+      finish( LoadStats.Outcome.FAILED );
+    }
+    super.channelInactive( ctx );
+  }
+
+  @Override
+  public void exceptionCaught( ChannelHandlerContext ctx, Throwable cause ) throws Exception
+  {
+    log.debug( login + ": error at " + URIS[ step ], cause );
+    finish( LoadStats.Outcome.FAILED );
+  }
+
+  private void next( final Request request )
+  {
+    step++;
+    long think = LoadConfig.THINK_TIME > 0 ? (long) (-Math.log( 1 - ThreadLocalRandom.current().nextDouble() ) * LoadConfig.THINK_TIME * 1000) : 0;
+    if( think == 0 )
+    {
+      send( request );
+      return;
+    }
+    ctx.executor().schedule( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        if( !finished )
+          send( request );
+      }
+    }, think, TimeUnit.MICROSECONDS );
+  }
+
+  private void send( Request request )
+  {
+    ByteBuf content = ctx.alloc().buffer();
+    try
+    {
+      request.encode( content );
+    }
+    catch( RuntimeException e )
+    {
+      content.release();
+      throw e;
+    }
+    FullStsRequest msg = new DefaultFullStsRequest( StsVersion.STS_1_0, StsMethod.POST, URIS[ step ], content );
+    msg.headers().set( StsHeaders.Names.CONTENT_LENGTH, content.readableBytes() );
+    msg.headers().set( StsHeaders.Names.SESSION_NUMBER, step + 1 );
+    sent = System.nanoTime();
+    ctx.writeAndFlush( msg );
+    if( fault == Fault.DISCONNECT && step == disconnectStep )
+    {
+      finish( LoadStats.Outcome.ABORTED );
+      return;
+    }
+    timeout = ctx.executor().schedule( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        if( !finished )
+        {
+          log.debug( login + ": no reply for " + URIS[ step ] );
+          stats.record( URIS[ step ], System.nanoTime() - sent, true );
+          finish( LoadStats.Outcome.FAILED );
+        }
+      }
+    }, LoadConfig.TIMEOUT, TimeUnit.MILLISECONDS );
+  }
+
+  private void finish( LoadStats.Outcome outcome )
+  {
+    if( finished )
+      return;
+    finished = true;
+    if( timeout != null )
+      timeout.cancel( false );
+    stats.finish( outcome, ctx != null && outcome != LoadStats.Outcome.ABORTED ? System.nanoTime() - loginStart : -1 );
+    if( ctx != null )
+      ctx.close();
+  }
+
+  /**
+   * A request body.
+   */
+  private interface Request
+  {
+    void encode( ByteBuf content );
+  }
+
+  private static class ConnectRequest implements Request
+  {
+    @Override
+    public void encode( ByteBuf content )
+    {
+      ConnectDTO connect = new ConnectDTO();
+      connect.setConnType( 400 );
+      connect.setAddress( "127.0.0.1" );
+      connect.setAppIndex( 1 );
+      connect.setEpoch( System.currentTimeMillis() / 1000 );
+      connect.setProgram( 2 );
+      connect.setBuild( 3061 );
+      connect.setProcess( 3296 );
+      ConnectDTOXmlCodec.INSTANCE.encode( connect, content );
+    }
+  }
+
+  private class LoginStartRequest implements Request
+  {
+    @Override
+    public void encode( ByteBuf content )
+    {
+      LoginStartDTO loginStart = new LoginStartDTO();
+      loginStart.setLoginName( login + Config.LOGIN_POSTFIX );
+      LoginStartDTOXmlCodec.INSTANCE.encode( loginStart, content );
+    }
+  }
+
+  private static class KeyDataRequest implements Request
+  {
+    private final String keyData;
+
+    private KeyDataRequest( String keyData )
+    {
+      this.keyData = keyData;
+    }
+
+    @Override
+    public void encode( ByteBuf content )
+    {
+      KeyDataDTO keyDataDTO = new KeyDataDTO();
+      keyDataDTO.setKeyData( keyData );
+      KeyDataDTOXmlCodec.INSTANCE.encode( keyDataDTO, content );
+    }
+  }
+}
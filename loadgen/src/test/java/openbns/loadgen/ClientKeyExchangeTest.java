@@ -0,0 +1,66 @@
+package openbns.loadgen;
+
+import openbns.loginserver.Config;
+import openbns.loginserver.crypt.HashHelper;
+import openbns.loginserver.model.Account;
+import openbns.loginserver.net.Session;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static openbns.commons.util.CryptUtil.*;
+
+/**
+ * Runs {@link ClientKeyExchange} against the server's {@link Session}: with the right password the client's proof is
+ * the one the server computes and the server's proof checks out, with a wrong one neither does.
+ */
+public class ClientKeyExchangeTest
+{
+  public static void main( String[] args ) throws Exception
+  {
+    Config.LOGIN_POSTFIX = "@plaync.co.kr";
+    Random random = new Random( 42 );
+    for( int round = 0; round < 20; round++ )
+    {
+      check( exchange( "someone", "secret", random ), "right password, round " + round );
+      check( !exchange( "someone", "wrong", random ), "wrong password, round " + round );
+    }
+    System.out.println( "Client key exchange OK" );
+  }
+
+  private static boolean exchange( String login, String password, Random random ) throws Exception
+  {
+    Account account = new Account();
+    account.setLogin( login );
+    account.setPassword( HashHelper.passwordHash( login, "secret" ) );
+    Session session = new Session();
+    session.init();
+    session.setAccount( account );
+
+    // As /Auth/LoginStart replies
+    byte[] sessionKey = bigIntegerToByteArray( session.getSessionKey() );
+    byte[] serverExchangeKey = bigIntegerToByteArray( session.generateServerExchangeKey() );
+    ByteBuffer reply = ByteBuffer.allocate( sessionKey.length + serverExchangeKey.length + 8 ).order( ByteOrder.LITTLE_ENDIAN );
+    reply.putInt( sessionKey.length ).put( sessionKey ).putInt( serverExchangeKey.length ).put( serverExchangeKey );
+
+    ClientKeyExchange client = new ClientKeyExchange( login, password, random );
+    ByteBuffer keyData = ByteBuffer.wrap( base64( client.keyData( base64( reply.array() ) ) ) ).order( ByteOrder.LITTLE_ENDIAN );
+    byte[] exchangeKey = new byte[ keyData.getInt() ];
+    keyData.get( exchangeKey );
+    byte[] proof = new byte[ keyData.getInt() ];
+    keyData.get( proof );
+
+    // As /Auth/KeyData checks and replies
+    byte[][] result = session.generateServerKey( exchangeKey );
+    boolean matches = new String( proof ).equals( base64( result[ 0 ] ) );
+    check( matches == client.checkServerProof( base64( result[ 1 ] ) ), "server proof checked as the client's" );
+    return matches;
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
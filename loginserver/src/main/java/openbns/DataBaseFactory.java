@@ -1,5 +1,9 @@
 package openbns;
 
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.commons.dbcp.BasicDataSourceFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -19,8 +23,10 @@ import java.util.Properties;
 public class DataBaseFactory
 {
   private static final Log log = LogFactory.getLog( DataBaseFactory.class );
+  private static final int DEFAULT_EXECUTOR_THREADS = 8;
   private static DataBaseFactory ourInstance = new DataBaseFactory();
   private DataSource dataSource;
+  private EventExecutorGroup executor;
 
   public static DataBaseFactory getInstance()
   {
@@ -35,6 +41,12 @@ public class DataBaseFactory
       properties.load( is );
       dataSource = BasicDataSourceFactory.createDataSource( properties );
       log.info( "DataSource initialized successfully" );
+
+      // One thread per pooled connection: more would only wait for a connection, fewer would leave some idle
+      int threads = dataSource instanceof BasicDataSource ? ((BasicDataSource) dataSource).getMaxActive() : DEFAULT_EXECUTOR_THREADS;
+      if( threads <= 0 )
+        threads = DEFAULT_EXECUTOR_THREADS;
+      executor = new DefaultEventExecutorGroup( threads, new DefaultThreadFactory( "jdbc", true ) );
     }
     catch( Exception e )
     {
@@ -47,4 +59,12 @@ public class DataBaseFactory
   {
     return dataSource.getConnection();
   }
+
+  /**
+   * @return executor for JDBC work, sized to the connection pool
+   */
+  public EventExecutorGroup getExecutor()
+  {
+    return executor;
+  }
 }
@@ -1,17 +1,21 @@
 package openbns;
 
-import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import openbns.commons.net.ServerTransport;
 import openbns.loginserver.Config;
+import openbns.loginserver.crypt.KeyManager;
+import openbns.loginserver.dao.LoginFilter;
+import openbns.loginserver.crypt.SessionKeyPool;
 import openbns.loginserver.net.LoginServerInitializer;
+import openbns.loginserver.net.RequestExecutor;
+import openbns.loginserver.net.ServerBufferPool;
+import openbns.loginserver.net.ServerMetrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
+import java.sql.SQLException;
 
 /**
  * Created with IntelliJ IDEA.
@@ -23,29 +27,51 @@ public class StartLoginServer
 {
   private static final Log log = LogFactory.getLog( StartLoginServer.class );
 
-  public static void main( String[] args ) throws IOException, InterruptedException
+  public static void main( String[] args ) throws IOException, InterruptedException, SQLException
   {
     log.info( "Start loading login server" );
     Config.load();
-    DataBaseFactory.getInstance();
-
-    EventLoopGroup bossGroup = new NioEventLoopGroup();
-    EventLoopGroup workerGroup = new NioEventLoopGroup();
+    if( Config.ACCOUNT_STORE_MEMORY )
+      log.info( "Accounts are kept in memory, no database is used" );
+    else
+    {
+      DataBaseFactory.getInstance();
+      LoginFilter.getInstance().start();
+    }
+    KeyManager.getInstance();
+    SessionKeyPool.getInstance();
+    RequestExecutor.getInstance();
+    ServerMetrics.getInstance().registerServer( RequestExecutor.getInstance(), ServerBufferPool.getInstance() );
 
+    ServerTransport transport = newTransport();
     try
     {
-      ServerBootstrap b = new ServerBootstrap();
-      b.option( ChannelOption.SO_BACKLOG, 1024 );
-      b.group( bossGroup, workerGroup ).channel( NioServerSocketChannel.class ).childHandler( new LoginServerInitializer() );
-
       log.info( "Start listening clients on " + Config.LS_HOST + ":" + Config.LS_PORT );
-      Channel ch = b.bind( Config.LS_HOST, Config.LS_PORT ).sync().channel();
+      Channel ch = transport.bind( Config.LS_HOST, Config.LS_PORT, new LoginServerInitializer() );
       ch.closeFuture().sync();
     }
     finally
     {
-      bossGroup.shutdownGracefully();
-      workerGroup.shutdownGracefully();
+      transport.shutdown();
+      RequestExecutor.getInstance().shutdown();
+      log.info( ServerBufferPool.getInstance() );
     }
   }
-}
+
+  /**
+   * @return the transport clients connect through, configured from {@link Config}
+   */
+  public static ServerTransport newTransport()
+  {
+    ServerTransport transport = new ServerTransport( Config.NET_WORKER_THREADS );
+    transport.option( ChannelOption.SO_BACKLOG, Config.NET_BACKLOG );
+    transport.option( ChannelOption.ALLOCATOR, ServerBufferPool.getInstance().getAllocator() );
+    transport.childOption( ChannelOption.ALLOCATOR, ServerBufferPool.getInstance().getAllocator() );
+    transport.childOption( ChannelOption.TCP_NODELAY, Config.NET_TCP_NODELAY );
+    if( Config.NET_SEND_BUFFER > 0 )
+      transport.childOption( ChannelOption.SO_SNDBUF, Config.NET_SEND_BUFFER );
+    if( Config.NET_RECEIVE_BUFFER > 0 )
+      transport.childOption( ChannelOption.SO_RCVBUF, Config.NET_RECEIVE_BUFFER );
+    return transport;
+  }
+}
\ No newline at end of file
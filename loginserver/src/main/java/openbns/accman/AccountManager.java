@@ -53,6 +53,11 @@ public class AccountManager
     String password = scanner.nextLine();
 
     Account account = registrationService.createAccount( login, password );
+    if( account == null )
+    {
+      System.out.println( "Account could not be created, see the log" );
+      return;
+    }
 
     System.out.println( "Congratulation! Account created!" );
     System.out.println( account );
@@ -17,8 +17,45 @@ public class Config
   public static String LS_HOST;
   public static int LS_PORT;
 
+  public static int NET_WORKER_THREADS;
+  public static int NET_BACKLOG;
+  public static boolean NET_TCP_NODELAY;
+  public static int NET_SEND_BUFFER;
+  public static int NET_RECEIVE_BUFFER;
+
+  public static boolean BUFFER_POOL_DIRECT;
+  public static int BUFFER_POOL_HEAP_ARENAS;
+  public static int BUFFER_POOL_DIRECT_ARENAS;
+  public static int BUFFER_POOL_PAGE_SIZE;
+  public static int BUFFER_POOL_CHUNK_SIZE;
+
   public static String LOGIN_POSTFIX;
 
+  public static String STS_DECODER;
+  public static boolean STS_SLICE_CONTENT;
+  public static boolean STS_COMPACT_HEADERS;
+  public static int STS_MAX_CONTENT_LENGTH;
+
+  public static int SESSION_KEY_POOL_SIZE;
+  public static int SESSION_KEY_POOL_THREADS;
+
+  public static int EXECUTOR_CPU_THREADS;
+  public static int EXECUTOR_BLOCKING_THREADS;
+  public static int EXECUTOR_QUEUE_MAX;
+  public static int EXECUTOR_IN_FLIGHT_MAX;
+
+  public static boolean ACCOUNT_STORE_MEMORY;
+  public static int ACCOUNT_CACHE_SIZE;
+  public static int ACCOUNT_CACHE_TTL;
+  public static int ACCOUNT_CACHE_NEGATIVE_TTL;
+
+  public static double LOGIN_FILTER_FPP;
+  public static int LOGIN_FILTER_REFRESH;
+  public static int LOGIN_FILTER_REBUILD;
+
+  public static boolean METRICS_JMX;
+  public static String[] METRICS_STATS_ALLOW;
+
   public static void load() throws IOException
   {
     loadServerProperties();
@@ -32,8 +69,46 @@ public class Config
     LS_HOST = properties.getProperty( "loginserver.host", "127.0.0.1" );
     LS_PORT = properties.getProperty( "loginserver.port", 6600 );
 
+    NET_WORKER_THREADS = properties.getProperty( "net.worker.threads", 0 );
+    NET_BACKLOG = properties.getProperty( "net.backlog", 1024 );
+    NET_TCP_NODELAY = properties.getProperty( "net.tcpNoDelay", true );
+    NET_SEND_BUFFER = properties.getProperty( "net.sendBuffer", 0 );
+    NET_RECEIVE_BUFFER = properties.getProperty( "net.receiveBuffer", 0 );
+
+    BUFFER_POOL_DIRECT = properties.getProperty( "buffer.pool.direct", true );
+    BUFFER_POOL_HEAP_ARENAS = properties.getProperty( "buffer.pool.heapArenas", Runtime.getRuntime().availableProcessors() );
+    BUFFER_POOL_DIRECT_ARENAS = properties.getProperty( "buffer.pool.directArenas", Runtime.getRuntime().availableProcessors() );
+    BUFFER_POOL_PAGE_SIZE = properties.getProperty( "buffer.pool.pageSize", 8192 );
+    BUFFER_POOL_CHUNK_SIZE = properties.getProperty( "buffer.pool.chunkSize", 2097152 );
+
     LOGIN_POSTFIX = properties.getProperty( "login.postfix", "@plaync.co.kr" );
 
+    STS_DECODER = properties.getProperty( "sts.decoder", "incremental" );
+    STS_SLICE_CONTENT = properties.getProperty( "sts.sliceContent", false );
+    STS_COMPACT_HEADERS = properties.getProperty( "sts.compactHeaders", false );
+    STS_MAX_CONTENT_LENGTH = properties.getProperty( "sts.maxContentLength", 16384 );
+
+    SESSION_KEY_POOL_SIZE = properties.getProperty( "session.keyPool.size", 1024 );
+    SESSION_KEY_POOL_THREADS = properties.getProperty( "session.keyPool.threads", 1 );
+
+    EXECUTOR_CPU_THREADS = properties.getProperty( "executor.cpu.threads", Runtime.getRuntime().availableProcessors() );
+    EXECUTOR_BLOCKING_THREADS = properties.getProperty( "executor.blocking.threads", 32 );
+    EXECUTOR_QUEUE_MAX = properties.getProperty( "executor.queue.max", 4096 );
+    EXECUTOR_IN_FLIGHT_MAX = properties.getProperty( "executor.inFlight.max", 16 );
+
+    ACCOUNT_STORE_MEMORY = "memory".equals( properties.getProperty( "account.store", "db" ) );
+    ACCOUNT_CACHE_SIZE = properties.getProperty( "account.cache.size", 100000 );
+    ACCOUNT_CACHE_TTL = properties.getProperty( "account.cache.ttl", 300 );
+    ACCOUNT_CACHE_NEGATIVE_TTL = properties.getProperty( "account.cache.negativeTtl", 10 );
+
+    LOGIN_FILTER_FPP = properties.getProperty( "login.filter.fpp", 0.001 );
+    LOGIN_FILTER_REFRESH = properties.getProperty( "login.filter.refresh", 30 );
+    LOGIN_FILTER_REBUILD = properties.getProperty( "login.filter.rebuild", 60 );
+
+    METRICS_JMX = properties.getProperty( "metrics.jmx", true );
+    String statsAllow = properties.getProperty( "metrics.stats.allow", "" ).trim();
+    METRICS_STATS_ALLOW = statsAllow.isEmpty() ? new String[ 0 ] : statsAllow.split( "\\s*,\\s*" );
+
     properties.clear();
     is.close();
   }
@@ -0,0 +1,101 @@
+package openbns.loginserver.crypt;
+
+import java.math.BigInteger;
+
+/**
+ * Computes {@code base^x mod modulus} for a fixed base and modulus using precomputed window tables
+ * (fixed-base windowing): the exponent is cut into {@code windowBits}-wide digits and every non-zero digit
+ * costs one modular multiplication by a table entry, with no squarings at all.
+ * <p/>
+ * The table holds {@code base^(d * 2^(i * windowBits)) mod modulus} for every digit {@code d} and window
+ * {@code i} up to {@code maxExponentBits}, so it is built once and shared; products are reduced with
+ * {@link BarrettReducer}. Exponents that are negative or wider than the table fall back to
+ * {@link BigInteger#modPow}. Results are identical to {@code base.modPow( x, modulus )}.
+ */
+public class FixedBaseModPow
+{
+  private final BigInteger base;
+  private final BigInteger modulus;
+  private final BarrettReducer reducer;
+  private final int windowBits;
+  private final int maxExponentBits;
+  private final BigInteger[][] table;
+
+  public FixedBaseModPow( BigInteger base, BigInteger modulus, int windowBits, int maxExponentBits )
+  {
+    if( modulus.signum() <= 0 )
+      throw new ArithmeticException( "modulus not positive" );
+    if( windowBits < 1 || windowBits > 16 )
+      throw new IllegalArgumentException( "windowBits must be in [1, 16]: " + windowBits );
+    if( maxExponentBits < 1 )
+      throw new IllegalArgumentException( "maxExponentBits must be positive: " + maxExponentBits );
+
+    this.base = base;
+    this.modulus = modulus;
+    reducer = new BarrettReducer( modulus );
+    this.windowBits = windowBits;
+    this.maxExponentBits = maxExponentBits;
+
+    int windows = (maxExponentBits + windowBits - 1) / windowBits;
+    int digits = (1 << windowBits) - 1;
+    table = new BigInteger[ windows ][ digits ];
+
+    BigInteger windowBase = base.mod( modulus );
+    for( int i = 0; i < windows; i++ )
+    {
+      BigInteger[] row = table[ i ];
+      row[ 0 ] = windowBase;
+      for( int d = 1; d < digits; d++ )
+        row[ d ] = reducer.multiply( row[ d - 1 ], windowBase );
+
+      // base^(2^((i + 1) * windowBits)) = base^((2^windowBits - 1) * 2^(i * windowBits)) * base^(2^(i * windowBits))
+      windowBase = reducer.multiply( row[ digits - 1 ], windowBase );
+    }
+  }
+
+  public BigInteger pow( BigInteger exponent )
+  {
+    if( exponent.signum() < 0 || exponent.bitLength() > maxExponentBits )
+      return base.modPow( exponent, modulus );
+
+    BigInteger result = null;
+    int bitLength = exponent.bitLength();
+    for( int i = 0, bit = 0; bit < bitLength; i++, bit += windowBits )
+    {
+      int digit = 0;
+      for( int b = Math.min( windowBits, bitLength - bit ) - 1; b >= 0; b-- )
+      {
+        digit <<= 1;
+        if( exponent.testBit( bit + b ) )
+          digit |= 1;
+      }
+
+      if( digit != 0 )
+      {
+        BigInteger entry = table[ i ][ digit - 1 ];
+        result = result == null ? entry : reducer.multiply( result, entry );
+      }
+    }
+    return result == null ? BigInteger.ONE.mod( modulus ) : result;
+  }
+
+  public BigInteger getBase()
+  {
+    return base;
+  }
+
+  public BigInteger getModulus()
+  {
+    return modulus;
+  }
+
+  public int getWindowBits()
+  {
+    return windowBits;
+  }
+
+  public int getMaxExponentBits()
+  {
+    return maxExponentBits;
+  }
+}
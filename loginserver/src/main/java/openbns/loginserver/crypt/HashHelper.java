@@ -1,8 +1,8 @@
 package openbns.loginserver.crypt;
 
+import openbns.commons.util.CryptUtil;
 import openbns.loginserver.Config;
 
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
@@ -15,17 +15,11 @@ public class HashHelper
 {
   public static byte[] loginHash( String login ) throws NoSuchAlgorithmException
   {
-    login = login + Config.LOGIN_POSTFIX;
-    MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
-    digest.update( login.getBytes() );
-    return digest.digest();
+    return CryptUtil.sha256bytes( (login + Config.LOGIN_POSTFIX).getBytes() );
   }
 
   public static byte[] passwordHash( String login, String password ) throws NoSuchAlgorithmException
   {
-    String full_name = String.format( "%s%s:%s", login, Config.LOGIN_POSTFIX, password );
-    MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
-    digest.update( full_name.getBytes() );
-    return digest.digest();
+    return CryptUtil.sha256bytes( (login + Config.LOGIN_POSTFIX + ':' + password).getBytes() );
   }
 }
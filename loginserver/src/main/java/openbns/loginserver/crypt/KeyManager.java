@@ -2,11 +2,10 @@ package openbns.loginserver.crypt;
 
 import openbns.commons.util.CryptUtil;
 
-import java.io.*;
+import java.io.IOException;
 import java.math.BigInteger;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
+import java.security.SecureRandom;
 
 /**
  * Created with IntelliJ IDEA.
@@ -23,6 +22,16 @@ public class KeyManager
   public static final BigInteger P = new BigInteger( "7A39FF57BCBFAA521DCE9C7DEFAB520640AC493E1B6024B95A28390E8F05787D", 16 );
   public static final byte[] STATIC_KEY = { (byte) 0xAC, (byte) 0x34, (byte) 0xF3, (byte) 0x07, (byte) 0x0D, (byte) 0xC0, (byte) 0xE5, (byte) 0x23, (byte) 0x02, (byte) 0xC2, (byte) 0xE8, (byte) 0xDA, (byte) 0x0E, (byte) 0x3F, (byte) 0x7B, (byte) 0x3E, (byte) 0x63, (byte) 0x22, (byte) 0x36, (byte) 0x97, (byte) 0x55, (byte) 0x5D, (byte) 0xF5, (byte) 0x4E, (byte) 0x71, (byte) 0x22, (byte) 0xA1, (byte) 0x4D, (byte) 0xBC, (byte) 0x99, (byte) 0xA3, (byte) 0xE8 };
 
+  public static final BigInteger G = BigInteger.valueOf( 2 );
+
+  /**
+   * Private keys and password keys are SHA-256 values and {@link #dualPow} raises {@link #G} to a product of two
+   * of them, so 512 bits covers every exponent used with {@link #G}.
+   */
+  private static final int EXPONENT_BITS = 512;
+  private static final int WINDOW_BITS = 8;
+  private static final int PRIVATE_KEY_BITS = 256;
+
   private static KeyManager ourInstance = new KeyManager();
 
   public static KeyManager getInstance()
@@ -30,60 +39,54 @@ public class KeyManager
     return ourInstance;
   }
 
+  private final FixedBaseModPow generator;
+  private final SecureRandom random = new SecureRandom();
+
   private KeyManager()
   {
+    generator = new FixedBaseModPow( G, N, WINDOW_BITS, EXPONENT_BITS );
   }
 
-  public BigInteger generatePrivateKey() throws NoSuchAlgorithmException
+  /**
+   * @return {@code 2^exponent mod N}, same as {@code G.modPow( exponent, N )}
+   */
+  public BigInteger powG( BigInteger exponent )
   {
-    long time = System.currentTimeMillis();
-    long ticks = 621355968000000000L + time * 10000;
-    String s_time = String.valueOf( ticks );
-    byte[] b_time = s_time.getBytes();
+    return generator.pow( exponent );
+  }
 
-    return new BigInteger( CryptUtil.sha256( b_time ), 16 );
+  /**
+   * @return a random private key, the same size as the SHA-256 values it is combined with
+   */
+  public BigInteger generatePrivateKey()
+  {
+    return new BigInteger( PRIVATE_KEY_BITS, random );
   }
 
   public BigInteger generateExchangeKey( BigInteger privateKey )
   {
-    BigInteger k = new BigInteger( "2" );
-    return k.modPow( privateKey, N );
+    return powG( privateKey );
   }
 
-  public BigInteger generateAIIKey( byte[] tmp1, byte[] tmp2 ) throws NoSuchAlgorithmException, IOException
+  /**
+   * Computes {@code exchangeKey^e * b^privateKey mod N} where {@code exchangeKey = 2^privateKey mod N}.
+   * <p/>
+   * Both factors share the exponent {@code privateKey}, so the product equals {@code (2^e * b)^privateKey mod N}:
+   * one fixed-base lookup and a single exponentiation with the short private key instead of two full ones.
+   */
+  public BigInteger dualPow( BigInteger privateKey, BigInteger e, BigInteger b )
   {
-    byte[] sharedArray = new byte[ tmp1.length + tmp2.length ];
-
-    System.arraycopy( tmp1, 0, sharedArray, 0, tmp1.length );
-    System.arraycopy( tmp2, 0, sharedArray, tmp1.length, tmp2.length );
-
-    MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
-    digest.update( sharedArray );
-
-    byte[] hash = digest.digest();
-    byte[] reversed = reverseIntegerArray( hash );
-    String k = CryptUtil.hexToString( reversed );
-
-    return new BigInteger( k, 16 );
+    return powG( e ).multiply( b ).mod( N ).modPow( privateKey, N );
   }
 
-  private byte[] reverseIntegerArray( byte[] array ) throws IOException
+  /**
+   * @return SHA-256 of {@code tmp1} followed by {@code tmp2}, each 4-byte word reversed, as a positive number
+   */
+  public BigInteger generateAIIKey( byte[] tmp1, byte[] tmp2 ) throws NoSuchAlgorithmException, IOException
   {
-    ByteArrayOutputStream bos = new ByteArrayOutputStream( array.length );
-    DataOutputStream dos = new DataOutputStream( bos );
-    DataInputStream dis = new DataInputStream( new ByteArrayInputStream( array ) );
-
-    while( dis.available() > 0 )
-    {
-      int i = dis.readInt();
-      dos.writeInt( Integer.reverseBytes( i ) );
-    }
-
-    dis.close();
-    dos.close();
-    bos.close();
-
-    return bos.toByteArray();
+    byte[] hash = CryptUtil.sha256bytes( tmp1, tmp2 );
+    CryptUtil.reverseInts( hash );
+    return new BigInteger( 1, hash );
   }
 
   public byte[] generateEncryptionKeyRoot( byte[] src ) throws NoSuchAlgorithmException
@@ -114,7 +117,7 @@ public class KeyManager
         index -= 2;
       }
     }
-    byte[] hash = CryptUtil.sha256bytes( Arrays.copyOfRange( half, 0, size ) );
+    byte[] hash = CryptUtil.sha256bytes( half );
     for( int i = 0; i < 32; i++ )
     {
       dst[ 2 * i ] = hash[ i ];
@@ -128,7 +131,7 @@ public class KeyManager
         index -= 2;
       }
     }
-    hash = CryptUtil.sha256bytes( Arrays.copyOfRange( half, 0, size ) );
+    hash = CryptUtil.sha256bytes( half );
     for( int i = 0; i < 32; i++ )
     {
       dst[ 2 * i + 1 ] = hash[ i ];
@@ -0,0 +1,161 @@
+package openbns.loginserver.crypt;
+
+import openbns.loginserver.Config;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded pool of ready-made {@link SessionKeys}, kept filled by background threads so that accepting a connection
+ * does not run an exponentiation or block on {@link SecureRandom#generateSeed} on the I/O thread.
+ * <p/>
+ * {@link #take()} never waits: when the pool is empty the keys are generated inline and counted as a miss.
+ */
+public class SessionKeyPool
+{
+  private static final Log log = LogFactory.getLog( SessionKeyPool.class );
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+  private static SessionKeyPool ourInstance = new SessionKeyPool( Config.SESSION_KEY_POOL_SIZE, Config.SESSION_KEY_POOL_THREADS );
+
+  public static SessionKeyPool getInstance()
+  {
+    return ourInstance;
+  }
+
+  private final KeyManager keyManager = KeyManager.getInstance();
+  private final SecureRandom rnd = new SecureRandom();
+
+  private final Queue<SessionKeys> pool = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger depth = new AtomicInteger();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final int capacity;
+  private final int refillThreshold;
+  private final Thread[] fillers;
+  private volatile boolean running = true;
+
+  SessionKeyPool( int capacity, int threads )
+  {
+    this.capacity = Math.max( capacity, 0 );
+    refillThreshold = this.capacity - this.capacity / 4;
+    fillers = new Thread[ this.capacity > 0 ? Math.max( threads, 0 ) : 0 ];
+    for( int i = 0; i < fillers.length; i++ )
+    {
+      Thread thread = new Thread( new Filler(), "SessionKeyPool-" + (i + 1) );
+      thread.setDaemon( true );
+      thread.setPriority( Thread.NORM_PRIORITY - 1 );
+      fillers[ i ] = thread;
+      thread.start();
+    }
+    log.info( "Session key pool: capacity " + this.capacity + ", " + fillers.length + " filler thread(s)" );
+  }
+
+  /**
+   * Takes pre-generated keys from the pool, or generates them on the calling thread if the pool is empty.
+   */
+  public SessionKeys take()
+  {
+    SessionKeys keys = pool.poll();
+    if( keys == null )
+    {
+      misses.incrementAndGet();
+      return generate();
+    }
+
+    hits.incrementAndGet();
+    if( depth.decrementAndGet() == refillThreshold - 1 )
+      wakeFillers();
+    return keys;
+  }
+
+  public SessionKeys generate()
+  {
+    BigInteger privateKey = keyManager.generatePrivateKey();
+    BigInteger exchangeKey = keyManager.generateExchangeKey( privateKey );
+    BigInteger sessionKey = new BigInteger( 1, rnd.generateSeed( 8 ) );
+    return new SessionKeys( privateKey, exchangeKey, sessionKey );
+  }
+
+  public void shutdown()
+  {
+    running = false;
+    wakeFillers();
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  /**
+   * @return keys in the pool, including ones being generated right now
+   */
+  public int getDepth()
+  {
+    return depth.get();
+  }
+
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  private void wakeFillers()
+  {
+    for( Thread filler : fillers )
+      LockSupport.unpark( filler );
+  }
+
+  private boolean reserve()
+  {
+    for( ; ; )
+    {
+      int current = depth.get();
+      if( current >= capacity )
+        return false;
+      if( depth.compareAndSet( current, current + 1 ) )
+        return true;
+    }
+  }
+
+  private class Filler implements Runnable
+  {
+    @Override
+    public void run()
+    {
+      while( running )
+      {
+        if( !reserve() )
+        {
+          LockSupport.parkNanos( this, IDLE_PARK_NANOS );
+          continue;
+        }
+
+        try
+        {
+          pool.offer( generate() );
+        }
+        catch( RuntimeException e )
+        {
+          depth.decrementAndGet();
+          log.error( "Cannot generate session keys", e );
+          LockSupport.parkNanos( this, IDLE_PARK_NANOS );
+        }
+      }
+    }
+  }
+}
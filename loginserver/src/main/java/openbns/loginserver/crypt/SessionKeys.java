@@ -0,0 +1,36 @@
+package openbns.loginserver.crypt;
+
+import java.math.BigInteger;
+
+/**
+ * Key material a {@link openbns.loginserver.net.Session} starts with: a private key, the matching exchange key
+ * {@code 2^privateKey mod N} and a random session key.
+ */
+public class SessionKeys
+{
+  private final BigInteger privateKey;
+  private final BigInteger exchangeKey;
+  private final BigInteger sessionKey;
+
+  public SessionKeys( BigInteger privateKey, BigInteger exchangeKey, BigInteger sessionKey )
+  {
+    this.privateKey = privateKey;
+    this.exchangeKey = exchangeKey;
+    this.sessionKey = sessionKey;
+  }
+
+  public BigInteger getPrivateKey()
+  {
+    return privateKey;
+  }
+
+  public BigInteger getExchangeKey()
+  {
+    return exchangeKey;
+  }
+
+  public BigInteger getSessionKey()
+  {
+    return sessionKey;
+  }
+}
@@ -0,0 +1,295 @@
+package openbns.loginserver.dao;
+
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import openbns.loginserver.Config;
+import openbns.loginserver.model.Account;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches {@link AccountStore} lookups by normalized login: found accounts for {@code ttl}, unknown logins for the
+ * shorter {@code negativeTtl}. Concurrent lookups of the same login share one query.
+ * <p/>
+ * Accounts inserted through {@link #insert} are cached right away. Changes made elsewhere need an explicit
+ * {@link #invalidate}; until then they show up once the entry expires. {@link LoginFilter} drops the negative entries
+ * when it finds accounts created by another process. The cache holds at most {@code maxSize}
+ * entries and evicts the ones closest to expiry first.
+ */
+public class AccountCache
+{
+  private static final Log log = LogFactory.getLog( AccountCache.class );
+  private static final int EVICTION_SAMPLE = 16;
+
+  private static AccountCache ourInstance = new AccountCache( newStore(), Config.ACCOUNT_CACHE_SIZE, Config.ACCOUNT_CACHE_TTL * 1000L, Config.ACCOUNT_CACHE_NEGATIVE_TTL * 1000L );
+
+  public static AccountCache getInstance()
+  {
+    return ourInstance;
+  }
+
+  private final AccountStore store;
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Future<Account>> loading = new ConcurrentHashMap<>();
+  private final int maxSize;
+  private final long ttl;
+  private final long negativeTtl;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong negativeHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  AccountCache( AccountStore store, int maxSize, long ttl, long negativeTtl )
+  {
+    this.store = store;
+    this.maxSize = Math.max( maxSize, 0 );
+    this.ttl = ttl;
+    this.negativeTtl = negativeTtl;
+    log.info( "Account cache: " + this.maxSize + " entries, ttl " + ttl + " ms, negative ttl " + negativeTtl + " ms, store " + store.getClass().getSimpleName() );
+  }
+
+  private static AccountStore newStore()
+  {
+    if( Config.ACCOUNT_STORE_MEMORY )
+      return new MemoryAccountStore();
+    return AccountDAO.getInstance();
+  }
+
+  /**
+   * Same as {@link AccountStore#getByLoginAsync}, answered from the cache when possible. Futures for cached logins
+   * are already complete and notify listeners on the calling thread.
+   */
+  public Future<Account> getByLoginAsync( String login )
+  {
+    final String key = normalize( login );
+    Entry entry = getCached( key );
+    if( entry != null )
+      return ImmediateEventExecutor.INSTANCE.newSucceededFuture( entry.account );
+
+    Future<Account> future = loading.get( key );
+    if( future != null )
+      return future;
+
+    // Registered before the query starts, so only the lookup that registers it queries
+    final Promise<Account> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+    Future<Account> existing = loading.putIfAbsent( key, promise );
+    if( existing != null )
+      return existing;
+
+    try
+    {
+      store.getByLoginAsync( login ).addListener( new FutureListener<Account>()
+      {
+        @Override
+        public void operationComplete( Future<Account> future ) throws Exception
+        {
+          // Skip the result if insert() or invalidate() ran meanwhile
+          if( loading.remove( key, promise ) && future.isSuccess() )
+            cache( key, future.getNow() );
+          if( future.isSuccess() )
+            promise.setSuccess( future.getNow() );
+          else
+            promise.setFailure( future.cause() );
+        }
+      } );
+    }
+    catch( RuntimeException e )
+    {
+      loading.remove( key, promise );
+      promise.setFailure( e );
+    }
+    return promise;
+  }
+
+  /**
+   * Inserts the account and caches it, replacing a negative entry for its login. Nothing is cached if the insert
+   * failed.
+   *
+   * @return the account, or {@code null} if it could not be inserted
+   */
+  public Account insert( Account account )
+  {
+    Account inserted = store.insert( account );
+    if( inserted == null )
+      return null;
+    String key = normalize( inserted.getLogin() );
+    loading.remove( key );
+    cache( key, inserted );
+    return inserted;
+  }
+
+  public void invalidate( String login )
+  {
+    String key = normalize( login );
+    loading.remove( key );
+    entries.remove( key );
+  }
+
+  /**
+   * Drops the negative entries and lookups in flight, once accounts may have been created elsewhere.
+   */
+  public void invalidateNegative()
+  {
+    loading.clear();
+    Iterator<Entry> it = entries.values().iterator();
+    while( it.hasNext() )
+    {
+      if( it.next().account == null )
+        it.remove();
+    }
+  }
+
+  public void invalidateAll()
+  {
+    loading.clear();
+    entries.clear();
+  }
+
+  /**
+   * Lookup key for a login: the postfix is dropped like {@link AccountDAO} does, and case is folded because the
+   * {@code login} column compares case-insensitively.
+   */
+  static String normalize( String login )
+  {
+    int at = login.indexOf( '@' );
+    return (at < 0 ? login : login.substring( 0, at )).toLowerCase( Locale.ROOT );
+  }
+
+  /**
+   * @return the live entry for {@code key}, or {@code null} on a miss
+   */
+  Entry getCached( String key )
+  {
+    Entry entry = entries.get( key );
+    if( entry != null && entry.expiresAt - System.currentTimeMillis() > 0 )
+    {
+      if( entry.account != null )
+        hits.incrementAndGet();
+      else
+        negativeHits.incrementAndGet();
+      return entry;
+    }
+
+    if( entry != null )
+      entries.remove( key, entry );
+    misses.incrementAndGet();
+    return null;
+  }
+
+  void cache( String key, Account account )
+  {
+    if( maxSize == 0 )
+      return;
+    long now = System.currentTimeMillis();
+    entries.put( key, new Entry( account, now + (account != null ? ttl : negativeTtl) ) );
+    if( entries.size() > maxSize )
+      evict( now );
+  }
+
+  private void evict( long now )
+  {
+    while( entries.size() > maxSize )
+    {
+      Map.Entry<String, Entry> oldest = null;
+      Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+      for( int i = 0; i < EVICTION_SAMPLE && it.hasNext(); i++ )
+      {
+        Map.Entry<String, Entry> e = it.next();
+        if( e.getValue().expiresAt - now <= 0 )
+        {
+          it.remove();
+          continue;
+        }
+        if( oldest == null || e.getValue().expiresAt < oldest.getValue().expiresAt )
+          oldest = e;
+      }
+
+      if( oldest != null && entries.size() > maxSize && entries.remove( oldest.getKey(), oldest.getValue() ) )
+        evictions.incrementAndGet();
+    }
+  }
+
+  public AccountStore getStore()
+  {
+    return store;
+  }
+
+  public int getMaxSize()
+  {
+    return maxSize;
+  }
+
+  public int getSize()
+  {
+    return entries.size();
+  }
+
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  public long getNegativeHits()
+  {
+    return negativeHits.get();
+  }
+
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  public long getEvictions()
+  {
+    return evictions.get();
+  }
+
+  /**
+   * @return rough heap usage of the cached entries in bytes, assuming a 64-bit JVM with compressed oops
+   */
+  public long estimateMemory()
+  {
+    long bytes = 0;
+    for( Map.Entry<String, Entry> e : entries.entrySet() )
+    {
+      // map node + Entry + key
+      bytes += 32 + 24 + stringSize( e.getKey() );
+      Account account = e.getValue().account;
+      if( account != null )
+      {
+        // Account + password array + Date
+        bytes += 40 + stringSize( account.getUuid() ) + stringSize( account.getLogin() ) + stringSize( account.getLastIp() );
+        bytes += account.getPassword() != null ? 16 + account.getPassword().length : 0;
+        bytes += account.getLastLogin() != null ? 24 : 0;
+      }
+    }
+    return bytes;
+  }
+
+  private static long stringSize( String s )
+  {
+    return s == null ? 0 : 24 + 16 + 2L * s.length();
+  }
+
+  static class Entry
+  {
+    final Account account;
+    final long expiresAt;
+
+    Entry( Account account, long expiresAt )
+    {
+      this.account = account;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
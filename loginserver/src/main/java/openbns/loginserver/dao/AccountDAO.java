@@ -1,5 +1,7 @@
 package openbns.loginserver.dao;
 
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import openbns.DataBaseFactory;
 import openbns.commons.db.DbUtils;
 import openbns.loginserver.model.AccessLevel;
@@ -9,6 +11,7 @@ import org.apache.commons.logging.LogFactory;
 import org.mariadb.jdbc.MySQLBlob;
 
 import java.sql.*;
+import java.util.concurrent.Callable;
 
 /**
  * Created with IntelliJ IDEA.
@@ -16,12 +19,14 @@ import java.sql.*;
  * Date: 25.01.14
  * Time: 15:16
  */
-public class AccountDAO
+public class AccountDAO implements AccountStore
 {
   private static final Log log = LogFactory.getLog( AccountDAO.class );
   private static final String INSERT_USER = "INSERT INTO accounts VALUES (?,?,?,?,?,?,?)";
   private static final String SELECT_BY_LOGIN = "SELECT * FROM accounts WHERE login = ?";
 
+  private static final LoginFilter loginFilter = LoginFilter.getInstance();
+
   private static AccountDAO ourInstance = new AccountDAO();
 
   public static AccountDAO getInstance()
@@ -33,6 +38,7 @@ public class AccountDAO
   {
   }
 
+  @Override
   public Account insert( Account account )
   {
     Connection con = null;
@@ -52,19 +58,73 @@ public class AccountDAO
       statement.setInt( 7, account.getLastServerId() );
 
       statement.execute();
+      loginFilter.add( account.getLogin() );
+      return account;
     }
     catch( SQLException e )
     {
       log.error( "Error inserting " + account, e );
+      return null;
     }
     finally
     {
       DbUtils.closeQuietly( con, statement );
     }
-    return account;
   }
 
+  /**
+   * Inserts {@code account} on the JDBC executor. The future holds {@code null} if the insert failed.
+   */
+  public Future<Account> insertAsync( final Account account )
+  {
+    return DataBaseFactory.getInstance().getExecutor().submit( new Callable<Account>()
+    {
+      @Override
+      public Account call() throws Exception
+      {
+        return insert( account );
+      }
+    } );
+  }
+
+  /**
+   * @return the account, or {@code null} if there is no such login or the lookup failed
+   */
   public Account getByLogin( String login )
+  {
+    if( !loginFilter.mightExist( login ) )
+      return null;
+    try
+    {
+      return selectByLogin( login );
+    }
+    catch( SQLException e )
+    {
+      log.error( "Error getting account by login " + login, e );
+      return null;
+    }
+  }
+
+  /**
+   * Looks the account up on the JDBC executor. The future holds {@code null} if there is no such login and fails
+   * with the {@link SQLException} if the lookup fails. Logins ruled out by {@link LoginFilter} complete at once.
+   */
+  @Override
+  public Future<Account> getByLoginAsync( final String login )
+  {
+    if( !loginFilter.mightExist( login ) )
+      return ImmediateEventExecutor.INSTANCE.newSucceededFuture( null );
+    return DataBaseFactory.getInstance().getExecutor().submit( new Callable<Account>()
+    {
+      @Override
+      public Account call() throws Exception
+      {
+        return selectByLogin( login );
+      }
+    } );
+  }
+
+  private Account selectByLogin( String login ) throws SQLException
   {
     login = login.split( "@" )[ 0 ];
     Connection con = null;
@@ -89,16 +149,11 @@ public class AccountDAO
         account.setLastIp( rset.getString( 7 ) );
         return account;
       }
-    }
-    catch( SQLException e )
-    {
-      log.error( "Error getting account by login " + login, e );
+      return null;
     }
     finally
     {
       DbUtils.closeQuietly( con, stmt, rset );
     }
-
-    throw new NullPointerException( "Account with login '" + login + "' not found" );
   }
 }
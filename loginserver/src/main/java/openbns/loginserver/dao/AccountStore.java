@@ -0,0 +1,21 @@
+package openbns.loginserver.dao;
+
+import io.netty.util.concurrent.Future;
+import openbns.loginserver.model.Account;
+
+/**
+ * Where {@link AccountCache} loads and inserts accounts: the database through {@link AccountDAO}, or
+ * {@link MemoryAccountStore} when the server runs without one, as for load tests.
+ */
+public interface AccountStore
+{
+  /**
+   * @return the account, or {@code null} if it could not be inserted
+   */
+  Account insert( Account account );
+
+  /**
+   * @return future holding the account, or {@code null} if there is no such login
+   */
+  Future<Account> getByLoginAsync( String login );
+}
@@ -0,0 +1,315 @@
+package openbns.loginserver.dao;
+
+import openbns.DataBaseFactory;
+import openbns.commons.db.DbUtils;
+import openbns.commons.util.BloomFilter;
+import openbns.loginserver.Config;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.sql.*;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Bloom filter of every {@code accounts.login}, so that lookups of logins that certainly do not exist can be answered
+ * without a query. Until {@link #start()} has loaded it, every login passes.
+ * <p/>
+ * Accounts inserted by this server are added as they are created. Ones created elsewhere, such as by
+ * {@code AccountManager}, are picked up by a periodic check: when the number of accounts differs from what the filter
+ * holds it is rebuilt, and negative {@link AccountCache} entries are dropped with it. A full rebuild also runs every
+ * {@code rebuildMinutes} to catch what the count misses, like an account deleted and another created in between.
+ * <p/>
+ * Logins are folded the way the {@code utf8_general_ci} column compares them as far as ASCII is concerned: case,
+ * accents and trailing spaces are ignored. Looked-up logins with other characters always pass.
+ */
+public class LoginFilter
+{
+  private static final Log log = LogFactory.getLog( LoginFilter.class );
+  private static final String COUNT_LOGINS = "SELECT COUNT(*) FROM accounts";
+  private static final String SELECT_LOGINS = "SELECT login FROM accounts";
+  private static final Pattern MARKS = Pattern.compile( "\\p{M}+" );
+
+  /**
+   * Room for accounts created until the next rebuild, so the false-positive rate holds in between.
+   */
+  private static final double GROWTH = 1.5;
+  private static final long MIN_EXPECTED = 1024;
+
+  private static LoginFilter ourInstance = new LoginFilter( Config.LOGIN_FILTER_FPP, Config.LOGIN_FILTER_REFRESH, Config.LOGIN_FILTER_REBUILD );
+
+  public static LoginFilter getInstance()
+  {
+    return ourInstance;
+  }
+
+  private final double falsePositiveProbability;
+  private final int refreshSeconds;
+  private final int rebuildMinutes;
+  private volatile BloomFilter filter;
+  private volatile BloomFilter building;
+  private volatile long loadedAt;
+
+  /**
+   * Accounts the filter holds: the ones the last load scanned plus the ones added since.
+   */
+  private final AtomicLong accounts = new AtomicLong();
+
+  private final AtomicLong checks = new AtomicLong();
+  private final AtomicLong rejections = new AtomicLong();
+
+  LoginFilter( double falsePositiveProbability, int refreshSeconds, int rebuildMinutes )
+  {
+    this.falsePositiveProbability = falsePositiveProbability;
+    this.refreshSeconds = refreshSeconds;
+    this.rebuildMinutes = rebuildMinutes;
+  }
+
+  /**
+   * Loads the filter and schedules the checks for accounts created elsewhere. Does nothing if the filter is disabled.
+   *
+   * @throws IllegalArgumentException if the check or rebuild interval is not positive: without them accounts created
+   * by another process would be rejected for good
+   */
+  public void start() throws SQLException
+  {
+    if( !isEnabled() )
+    {
+      log.info( "Login filter disabled" );
+      return;
+    }
+    if( refreshSeconds <= 0 || rebuildMinutes <= 0 )
+      throw new IllegalArgumentException( "login.filter.refresh and login.filter.rebuild must be positive: " + refreshSeconds + ", " + rebuildMinutes );
+
+    load();
+    DataBaseFactory.getInstance().getExecutor().scheduleWithFixedDelay( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          refresh();
+        }
+        catch( SQLException e )
+        {
+          log.error( "Login filter refresh failed, keeping the previous one", e );
+        }
+      }
+    }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS );
+  }
+
+  /**
+   * Rebuilds the filter if accounts were created or deleted elsewhere since it was loaded, or if the last full
+   * rebuild is {@code rebuildMinutes} old.
+   */
+  void refresh() throws SQLException
+  {
+    if( System.currentTimeMillis() - loadedAt < rebuildMinutes * 60000L )
+    {
+      long count;
+      Connection con = null;
+      Statement stmt = null;
+      ResultSet rset = null;
+      try
+      {
+        con = DataBaseFactory.getInstance().getConnection();
+        stmt = con.createStatement();
+        rset = stmt.executeQuery( COUNT_LOGINS );
+        rset.next();
+        count = rset.getLong( 1 );
+      }
+      finally
+      {
+        DbUtils.closeQuietly( con, stmt, rset );
+      }
+      if( !isStale( count ) )
+        return;
+      log.info( "Login filter holds " + accounts.get() + " accounts, the table " + count + ", rebuilding" );
+    }
+
+    load();
+    AccountCache.getInstance().invalidateNegative();
+  }
+
+  /**
+   * @return whether the accounts table, holding {@code count} accounts, has ones the filter has not seen
+   */
+  boolean isStale( long count )
+  {
+    // An account inserted while the last scan ran may be counted short, which costs one extra rebuild
+    return count != accounts.get();
+  }
+
+  /**
+   * Builds a new filter from a streaming scan of the accounts table and swaps it in.
+   */
+  public void load() throws SQLException
+  {
+    long start = System.currentTimeMillis();
+    Connection con = null;
+    Statement stmt = null;
+    ResultSet rset = null;
+    BloomFilter next;
+    long count = 0;
+
+    try
+    {
+      con = DataBaseFactory.getInstance().getConnection();
+      stmt = con.createStatement();
+      rset = stmt.executeQuery( COUNT_LOGINS );
+      rset.next();
+      next = newFilter( rset.getLong( 1 ) );
+      DbUtils.closeQuietly( stmt, rset );
+
+      // Logins inserted from now on go into both filters
+      building = next;
+      stmt = con.createStatement( ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+      stmt.setFetchSize( Integer.MIN_VALUE );
+      rset = stmt.executeQuery( SELECT_LOGINS );
+      while( rset.next() )
+      {
+        next.add( fold( rset.getString( 1 ) ) );
+        count++;
+      }
+      // Published while logins still go into both, see add()
+      filter = next;
+      accounts.set( count );
+      loadedAt = System.currentTimeMillis();
+    }
+    finally
+    {
+      building = null;
+      DbUtils.closeQuietly( con, stmt, rset );
+    }
+
+    log.info( "Login filter loaded " + count + " logins in " + (System.currentTimeMillis() - start) + " ms, " + next.getMemoryBytes() / 1024 + " KB, " + next.getHashCount() + " hashes" );
+  }
+
+  /**
+   * Builds the filter from {@code logins} instead of the database.
+   */
+  void load( Iterable<String> logins, long count )
+  {
+    BloomFilter next = newFilter( count );
+    building = next;
+    try
+    {
+      long loaded = 0;
+      for( String login : logins )
+      {
+        next.add( fold( login ) );
+        loaded++;
+      }
+      filter = next;
+      accounts.set( loaded );
+      loadedAt = System.currentTimeMillis();
+    }
+    finally
+    {
+      building = null;
+    }
+  }
+
+  private BloomFilter newFilter( long count )
+  {
+    return new BloomFilter( Math.max( (long) (count * GROWTH), MIN_EXPECTED ), falsePositiveProbability );
+  }
+
+  /**
+   * @return {@code false} only if no account has this login
+   */
+  public boolean mightExist( String login )
+  {
+    BloomFilter current = filter;
+    if( current == null )
+      return true;
+
+    String key = lookupKey( login );
+    if( key == null )
+      return true;
+
+    checks.incrementAndGet();
+    if( current.mightContain( key ) )
+      return true;
+    rejections.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Adds a login once its account is inserted, to the current filter and to one being built.
+   */
+  public void add( String login )
+  {
+    String key = fold( login );
+    // Read before the current filter: a load publishes its filter before it stops building, so with none being
+    // built the current filter is the latest, or the next scan has yet to start and will see the account
+    BloomFilter next = building;
+    if( next != null )
+      next.add( key );
+    BloomFilter current = filter;
+    if( current != null && current != next )
+      current.add( key );
+    accounts.incrementAndGet();
+  }
+
+  public boolean isEnabled()
+  {
+    return falsePositiveProbability > 0 && falsePositiveProbability < 1;
+  }
+
+  public boolean isLoaded()
+  {
+    return filter != null;
+  }
+
+  public double getFalsePositiveProbability()
+  {
+    return falsePositiveProbability;
+  }
+
+  public long getMemoryBytes()
+  {
+    BloomFilter current = filter;
+    return current == null ? 0 : current.getMemoryBytes();
+  }
+
+  public long getChecks()
+  {
+    return checks.get();
+  }
+
+  public long getRejections()
+  {
+    return rejections.get();
+  }
+
+  static String fold( String login )
+  {
+    int at = login.indexOf( '@' );
+    String s = at < 0 ? login : login.substring( 0, at );
+    s = MARKS.matcher( Normalizer.normalize( s, Normalizer.Form.NFD ) ).replaceAll( "" );
+    int end = s.length();
+    while( end > 0 && s.charAt( end - 1 ) == ' ' )
+      end--;
+    return s.substring( 0, end ).toLowerCase( Locale.ROOT );
+  }
+
+  /**
+   * @return folded login, or {@code null} if it has characters the filter cannot judge
+   */
+  static String lookupKey( String login )
+  {
+    int at = login.indexOf( '@' );
+    int length = at < 0 ? login.length() : at;
+    for( int i = 0; i < length; i++ )
+    {
+      if( login.charAt( i ) >= 0x80 )
+        return null;
+    }
+    return fold( login );
+  }
+}
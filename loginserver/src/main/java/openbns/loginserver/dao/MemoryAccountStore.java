@@ -0,0 +1,35 @@
+package openbns.loginserver.dao;
+
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import openbns.loginserver.model.Account;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Accounts kept in memory only, for running the server without a database. Lookups complete at once; logins are
+ * matched like {@link AccountCache} matches them.
+ */
+public class MemoryAccountStore implements AccountStore
+{
+  private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+  @Override
+  public Account insert( Account account )
+  {
+    accounts.put( AccountCache.normalize( account.getLogin() ), account );
+    return account;
+  }
+
+  @Override
+  public Future<Account> getByLoginAsync( String login )
+  {
+    return ImmediateEventExecutor.INSTANCE.newSucceededFuture( accounts.get( AccountCache.normalize( login ) ) );
+  }
+
+  public int size()
+  {
+    return accounts.size();
+  }
+}
@@ -0,0 +1,135 @@
+package openbns.loginserver.net;
+
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.Future;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of worker threads with a bound on queued plus running tasks. A stage with no threads is inline: callers
+ * run the work themselves.
+ */
+public class ExecutionStage implements ExecutionStageMBean
+{
+  private final String name;
+  private final EventExecutorGroup group;
+  private final int maxPending;
+
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  public ExecutionStage( String name, int threads, int maxPending )
+  {
+    this.name = name;
+    this.maxPending = maxPending;
+    group = threads > 0 ? new DefaultEventExecutorGroup( threads ) : null;
+  }
+
+  public boolean isInline()
+  {
+    return group == null;
+  }
+
+  /**
+   * @return {@code false} if the task was rejected because the stage is full or shut down
+   */
+  public boolean execute( final Runnable task )
+  {
+    if( pending.incrementAndGet() > maxPending )
+      return reject();
+
+    try
+    {
+      group.next().execute( new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            task.run();
+          }
+          finally
+          {
+            pending.decrementAndGet();
+            completed.incrementAndGet();
+          }
+        }
+      } );
+    }
+    catch( RejectedExecutionException e )
+    {
+      return reject();
+    }
+    submitted.incrementAndGet();
+    return true;
+  }
+
+  private boolean reject()
+  {
+    pending.decrementAndGet();
+    rejected.incrementAndGet();
+    return false;
+  }
+
+  public Future<?> shutdownGracefully()
+  {
+    return group == null ? null : group.shutdownGracefully();
+  }
+
+  @Override
+  public String getName()
+  {
+    return name;
+  }
+
+  @Override
+  public int getMaxPending()
+  {
+    return maxPending;
+  }
+
+  /**
+   * @return tasks queued or running
+   */
+  @Override
+  public int getPending()
+  {
+    return pending.get();
+  }
+
+  @Override
+  public long getSubmitted()
+  {
+    return submitted.get();
+  }
+
+  @Override
+  public long getCompleted()
+  {
+    return completed.get();
+  }
+
+  @Override
+  public long getRejected()
+  {
+    return rejected.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "ExecutionStage{" +
+            "name='" + name + '\'' +
+            ", pending=" + pending +
+            ", submitted=" + submitted +
+            ", completed=" + completed +
+            ", rejected=" + rejected +
+            '}';
+  }
+}
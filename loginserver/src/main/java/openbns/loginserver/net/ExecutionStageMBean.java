@@ -0,0 +1,19 @@
+package openbns.loginserver.net;
+
+/**
+ * What {@link ExecutionStage} shows over JMX.
+ */
+public interface ExecutionStageMBean
+{
+  String getName();
+
+  int getMaxPending();
+
+  int getPending();
+
+  long getSubmitted();
+
+  long getCompleted();
+
+  long getRejected();
+}
@@ -1,11 +1,20 @@
 package openbns.loginserver.net;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import openbns.commons.net.codec.sts.DefaultStsRequest;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.ReferenceCountUtil;
+import openbns.commons.net.codec.sts.FullStsRequest;
 import openbns.commons.net.codec.sts.LastStsContent;
+import openbns.commons.net.codec.sts.StsContent;
+import openbns.commons.net.codec.sts.StsContentAggregator;
+import openbns.commons.net.codec.sts.StsRequest;
+import openbns.loginserver.Config;
 import openbns.loginserver.net.client.AbstractRequestPacket;
 import openbns.loginserver.net.client.RequestPacketHandler;
+import openbns.loginserver.net.client.StreamingRequestPacket;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -14,39 +23,144 @@ import org.apache.commons.logging.LogFactory;
  * User: Eugene Chipachenko
  * Date: 16.01.14
  * Time: 21:03
+ * <p/>
+ * Also the connection's {@link StsContentAggregator.ContentLimits}: the packet found for a request head to look up its
+ * body limit is kept for when the request reaches this handler, so each request's URI is looked up once.
  */
-public class LoginServerHandler extends ChannelInboundHandlerAdapter
+public class LoginServerHandler extends ChannelInboundHandlerAdapter implements StsContentAggregator.ContentLimits
 {
   private static final Log log = LogFactory.getLog( LoginServerHandler.class );
   private static final RequestPacketHandler packetHandler = RequestPacketHandler.getInstance();
 
-  private String lastURI;
+  // Session number of the request begin() last read, until it is dispatched
+  private int sessionNumber;
   private Session session;
+  private PacketDispatcher dispatcher;
+  // The streamed request whose content is being received; a request's parts arrive together even when requests are
+  // pipelined
+  private StreamedRequest<?> streamed;
+  // The packet the aggregator's limit lookup found, for the request with this URI. The aggregator passes each request
+  // on before it reads the next head
+  private String resolvedUri;
+  private AbstractRequestPacket<?> resolved;
 
   // TODO: REFACTOR ALL. ITS ONLY FOR TESTING
   @Override
   public void channelRead( ChannelHandlerContext ctx, Object msg ) throws Exception
   {
-    if( msg instanceof DefaultStsRequest )
+    // Packets decode the body before dispatch, so the message can be released right away
+    try
     {
-      DefaultStsRequest req = (DefaultStsRequest) msg;
-      lastURI = req.getUri();
-      log.info( "Receive request from client. Method: " + req.getMethod() + "; URI: " + req.getUri() );
+      if( msg instanceof FullStsRequest )
+      {
+        FullStsRequest req = (FullStsRequest) msg;
+        AbstractRequestPacket<?> packet = begin( req );
+        if( req.getDecoderResult().isSuccess() )
+          dispatch( packet, req.content() );
+        else if( req.getDecoderResult().cause() instanceof TooLongFrameException )
+        {
+          log.warn( "Request " + req.getUri() + " rejected: " + req.getDecoderResult().cause().getMessage() );
+          dispatch( packetHandler.getContentTooLongPacket(), Unpooled.EMPTY_BUFFER );
+        }
+        else
+          badRequest( ctx, req );
+      }
+      else if( msg instanceof StsRequest )
+      {
+        StsRequest req = (StsRequest) msg;
+        if( !req.getDecoderResult().isSuccess() )
+          badRequest( ctx, req );
+        else
+          // Only streaming packets get their content unaggregated
+          streamed = stream( (StreamingRequestPacket<?>) begin( req ), sessionNumber );
+      }
+      else if( msg instanceof StsContent && streamed != null )
+      {
+        streamed.read( ((StsContent) msg).content() );
+        if( msg instanceof LastStsContent )
+        {
+          streamed.dispatch( dispatcher );
+          streamed = null;
+        }
+      }
+    }
+    finally
+    {
+      ReferenceCountUtil.release( msg );
+    }
+  }
+
+  @Override
+  public int getMaxContentLength( StsRequest request )
+  {
+    resolvedUri = request.getUri();
+    resolved = packetHandler.getPacket( resolvedUri );
+    return RequestPacketHandler.getMaxContentLength( resolved );
+  }
 
-      String s = req.headers().get( "s" );
-      if( s != null )
-        session.setSessionId( Integer.parseInt( s ) );
+  private AbstractRequestPacket<?> begin( StsRequest req )
+  {
+    AbstractRequestPacket<?> packet = resolvedUri != null && resolvedUri.equals( req.getUri() ) ? resolved : packetHandler.getPacket( req.getUri() );
+    resolvedUri = null;
+    resolved = null;
+    if( packet == null )
+    {
+      log.warn( "No packet for request " + req.getUri() );
+      packet = packetHandler.getUnknownUriPacket();
     }
-    else if( msg instanceof LastStsContent )
+    // Per-request figures are in the packet's metrics
+    if( log.isDebugEnabled() )
+      log.debug( "Receive request from client. Method: " + req.getMethod() + "; URI: " + req.getUri() );
+
+    // Applied to the session when the packet runs, see PacketDispatcher
+    String s = req.headers().get( "s" );
+    sessionNumber = -1;
+    if( s != null )
     {
-      LastStsContent content = (LastStsContent) msg;
-      AbstractRequestPacket packet = packetHandler.getPacket( lastURI );
-      packet.setHandler( this );
-      packet.setChannel( ctx.channel() );
-      packet.setBuf( content.content() );
-      packet.read();
-      packet.execute();
+      try
+      {
+        sessionNumber = Integer.parseInt( s );
+      }
+      catch( NumberFormatException e )
+      {
+        log.warn( "Request " + req.getUri() + " has a malformed session number: " + s );
+        return packetHandler.getBadRequestPacket();
+      }
     }
+    return packet;
+  }
+
+  private void badRequest( ChannelHandlerContext ctx, StsRequest req )
+  {
+    // The decoder discards everything after a bad message, so the connection is of no further use
+    log.warn( "Bad request from client, closing", req.getDecoderResult().cause() );
+    ctx.close();
+  }
+
+  private <T> void dispatch( AbstractRequestPacket<T> packet, ByteBuf buf )
+  {
+    int length = buf.readableBytes();
+    long start = System.nanoTime();
+    T request;
+    try
+    {
+      request = packet.read( buf );
+    }
+    catch( RuntimeException e )
+    {
+      packet.getMetrics().recordError();
+      throw e;
+    }
+    packet.getMetrics().recordDecode( System.nanoTime() - start, length );
+    dispatcher.dispatch( packet, request, sessionNumber );
+  }
+
+  private static <T> StreamedRequest<T> stream( StreamingRequestPacket<T> packet, int sessionNumber )
+  {
+    long start = System.nanoTime();
+    StreamedRequest<T> streamed = new StreamedRequest<>( packet, packet.newReader(), sessionNumber );
+    streamed.decodeNanos = System.nanoTime() - start;
+    return streamed;
   }
 
   @Override
@@ -68,6 +182,8 @@ public class LoginServerHandler extends ChannelInboundHandlerAdapter
     log.debug( "Accepted new channel" );
     session = new Session();
     session.init();
+    ctx.channel().attr( Session.KEY ).set( session );
+    dispatcher = new PacketDispatcher( ctx.channel(), RequestExecutor.getInstance(), Config.EXECUTOR_IN_FLIGHT_MAX );
     log.debug( "Generated session: " + session );
   }
 
@@ -75,4 +191,39 @@ public class LoginServerHandler extends ChannelInboundHandlerAdapter
   {
     return session;
   }
+
+  /**
+   * A streamed request, its session number and the reader of its body, with the time spent reading it so far.
+   */
+  private static class StreamedRequest<T>
+  {
+    private final StreamingRequestPacket<T> packet;
+    private final StreamingRequestPacket.ContentReader<T> reader;
+    private final int sessionNumber;
+    private long decodeNanos;
+    private int length;
+
+    private StreamedRequest( StreamingRequestPacket<T> packet, StreamingRequestPacket.ContentReader<T> reader, int sessionNumber )
+    {
+      this.packet = packet;
+      this.reader = reader;
+      this.sessionNumber = sessionNumber;
+    }
+
+    private void read( ByteBuf chunk )
+    {
+      length += chunk.readableBytes();
+      long start = System.nanoTime();
+      reader.read( chunk );
+      decodeNanos += System.nanoTime() - start;
+    }
+
+    private void dispatch( PacketDispatcher dispatcher )
+    {
+      long start = System.nanoTime();
+      T request = reader.end();
+      packet.getMetrics().recordDecode( decodeNanos + System.nanoTime() - start, length );
+      dispatcher.dispatch( packet, request, sessionNumber );
+    }
+  }
 }
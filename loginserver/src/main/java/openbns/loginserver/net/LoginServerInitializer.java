@@ -1,9 +1,14 @@
 package openbns.loginserver.net;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import openbns.commons.net.codec.sts.IncrementalStsRequestDecoder;
+import openbns.commons.net.codec.sts.StsContentAggregator;
+import openbns.commons.net.codec.sts.StsRequestDecoder;
 import openbns.commons.net.codec.sts.StsServerCodec;
+import openbns.loginserver.Config;
 
 /**
  * Created with IntelliJ IDEA.
@@ -11,13 +16,26 @@ import openbns.commons.net.codec.sts.StsServerCodec;
  * Date: 16.01.14
  * Time: 20:56
  */
-public class LoginServerInitializer extends ChannelInitializer<SocketChannel>
+public class LoginServerInitializer extends ChannelInitializer<Channel>
 {
+  private static final int MAX_INITIAL_LINE_LENGTH = 4096;
+  private static final int MAX_HEADER_SIZE = 8192;
+  private static final int MAX_CHUNK_SIZE = 8192;
+
   @Override
-  protected void initChannel( SocketChannel ch ) throws Exception
+  protected void initChannel( Channel ch ) throws Exception
   {
     ChannelPipeline p = ch.pipeline();
-    p.addLast( "codec", new StsServerCodec() );
-    p.addLast( "handler", new LoginServerHandler() );
+    p.addLast( "codec", new StsServerCodec( newRequestDecoder() ) );
+    LoginServerHandler handler = new LoginServerHandler();
+    p.addLast( "aggregator", new StsContentAggregator( handler ) );
+    p.addLast( "handler", handler );
+  }
+
+  private static ByteToMessageDecoder newRequestDecoder()
+  {
+    if( "replaying".equals( Config.STS_DECODER ) )
+      return new StsRequestDecoder( MAX_INITIAL_LINE_LENGTH, MAX_HEADER_SIZE, MAX_CHUNK_SIZE, true, Config.STS_SLICE_CONTENT, Config.STS_COMPACT_HEADERS );
+    return new IncrementalStsRequestDecoder( MAX_INITIAL_LINE_LENGTH, MAX_HEADER_SIZE, MAX_CHUNK_SIZE, true, Config.STS_SLICE_CONTENT, Config.STS_COMPACT_HEADERS );
   }
 }
@@ -0,0 +1,367 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.AsyncRequestPacket;
+import openbns.loginserver.net.client.RequestContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Runs the request packets of one connection, which a client may send several of before reading any reply. Inline
+ * packets execute on the I/O thread, asynchronous ones are started there, and the rest go to their
+ * {@link ExecutionStage}. Packets run one at a time in arrival order, except {@link AbstractRequestPacket#isConcurrent
+ * concurrent} ones, which start as soon as they arrive.
+ * <p/>
+ * Replies leave in request order whatever order packets finish in: those of a request written before every earlier
+ * request is done are held until then. Once {@code maxInFlight} requests are unfinished the connection stops reading
+ * until one finishes. Only used from the channel's event loop.
+ * <p/>
+ * A request's session number becomes the connection's {@link Session#getSessionId session id} when its packet starts,
+ * so a packet sees its own request's even while later ones are already queued.
+ * <p/>
+ * Each request's time waiting to start, time running, failures and reply body bytes are recorded in its packet's
+ * {@link AbstractRequestPacket#getMetrics metrics}; for an asynchronous packet, running lasts until its future is
+ * done.
+ */
+public class PacketDispatcher
+{
+  private static final Log log = LogFactory.getLog( PacketDispatcher.class );
+
+  private final Channel channel;
+  private final RequestExecutor executor;
+  private final int maxInFlight;
+  private final Queue<Request<?>> inFlight = new ArrayDeque<>();
+  private final Queue<Request<?>> queue = new ArrayDeque<>();
+  private boolean busy;
+  private boolean paused;
+
+  public PacketDispatcher( Channel channel, RequestExecutor executor, int maxInFlight )
+  {
+    this.channel = channel;
+    this.executor = executor;
+    this.maxInFlight = Math.max( maxInFlight, 1 );
+    channel.closeFuture().addListener( new ChannelFutureListener()
+    {
+      @Override
+      public void operationComplete( ChannelFuture future ) throws Exception
+      {
+        discard();
+      }
+    } );
+  }
+
+  public <T> void dispatch( AbstractRequestPacket<T> packet, T request )
+  {
+    dispatch( packet, request, -1 );
+  }
+
+  /**
+   * @param sessionNumber the request's {@code s} header, or -1 if it had none
+   */
+  public <T> void dispatch( AbstractRequestPacket<T> packet, T request, int sessionNumber )
+  {
+    Request<T> next = new Request<>( packet, request, sessionNumber );
+    next.first = inFlight.isEmpty();
+    inFlight.add( next );
+    if( inFlight.size() >= maxInFlight && !paused )
+    {
+      paused = true;
+      channel.config().setAutoRead( false );
+    }
+
+    if( packet.isConcurrent() )
+      start( next );
+    else
+    {
+      queue.add( next );
+      if( !busy )
+        drain();
+    }
+  }
+
+  private void drain()
+  {
+    Request<?> next;
+    while( !busy && (next = queue.poll()) != null )
+    {
+      busy = true;
+      start( next );
+    }
+  }
+
+  private void start( final Request<?> request )
+  {
+    if( request.packet instanceof AsyncRequestPacket )
+    {
+      Future<?> future;
+      try
+      {
+        future = request.executeAsync();
+      }
+      catch( RuntimeException e )
+      {
+        finish( request );
+        throw e;
+      }
+      future.addListener( new FutureListener<Object>()
+      {
+        @Override
+        public void operationComplete( Future<Object> future ) throws Exception
+        {
+          request.end( future.isSuccess() );
+          complete( request, future.cause() );
+        }
+      } );
+      return;
+    }
+
+    ExecutionStage stage = executor.getStage( request.packet.getExecutionType() );
+    if( stage == null )
+    {
+      try
+      {
+        request.execute();
+      }
+      finally
+      {
+        finish( request );
+      }
+      return;
+    }
+
+    if( !stage.execute( new Task( request ) ) )
+    {
+      log.warn( "Stage '" + stage.getName() + "' is full, closing " + channel );
+      queue.clear();
+      channel.close();
+    }
+  }
+
+  /**
+   * Called from any thread once a packet is done; writes what it and the requests after it held back and resumes the
+   * queue on the event loop.
+   */
+  private void complete( final Request<?> request, final Throwable cause )
+  {
+    channel.eventLoop().execute( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        finish( request );
+        if( cause != null )
+        {
+          channel.pipeline().fireExceptionCaught( cause );
+          return;
+        }
+        try
+        {
+          drain();
+        }
+        catch( Throwable t )
+        {
+          channel.pipeline().fireExceptionCaught( t );
+        }
+        channel.flush();
+      }
+    } );
+  }
+
+  /**
+   * Marks the request done and writes the held replies of the requests that are now first in line.
+   */
+  private void finish( Request<?> request )
+  {
+    request.done = true;
+    if( !request.packet.isConcurrent() )
+      busy = false;
+
+    Request<?> first;
+    while( (first = inFlight.peek()) != null && first.done )
+    {
+      inFlight.poll();
+      first = inFlight.peek();
+      if( first != null )
+        first.release();
+    }
+
+    if( paused && inFlight.size() < maxInFlight )
+    {
+      paused = false;
+      channel.config().setAutoRead( true );
+    }
+  }
+
+  /**
+   * Drops the replies held for a closed connection.
+   */
+  private void discard()
+  {
+    for( Request<?> request : inFlight )
+      request.discard();
+    inFlight.clear();
+    queue.clear();
+  }
+
+  private class Task implements Runnable
+  {
+    private final Request<?> request;
+
+    private Task( Request<?> request )
+    {
+      this.request = request;
+    }
+
+    @Override
+    public void run()
+    {
+      Throwable failure = null;
+      try
+      {
+        request.execute();
+      }
+      catch( Throwable t )
+      {
+        failure = t;
+      }
+      complete( request, failure );
+    }
+  }
+
+  /**
+   * A packet with the request it has read, and the replies written for it while an earlier request is unfinished.
+   */
+  private class Request<T> extends RequestContext
+  {
+    private final AbstractRequestPacket<T> packet;
+    private final T request;
+    private List<Object> held;
+    private boolean first;
+    private boolean done;
+    private final long dispatched = System.nanoTime();
+    private long started;
+
+    private Request( AbstractRequestPacket<T> packet, T request, int sessionNumber )
+    {
+      super( channel, sessionNumber );
+      this.packet = packet;
+      this.request = request;
+    }
+
+    private void execute()
+    {
+      begin();
+      boolean success = false;
+      try
+      {
+        packet.execute( this, request );
+        success = true;
+      }
+      finally
+      {
+        end( success );
+      }
+    }
+
+    private Future<?> executeAsync()
+    {
+      begin();
+      try
+      {
+        return ((AsyncRequestPacket<T>) packet).executeAsync( this, request );
+      }
+      catch( RuntimeException e )
+      {
+        end( false );
+        throw e;
+      }
+    }
+
+    private void begin()
+    {
+      started = System.nanoTime();
+      packet.getMetrics().recordQueue( started - dispatched );
+      Session session = channel.attr( Session.KEY ).get();
+      if( session != null && getSessionNumber() >= 0 )
+        session.setSessionId( getSessionNumber() );
+    }
+
+    private void end( boolean success )
+    {
+      packet.getMetrics().recordExecute( System.nanoTime() - started );
+      if( !success )
+        packet.getMetrics().recordError();
+    }
+
+    @Override
+    public void write( final Object msg )
+    {
+      if( !channel.eventLoop().inEventLoop() )
+      {
+        channel.eventLoop().execute( new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            write( msg );
+          }
+        } );
+        return;
+      }
+
+      if( !channel.isOpen() )
+      {
+        ReferenceCountUtil.release( msg );
+        return;
+      }
+      if( msg instanceof ByteBufHolder )
+        packet.getMetrics().recordBytesOut( ((ByteBufHolder) msg).content().readableBytes() );
+      else if( msg instanceof ByteBuf )
+        packet.getMetrics().recordBytesOut( ((ByteBuf) msg).readableBytes() );
+
+      if( first )
+        channel.write( msg );
+      else
+      {
+        if( held == null )
+          held = new ArrayList<>( 2 );
+        held.add( msg );
+      }
+    }
+
+    /**
+     * Writes the held replies now that the request is first in line.
+     */
+    private void release()
+    {
+      first = true;
+      if( held == null )
+        return;
+      for( Object msg : held )
+        channel.write( msg );
+      held = null;
+    }
+
+    private void discard()
+    {
+      if( held == null )
+        return;
+      for( Object msg : held )
+        ReferenceCountUtil.release( msg );
+      held = null;
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package openbns.loginserver.net;
+
+import openbns.loginserver.Config;
+import openbns.loginserver.net.client.ExecutionType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Execution stages for request packets, one per {@link ExecutionType} that leaves the I/O thread.
+ */
+public class RequestExecutor
+{
+  private static final Log log = LogFactory.getLog( RequestExecutor.class );
+
+  private static RequestExecutor ourInstance = new RequestExecutor( Config.EXECUTOR_CPU_THREADS, Config.EXECUTOR_BLOCKING_THREADS, Config.EXECUTOR_QUEUE_MAX );
+
+  public static RequestExecutor getInstance()
+  {
+    return ourInstance;
+  }
+
+  private final ExecutionStage cpu;
+  private final ExecutionStage blocking;
+
+  RequestExecutor( int cpuThreads, int blockingThreads, int maxPending )
+  {
+    cpu = new ExecutionStage( "cpu", cpuThreads, maxPending );
+    blocking = new ExecutionStage( "blocking", blockingThreads, maxPending );
+    log.info( "Request executor: " + Math.max( cpuThreads, 0 ) + " CPU thread(s), " + Math.max( blockingThreads, 0 ) + " blocking thread(s), " + maxPending + " pending tasks per stage" );
+  }
+
+  /**
+   * @return the stage for {@code type}, or {@code null} if packets of that type run inline
+   */
+  public ExecutionStage getStage( ExecutionType type )
+  {
+    ExecutionStage stage;
+    switch( type )
+    {
+      case CPU:
+        stage = cpu;
+        break;
+      case BLOCKING:
+        stage = blocking;
+        break;
+      default:
+        return null;
+    }
+    return stage.isInline() ? null : stage;
+  }
+
+  public ExecutionStage getCpuStage()
+  {
+    return cpu;
+  }
+
+  public ExecutionStage getBlockingStage()
+  {
+    return blocking;
+  }
+
+  public void shutdown()
+  {
+    cpu.shutdownGracefully();
+    blocking.shutdownGracefully();
+  }
+}
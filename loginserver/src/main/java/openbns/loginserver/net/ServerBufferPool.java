@@ -0,0 +1,27 @@
+package openbns.loginserver.net;
+
+import openbns.commons.net.BufferPool;
+import openbns.loginserver.Config;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The buffer pool every channel of the login server allocates from, set up from {@code buffer.pool.*}.
+ */
+public class ServerBufferPool extends BufferPool
+{
+  private static final Log log = LogFactory.getLog( ServerBufferPool.class );
+
+  private static ServerBufferPool ourInstance = new ServerBufferPool();
+
+  public static ServerBufferPool getInstance()
+  {
+    return ourInstance;
+  }
+
+  private ServerBufferPool()
+  {
+    super( Config.BUFFER_POOL_DIRECT, Config.BUFFER_POOL_HEAP_ARENAS, Config.BUFFER_POOL_DIRECT_ARENAS, Config.BUFFER_POOL_PAGE_SIZE, Config.BUFFER_POOL_CHUNK_SIZE );
+    log.info( "Buffer pool: " + (Config.BUFFER_POOL_DIRECT ? "direct" : "heap") + " buffers, " + Config.BUFFER_POOL_HEAP_ARENAS + " heap and " + Config.BUFFER_POOL_DIRECT_ARENAS + " direct arena(s), " + Config.BUFFER_POOL_PAGE_SIZE + " byte pages, " + Config.BUFFER_POOL_CHUNK_SIZE + " byte chunks" );
+  }
+}
@@ -0,0 +1,35 @@
+package openbns.loginserver.net;
+
+import openbns.commons.metrics.MetricsRegistry;
+import openbns.loginserver.Config;
+
+/**
+ * The request metrics of the login server, exported over JMX under {@code openbns.loginserver} if
+ * {@code metrics.jmx} is set.
+ */
+public class ServerMetrics extends MetricsRegistry
+{
+  public static final String DOMAIN = "openbns.loginserver";
+
+  private static ServerMetrics ourInstance = new ServerMetrics();
+
+  public static ServerMetrics getInstance()
+  {
+    return ourInstance;
+  }
+
+  private ServerMetrics()
+  {
+    super( DOMAIN, Config.METRICS_JMX );
+  }
+
+  /**
+   * Exports the execution stages and the buffer pool next to the request metrics.
+   */
+  public void registerServer( RequestExecutor executor, ServerBufferPool bufferPool )
+  {
+    register( "ExecutionStage", executor.getCpuStage().getName(), executor.getCpuStage() );
+    register( "ExecutionStage", executor.getBlockingStage().getName(), executor.getBlockingStage() );
+    register( "BufferPool", "server", bufferPool );
+  }
+}
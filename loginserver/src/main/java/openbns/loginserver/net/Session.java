@@ -1,13 +1,15 @@
 package openbns.loginserver.net;
 
+import io.netty.util.AttributeKey;
 import openbns.loginserver.crypt.HashHelper;
 import openbns.loginserver.crypt.KeyManager;
+import openbns.loginserver.crypt.SessionKeyPool;
+import openbns.loginserver.crypt.SessionKeys;
 import openbns.loginserver.model.Account;
 
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 
 import static openbns.commons.util.CryptUtil.*;
 
@@ -19,8 +21,12 @@ import static openbns.commons.util.CryptUtil.*;
  */
 public class Session
 {
+  /**
+   * Channel attribute holding the connection's session, for packets shared between connections.
+   */
+  public static final AttributeKey<Session> KEY = AttributeKey.valueOf( "session" );
+
   private static final KeyManager keyManager = KeyManager.getInstance();
-  private static final SecureRandom rnd = new SecureRandom();
 
   private BigInteger privateKey;
   private BigInteger exchangeKey;
@@ -35,16 +41,10 @@ public class Session
 
   public void init()
   {
-    try
-    {
-      privateKey = keyManager.generatePrivateKey();
-      exchangeKey = keyManager.generateExchangeKey( privateKey );
-      sessionKey = new BigInteger( hexToString( rnd.generateSeed( 8 ) ), 16 );
-    }
-    catch( NoSuchAlgorithmException e )
-    {
-      e.printStackTrace();
-    }
+    SessionKeys keys = SessionKeyPool.getInstance().take();
+    privateKey = keys.getPrivateKey();
+    exchangeKey = keys.getExchangeKey();
+    sessionKey = keys.getSessionKey();
   }
 
   public BigInteger generateServerExchangeKey() throws NoSuchAlgorithmException, IOException
@@ -52,8 +52,7 @@ public class Session
     byte[] passwordHash = account.getPassword();
 
     BigInteger spKey = keyManager.generateAIIKey( bigIntegerToByteArray( sessionKey ), passwordHash );
-    BigInteger two = new BigInteger( "2" );
-    BigInteger decKey = two.modPow( spKey, KeyManager.N );
+    BigInteger decKey = keyManager.powG( spKey );
     decKey = decKey.multiply( KeyManager.P ).mod( KeyManager.N );
     serverExchangeKey = exchangeKey.add( decKey ).mod( KeyManager.N );
     return serverExchangeKey;
@@ -64,16 +63,19 @@ public class Session
     byte[] userNameHash = HashHelper.loginHash( account.getLogin() );
     byte[] passwordHash = account.getPassword();
 
-    BigInteger hash1 = keyManager.generateAIIKey( array, bigIntegerToByteArray( serverExchangeKey ) );
-    BigInteger hash2 = keyManager.generateAIIKey( bigIntegerToByteArray( sessionKey ), passwordHash );
+    byte[] sessionKeyBytes = bigIntegerToByteArray( sessionKey );
+    byte[] serverExchangeKeyBytes = bigIntegerToByteArray( serverExchangeKey );
+
+    BigInteger hash1 = keyManager.generateAIIKey( array, serverExchangeKeyBytes );
+    BigInteger hash2 = keyManager.generateAIIKey( sessionKeyBytes, passwordHash );
 
-    BigInteger v27 = new BigInteger( hexToString( array ), 16 );
-    BigInteger v21 = exchangeKey.modPow( hash1.multiply( hash2 ), KeyManager.N ).multiply( v27.modPow( privateKey, KeyManager.N ) ).mod( KeyManager.N );
+    BigInteger v27 = new BigInteger( 1, array );
+    BigInteger v21 = keyManager.dualPow( privateKey, hash1.multiply( hash2 ), v27 );
 
     byte[] rootKey = keyManager.generateEncryptionKeyRoot( bigIntegerToByteArray( v21 ) );
 
-    byte[] calcHash1 = sha256bytes( mergeArrays( KeyManager.STATIC_KEY, userNameHash, bigIntegerToByteArray( sessionKey ), array, bigIntegerToByteArray( serverExchangeKey ), rootKey ) );
-    byte[] calcHash2 = sha256bytes( mergeArrays( array, calcHash1, rootKey ) );
+    byte[] calcHash1 = sha256bytes( KeyManager.STATIC_KEY, userNameHash, sessionKeyBytes, array, serverExchangeKeyBytes, rootKey );
+    byte[] calcHash2 = sha256bytes( array, calcHash1, rootKey );
 //    byte[] key256 = keyManager.generate256BytesKey( rootKey );
 
     return new byte[][] { calcHash1, calcHash2 };
@@ -1,52 +1,65 @@
 package openbns.loginserver.net.client;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.Channel;
-import openbns.loginserver.net.LoginServerHandler;
+import openbns.commons.metrics.RequestMetrics;
 
 /**
  * Created with IntelliJ IDEA.
  * User: Eugene Chipachenko
  * Date: 27.01.14
  * Time: 22:03
+ * <p/>
+ * Handles one request URI. Instances are shared by all connections, so everything a request needs travels in the
+ * value returned by {@link #read} and in the {@link RequestContext}, which replies are written to.
  */
-public abstract class AbstractRequestPacket
+public abstract class AbstractRequestPacket<T>
 {
-  protected ByteBuf buf;
-  protected Channel channel;
-  protected LoginServerHandler handler;
+  // Metrics of packets that were never registered, such as test packets
+  private static final RequestMetrics UNREGISTERED = new RequestMetrics( "(unregistered)" );
 
-  public abstract void read();
+  // Set on registration from RequestUri
+  int maxContentLength;
+  RequestMetrics metrics = UNREGISTERED;
 
-  public abstract void execute();
+  /**
+   * Decodes the request body. Always runs on the channel's I/O thread.
+   *
+   * @param buf the whole body, at most {@link #getMaxContentLength} bytes
+   */
+  public abstract T read( ByteBuf buf );
 
-  public ByteBuf getBuf()
-  {
-    return buf;
-  }
-
-  public void setBuf( ByteBuf buf )
-  {
-    this.buf = buf;
-  }
+  public abstract void execute( RequestContext context, T request );
 
-  public Channel getChannel()
+  /**
+   * @return where {@link #execute} runs; only {@link AsyncRequestPacket}s are {@link ExecutionType#ASYNC}
+   */
+  public ExecutionType getExecutionType()
   {
-    return channel;
+    return ExecutionType.INLINE;
   }
 
-  public void setChannel( Channel channel )
+  /**
+   * Whether the packet may run while earlier requests of its connection are still running, because it neither
+   * depends on nor changes the connection's state. Other packets run one at a time in request order.
+   */
+  public boolean isConcurrent()
   {
-    this.channel = channel;
+    return false;
   }
 
-  public void setHandler( LoginServerHandler handler )
+  /**
+   * @return largest body a request may carry; longer requests are answered with an error without being read
+   */
+  public int getMaxContentLength()
   {
-    this.handler = handler;
+    return maxContentLength;
   }
 
-  public LoginServerHandler getHandler()
+  /**
+   * @return metrics of the requests this packet handles, shared by the URIs it is registered for
+   */
+  public RequestMetrics getMetrics()
   {
-    return handler;
+    return metrics;
   }
 }
@@ -0,0 +1,33 @@
+package openbns.loginserver.net.client;
+
+import io.netty.util.concurrent.Future;
+
+/**
+ * A packet whose work is started on the I/O thread and completes later, such as an asynchronous database lookup. It
+ * runs as {@link ExecutionType#ASYNC} and only through {@link #executeAsync}; the packet counts as running until the
+ * returned future is done.
+ */
+public abstract class AsyncRequestPacket<T> extends AbstractRequestPacket<T>
+{
+  /**
+   * Starts the packet. Always runs on the channel's I/O thread.
+   *
+   * @return future completed once the packet is done, failed if it failed
+   */
+  public abstract Future<?> executeAsync( RequestContext context, T request );
+
+  /**
+   * Not supported: the work would be started with nobody waiting for it to finish or fail.
+   */
+  @Override
+  public final void execute( RequestContext context, T request )
+  {
+    throw new UnsupportedOperationException( getClass().getSimpleName() + " is asynchronous, see executeAsync" );
+  }
+
+  @Override
+  public final ExecutionType getExecutionType()
+  {
+    return ExecutionType.ASYNC;
+  }
+}
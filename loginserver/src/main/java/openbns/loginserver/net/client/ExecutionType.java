@@ -0,0 +1,26 @@
+package openbns.loginserver.net.client;
+
+/**
+ * Where {@link AbstractRequestPacket#execute(RequestContext, Object)} runs.
+ * {@link AbstractRequestPacket#read(io.netty.buffer.ByteBuf)} always runs on the channel's I/O thread.
+ */
+public enum ExecutionType
+{
+  /**
+   * Cheap work that runs directly on the I/O thread.
+   */
+  INLINE,
+  /**
+   * CPU-heavy work such as key exchange math, run on the CPU stage sized to the number of cores.
+   */
+  CPU,
+  /**
+   * Work that may block, such as database access, run on the larger blocking stage.
+   */
+  BLOCKING,
+  /**
+   * Work started on the I/O thread through {@link AsyncRequestPacket#executeAsync(RequestContext, Object)} that
+   * completes later, such as an asynchronous database lookup. Only for {@link AsyncRequestPacket}s.
+   */
+  ASYNC
+}
@@ -0,0 +1,87 @@
+package openbns.loginserver.net.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import openbns.commons.net.codec.sts.CompactStsHeaders;
+import openbns.commons.net.codec.sts.DefaultFullStsResponse;
+import openbns.commons.net.codec.sts.StsHeaders;
+import openbns.commons.net.codec.sts.StsResponseStatus;
+import openbns.commons.xml.codec.StsXmlCodec;
+
+/**
+ * One request of a connection, as handed to its packet: the channel, the session number the client tagged the
+ * request with, and where its replies go. A client may send several requests before reading any reply, so replies are
+ * written here rather than to the channel; they leave in request order however the packets overlap.
+ * <p/>
+ * Nothing written here is flushed by the packet: the connection flushes once per read batch, and once an asynchronous
+ * or staged packet is done, so a reply leaves in a single write however it was built.
+ */
+public abstract class RequestContext
+{
+  private final Channel channel;
+  private final int sessionNumber;
+
+  protected RequestContext( Channel channel, int sessionNumber )
+  {
+    this.channel = channel;
+    this.sessionNumber = sessionNumber;
+  }
+
+  public Channel channel()
+  {
+    return channel;
+  }
+
+  /**
+   * @return the request's {@code s} header, or -1 if it had none
+   */
+  public int getSessionNumber()
+  {
+    return sessionNumber;
+  }
+
+  /**
+   * Writes a message answering the request. May be called from any thread.
+   */
+  public abstract void write( Object msg );
+
+  /**
+   * Writes a reply with {@code body} as its content, its length in {@code l} and, if the request had one, its session
+   * number in {@code s}. The encoder puts a small body in the same buffer as the head.
+   */
+  public void reply( StsResponseStatus status, ByteBuf body )
+  {
+    DefaultFullStsResponse resp = new DefaultFullStsResponse( status, body, new CompactStsHeaders() );
+    resp.headers().add( StsHeaders.Names.CONTENT_LENGTH, body.readableBytes() );
+    if( sessionNumber >= 0 )
+      resp.headers().add( StsHeaders.Names.SESSION_NUMBER, sessionNumber + "R" );
+    write( resp );
+  }
+
+  /**
+   * Encodes {@code body} with {@code codec} into a buffer from the channel's allocator and writes it as
+   * {@link #reply(StsResponseStatus, ByteBuf)} does. The buffer is released if encoding fails.
+   */
+  public <T> void reply( StsResponseStatus status, T body, StsXmlCodec<T> codec )
+  {
+    ByteBuf buf = channel.alloc().buffer();
+    try
+    {
+      codec.encode( body, buf );
+    }
+    catch( RuntimeException e )
+    {
+      buf.release();
+      throw e;
+    }
+    reply( status, buf );
+  }
+
+  /**
+   * Writes a reply without headers or content.
+   */
+  public void reply( StsResponseStatus status )
+  {
+    write( new DefaultFullStsResponse( status ) );
+  }
+}
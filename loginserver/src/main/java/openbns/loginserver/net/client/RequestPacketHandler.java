@@ -1,61 +1,199 @@
 package openbns.loginserver.net.client;
 
-import openbns.loginserver.net.client.impl.RequestConnect;
-import openbns.loginserver.net.client.impl.RequestKeyData;
-import openbns.loginserver.net.client.impl.RequestLoginStart;
-import openbns.loginserver.net.client.impl.RequestPing;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import openbns.commons.net.codec.sts.StsContentAggregator;
+import openbns.commons.net.codec.sts.StsResponseStatus;
+import openbns.loginserver.Config;
+import openbns.loginserver.net.ServerMetrics;
+import openbns.loginserver.net.server.dto.ReplyErrorDTO;
+import openbns.loginserver.net.server.dto.ReplyErrorDTOXmlCodec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reflections.Reflections;
 
-import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Created with IntelliJ IDEA.
  * User: Eugene Chipachenko
  * Date: 27.01.14
  * Time: 22:54
+ * <p/>
+ * Finds the packet for a request URI. Packets are registered with {@link RequestUri} in
+ * {@code openbns.loginserver.net.client.impl}, found by a classpath scan at startup and looked up by URI in a hash
+ * map; the decoder hands over known URIs as shared strings whose hash is already computed. It also gives the body
+ * limit of each packet for {@link StsContentAggregator}: the packet's own, or none for {@link StreamingRequestPacket}s
+ * and unknown URIs, whose bodies are streamed. Each packet gets the {@link ServerMetrics} of its URIs.
+ * <p/>
+ * Known URIs without a packet yet: /Auth/LoginFinish, /Auth/RequestToken, /Auth/RequestGameToken,
+ * /Auth/GetMyUserInfo, /GameAccount/ListMyAccounts, /World/ListWorlds, /Slot/ListCharSlots, /Slot/GetCharSlot,
+ * /Slot/ListSlots, /Game.bns/CreatePC, /Game.bns/DeletePC, /SecondPassword/GetStatus, /Grade.bns/GetGameGrade,
+ * /Friend/GetUserInfo, /VirtualCurrency/GetBalance, /Friend/PageRecvProposals.
  */
 public class RequestPacketHandler
 {
-  private static RequestPacketHandler ourInstance = new RequestPacketHandler();
+  private static final Log log = LogFactory.getLog( RequestPacketHandler.class );
+  private static final String PACKETS_PACKAGE = "openbns.loginserver.net.client.impl";
+
+  private static RequestPacketHandler ourInstance = new RequestPacketHandler( PACKETS_PACKAGE, Config.STS_MAX_CONTENT_LENGTH );
 
   public static RequestPacketHandler getInstance()
   {
     return ourInstance;
   }
 
-  private RequestPacketHandler()
+  private final Map<String, AbstractRequestPacket<?>> packets = new HashMap<>();
+  private final ErrorPacket unknownUri;
+  private final ErrorPacket contentTooLong;
+  private final ErrorPacket badRequest;
+
+  /**
+   * @param maxContentLength body limit of packets that do not set their own
+   */
+  RequestPacketHandler( String packageName, int maxContentLength )
+  {
+    for( Class<?> type : new Reflections( packageName ).getTypesAnnotatedWith( RequestUri.class ) )
+    {
+      if( !AbstractRequestPacket.class.isAssignableFrom( type ) )
+        throw new IllegalStateException( type.getName() + " has @RequestUri but is not an AbstractRequestPacket" );
+
+      AbstractRequestPacket<?> packet;
+      try
+      {
+        packet = (AbstractRequestPacket<?>) type.getDeclaredConstructor().newInstance();
+      }
+      catch( ReflectiveOperationException e )
+      {
+        throw new IllegalStateException( "Cannot create packet " + type.getName(), e );
+      }
+
+      if( packet.getExecutionType() == ExecutionType.ASYNC && !(packet instanceof AsyncRequestPacket) )
+        throw new IllegalStateException( type.getName() + " is ASYNC but not an AsyncRequestPacket" );
+
+      RequestUri annotation = type.getAnnotation( RequestUri.class );
+      packet.maxContentLength = annotation.maxContentLength() > 0 ? annotation.maxContentLength() : maxContentLength;
+      packet.metrics = ServerMetrics.getInstance().getRequestMetrics( join( annotation.value() ) );
+      for( String uri : annotation.value() )
+      {
+        AbstractRequestPacket<?> existing = packets.put( uri, packet );
+        if( existing != null )
+          throw new IllegalStateException( uri + " is handled by both " + existing.getClass().getName() + " and " + type.getName() );
+      }
+    }
+    log.info( "Registered " + packets.size() + " request URIs" );
+
+    unknownUri = new ErrorPacket( StsResponseStatus.NOT_FOUND );
+    unknownUri.metrics = ServerMetrics.getInstance().getRequestMetrics( "(unknown URI)" );
+    contentTooLong = new ErrorPacket( StsResponseStatus.REQUEST_ENTITY_TOO_LARGE );
+    contentTooLong.metrics = ServerMetrics.getInstance().getRequestMetrics( "(content too long)" );
+    badRequest = new ErrorPacket( new StsResponseStatus( 400, "Bad Request" ) );
+    badRequest.metrics = ServerMetrics.getInstance().getRequestMetrics( "(bad request)" );
+  }
+
+  private static String join( String[] uris )
+  {
+    StringBuilder sb = new StringBuilder( uris[ 0 ] );
+    for( int i = 1; i < uris.length; i++ )
+      sb.append( ',' ).append( uris[ i ] );
+    return sb.toString();
+  }
+
+  /**
+   * @return the packet for {@code uri}, or {@code null} if there is none
+   */
+  public AbstractRequestPacket<?> getPacket( String uri )
+  {
+    return packets.get( uri );
+  }
+
+  /**
+   * @return packet answering a URI that has no packet of its own
+   */
+  public AbstractRequestPacket<Void> getUnknownUriPacket()
+  {
+    return unknownUri;
+  }
+
+  /**
+   * @return packet answering a request whose body is over its packet's limit
+   */
+  public AbstractRequestPacket<Void> getContentTooLongPacket()
   {
+    return contentTooLong;
   }
 
-  public AbstractRequestPacket getPacket( String url ) throws IOException
+  /**
+   * @return packet answering a well-formed request with a header it cannot use, such as a malformed session number
+   */
+  public AbstractRequestPacket<Void> getBadRequestPacket()
   {
-    switch( url )
+    return badRequest;
+  }
+
+  /**
+   * @param packet the packet {@link #getPacket} found, or {@code null}
+   * @return the body limit of a request to {@code packet}, or {@link StsContentAggregator.ContentLimits#STREAM}
+   */
+  public static int getMaxContentLength( AbstractRequestPacket<?> packet )
+  {
+    if( packet == null || packet instanceof StreamingRequestPacket )
+      return StsContentAggregator.ContentLimits.STREAM;
+    return packet.getMaxContentLength();
+  }
+
+  /**
+   * Replies with an error whose body is encoded once and shared by all replies. The request body is skipped as it
+   * arrives.
+   */
+  private static class ErrorPacket extends StreamingRequestPacket<Void>
+  {
+    private static final ContentReader<Void> SKIP = new ContentReader<Void>()
+    {
+      @Override
+      public void read( ByteBuf chunk )
+      {
+      }
+
+      @Override
+      public Void end()
+      {
+        return null;
+      }
+    };
+
+    private final StsResponseStatus status;
+    private final ByteBuf body;
+
+    private ErrorPacket( StsResponseStatus status )
+    {
+      ReplyErrorDTO error = new ReplyErrorDTO();
+      error.setCode( status.code() );
+      error.setServer( 1001 );
+      error.setModule( 1 );
+      ByteBuf body = Unpooled.buffer();
+      ReplyErrorDTOXmlCodec.INSTANCE.encode( error, body );
+      this.status = status;
+      this.body = Unpooled.unreleasableBuffer( body );
+    }
+
+    @Override
+    public ContentReader<Void> newReader()
+    {
+      return SKIP;
+    }
+
+    @Override
+    public void execute( RequestContext context, Void request )
+    {
+      context.reply( status, body.duplicate() );
+    }
+
+    @Override
+    public boolean isConcurrent()
     {
-      case "/Sts/Connect":
-        return new RequestConnect();
-      case "/Sts/Ping":
-        return new RequestPing();
-      case "/Auth/LoginStart":
-        return new RequestLoginStart();
-      case "/Auth/KeyData":
-        return new RequestKeyData();
-      case "/Auth/LoginFinish":
-      case "/Auth/RequestToken":
-      case "/Auth/RequestGameToken":
-      case "/Auth/GetMyUserInfo":
-      case "/GameAccount/ListMyAccounts":
-      case "/World/ListWorlds":
-      case "/Slot/ListCharSlots":
-      case "/Slot/GetCharSlot":
-      case "/Slot/ListSlots":
-      case "/Game.bns/CreatePC":
-      case "/Game.bns/DeletePC":
-      case "/SecondPassword/GetStatus":
-      case "/Grade.bns/GetGameGrade":
-      case "/Friend/GetUserInfo":
-      case "/VirtualCurrency/GetBalance":
-      case "/Friend/PageRecvProposals":
-      default:
-        throw new IOException( "No handler available for request " + url );
+      return true;
     }
   }
 }
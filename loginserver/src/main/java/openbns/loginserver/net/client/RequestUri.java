@@ -0,0 +1,22 @@
+package openbns.loginserver.net.client;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Registers an {@link AbstractRequestPacket} with {@link RequestPacketHandler} for the given request URIs.
+ */
+@Retention( RetentionPolicy.RUNTIME )
+@Target( ElementType.TYPE )
+public @interface RequestUri
+{
+  String[] value();
+
+  /**
+   * Largest request body in bytes, 0 for the server's {@code sts.maxContentLength}. Ignored by
+   * {@link StreamingRequestPacket}s, which do not hold their body.
+   */
+  int maxContentLength() default 0;
+}
@@ -0,0 +1,44 @@
+package openbns.loginserver.net.client;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A packet that decodes its body chunk by chunk as it is received, so the body is never held in full and has no
+ * length limit. Like {@link #read}, the reader runs on the channel's I/O thread; the packet is dispatched once the
+ * last chunk is read.
+ */
+public abstract class StreamingRequestPacket<T> extends AbstractRequestPacket<T>
+{
+  /**
+   * @return reader for the body of one request
+   */
+  public abstract ContentReader<T> newReader();
+
+  /**
+   * Decodes a body received whole by reading it as a single chunk.
+   */
+  @Override
+  public T read( ByteBuf buf )
+  {
+    ContentReader<T> reader = newReader();
+    reader.read( buf );
+    return reader.end();
+  }
+
+  /**
+   * Decodes the body of one request.
+   */
+  public interface ContentReader<T>
+  {
+    /**
+     * Reads the next chunk of the body. The chunk is released once this returns, so it has to be retained to be
+     * kept.
+     */
+    void read( ByteBuf chunk );
+
+    /**
+     * @return the request, after the last chunk was read
+     */
+    T end();
+  }
+}
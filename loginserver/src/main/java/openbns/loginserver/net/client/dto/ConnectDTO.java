@@ -1,6 +1,7 @@
 package openbns.loginserver.net.client.dto;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
+import openbns.commons.xml.codec.StsCodec;
 
 /**
  * Created with IntelliJ IDEA.
@@ -8,6 +9,7 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * Date: 17.01.14
  * Time: 22:48
  */
+@StsCodec
 @XStreamAlias("Connect")
 public class ConnectDTO
 {
@@ -1,11 +1,12 @@
 package openbns.loginserver.net.client.impl;
 
-import io.netty.buffer.ByteBufInputStream;
-import openbns.commons.net.codec.sts.DefaultFullStsResponse;
+import io.netty.buffer.ByteBuf;
 import openbns.commons.net.codec.sts.StsResponseStatus;
-import openbns.commons.xml.StsXStream;
 import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.RequestContext;
+import openbns.loginserver.net.client.RequestUri;
 import openbns.loginserver.net.client.dto.ConnectDTO;
+import openbns.loginserver.net.client.dto.ConnectDTOXmlCodec;
 
 /**
  * Created with IntelliJ IDEA.
@@ -13,20 +14,24 @@ import openbns.loginserver.net.client.dto.ConnectDTO;
  * Date: 27.01.14
  * Time: 21:09
  */
-public class RequestConnect extends AbstractRequestPacket
+@RequestUri( "/Sts/Connect" )
+public class RequestConnect extends AbstractRequestPacket<ConnectDTO>
 {
   @Override
-  public void read()
+  public ConnectDTO read( ByteBuf buf )
   {
-    StsXStream stream = new StsXStream();
-    stream.processAnnotations( ConnectDTO.class );
+    return ConnectDTOXmlCodec.INSTANCE.decode( buf );
+  }
 
-    ConnectDTO connectDTO = (ConnectDTO) stream.fromXML( new ByteBufInputStream( buf ) );
+  @Override
+  public void execute( RequestContext context, ConnectDTO request )
+  {
+    context.reply( StsResponseStatus.OK );
   }
 
   @Override
-  public void execute()
+  public boolean isConcurrent()
   {
-    channel.write( new DefaultFullStsResponse( StsResponseStatus.OK ) );
+    return true;
   }
 }
@@ -1,16 +1,24 @@
 package openbns.loginserver.net.client.impl;
 
-import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBuf;
+import openbns.commons.net.codec.sts.StsResponseStatus;
 import openbns.commons.util.CryptUtil;
-import openbns.commons.xml.StsXStream;
+import openbns.loginserver.net.Session;
 import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.ExecutionType;
+import openbns.loginserver.net.client.RequestContext;
+import openbns.loginserver.net.client.RequestUri;
 import openbns.loginserver.net.client.dto.KeyDataDTO;
+import openbns.loginserver.net.client.dto.KeyDataDTOXmlCodec;
+import openbns.loginserver.net.server.dto.ReplyErrorDTO;
+import openbns.loginserver.net.server.dto.ReplyErrorDTOXmlCodec;
+import openbns.loginserver.net.server.dto.ReplyKeyData;
+import openbns.loginserver.net.server.dto.ReplyKeyDataXmlCodec;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Arrays;
 
 /**
  * Created with IntelliJ IDEA.
@@ -18,22 +26,23 @@ import java.util.Arrays;
  * Date: 27.01.14
  * Time: 21:14
  */
-public class RequestKeyData extends AbstractRequestPacket
+@RequestUri( "/Auth/KeyData" )
+public class RequestKeyData extends AbstractRequestPacket<KeyDataDTO>
 {
   private static final Log log = LogFactory.getLog( RequestKeyData.class );
-  private KeyDataDTO keyData;
 
   @Override
-  public void read()
+  public KeyDataDTO read( ByteBuf buf )
   {
-    StsXStream stream = new StsXStream();
-    stream.processAnnotations( KeyDataDTO.class );
-    keyData = (KeyDataDTO) stream.fromXML( new ByteBufInputStream( buf ) );
-    log.debug( "Read from client object: " + keyData );
+    KeyDataDTO keyData = KeyDataDTOXmlCodec.INSTANCE.decode( buf );
+    // The key data is the client's exchange key and proof, so only its size is logged
+    if( log.isDebugEnabled() )
+      log.debug( "Read key data from client: " + (keyData.getKeyData() == null ? 0 : keyData.getKeyData().length()) + " chars" );
+    return keyData;
   }
 
   @Override
-  public void execute()
+  public void execute( RequestContext context, KeyDataDTO keyData )
   {
     byte[] data = CryptUtil.base64( keyData.getKeyData() );
     ByteBuffer bf = ByteBuffer.wrap( data );
@@ -49,26 +58,52 @@ public class RequestKeyData extends AbstractRequestPacket
 
     try
     {
-      byte[][] result = handler.getSession().generateServerKey( exchangeKey );
+      byte[][] result = context.channel().attr( Session.KEY ).get().generateServerKey( exchangeKey );
 
       String authentication = CryptUtil.base64( result[ 0 ] ) + "," + CryptUtil.base64( result[ 1 ] );
       String[] args = authentication.split( "," );
 
       String a1 = new String( checkHash );
 
+      if( log.isDebugEnabled() )
+        log.debug( "Client check hash " + (a1.equals( args[ 0 ] ) ? "matches" : "does not match") );
       if( a1.equals( args[ 0 ] ) )
-      {
-        System.out.println( "Aaaaaaaaaagdg" );
-      }
-
-      System.out.println( Arrays.deepToString( result ) );
+        replyKeyData( context, args[ 1 ] );
+      else
+        replyError( context );
     }
     catch( Exception e )
     {
-      e.printStackTrace();
+      // Such as key data before /Auth/LoginStart found the account
+      log.error( "Error generating server key", e );
+      replyError( context );
     }
+  }
+
+  /**
+   * Answers with the server's proof, which the client checks in turn.
+   */
+  private void replyKeyData( RequestContext context, String proof )
+  {
+    ReplyKeyData replyKeyData = new ReplyKeyData();
+    replyKeyData.setKeyData( proof );
+
+    context.reply( StsResponseStatus.OK, replyKeyData, ReplyKeyDataXmlCodec.INSTANCE );
+  }
 
-    System.out.println( new String( exchangeKey ) );
-    System.out.println( new String( checkHash ) );
+  private void replyError( RequestContext context )
+  {
+    ReplyErrorDTO error = new ReplyErrorDTO();
+    error.setCode( 3003 );
+    error.setServer( 1001 );
+    error.setModule( 1 );
+    error.setLine( 458 );
+    context.reply( StsResponseStatus.NOT_ONLINE, error, ReplyErrorDTOXmlCodec.INSTANCE );
+  }
+
+  @Override
+  public ExecutionType getExecutionType()
+  {
+    return ExecutionType.CPU;
   }
 }
@@ -1,24 +1,35 @@
 package openbns.loginserver.net.client.impl;
 
-import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.Unpooled;
-import openbns.commons.net.codec.sts.DefaultLastStsContent;
-import openbns.commons.net.codec.sts.DefaultStsResponse;
-import openbns.commons.net.codec.sts.StsHeaders;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
 import openbns.commons.net.codec.sts.StsResponseStatus;
 import openbns.commons.util.CryptUtil;
-import openbns.commons.xml.StsXStream;
-import openbns.loginserver.dao.AccountDAO;
+import openbns.loginserver.dao.AccountCache;
 import openbns.loginserver.model.Account;
+import openbns.loginserver.net.ExecutionStage;
+import openbns.loginserver.net.RequestExecutor;
 import openbns.loginserver.net.Session;
-import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.AsyncRequestPacket;
+import openbns.loginserver.net.client.ExecutionType;
+import openbns.loginserver.net.client.RequestContext;
+import openbns.loginserver.net.client.RequestUri;
 import openbns.loginserver.net.client.dto.LoginStartDTO;
+import openbns.loginserver.net.client.dto.LoginStartDTOXmlCodec;
 import openbns.loginserver.net.server.dto.ReplyErrorDTO;
+import openbns.loginserver.net.server.dto.ReplyErrorDTOXmlCodec;
 import openbns.loginserver.net.server.dto.ReplyKeyData;
+import openbns.loginserver.net.server.dto.ReplyKeyDataXmlCodec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created with IntelliJ IDEA.
@@ -26,82 +37,106 @@ import java.nio.ByteOrder;
  * Date: 27.01.14
  * Time: 21:11
  */
-public class RequestLoginStart extends AbstractRequestPacket
+@RequestUri( "/Auth/LoginStart" )
+public class RequestLoginStart extends AsyncRequestPacket<LoginStartDTO>
 {
-  private LoginStartDTO loginStart;
+  private static final Log log = LogFactory.getLog( RequestLoginStart.class );
 
   @Override
-  public void read()
+  public LoginStartDTO read( ByteBuf buf )
   {
-    StsXStream stream = new StsXStream();
-    stream.processAnnotations( LoginStartDTO.class );
-
-    loginStart = (LoginStartDTO) stream.fromXML( new ByteBufInputStream( buf ) );
+    return LoginStartDTOXmlCodec.INSTANCE.decode( buf );
   }
 
+  /**
+   * Looks the account up, then replies on the CPU stage: the lookup may complete on a JDBC thread, or at once on the
+   * I/O thread for cached accounts, and neither should run the key exchange math.
+   */
   @Override
-  public void execute()
+  public Future<?> executeAsync( final RequestContext context, final LoginStartDTO loginStart )
   {
-    Session session = getHandler().getSession();
-    try
+    final Session session = context.channel().attr( Session.KEY ).get();
+    final Promise<Void> done = context.channel().eventLoop().newPromise();
+    AccountCache.getInstance().getByLoginAsync( loginStart.getLoginName() ).addListener( new FutureListener<Account>()
     {
-      Account account = AccountDAO.getInstance().getByLogin( loginStart.getLoginName() );
-      session.setAccount( account );
-
-      BigInteger key = session.generateServerExchangeKey();
-      BigInteger sessionKey = session.getSessionKey();
-
-      byte[] bk = CryptUtil.bigIntegerToByteArray( key );
-      byte[] sk = CryptUtil.bigIntegerToByteArray( sessionKey );
+      @Override
+      public void operationComplete( final Future<Account> future ) throws Exception
+      {
+        Runnable reply = new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            try
+            {
+              reply( context, session, loginStart, future );
+              done.setSuccess( null );
+            }
+            catch( Exception e )
+            {
+              done.setFailure( e );
+            }
+          }
+        };
+        ExecutionStage cpu = RequestExecutor.getInstance().getStage( ExecutionType.CPU );
+        if( cpu == null )
+          reply.run();
+        else if( !cpu.execute( reply ) )
+          done.setFailure( new RejectedExecutionException( "Stage '" + cpu.getName() + "' is full" ) );
+      }
+    } );
+    return done;
+  }
 
-      ByteBuffer buffer = ByteBuffer.allocate( bk.length + sk.length + 8 );
-      buffer.order( ByteOrder.LITTLE_ENDIAN );
+  private void reply( RequestContext context, Session session, LoginStartDTO loginStart, Future<Account> lookup ) throws IOException, NoSuchAlgorithmException
+  {
+    Account account = lookup.getNow();
+    if( !lookup.isSuccess() )
+    {
+      log.error( "Error getting account by login " + loginStart.getLoginName(), lookup.cause() );
+      replyError( context );
+    }
+    else if( account == null )
+      replyError( context );
+    else
+      replyKeyData( context, session, account );
+  }
 
-      buffer.clear();
-      buffer.putInt( sk.length );
-      buffer.put( sk );
-      buffer.putInt( bk.length );
-      buffer.put( bk );
-      buffer.flip();
+  private void replyKeyData( RequestContext context, Session session, Account account ) throws IOException, NoSuchAlgorithmException
+  {
+    session.setAccount( account );
 
-      String kd = CryptUtil.base64( buffer.array() );
+    BigInteger key = session.generateServerExchangeKey();
+    BigInteger sessionKey = session.getSessionKey();
 
-      ReplyKeyData replyKeyData = new ReplyKeyData();
-      replyKeyData.setKeyData( kd );
+    byte[] bk = CryptUtil.bigIntegerToByteArray( key );
+    byte[] sk = CryptUtil.bigIntegerToByteArray( sessionKey );
 
-      StsXStream stream = new StsXStream();
-      stream.processAnnotations( ReplyKeyData.class );
-      byte[] b = stream.toXML( replyKeyData ).getBytes();
+    ByteBuffer buffer = ByteBuffer.allocate( bk.length + sk.length + 8 );
+    buffer.order( ByteOrder.LITTLE_ENDIAN );
 
-      DefaultStsResponse resp = new DefaultStsResponse( StsResponseStatus.OK );
-      resp.headers().add( StsHeaders.Names.CONTENT_LENGTH, b.length );
-      resp.headers().add( StsHeaders.Names.SESSION_NUMBER, session.getSessionId() + "R" );
+    buffer.clear();
+    buffer.putInt( sk.length );
+    buffer.put( sk );
+    buffer.putInt( bk.length );
+    buffer.put( bk );
+    buffer.flip();
 
-      channel.writeAndFlush( resp );
-      channel.writeAndFlush( new DefaultLastStsContent( Unpooled.wrappedBuffer( b ) ) );
-    }
-    catch( NullPointerException e )
-    {
-      StsXStream stream = new StsXStream();
-      stream.processAnnotations( ReplyErrorDTO.class );
+    String kd = CryptUtil.base64( buffer.array() );
 
-      ReplyErrorDTO error = new ReplyErrorDTO();
-      error.setCode( 3002 );
-      error.setServer( 1001 );
-      error.setModule( 1 );
-      error.setLine( 458 );
-      byte[] b = stream.toXML( error ).getBytes();
+    ReplyKeyData replyKeyData = new ReplyKeyData();
+    replyKeyData.setKeyData( kd );
 
-      DefaultStsResponse resp = new DefaultStsResponse( StsResponseStatus.NOT_ONLINE );
-      resp.headers().add( StsHeaders.Names.CONTENT_LENGTH, b.length );
-      resp.headers().add( StsHeaders.Names.SESSION_NUMBER, session.getSessionId() + "R" );
+    context.reply( StsResponseStatus.OK, replyKeyData, ReplyKeyDataXmlCodec.INSTANCE );
+  }
 
-      channel.writeAndFlush( resp );
-      channel.writeAndFlush( new DefaultLastStsContent( Unpooled.wrappedBuffer( b ) ) );
-    }
-    catch( Exception e )
-    {
-      e.printStackTrace();
-    }
+  private void replyError( RequestContext context )
+  {
+    ReplyErrorDTO error = new ReplyErrorDTO();
+    error.setCode( 3002 );
+    error.setServer( 1001 );
+    error.setModule( 1 );
+    error.setLine( 458 );
+    context.reply( StsResponseStatus.NOT_ONLINE, error, ReplyErrorDTOXmlCodec.INSTANCE );
   }
 }
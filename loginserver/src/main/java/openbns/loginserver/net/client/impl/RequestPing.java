@@ -1,8 +1,10 @@
 package openbns.loginserver.net.client.impl;
 
-import openbns.commons.net.codec.sts.DefaultFullStsResponse;
+import io.netty.buffer.ByteBuf;
 import openbns.commons.net.codec.sts.StsResponseStatus;
 import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.RequestContext;
+import openbns.loginserver.net.client.RequestUri;
 
 /**
  * Created with IntelliJ IDEA.
@@ -10,17 +12,24 @@ import openbns.loginserver.net.client.AbstractRequestPacket;
  * Date: 27.01.14
  * Time: 21:38
  */
-public class RequestPing extends AbstractRequestPacket
+@RequestUri( "/Sts/Ping" )
+public class RequestPing extends AbstractRequestPacket<Void>
 {
   @Override
-  public void read()
+  public Void read( ByteBuf buf )
   {
+    return null;
+  }
 
+  @Override
+  public void execute( RequestContext context, Void request )
+  {
+    context.reply( StsResponseStatus.OK );
   }
 
   @Override
-  public void execute()
+  public boolean isConcurrent()
   {
-    channel.write( new DefaultFullStsResponse( StsResponseStatus.OK ) );
+    return true;
   }
 }
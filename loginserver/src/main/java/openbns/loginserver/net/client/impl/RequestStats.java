@@ -0,0 +1,81 @@
+package openbns.loginserver.net.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import openbns.commons.net.codec.sts.StsResponseStatus;
+import openbns.loginserver.Config;
+import openbns.loginserver.net.ExecutionStage;
+import openbns.loginserver.net.RequestExecutor;
+import openbns.loginserver.net.ServerBufferPool;
+import openbns.loginserver.net.ServerMetrics;
+import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.RequestContext;
+import openbns.loginserver.net.client.RequestPacketHandler;
+import openbns.loginserver.net.client.RequestUri;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+
+/**
+ * Replies with a snapshot of the server's metrics as XML: every URI's counters and decode, queue and execute times
+ * in microseconds, the execution stages and the buffer pool. Only clients connecting from an address in
+ * {@code metrics.stats.allow} are answered; any other gets the reply of an unknown URI.
+ */
+@RequestUri( "/Admin/Stats" )
+public class RequestStats extends AbstractRequestPacket<Void>
+{
+  @Override
+  public Void read( ByteBuf buf )
+  {
+    return null;
+  }
+
+  @Override
+  public void execute( RequestContext context, Void request )
+  {
+    if( !isAllowed( context.channel().remoteAddress() ) )
+    {
+      RequestPacketHandler.getInstance().getUnknownUriPacket().execute( context, null );
+      return;
+    }
+
+    StringBuilder sb = new StringBuilder( 4096 );
+    sb.append( "<Stats>\n" );
+    ServerMetrics.getInstance().appendXml( sb );
+    appendStage( sb, RequestExecutor.getInstance().getCpuStage() );
+    appendStage( sb, RequestExecutor.getInstance().getBlockingStage() );
+    ServerBufferPool pool = ServerBufferPool.getInstance();
+    sb.append( "<BufferPool heapCapacity=\"" ).append( pool.getHeapCapacity() )
+            .append( "\" heapUsed=\"" ).append( pool.getHeapUsed() )
+            .append( "\" directCapacity=\"" ).append( pool.getDirectCapacity() )
+            .append( "\" directUsed=\"" ).append( pool.getDirectUsed() )
+            .append( "\" directMemoryUsed=\"" ).append( ServerBufferPool.getDirectMemoryUsed() ).append( "\"/>\n" );
+    sb.append( "</Stats>\n" );
+
+    ByteBuf b = context.channel().alloc().buffer( sb.length() );
+    b.writeBytes( sb.toString().getBytes( CharsetUtil.US_ASCII ) );
+    context.reply( StsResponseStatus.OK, b );
+  }
+
+  private static void appendStage( StringBuilder sb, ExecutionStage stage )
+  {
+    sb.append( "<ExecutionStage name=\"" ).append( stage.getName() )
+            .append( "\" pending=\"" ).append( stage.getPending() )
+            .append( "\" submitted=\"" ).append( stage.getSubmitted() )
+            .append( "\" completed=\"" ).append( stage.getCompleted() )
+            .append( "\" rejected=\"" ).append( stage.getRejected() ).append( "\"/>\n" );
+  }
+
+  private static boolean isAllowed( SocketAddress address )
+  {
+    return address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null
+            && Arrays.asList( Config.METRICS_STATS_ALLOW ).contains( ((InetSocketAddress) address).getAddress().getHostAddress() );
+  }
+
+  @Override
+  public boolean isConcurrent()
+  {
+    return true;
+  }
+}
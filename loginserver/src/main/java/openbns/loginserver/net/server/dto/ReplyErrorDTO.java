@@ -2,6 +2,7 @@ package openbns.loginserver.net.server.dto;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import openbns.commons.xml.codec.StsCodec;
 
 /**
  * Created with IntelliJ IDEA.
@@ -9,6 +10,7 @@ import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
  * Date: 20.01.14
  * Time: 1:14
  */
+@StsCodec
 @XStreamAlias("Error")
 public class ReplyErrorDTO implements IResponseDTO
 {
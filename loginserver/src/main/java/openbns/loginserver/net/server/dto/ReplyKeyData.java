@@ -1,6 +1,7 @@
 package openbns.loginserver.net.server.dto;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
+import openbns.commons.xml.codec.StsCodec;
 
 /**
  * Created with IntelliJ IDEA.
@@ -8,6 +9,7 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * Date: 18.01.14
  * Time: 15:52
  */
+@StsCodec
 @XStreamAlias("Reply")
 public class ReplyKeyData implements IResponseDTO
 {
@@ -2,7 +2,7 @@ package openbns.loginserver.service;
 
 import openbns.commons.util.UUIDHelper;
 import openbns.loginserver.crypt.HashHelper;
-import openbns.loginserver.dao.AccountDAO;
+import openbns.loginserver.dao.AccountCache;
 import openbns.loginserver.model.AccessLevel;
 import openbns.loginserver.model.Account;
 
@@ -17,7 +17,7 @@ import java.util.Date;
  */
 public class AccountRegistration
 {
-  private static final AccountDAO dao = AccountDAO.getInstance();
+  private static final AccountCache accounts = AccountCache.getInstance();
   private static AccountRegistration ourInstance = new AccountRegistration();
 
   public static AccountRegistration getInstance()
@@ -29,6 +29,9 @@ public class AccountRegistration
   {
   }
 
+  /**
+   * @return the new account, or {@code null} if it could not be inserted
+   */
   public Account createAccount( String login, String password ) throws NoSuchAlgorithmException
   {
     Account account = new Account();
@@ -39,6 +42,6 @@ public class AccountRegistration
     account.setLastLogin( new Date() );
     account.setLastIp( "127.0.0.1" );
     account.setLastServerId( 0 );
-    return dao.insert( account );
+    return accounts.insert( account );
   }
 }
@@ -0,0 +1,44 @@
+package openbns.loginserver.crypt;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * Checks {@link KeyManager#dualPow} against the two separate exponentiations {@code Session.generateServerKey} used
+ * before: {@code exchangeKey.modPow( hash1 * hash2, N ) * v27.modPow( privateKey, N ) mod N}.
+ */
+public class DualPowTest
+{
+  private static final KeyManager keyManager = KeyManager.getInstance();
+
+  public static void main( String[] args ) throws Exception
+  {
+    Random random = new SecureRandom();
+    for( int i = 0; i < 500; i++ )
+    {
+      BigInteger privateKey = i == 0 ? keyManager.generatePrivateKey() : new BigInteger( 256, random );
+      BigInteger e = new BigInteger( 256, random ).multiply( new BigInteger( 256, random ) );
+      BigInteger b = new BigInteger( 1024, random );
+      check( privateKey, e, b );
+    }
+
+    BigInteger privateKey = new BigInteger( 256, random );
+    check( privateKey, BigInteger.ZERO, new BigInteger( 1024, random ) );
+    check( privateKey, BigInteger.ONE, BigInteger.ZERO );
+    check( privateKey, BigInteger.ONE.shiftLeft( 512 ).subtract( BigInteger.ONE ), KeyManager.N.subtract( BigInteger.ONE ) );
+    check( privateKey, BigInteger.ONE.shiftLeft( 600 ), KeyManager.N.add( BigInteger.TEN ) );
+    check( BigInteger.ZERO, new BigInteger( 512, random ), new BigInteger( 1024, random ) );
+
+    System.out.println( "dualPow matches two modPow calls" );
+  }
+
+  private static void check( BigInteger privateKey, BigInteger e, BigInteger b )
+  {
+    BigInteger exchangeKey = keyManager.generateExchangeKey( privateKey );
+    BigInteger expected = exchangeKey.modPow( e, KeyManager.N ).multiply( b.modPow( privateKey, KeyManager.N ) ).mod( KeyManager.N );
+    BigInteger actual = keyManager.dualPow( privateKey, e, b );
+    if( !expected.equals( actual ) )
+      throw new AssertionError( "privateKey=" + privateKey.toString( 16 ) + " e=" + e.toString( 16 ) + " b=" + b.toString( 16 ) + ": expected " + expected.toString( 16 ) + ", got " + actual.toString( 16 ) );
+  }
+}
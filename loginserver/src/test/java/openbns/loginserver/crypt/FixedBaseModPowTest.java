@@ -0,0 +1,42 @@
+package openbns.loginserver.crypt;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Checks {@link FixedBaseModPow} against {@link BigInteger#modPow} for {@code 2^x mod N} with every window size from
+ * 1 to 10 bits, on random 256-bit exponents, zero, one, the largest 256-bit exponent and one over the table's size,
+ * and {@link KeyManager#powG} which uses it.
+ */
+public class FixedBaseModPowTest
+{
+  public static void main( String[] args )
+  {
+    Random random = new Random();
+    for( int windowBits = 1; windowBits <= 10; windowBits++ )
+    {
+      FixedBaseModPow engine = new FixedBaseModPow( KeyManager.G, KeyManager.N, windowBits, 256 );
+      for( int i = 0; i < 200; i++ )
+        check( engine, new BigInteger( 256, random ) );
+      check( engine, BigInteger.ZERO );
+      check( engine, BigInteger.ONE );
+      check( engine, BigInteger.ONE.shiftLeft( 256 ).subtract( BigInteger.ONE ) );
+      check( engine, BigInteger.ONE.shiftLeft( 300 ).add( BigInteger.TEN ) );
+    }
+    for( int i = 0; i < 200; i++ )
+    {
+      BigInteger exponent = new BigInteger( 256, random );
+      if( !KeyManager.G.modPow( exponent, KeyManager.N ).equals( KeyManager.getInstance().powG( exponent ) ) )
+        throw new AssertionError( "KeyManager.powG mismatch for " + exponent.toString( 16 ) );
+    }
+    System.out.println( "FixedBaseModPow matches BigInteger.modPow" );
+  }
+
+  private static void check( FixedBaseModPow engine, BigInteger exponent )
+  {
+    BigInteger expected = KeyManager.G.modPow( exponent, KeyManager.N );
+    BigInteger actual = engine.pow( exponent );
+    if( !expected.equals( actual ) )
+      throw new AssertionError( "2^" + exponent.toString( 16 ) + " mod N: expected " + expected.toString( 16 ) + ", got " + actual.toString( 16 ) );
+  }
+}
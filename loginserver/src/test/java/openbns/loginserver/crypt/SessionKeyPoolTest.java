@@ -0,0 +1,70 @@
+package openbns.loginserver.crypt;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Fills a small {@link SessionKeyPool}, drains it past empty and checks the keys and the hit/miss counters.
+ */
+public class SessionKeyPoolTest
+{
+  private static final int CAPACITY = 32;
+
+  public static void main( String[] args ) throws InterruptedException
+  {
+    SessionKeyPool pool = new SessionKeyPool( CAPACITY, 2 );
+    waitForDepth( pool, CAPACITY );
+
+    Set<BigInteger> privateKeys = new HashSet<>();
+    SessionKeys[] taken = new SessionKeys[ CAPACITY ];
+    long start = System.nanoTime();
+    for( int i = 0; i < CAPACITY; i++ )
+      taken[ i ] = pool.take();
+    long hitNanos = System.nanoTime() - start;
+    for( SessionKeys keys : taken )
+      check( keys, privateKeys );
+
+    if( pool.getHits() != CAPACITY || pool.getMisses() != 0 )
+      throw new AssertionError( "Expected " + CAPACITY + " hits and no misses: " + pool.getHits() + "/" + pool.getMisses() );
+
+    pool.shutdown();
+    Thread.sleep( 200 );
+    while( pool.getDepth() > 0 )
+      check( pool.take(), privateKeys );
+    long misses = pool.getMisses();
+    check( pool.take(), privateKeys );
+    if( pool.getMisses() != misses + 1 )
+      throw new AssertionError( "Empty pool did not count a miss" );
+
+    SessionKeyPool disabled = new SessionKeyPool( 0, 4 );
+    check( disabled.take(), privateKeys );
+    if( disabled.getMisses() != 1 || disabled.getDepth() != 0 )
+      throw new AssertionError( "Disabled pool must generate inline" );
+
+    System.out.println( "SessionKeyPool OK, " + hitNanos / CAPACITY + " ns per pooled take" );
+  }
+
+  private static void waitForDepth( SessionKeyPool pool, int depth ) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + 30000;
+    while( pool.getDepth() < depth )
+    {
+      if( System.currentTimeMillis() > deadline )
+        throw new AssertionError( "Pool not filled: " + pool.getDepth() );
+      Thread.sleep( 10 );
+    }
+    // depth counts keys being generated, give the last ones time to land
+    Thread.sleep( 200 );
+  }
+
+  private static void check( SessionKeys keys, Set<BigInteger> privateKeys )
+  {
+    if( !keys.getExchangeKey().equals( KeyManager.G.modPow( keys.getPrivateKey(), KeyManager.N ) ) )
+      throw new AssertionError( "Exchange key does not match private key" );
+    if( keys.getSessionKey().bitLength() > 64 )
+      throw new AssertionError( "Session key wider than 8 bytes" );
+    if( !privateKeys.add( keys.getPrivateKey() ) )
+      throw new AssertionError( "Duplicate private key" );
+  }
+}
@@ -0,0 +1,128 @@
+package openbns.loginserver.dao;
+
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import openbns.loginserver.model.Account;
+
+import java.util.Date;
+
+/**
+ * Checks {@link AccountCache} hits, negative entries, expiry, invalidation and the size bound without a database,
+ * that concurrent misses share one lookup and that a failed insert is not cached.
+ */
+public class AccountCacheTest
+{
+  public static void main( String[] args ) throws InterruptedException
+  {
+    check( AccountCache.normalize( "Test@plaync.co.kr" ).equals( "test" ), "normalize" );
+    check( AccountCache.normalize( "TEST" ).equals( "test" ), "normalize without postfix" );
+
+    AccountCache cache = new AccountCache( new MemoryAccountStore(), 1000, 60000, 50 );
+    check( cache.getCached( "test" ) == null && cache.getMisses() == 1, "empty cache misses" );
+
+    Account account = account( "test" );
+    cache.cache( "test", account );
+    cache.cache( "ghost", null );
+    check( cache.getCached( "test" ).account == account && cache.getHits() == 1, "positive hit" );
+    check( cache.getCached( "ghost" ).account == null && cache.getNegativeHits() == 1, "negative hit" );
+
+    Thread.sleep( 100 );
+    check( cache.getCached( "ghost" ) == null, "negative entry expires" );
+    check( cache.getCached( "test" ) != null, "positive entry outlives negative ttl" );
+
+    cache.cache( "ghost", null );
+    cache.invalidateNegative();
+    check( cache.getCached( "ghost" ) == null && cache.getCached( "test" ) != null, "invalidateNegative keeps found accounts" );
+
+    cache.invalidate( "TEST@plaync.co.kr" );
+    check( cache.getCached( "test" ) == null, "invalidate" );
+
+    for( int i = 0; i < 5000; i++ )
+      cache.cache( "user" + i, account( "user" + i ) );
+    check( cache.getSize() <= 1000, "size bound: " + cache.getSize() );
+    check( cache.getEvictions() >= 4000, "evictions: " + cache.getEvictions() );
+
+    long memory = cache.estimateMemory();
+    check( memory > 0, "memory estimate" );
+
+    cache.invalidateAll();
+    check( cache.getSize() == 0 && cache.estimateMemory() == 0, "invalidateAll" );
+
+    AccountCache disabled = new AccountCache( new MemoryAccountStore(), 0, 60000, 60000 );
+    disabled.cache( "test", account );
+    check( disabled.getCached( "test" ) == null, "disabled cache stores nothing" );
+
+    sharedLookup();
+    failedInsert();
+
+    System.out.println( "AccountCache OK, ~" + memory / 1000 + " bytes per cached account" );
+  }
+
+  private static void sharedLookup()
+  {
+    StubStore store = new StubStore();
+    AccountCache cache = new AccountCache( store, 1000, 60000, 60000 );
+    Future<Account> first = cache.getByLoginAsync( "Shared" );
+    Future<Account> second = cache.getByLoginAsync( "shared@plaync.co.kr" );
+    check( store.lookups == 1, "concurrent misses share one lookup: " + store.lookups );
+
+    Account account = account( "shared" );
+    store.pending.setSuccess( account );
+    check( first.getNow() == account && second.getNow() == account, "both lookups answered" );
+    check( cache.getByLoginAsync( "shared" ).getNow() == account && store.lookups == 1, "answer cached" );
+
+    cache.getByLoginAsync( "broken" );
+    store.pending.setFailure( new IllegalStateException( "lookup failed" ) );
+    check( !cache.getByLoginAsync( "broken" ).isDone() && store.lookups == 3, "failed lookup not cached" );
+  }
+
+  private static void failedInsert()
+  {
+    StubStore store = new StubStore();
+    AccountCache cache = new AccountCache( store, 1000, 60000, 60000 );
+    cache.cache( "newbie", null );
+    check( cache.insert( account( "newbie" ) ) == null, "failed insert reported" );
+    check( cache.getCached( "newbie" ).account == null, "failed insert not cached over the negative entry" );
+  }
+
+  /**
+   * Lookups complete when the test says so; inserts fail.
+   */
+  private static class StubStore implements AccountStore
+  {
+    private int lookups;
+    private Promise<Account> pending;
+
+    @Override
+    public Account insert( Account account )
+    {
+      return null;
+    }
+
+    @Override
+    public Future<Account> getByLoginAsync( String login )
+    {
+      lookups++;
+      pending = ImmediateEventExecutor.INSTANCE.newPromise();
+      return pending;
+    }
+  }
+
+  private static Account account( String login )
+  {
+    Account account = new Account();
+    account.setUuid( "00000000-0000-0000-0000-000000000000" );
+    account.setLogin( login );
+    account.setPassword( new byte[ 32 ] );
+    account.setLastLogin( new Date() );
+    account.setLastIp( "127.0.0.1" );
+    return account;
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
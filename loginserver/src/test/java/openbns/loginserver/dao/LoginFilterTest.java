@@ -0,0 +1,137 @@
+package openbns.loginserver.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Checks {@link LoginFilter} login folding, that it never rejects an existing login, including ones added while it
+ * is being rebuilt, that its false-positive rate stays near the configured one, that it notices accounts created
+ * elsewhere and that it refuses to run without refreshes.
+ */
+public class LoginFilterTest
+{
+  private static final int ACCOUNTS = 200000;
+  private static final double FPP = 0.001;
+
+  public static void main( String[] args ) throws Exception
+  {
+    check( LoginFilter.fold( "José @plaync.co.kr" ).equals( "jose" ), "fold" );
+    check( LoginFilter.lookupKey( "Bob@plaync.co.kr" ).equals( "bob" ), "lookup key" );
+    check( LoginFilter.lookupKey( "josé" ) == null, "non-ASCII logins bypass the filter" );
+
+    LoginFilter filter = new LoginFilter( FPP, 30, 60 );
+    check( filter.mightExist( "anyone" ), "unloaded filter passes everything" );
+
+    List<String> logins = new ArrayList<>( ACCOUNTS );
+    for( int i = 0; i < ACCOUNTS; i++ )
+      logins.add( "user" + i );
+    logins.add( "José" );
+    filter.load( logins, logins.size() );
+
+    for( String login : logins )
+      check( filter.mightExist( login + "@plaync.co.kr" ), "false negative for " + login );
+    check( filter.mightExist( "JOSE" ), "accent-insensitive match" );
+    check( filter.mightExist( "USER42 " ), "case and trailing space insensitive match" );
+
+    check( !filter.isStale( logins.size() ), "filter holds every account it loaded" );
+    filter.add( "newbie" );
+    check( filter.mightExist( "Newbie" ), "added login" );
+    check( !filter.isStale( logins.size() + 1 ), "added login counted" );
+    check( filter.isStale( logins.size() + 2 ), "account created elsewhere" );
+    check( filter.isStale( logins.size() ), "account deleted elsewhere" );
+
+    long rejectionsBefore = filter.getRejections();
+    int unknown = 200000;
+    for( int i = 0; i < unknown; i++ )
+      filter.mightExist( "ghost" + i );
+    double rate = 1 - (double) (filter.getRejections() - rejectionsBefore) / unknown;
+    check( rate < FPP * 3, "false-positive rate " + rate );
+
+    addDuringLoad();
+    refuseNoRefresh( 0, 60 );
+    refuseNoRefresh( 30, 0 );
+
+    System.out.println( "LoginFilter OK: false-positive rate " + rate + ", " + filter.getMemoryBytes() / 1024 + " KB for " + logins.size() + " logins" );
+  }
+
+  private static void addDuringLoad() throws InterruptedException
+  {
+    final LoginFilter filter = new LoginFilter( FPP, 30, 60 );
+    // The accounts table: an account is inserted, then added to the filter, and a scan sees what was inserted
+    // before it started
+    final List<String> table = Collections.synchronizedList( new ArrayList<String>() );
+    for( int i = 0; i < 100; i++ )
+      table.add( "user" + i );
+    Iterable<String> scan = new Iterable<String>()
+    {
+      @Override
+      public Iterator<String> iterator()
+      {
+        synchronized( table )
+        {
+          return new ArrayList<>( table ).iterator();
+        }
+      }
+    };
+    filter.load( scan, table.size() );
+
+    // Inserted once the scan started
+    filter.load( new Iterable<String>()
+    {
+      @Override
+      public Iterator<String> iterator()
+      {
+        Iterator<String> logins = table.iterator();
+        filter.add( "midscan" );
+        return logins;
+      }
+    }, table.size() );
+    check( filter.mightExist( "midscan" ), "login added during a load" );
+
+    // Inserted all the while the filter is rebuilt over and over
+    final int inserted = 100000;
+    Thread inserter = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        for( int i = 0; i < inserted; i++ )
+        {
+          table.add( "live" + i );
+          filter.add( "live" + i );
+        }
+      }
+    };
+    inserter.start();
+    int loads = 0;
+    while( inserter.isAlive() )
+    {
+      filter.load( scan, table.size() );
+      loads++;
+    }
+    inserter.join();
+    for( int i = 0; i < inserted; i++ )
+      check( filter.mightExist( "live" + i ), "login inserted during " + loads + " reloads lost: live" + i );
+  }
+
+  private static void refuseNoRefresh( int refreshSeconds, int rebuildMinutes ) throws Exception
+  {
+    try
+    {
+      new LoginFilter( FPP, refreshSeconds, rebuildMinutes ).start();
+    }
+    catch( IllegalArgumentException e )
+    {
+      return;
+    }
+    throw new AssertionError( "started with refresh " + refreshSeconds + " s, rebuild " + rebuildMinutes + " min" );
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
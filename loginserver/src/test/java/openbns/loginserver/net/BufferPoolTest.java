@@ -0,0 +1,78 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import openbns.commons.net.BufferPool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks {@link BufferPool} reports the chunks its arenas hold and the bytes in use, rejects a chunk size that is not
+ * a power of two times the page size, and that {@link LeakCheck} catches a buffer that is never released.
+ */
+public class BufferPoolTest
+{
+  private static final int PAGE_SIZE = 8192;
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  public static void main( String[] args ) throws Exception
+  {
+    LeakCheck.start();
+
+    BufferPool pool = new BufferPool( true, 1, 2, PAGE_SIZE, CHUNK_SIZE );
+    check( pool.getDirectArenas().size() == 2 && pool.getHeapArenas().size() == 1, "arenas" );
+    check( pool.getDirectArenas().get( 0 ).getChunks() == 0, "no chunk before the first allocation" );
+
+    List<ByteBuf> buffers = new ArrayList<>();
+    for( int i = 0; i < 10; i++ )
+      buffers.add( pool.getAllocator().directBuffer( PAGE_SIZE * 2 ) );
+    BufferPool.ArenaStats arena = pool.getDirectArenas().get( 0 );
+    check( arena.getChunks() == 1 && arena.getCapacity() == CHUNK_SIZE, "one chunk: " + arena );
+    // This Netty rounds a power of two up to the next one, so only a lower bound is certain
+    check( arena.getUsed() >= 10 * PAGE_SIZE * 2, "pages in use: " + arena );
+    check( BufferPool.getDirectMemoryUsed() >= CHUNK_SIZE, "direct memory includes the chunk" );
+    for( ByteBuf buf : buffers )
+      buf.release();
+    check( pool.getDirectArenas().get( 0 ).getUsed() == 0, "pages freed" );
+    System.out.println( pool );
+
+    try
+    {
+      new BufferPool( true, 1, 1, PAGE_SIZE, PAGE_SIZE * 3 );
+      check( false, "chunk size not a power of two times the page size" );
+    }
+    catch( IllegalArgumentException e )
+    {
+      // Expected
+    }
+
+    leak( pool );
+    check( LeakCheck.collect() > 0, "leak detected" );
+    LeakCheck.check();
+    System.out.println( "Buffer pool OK" );
+  }
+
+  /**
+   * Leaks a buffer on a thread of its own: this Netty keeps a reference to a buffer taken from a thread's recycler,
+   * which would keep it from being collected here.
+   */
+  private static void leak( final BufferPool pool ) throws InterruptedException
+  {
+    Thread thread = new Thread( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        pool.getAllocator().directBuffer( 64 ).writeInt( 1 );
+      }
+    } );
+    thread.start();
+    thread.join();
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
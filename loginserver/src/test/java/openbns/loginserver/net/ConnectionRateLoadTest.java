@@ -0,0 +1,99 @@
+package openbns.loginserver.net;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import openbns.commons.net.ServerTransport;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections accepted per second by a {@link ServerTransport} over loopback. Client threads connect and reset the
+ * connection in a loop, so the server does nothing but accept and register channels.
+ */
+public class ConnectionRateLoadTest
+{
+  private static final int CLIENT_THREADS = 8;
+  private static final long RUN_MILLIS = 3000;
+
+  public static void main( String[] args ) throws Exception
+  {
+    final AtomicInteger accepted = new AtomicInteger();
+    ServerTransport transport = new ServerTransport( 0 );
+    transport.option( ChannelOption.SO_BACKLOG, 1024 );
+    transport.childOption( ChannelOption.TCP_NODELAY, true );
+    try
+    {
+      Channel channel = transport.bind( "127.0.0.1", 0, new Counter( accepted ) );
+      final InetSocketAddress address = (InetSocketAddress) channel.localAddress();
+
+      final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( RUN_MILLIS );
+      final AtomicInteger failed = new AtomicInteger();
+      List<Thread> clients = new ArrayList<>();
+      for( int i = 0; i < CLIENT_THREADS; i++ )
+      {
+        Thread t = new Thread( new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            while( System.nanoTime() < deadline )
+            {
+              try( Socket socket = new Socket() )
+              {
+                // Reset instead of a normal close, so no port is left in TIME_WAIT
+                socket.setSoLinger( true, 0 );
+                socket.connect( address );
+              }
+              catch( Exception e )
+              {
+                failed.incrementAndGet();
+              }
+            }
+          }
+        } );
+        clients.add( t );
+        t.start();
+      }
+      for( Thread t : clients )
+        t.join();
+
+      System.out.println( "NIO: " + accepted.get() * 1000 / RUN_MILLIS + " connections/s, " + failed.get() + " failed" );
+      channel.close().sync();
+    }
+    finally
+    {
+      transport.shutdown();
+    }
+  }
+
+  @ChannelHandler.Sharable
+  private static class Counter extends ChannelInboundHandlerAdapter
+  {
+    private final AtomicInteger accepted;
+
+    private Counter( AtomicInteger accepted )
+    {
+      this.accepted = accepted;
+    }
+
+    @Override
+    public void channelActive( ChannelHandlerContext ctx ) throws Exception
+    {
+      accepted.incrementAndGet();
+    }
+
+    @Override
+    public void exceptionCaught( ChannelHandlerContext ctx, Throwable cause ) throws Exception
+    {
+      ctx.close();
+    }
+  }
+}
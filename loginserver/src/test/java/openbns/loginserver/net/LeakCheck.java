@@ -0,0 +1,84 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Paranoid leak detection for the tests: every pooled and direct buffer is tracked, and {@link #check} fails the test
+ * if one was garbage collected without being released. Netty only reports leaks in its log, so the reports are
+ * counted off the detector's logger.
+ * <p/>
+ * This Netty's recycler keeps a reference to a pooled buffer it handed out again, so a leak of one is only seen once
+ * its thread is gone; buffers allocated for the first time, and unpooled direct ones, are seen on the next check.
+ */
+public final class LeakCheck
+{
+  private static final AtomicInteger leaks = new AtomicInteger();
+  private static boolean started;
+
+  private LeakCheck()
+  {
+  }
+
+  public static synchronized void start()
+  {
+    ResourceLeakDetector.setLevel( ResourceLeakDetector.Level.PARANOID );
+    if( started )
+      return;
+    started = true;
+    Logger.getLogger( ResourceLeakDetector.class ).addAppender( new AppenderSkeleton()
+    {
+      @Override
+      protected void append( LoggingEvent event )
+      {
+        if( String.valueOf( event.getMessage() ).startsWith( "LEAK" ) )
+          leaks.incrementAndGet();
+      }
+
+      @Override
+      public void close()
+      {
+      }
+
+      @Override
+      public boolean requiresLayout()
+      {
+        return false;
+      }
+    } );
+  }
+
+  /**
+   * Collects garbage until the detector has seen every unreachable buffer.
+   *
+   * @return leaks reported since the last call
+   */
+  public static int collect() throws InterruptedException
+  {
+    for( int i = 0; i < 5; i++ )
+    {
+      System.gc();
+      Thread.sleep( 50 );
+      // The detector only looks at collected buffers when the next one is tracked
+      ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer( 1 );
+      buf.release();
+    }
+    return leaks.getAndSet( 0 );
+  }
+
+  /**
+   * @throws AssertionError if a buffer leaked
+   */
+  public static void check() throws InterruptedException
+  {
+    int found = collect();
+    if( found > 0 )
+      throw new AssertionError( found + " buffer leak(s), see the LEAK log entries" );
+  }
+}
@@ -0,0 +1,208 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.AsyncRequestPacket;
+import openbns.loginserver.net.client.RequestContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks pipelined requests on one connection: concurrent packets run while an earlier asynchronous one is
+ * unfinished, other packets wait for it, replies leave in request order tagged with their own session number, a
+ * packet sees its own request's session id, the connection stops reading at the in-flight limit, and replies held
+ * for a closed connection are released.
+ */
+public class PacketDispatcherTest
+{
+  public static void main( String[] args ) throws InterruptedException
+  {
+    LeakCheck.start();
+    ordering();
+    sessionId();
+    inFlightLimit();
+    discardOnClose();
+    LeakCheck.check();
+    System.out.println( "Packet dispatcher OK" );
+  }
+
+  private static void ordering()
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new ChannelInboundHandlerAdapter() );
+    PacketDispatcher dispatcher = new PacketDispatcher( channel, new RequestExecutor( 0, 0, 16 ), 16 );
+    AsyncPacket async = new AsyncPacket();
+    List<String> executed = new ArrayList<>();
+
+    dispatcher.dispatch( async, "a", 1 );
+    dispatcher.dispatch( new InlinePacket( executed, true ), "p1", 2 );
+    dispatcher.dispatch( new InlinePacket( executed, false ), "s", 3 );
+    dispatcher.dispatch( new InlinePacket( executed, true ), "p2", 4 );
+    channel.flush();
+    check( executed.equals( Arrays.asList( "p1", "p2" ) ), "concurrent packets run, others wait: " + executed );
+    check( channel.readOutbound() == null, "replies held behind the unfinished request" );
+
+    async.finish( "a" );
+    channel.runPendingTasks();
+    check( executed.equals( Arrays.asList( "p1", "p2", "s" ) ), "waiting packet runs once the earlier one is done" );
+    check( outbound( channel ).equals( Arrays.asList( "a:1", "p1:2", "s:3", "p2:4" ) ), "replies in request order" );
+    channel.finish();
+  }
+
+  private static void sessionId()
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new ChannelInboundHandlerAdapter() );
+    final Session session = new Session();
+    channel.attr( Session.KEY ).set( session );
+    PacketDispatcher dispatcher = new PacketDispatcher( channel, new RequestExecutor( 0, 0, 16 ), 16 );
+    AsyncPacket async = new AsyncPacket();
+    final List<String> seen = new ArrayList<>();
+
+    dispatcher.dispatch( async, "a", 1 );
+    dispatcher.dispatch( new InlinePacket( seen, false )
+    {
+      @Override
+      public void execute( RequestContext context, String request )
+      {
+        seen.add( request + ":" + session.getSessionId() );
+      }
+    }, "s", 3 );
+    dispatcher.dispatch( new InlinePacket( new ArrayList<String>(), true ), "p", 4 );
+    check( session.getSessionId() == 4, "concurrent packet runs with its own session id" );
+
+    async.finish( "a" );
+    channel.runPendingTasks();
+    check( seen.equals( Arrays.asList( "s:3" ) ), "queued packet sees its own session id, not a later request's: " + seen );
+    channel.finish();
+  }
+
+  private static void inFlightLimit()
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new ChannelInboundHandlerAdapter() );
+    PacketDispatcher dispatcher = new PacketDispatcher( channel, new RequestExecutor( 0, 0, 16 ), 2 );
+    AsyncPacket first = new AsyncPacket();
+    AsyncPacket second = new AsyncPacket();
+
+    dispatcher.dispatch( first, "a" );
+    check( channel.config().isAutoRead(), "reading below the limit" );
+    dispatcher.dispatch( new InlinePacket( new ArrayList<String>(), true ), "p" );
+    check( !channel.config().isAutoRead(), "not reading at the limit" );
+
+    first.finish( "a" );
+    channel.runPendingTasks();
+    check( channel.config().isAutoRead(), "reading again below the limit" );
+    dispatcher.dispatch( second, "b" );
+    dispatcher.dispatch( new InlinePacket( new ArrayList<String>(), true ), "q" );
+    check( !channel.config().isAutoRead(), "not reading at the limit again" );
+    second.finish( "b" );
+    channel.runPendingTasks();
+    check( outbound( channel ).equals( Arrays.asList( "a:-1", "p:-1", "b:-1", "q:-1" ) ), "replies after the limit" );
+    channel.finish();
+  }
+
+  private static void discardOnClose()
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new ChannelInboundHandlerAdapter() );
+    PacketDispatcher dispatcher = new PacketDispatcher( channel, new RequestExecutor( 0, 0, 16 ), 16 );
+    dispatcher.dispatch( new AsyncPacket(), "a" );
+    final ByteBuf reply = Unpooled.buffer().writeByte( 1 );
+    dispatcher.dispatch( new InlinePacket( new ArrayList<String>(), true )
+    {
+      @Override
+      public void execute( RequestContext context, String request )
+      {
+        context.write( reply );
+      }
+    }, "p" );
+    check( reply.refCnt() == 1, "reply held" );
+    channel.close();
+    channel.runPendingTasks();
+    check( reply.refCnt() == 0, "held reply released on close" );
+  }
+
+  private static List<Object> outbound( EmbeddedChannel channel )
+  {
+    List<Object> out = new ArrayList<>();
+    Object msg;
+    while( (msg = channel.readOutbound()) != null )
+      out.add( msg );
+    return out;
+  }
+
+  private static String reply( RequestContext context, String request )
+  {
+    return request + ":" + context.getSessionNumber();
+  }
+
+  private static class InlinePacket extends AbstractRequestPacket<String>
+  {
+    private final List<String> executed;
+    private final boolean concurrent;
+
+    private InlinePacket( List<String> executed, boolean concurrent )
+    {
+      this.executed = executed;
+      this.concurrent = concurrent;
+    }
+
+    @Override
+    public String read( ByteBuf buf )
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void execute( RequestContext context, String request )
+    {
+      executed.add( request );
+      context.write( reply( context, request ) );
+    }
+
+    @Override
+    public boolean isConcurrent()
+    {
+      return concurrent;
+    }
+  }
+
+  /**
+   * Replies once {@link #finish} is called, as a database lookup would.
+   */
+  private static class AsyncPacket extends AsyncRequestPacket<String>
+  {
+    private RequestContext context;
+    private Promise<Void> done;
+
+    @Override
+    public String read( ByteBuf buf )
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<?> executeAsync( RequestContext context, String request )
+    {
+      this.context = context;
+      done = context.channel().eventLoop().newPromise();
+      return done;
+    }
+
+    private void finish( String request )
+    {
+      context.write( reply( context, request ) );
+      done.setSuccess( null );
+    }
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
@@ -0,0 +1,136 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import openbns.commons.net.RC4;
+import openbns.commons.net.RC4Handler;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks {@link RC4} against published test vectors, that the array path and the chunked {@link ByteBuf} path
+ * produce the same stream over heap and direct buffers at any split, and that {@link RC4Handler} decrypts reads
+ * in place, writes plain until {@link RC4Handler#START_ENCRYPTION} and encrypts later writes without touching the
+ * written buffer.
+ */
+public class RC4Test
+{
+  private static final String[][] VECTORS = {
+          { "Key", "Plaintext", "bbf316e8d940af0ad3" },
+          { "Wiki", "pedia", "1021bf0420" },
+          { "Secret", "Attack at dawn", "45a01f645fc35b383552544b9bf5" } };
+  private static final byte[] KEY = "0123456789abcdef".getBytes( CharsetUtil.US_ASCII );
+
+  public static void main( String[] args ) throws InterruptedException
+  {
+    LeakCheck.start();
+    vectors();
+    paths();
+    handler();
+    LeakCheck.check();
+    System.out.println( "RC4 OK" );
+  }
+
+  private static void vectors()
+  {
+    for( String[] vector : VECTORS )
+    {
+      byte[] data = vector[ 1 ].getBytes( CharsetUtil.US_ASCII );
+      new RC4( vector[ 0 ] ).rc4( data, 0, data.length );
+      check( hex( data ).equals( vector[ 2 ] ), "array: " + vector[ 0 ] );
+
+      ByteBuf buf = Unpooled.directBuffer().writeBytes( vector[ 1 ].getBytes( CharsetUtil.US_ASCII ) );
+      new RC4( vector[ 0 ] ).rc4( buf, buf.readerIndex(), buf.readableBytes() );
+      byte[] out = new byte[ buf.readableBytes() ];
+      buf.getBytes( 0, out );
+      buf.release();
+      check( hex( out ).equals( vector[ 2 ] ), "buffer: " + vector[ 0 ] );
+    }
+  }
+
+  private static void paths()
+  {
+    Random random = new Random( 1 );
+    byte[] plain = new byte[ 4099 ];
+    random.nextBytes( plain );
+    byte[] expected = plain.clone();
+    new RC4( KEY ).rc4( expected, 0, expected.length );
+
+    for( int round = 0; round < 50; round++ )
+    {
+      boolean direct = round % 2 == 0;
+      ByteBuf buf = direct ? Unpooled.directBuffer( plain.length + 3 ) : Unpooled.buffer( plain.length + 3 );
+      buf.writerIndex( 3 ).readerIndex( 3 );
+      buf.writeBytes( plain );
+      RC4 rc4 = new RC4( KEY );
+      // Steps of any size, some over a chunk, so chunks start at any offset into the key stream
+      for( int index = buf.readerIndex(); index < buf.writerIndex(); )
+      {
+        int length = Math.min( random.nextInt( 600 ), buf.writerIndex() - index );
+        rc4.rc4( buf, index, length );
+        index += length;
+      }
+      byte[] actual = new byte[ plain.length ];
+      buf.getBytes( 3, actual );
+      buf.release();
+      check( Arrays.equals( expected, actual ), "buffer path, " + (direct ? "direct" : "heap") + " round " + round );
+    }
+  }
+
+  private static void handler()
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new ChannelInboundHandlerAdapter() );
+    channel.config().setOption( ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT );
+    RC4Handler.install( channel, new RC4Handler( KEY, KEY ) );
+
+    byte[] message = "<Request>encrypted</Request>".getBytes( CharsetUtil.US_ASCII );
+    byte[] cipher = message.clone();
+    new RC4( KEY ).rc4( cipher, 0, cipher.length );
+    ByteBuf in = Unpooled.directBuffer().writeBytes( cipher );
+    channel.writeInbound( in );
+    ByteBuf read = (ByteBuf) channel.readInbound();
+    check( read == in && Arrays.equals( bytes( read ), message ), "read decrypted in place" );
+    read.release();
+
+    ByteBuf shared = Unpooled.unreleasableBuffer( Unpooled.copiedBuffer( message ) );
+    channel.writeOutbound( shared.duplicate() );
+    check( Arrays.equals( bytes( (ByteBuf) channel.readOutbound() ), message ), "plain before the marker" );
+
+    channel.writeOutbound( RC4Handler.START_ENCRYPTION, shared.duplicate() );
+    ByteBuf written = (ByteBuf) channel.readOutbound();
+    check( Arrays.equals( bytes( written ), cipher ), "encrypted after the marker" );
+    written.release();
+    check( Arrays.equals( bytes( shared ), message ), "written buffer untouched" );
+    check( channel.readOutbound() == null, "marker not passed on" );
+
+    check( !channel.write( new Object() ).isSuccess(), "non-buffer rejected" );
+    channel.finish();
+  }
+
+  private static byte[] bytes( ByteBuf buf )
+  {
+    byte[] bytes = new byte[ buf.readableBytes() ];
+    buf.getBytes( buf.readerIndex(), bytes );
+    return bytes;
+  }
+
+  private static String hex( byte[] bytes )
+  {
+    StringBuilder sb = new StringBuilder();
+    for( byte b : bytes )
+      sb.append( String.format( "%02x", b ) );
+    return sb.toString();
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
@@ -0,0 +1,243 @@
+package openbns.loginserver.net;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.*;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalEventLoopGroup;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.AsyncRequestPacket;
+import openbns.loginserver.net.client.ExecutionType;
+import openbns.loginserver.net.client.RequestContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ping latency on a single I/O thread while other connections run requests against a slow database, with blocking
+ * requests run inline and on the blocking stage. Also checks that one connection's replies keep request order across
+ * stages and asynchronous packets, with pings run concurrently and so finishing first.
+ */
+public class RequestExecutorLoadTest
+{
+  private static final long DB_MILLIS = 20;
+  private static final int SLOW_CONNECTIONS = 16;
+  private static final int PING_CONNECTIONS = 16;
+  private static final long RUN_MILLIS = 3000;
+
+  public static void main( String[] args ) throws Exception
+  {
+    run( "inline", new RequestExecutor( 0, 0, 4096 ) );
+    RequestExecutor staged = new RequestExecutor( 2, 32, 4096 );
+    run( "staged", staged );
+    System.out.println( "  " + staged.getBlockingStage() );
+    staged.shutdown();
+  }
+
+  private static void run( String name, RequestExecutor executor ) throws Exception
+  {
+    EventLoopGroup serverGroup = new LocalEventLoopGroup( 1 );
+    EventLoopGroup clientGroup = new LocalEventLoopGroup( 2 );
+    LocalAddress address = new LocalAddress( "load-" + name );
+    try
+    {
+      final RequestExecutor stages = executor;
+      new ServerBootstrap().group( serverGroup ).channel( LocalServerChannel.class ).childHandler( new ChannelInitializer<Channel>()
+      {
+        @Override
+        protected void initChannel( Channel ch ) throws Exception
+        {
+          ch.pipeline().addLast( new ConnectionHandler( new PacketDispatcher( ch, stages, 16 ) ) );
+        }
+      } ).bind( address ).sync();
+
+      checkOrdering( clientGroup, address );
+
+      final List<Long> latencies = Collections.synchronizedList( new ArrayList<Long>() );
+      final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( RUN_MILLIS );
+      List<Channel> channels = new ArrayList<>();
+      for( int i = 0; i < SLOW_CONNECTIONS + PING_CONNECTIONS; i++ )
+      {
+        Channel ch = connect( clientGroup, address, new SimpleChannelInboundHandler<String>()
+        {
+          @Override
+          protected void channelRead0( ChannelHandlerContext ctx, String msg ) throws Exception
+          {
+            long now = System.nanoTime();
+            if( msg.startsWith( "ping:" ) )
+              latencies.add( now - Long.parseLong( msg.substring( 5 ) ) );
+            if( now < deadline )
+              ctx.writeAndFlush( msg.startsWith( "ping:" ) ? "ping:" + now : msg );
+          }
+        } );
+        channels.add( ch );
+      }
+      for( int i = 0; i < channels.size(); i++ )
+        channels.get( i ).writeAndFlush( i < SLOW_CONNECTIONS ? "slow" : "ping:" + System.nanoTime() );
+
+      Thread.sleep( RUN_MILLIS + DB_MILLIS * 4 );
+      for( Channel ch : channels )
+        ch.close().sync();
+
+      Long[] sorted = latencies.toArray( new Long[ latencies.size() ] );
+      Arrays.sort( sorted );
+      System.out.println( name + ": " + sorted.length + " pings, p50 " + micros( sorted, 0.5 ) + " us, p99 " + micros( sorted, 0.99 ) + " us, p99.9 " + micros( sorted, 0.999 ) + " us, max " + micros( sorted, 1 ) + " us" );
+    }
+    finally
+    {
+      clientGroup.shutdownGracefully().sync();
+      serverGroup.shutdownGracefully().sync();
+    }
+  }
+
+  private static void checkOrdering( EventLoopGroup group, LocalAddress address ) throws Exception
+  {
+    final List<String> replies = Collections.synchronizedList( new ArrayList<String>() );
+    final CountDownLatch done = new CountDownLatch( 6 );
+    Channel ch = connect( group, address, new SimpleChannelInboundHandler<String>()
+    {
+      @Override
+      protected void channelRead0( ChannelHandlerContext ctx, String msg ) throws Exception
+      {
+        replies.add( msg );
+        done.countDown();
+      }
+    } );
+    List<String> requests = Arrays.asList( "async:0", "ping:0", "slow:1", "ping:1", "async:2", "ping:2" );
+    for( String request : requests )
+      ch.write( request );
+    ch.flush();
+    if( !done.await( 5, TimeUnit.SECONDS ) || !replies.equals( requests ) )
+      throw new AssertionError( "Replies out of order: " + replies );
+    ch.close().sync();
+  }
+
+  private static Channel connect( EventLoopGroup group, LocalAddress address, ChannelHandler handler ) throws InterruptedException
+  {
+    return new Bootstrap().group( group ).channel( LocalChannel.class ).handler( handler ).connect( address ).sync().channel();
+  }
+
+  private static long micros( Long[] sorted, double quantile )
+  {
+    if( sorted.length == 0 )
+      return -1;
+    int index = (int) Math.min( sorted.length - 1, Math.ceil( quantile * sorted.length ) - 1 );
+    return TimeUnit.NANOSECONDS.toMicros( sorted[ Math.max( index, 0 ) ] );
+  }
+
+  private static class ConnectionHandler extends ChannelInboundHandlerAdapter
+  {
+    private static final PingPacket PING = new PingPacket();
+    private static final SlowDbPacket SLOW = new SlowDbPacket();
+    private static final AsyncDbPacket ASYNC = new AsyncDbPacket();
+
+    private final PacketDispatcher dispatcher;
+
+    private ConnectionHandler( PacketDispatcher dispatcher )
+    {
+      this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void channelRead( ChannelHandlerContext ctx, Object msg ) throws Exception
+    {
+      String request = (String) msg;
+      if( request.startsWith( "slow" ) )
+        dispatcher.dispatch( SLOW, request );
+      else if( request.startsWith( "async" ) )
+        dispatcher.dispatch( ASYNC, request );
+      else
+        dispatcher.dispatch( PING, request );
+    }
+
+    @Override
+    public void channelReadComplete( ChannelHandlerContext ctx ) throws Exception
+    {
+      ctx.flush();
+    }
+  }
+
+  /**
+   * The test channels carry strings, so the request is handed to the dispatcher directly and {@link #read} is unused.
+   */
+  private abstract static class StringPacket extends AbstractRequestPacket<String>
+  {
+    @Override
+    public String read( ByteBuf buf )
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class PingPacket extends StringPacket
+  {
+    @Override
+    public void execute( RequestContext context, String request )
+    {
+      context.write( request );
+    }
+
+    @Override
+    public boolean isConcurrent()
+    {
+      return true;
+    }
+  }
+
+  private static class SlowDbPacket extends StringPacket
+  {
+    @Override
+    public void execute( RequestContext context, String request )
+    {
+      try
+      {
+        Thread.sleep( DB_MILLIS );
+      }
+      catch( InterruptedException e )
+      {
+        Thread.currentThread().interrupt();
+      }
+      context.write( request );
+    }
+
+    @Override
+    public ExecutionType getExecutionType()
+    {
+      return ExecutionType.BLOCKING;
+    }
+  }
+
+  private static class AsyncDbPacket extends AsyncRequestPacket<String>
+  {
+    @Override
+    public String read( ByteBuf buf )
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<?> executeAsync( final RequestContext context, final String request )
+    {
+      final Promise<Void> done = context.channel().eventLoop().newPromise();
+      context.channel().eventLoop().schedule( new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          context.write( request );
+          done.setSuccess( null );
+        }
+      }, DB_MILLIS, TimeUnit.MILLISECONDS );
+      return done;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import openbns.commons.metrics.Histogram;
+import openbns.commons.metrics.MetricsRegistry;
+import openbns.commons.metrics.RequestMetrics;
+import openbns.commons.net.codec.sts.DefaultFullStsResponse;
+import openbns.commons.net.codec.sts.StsResponseStatus;
+import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.AsyncRequestPacket;
+import openbns.loginserver.net.client.RequestContext;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks {@link Histogram} percentiles against exact ones, that {@link PacketDispatcher} records queue and execute
+ * times, failures and reply bytes in the packet's {@link RequestMetrics}, with an asynchronous packet running until
+ * its future is done, that recording allocates nothing, and that {@link MetricsRegistry} exports metrics over JMX.
+ */
+public class RequestMetricsTest
+{
+  private static final int RECORDS = 100000;
+
+  public static void main( String[] args ) throws Exception
+  {
+    LeakCheck.start();
+    histogram();
+    dispatcher();
+    noAllocation();
+    jmx();
+    LeakCheck.check();
+    System.out.println( "Request metrics OK" );
+  }
+
+  private static void histogram()
+  {
+    Histogram histogram = new Histogram( 1000000 );
+    for( int value = 1; value <= 100000; value++ )
+      histogram.record( value );
+    Histogram.Snapshot s = histogram.snapshot();
+    check( s.getCount() == 100000 && s.getMax() == 100000 && s.getMean() == 50000.5, "count, max and mean" );
+    for( double percentile : new double[] { 1, 50, 90, 99, 99.9, 100 } )
+    {
+      long exact = (long) Math.ceil( percentile * 1000 );
+      long value = s.getValueAtPercentile( percentile );
+      check( value >= exact && value <= exact + exact / 64, "p" + percentile + " = " + value + ", exactly " + exact );
+    }
+    check( new Histogram( 1000 ).snapshot().getValueAtPercentile( 99 ) == 0, "empty histogram" );
+
+    histogram.record( -5 );
+    histogram.record( 5000000 );
+    check( histogram.snapshot().getMax() == 1000000, "values clamped to the trackable range" );
+    histogram.reset();
+    check( histogram.getCount() == 0 && histogram.snapshot().getMax() == 0, "reset" );
+  }
+
+  private static void dispatcher()
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new ChannelInboundHandlerAdapter() );
+    PacketDispatcher dispatcher = new PacketDispatcher( channel, new RequestExecutor( 0, 0, 16 ), 16 );
+
+    ReplyPacket reply = new ReplyPacket();
+    dispatcher.dispatch( reply, "pong" );
+    dispatcher.dispatch( reply, "pong!" );
+    RequestMetrics metrics = reply.getMetrics();
+    check( metrics.getQueue().getCount() == 2 && metrics.getExecute().getCount() == 2, "queue and execute times recorded" );
+    check( metrics.getBytesOut() == 9 && metrics.getErrors() == 0, "reply bytes: " + metrics.getBytesOut() );
+
+    FailingPacket failing = new FailingPacket();
+    try
+    {
+      dispatcher.dispatch( failing, "x" );
+      check( false, "failure passed on" );
+    }
+    catch( IllegalStateException expected )
+    {
+    }
+    check( failing.getMetrics().getErrors() == 1 && failing.getMetrics().getExecute().getCount() == 1, "failure counted" );
+
+    AsyncPacket async = new AsyncPacket();
+    dispatcher.dispatch( async, "a" );
+    check( async.getMetrics().getQueue().getCount() == 1 && async.getMetrics().getExecute().getCount() == 0, "asynchronous packet started" );
+    async.done.setFailure( new IllegalStateException( "lookup failed" ) );
+    channel.runPendingTasks();
+    try
+    {
+      channel.checkException();
+      check( false, "failure passed on to the pipeline" );
+    }
+    catch( IllegalStateException expected )
+    {
+    }
+    check( async.getMetrics().getExecute().getCount() == 1 && async.getMetrics().getErrors() == 1, "asynchronous packet runs until its future fails" );
+
+    Object msg;
+    while( (msg = channel.readOutbound()) != null )
+      ReferenceCountUtil.release( msg );
+    channel.finish();
+  }
+
+  private static void noAllocation()
+  {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if( !(threads instanceof com.sun.management.ThreadMXBean) )
+    {
+      System.out.println( "No allocation counter on this JVM, skipped" );
+      return;
+    }
+    com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+    long thread = Thread.currentThread().getId();
+    RequestMetrics metrics = new RequestMetrics( "test" );
+    record( metrics );
+    long before = counter.getThreadAllocatedBytes( thread );
+    record( metrics );
+    long allocated = counter.getThreadAllocatedBytes( thread ) - before;
+    // The counter and the compiler may allocate a little, one object per request would be megabytes
+    check( allocated < RECORDS, "recording allocated " + allocated + " bytes" );
+  }
+
+  private static void record( RequestMetrics metrics )
+  {
+    for( int i = 0; i < RECORDS; i++ )
+    {
+      metrics.recordDecode( i * 31L, 100 );
+      metrics.recordQueue( i * 1013L );
+      metrics.recordExecute( i * 100003L );
+      metrics.recordBytesOut( 200 );
+    }
+  }
+
+  private static void jmx() throws Exception
+  {
+    MetricsRegistry registry = new MetricsRegistry( "openbns.test", true );
+    RequestMetrics metrics = registry.getRequestMetrics( "/Sts/Ping" );
+    check( registry.getRequestMetrics( "/Sts/Ping" ) == metrics, "one metrics per name" );
+    metrics.recordDecode( 1000, 10 );
+    metrics.recordExecute( 2000000 );
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName( "openbns.test:type=Request,name=" + ObjectName.quote( "/Sts/Ping" ) );
+    check( Long.valueOf( 1 ).equals( server.getAttribute( name, "Requests" ) ), "requests over JMX" );
+    check( Long.valueOf( 10 ).equals( server.getAttribute( name, "BytesIn" ) ), "bytes over JMX" );
+    double execute = (Double) server.getAttribute( name, "Execute99thPercentileMicros" );
+    check( execute >= 2000 && execute <= 2000 + 2000 / 64, "execute time over JMX: " + execute );
+    server.invoke( name, "reset", null, null );
+    check( metrics.getRequests() == 0, "reset over JMX" );
+
+    StringBuilder sb = new StringBuilder();
+    registry.appendXml( sb );
+    check( sb.toString().startsWith( "<Request name=\"/Sts/Ping\" requests=\"0\"" ), "XML snapshot: " + sb );
+  }
+
+  private static class ReplyPacket extends AbstractRequestPacket<String>
+  {
+    private final RequestMetrics metrics = new RequestMetrics( "reply" );
+
+    @Override
+    public String read( ByteBuf buf )
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void execute( RequestContext context, String request )
+    {
+      context.write( new DefaultFullStsResponse( StsResponseStatus.OK, Unpooled.copiedBuffer( request.getBytes() ) ) );
+    }
+
+    @Override
+    public boolean isConcurrent()
+    {
+      return true;
+    }
+
+    @Override
+    public RequestMetrics getMetrics()
+    {
+      return metrics;
+    }
+  }
+
+  private static class FailingPacket extends ReplyPacket
+  {
+    @Override
+    public void execute( RequestContext context, String request )
+    {
+      throw new IllegalStateException( "failed" );
+    }
+  }
+
+  private static class AsyncPacket extends AsyncRequestPacket<String>
+  {
+    private final RequestMetrics metrics = new RequestMetrics( "async" );
+    private Promise<Void> done;
+
+    @Override
+    public String read( ByteBuf buf )
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<?> executeAsync( RequestContext context, String request )
+    {
+      done = context.channel().eventLoop().newPromise();
+      return done;
+    }
+
+    @Override
+    public RequestMetrics getMetrics()
+    {
+      return metrics;
+    }
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
@@ -0,0 +1,180 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import openbns.commons.net.codec.sts.DefaultLastStsContent;
+import openbns.commons.net.codec.sts.DefaultStsContent;
+import openbns.commons.net.codec.sts.DefaultStsRequest;
+import openbns.commons.net.codec.sts.FullStsRequest;
+import openbns.commons.net.codec.sts.IncrementalStsRequestDecoder;
+import openbns.commons.net.codec.sts.LastStsContent;
+import openbns.commons.net.codec.sts.StsContent;
+import openbns.commons.net.codec.sts.StsContentAggregator;
+import openbns.commons.net.codec.sts.StsMethod;
+import openbns.commons.net.codec.sts.StsRequest;
+import openbns.commons.net.codec.sts.StsVersion;
+
+/**
+ * Checks {@link StsContentAggregator} behind the request decoder: a body of one chunk is passed on as that chunk and
+ * a longer one as a composite of the chunks, a request declaring a body over its URI's limit is rejected before the
+ * body arrives and the next request still goes through, chunks over the limit are released as soon as it is
+ * exceeded, streamed URIs are passed on chunk by chunk, and a body cut short by a closed connection is released.
+ */
+public class StsContentAggregatorTest
+{
+  private static final int CHUNK_SIZE = 16;
+  private static final int LIMIT = 64;
+
+  private static final StsContentAggregator.ContentLimits LIMITS = new StsContentAggregator.ContentLimits()
+  {
+    @Override
+    public int getMaxContentLength( StsRequest request )
+    {
+      return request.getUri().startsWith( "/Stream/" ) ? STREAM : LIMIT;
+    }
+  };
+
+  public static void main( String[] args ) throws InterruptedException
+  {
+    LeakCheck.start();
+    aggregate();
+    declaredTooLong();
+    chunksTooLong();
+    stream();
+    closeMidBody();
+    LeakCheck.check();
+    System.out.println( "Content aggregator OK" );
+  }
+
+  private static void aggregate()
+  {
+    EmbeddedChannel channel = newChannel();
+    channel.writeInbound( bytes( request( "/Sts/Ping", "ping", "s:3\r\n" ) + request( "/Auth/LoginStart", body( LIMIT ), "" ) + request( "/Sts/Ping", "", "" ) ) );
+
+    FullStsRequest small = (FullStsRequest) channel.readInbound();
+    check( small.getDecoderResult().isSuccess() && "/Sts/Ping".equals( small.getUri() ), "small request" );
+    check( "ping".equals( small.content().toString( CharsetUtil.US_ASCII ) ), "small body" );
+    check( !(small.content() instanceof CompositeByteBuf), "one chunk is passed on as it is" );
+    check( "3".equals( small.headers().get( "s" ) ), "headers kept" );
+    small.release();
+
+    FullStsRequest large = (FullStsRequest) channel.readInbound();
+    check( body( LIMIT ).equals( large.content().toString( CharsetUtil.US_ASCII ) ), "large body" );
+    check( large.content() instanceof CompositeByteBuf && ((CompositeByteBuf) large.content()).numComponents() == LIMIT / CHUNK_SIZE, "one component per chunk: " + large.content() );
+    large.release();
+
+    FullStsRequest empty = (FullStsRequest) channel.readInbound();
+    check( !empty.content().isReadable(), "empty body" );
+    empty.release();
+    check( channel.readInbound() == null, "nothing else" );
+    channel.finish();
+  }
+
+  private static void declaredTooLong()
+  {
+    EmbeddedChannel channel = newChannel();
+    String tooLong = request( "/Auth/LoginStart", body( LIMIT + 1 ), "" );
+    int head = tooLong.indexOf( "\r\n\r\n" ) + 4;
+    channel.writeInbound( bytes( tooLong.substring( 0, head ) ) );
+
+    FullStsRequest rejected = (FullStsRequest) channel.readInbound();
+    check( rejected.getDecoderResult().cause() instanceof TooLongFrameException, "rejected on the declared length" );
+    check( !rejected.content().isReadable(), "rejected without a body" );
+    rejected.release();
+
+    channel.writeInbound( bytes( tooLong.substring( head ) + request( "/Sts/Ping", "next", "" ) ) );
+    FullStsRequest next = (FullStsRequest) channel.readInbound();
+    check( next.getDecoderResult().isSuccess() && "next".equals( next.content().toString( CharsetUtil.US_ASCII ) ), "next request after the discarded body" );
+    next.release();
+    check( channel.readInbound() == null, "nothing else" );
+    channel.finish();
+  }
+
+  private static void chunksTooLong()
+  {
+    // No declared length, so the limit is only found out on the chunks
+    EmbeddedChannel channel = new EmbeddedChannel( new StsContentAggregator( LIMITS ) );
+    channel.writeInbound( new DefaultStsRequest( StsVersion.STS_1_0, StsMethod.POST, "/Auth/LoginStart" ) );
+    ByteBuf first = bytes( body( LIMIT ) );
+    channel.writeInbound( new DefaultStsContent( first.retain() ) );
+    check( first.refCnt() == 2, "chunk held" );
+    check( channel.readInbound() == null, "body not complete" );
+
+    channel.writeInbound( new DefaultStsContent( bytes( "x" ) ) );
+    check( first.refCnt() == 1, "held chunks released once the limit is exceeded" );
+    FullStsRequest rejected = (FullStsRequest) channel.readInbound();
+    check( rejected.getDecoderResult().cause() instanceof TooLongFrameException, "rejected on the chunks" );
+    rejected.release();
+    first.release();
+
+    channel.writeInbound( new DefaultLastStsContent( bytes( "rest" ) ) );
+    check( channel.readInbound() == null, "rest of the body discarded" );
+    channel.finish();
+  }
+
+  private static void stream()
+  {
+    EmbeddedChannel channel = newChannel();
+    channel.writeInbound( bytes( request( "/Stream/Upload", body( LIMIT * 2 ), "" ) ) );
+
+    Object request = channel.readInbound();
+    check( request instanceof StsRequest && !(request instanceof FullStsRequest), "streamed request passed on alone" );
+    StringBuilder body = new StringBuilder();
+    int chunks = 0;
+    Object msg;
+    while( (msg = channel.readInbound()) != null )
+    {
+      body.append( ((StsContent) msg).content().toString( CharsetUtil.US_ASCII ) );
+      chunks++;
+      check( msg instanceof LastStsContent == (body.length() == LIMIT * 2), "last chunk marks the end" );
+      ReferenceCountUtil.release( msg );
+    }
+    check( chunks == LIMIT * 2 / CHUNK_SIZE && body.toString().equals( body( LIMIT * 2 ) ), "body over the limit streamed chunk by chunk" );
+    channel.finish();
+  }
+
+  private static void closeMidBody()
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new StsContentAggregator( LIMITS ) );
+    channel.writeInbound( new DefaultStsRequest( StsVersion.STS_1_0, StsMethod.POST, "/Auth/LoginStart" ) );
+    ByteBuf chunk = bytes( "part" );
+    channel.writeInbound( new DefaultStsContent( chunk.retain() ) );
+    channel.finish();
+    check( chunk.refCnt() == 1, "partial body released on close" );
+    chunk.release();
+  }
+
+  private static EmbeddedChannel newChannel()
+  {
+    return new EmbeddedChannel( new IncrementalStsRequestDecoder( 4096, 8192, CHUNK_SIZE, true, true, true ), new StsContentAggregator( LIMITS ) );
+  }
+
+  private static String request( String uri, String body, String headers )
+  {
+    return "POST " + uri + " STS/1.0\r\n" + headers + "l:" + body.length() + "\r\n\r\n" + body;
+  }
+
+  private static String body( int length )
+  {
+    StringBuilder sb = new StringBuilder( length );
+    for( int i = 0; i < length; i++ )
+      sb.append( (char) ('a' + i % 26) );
+    return sb.toString();
+  }
+
+  private static ByteBuf bytes( String s )
+  {
+    return Unpooled.copiedBuffer( s, CharsetUtil.US_ASCII );
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
@@ -0,0 +1,127 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import openbns.commons.net.codec.sts.*;
+
+import java.util.Arrays;
+
+/**
+ * Runs the same operations on {@link DefaultStsHeaders} and {@link CompactStsHeaders} and checks they read, iterate
+ * and encode alike, including numeric values that {@link CompactStsHeaders} keeps as numbers.
+ */
+public class StsHeadersTest
+{
+  public static void main( String[] args ) throws InterruptedException
+  {
+    LeakCheck.start();
+    StsHeaders expected = fill( new DefaultStsHeaders() );
+    StsHeaders actual = fill( new CompactStsHeaders() );
+    same( expected, actual, "filled" );
+
+    expected.remove( "X-Multi" );
+    actual.remove( "X-Multi" );
+    same( expected, actual, "removed" );
+
+    expected.set( StsHeaders.Names.CONTENT_LENGTH, 4096L );
+    actual.set( StsHeaders.Names.CONTENT_LENGTH, 4096L );
+    same( expected, actual, "replaced a number" );
+
+    for( int i = 0; i < 20; i++ )
+    {
+      expected.add( "h" + i, i % 3 == 0 ? (Object) i : "v" + i );
+      actual.add( "h" + i, i % 3 == 0 ? (Object) i : "v" + i );
+    }
+    same( expected, actual, "grown" );
+
+    expected.set( actual );
+    same( expected, actual, "copied" );
+
+    expected.clear();
+    actual.clear();
+    same( expected, actual, "cleared" );
+
+    CompactStsHeaders numbers = new CompactStsHeaders();
+    numbers.add( StsHeaders.Names.CONTENT_LENGTH, 0 );
+    numbers.add( "negative", Long.MIN_VALUE );
+    numbers.add( "text", "12" );
+    numbers.add( "bad", "x1" );
+    check( numbers.getLong( "l", -1 ) == 0, "number read as a number" );
+    check( numbers.getLong( "negative", -1 ) == Long.MIN_VALUE, "negative number" );
+    check( numbers.getLong( "text", -1 ) == 12, "text read as a number" );
+    check( numbers.getLong( "bad", -1 ) == -1, "not a number" );
+    check( numbers.getLong( "missing", -1 ) == -1, "missing" );
+    check( "l: 0\r\nnegative: -9223372036854775808\r\ntext: 12\r\nbad: x1\r\n".equals( encode( numbers ) ), "numbers encoded" );
+
+    try
+    {
+      new CompactStsHeaders().add( "bad name", "x" );
+      throw new AssertionError( "invalid name accepted" );
+    }
+    catch( IllegalArgumentException e )
+    {
+      // expected
+    }
+
+    DefaultStsResponse response = new DefaultStsResponse( StsResponseStatus.OK, new CompactStsHeaders() );
+    response.headers().add( StsHeaders.Names.CONTENT_LENGTH, 123 );
+    response.headers().add( StsHeaders.Names.SESSION_NUMBER, "5R" );
+    check( StsHeaders.getContentLength( response, -1 ) == 123, "content length of a response" );
+    EmbeddedChannel channel = new EmbeddedChannel( new StsResponseEncoder() );
+    channel.writeOutbound( response );
+    ByteBuf out = (ByteBuf) channel.readOutbound();
+    check( out.toString( CharsetUtil.US_ASCII ).endsWith( "\r\nl: 123\r\ns: 5R\r\n\r\n" ), "response encoded: " + out.toString( CharsetUtil.US_ASCII ) );
+    out.release();
+    channel.finish();
+
+    LeakCheck.check();
+    System.out.println( "Compact headers match default headers" );
+  }
+
+  private static StsHeaders fill( StsHeaders headers )
+  {
+    headers.add( StsHeaders.Names.CONTENT_LENGTH, 94 );
+    headers.add( StsHeaders.Names.SESSION_NUMBER, "2R" );
+    headers.add( "X-Multi", "one" );
+    headers.add( "x-multi", Arrays.asList( "two", "three" ) );
+    headers.add( StsHeaders.newEntity( "Entity" ), StsHeaders.newEntity( "value" ) );
+    headers.set( "s", 7L );
+    return headers;
+  }
+
+  private static void same( StsHeaders expected, StsHeaders actual, String what )
+  {
+    for( String name : new String[]{ "l", "L", "s", "x-multi", "X-MULTI", "Entity", "h3", "h4", "missing" } )
+    {
+      check( String.valueOf( expected.get( name ) ).equals( String.valueOf( actual.get( name ) ) ), what + ": get " + name );
+      check( expected.getAll( name ).equals( actual.getAll( name ) ), what + ": getAll " + name );
+      check( expected.contains( name ) == actual.contains( name ), what + ": contains " + name );
+      check( expected.contains( name, "TWO", true ) == actual.contains( name, "TWO", true ), what + ": contains value " + name );
+    }
+    check( expected.entries().toString().equals( actual.entries().toString() ), what + ": entries " + actual.entries() );
+    check( expected.names().equals( actual.names() ), what + ": names" );
+    check( expected.isEmpty() == actual.isEmpty(), what + ": isEmpty" );
+    check( encode( expected ).equals( encode( actual ) ), what + ": encoded " + encode( actual ) );
+  }
+
+  /**
+   * Encodes the headers through {@link StsResponseEncoder} and returns the header lines.
+   */
+  private static String encode( StsHeaders headers )
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new StsResponseEncoder() );
+    channel.writeOutbound( new DefaultStsResponse( StsResponseStatus.OK, headers ) );
+    ByteBuf out = (ByteBuf) channel.readOutbound();
+    String text = out.toString( CharsetUtil.US_ASCII );
+    out.release();
+    channel.finish();
+    return text.substring( text.indexOf( "\r\n" ) + 2, text.length() - 2 );
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
@@ -0,0 +1,316 @@
+package openbns.loginserver.net;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import openbns.commons.net.codec.sts.*;
+import openbns.loginserver.net.client.AbstractRequestPacket;
+import openbns.loginserver.net.client.AsyncRequestPacket;
+import openbns.loginserver.net.client.RequestContext;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the write syscalls the server's I/O thread makes per reply over loopback TCP, for replies written as a head
+ * and a {@link LastStsContent} with a flush each, as packets used to, and for replies written with
+ * {@link RequestContext#reply}, flushed by the connection. Each client round sends a batch of requests in one
+ * write and waits for all of their replies. Inline packets reply on the I/O thread; asynchronous ones from another
+ * thread, as a database lookup would. Also checks both ways put the same bytes on the wire.
+ * <p/>
+ * Syscalls are read from {@code /proc/thread-self/io}, so are only counted on Linux.
+ */
+public class StsReplyLoadTest
+{
+  private static final int CONNECTIONS = 8;
+  private static final int ROUNDS = 500;
+  private static final int BATCH = 4;
+  private static final ByteBuf BODY = Unpooled.unreleasableBuffer( Unpooled.copiedBuffer( "<Reply>\n<KeyData>AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA</KeyData>\n</Reply>\n", CharsetUtil.US_ASCII ) );
+  private static final String REQUEST = "POST /Auth/LoginStart STS/1.0\r\ns:1\r\nl:0\r\n\r\n";
+
+  public static void main( String[] args ) throws Exception
+  {
+    EventExecutorGroup db = new DefaultEventExecutorGroup( 1 );
+    try
+    {
+      String legacy = run( "inline, head and content flushed", new ReplyPacket( true ) );
+      String reply = run( "inline, reply", new ReplyPacket( false ) );
+      if( !legacy.equals( reply ) )
+        throw new AssertionError( "Replies differ:\n" + legacy + "\n" + reply );
+      run( "async, head and content flushed", new AsyncReplyPacket( new ReplyPacket( true ), db ) );
+      run( "async, reply", new AsyncReplyPacket( new ReplyPacket( false ), db ) );
+    }
+    finally
+    {
+      db.shutdownGracefully().sync();
+    }
+  }
+
+  /**
+   * @return the first reply received
+   */
+  private static String run( String name, final AbstractRequestPacket<Void> packet ) throws Exception
+  {
+    EventLoopGroup bossGroup = new NioEventLoopGroup( 1 );
+    EventLoopGroup serverGroup = new NioEventLoopGroup( 1 );
+    EventLoopGroup clientGroup = new NioEventLoopGroup( 2 );
+    try
+    {
+      final RequestExecutor executor = new RequestExecutor( 0, 0, 4096 );
+      Channel server = new ServerBootstrap().group( bossGroup, serverGroup ).channel( NioServerSocketChannel.class ).childHandler( new ChannelInitializer<Channel>()
+      {
+        @Override
+        protected void initChannel( Channel ch ) throws Exception
+        {
+          ch.pipeline().addLast( "codec", new StsServerCodec( new IncrementalStsRequestDecoder( 4096, 8192, 8192, true, false, true ) ) );
+          ch.pipeline().addLast( "handler", new ConnectionHandler( new PacketDispatcher( ch, executor, 16 ), packet ) );
+        }
+      } ).bind( new InetSocketAddress( "127.0.0.1", 0 ) ).sync().channel();
+
+      int replyLength = replyLength();
+      final CountDownLatch done = new CountDownLatch( CONNECTIONS );
+      final StringBuffer firstReply = new StringBuffer();
+      List<Channel> clients = new ArrayList<>();
+      for( int i = 0; i < CONNECTIONS; i++ )
+        clients.add( new Bootstrap().group( clientGroup ).channel( NioSocketChannel.class ).handler( new Client( replyLength, done, firstReply ) ).connect( server.localAddress() ).sync().channel() );
+
+      long before = serverWriteSyscalls( serverGroup );
+      long start = System.nanoTime();
+      for( Channel client : clients )
+        client.writeAndFlush( batch() );
+      if( !done.await( 60, TimeUnit.SECONDS ) )
+        throw new AssertionError( name + ": timed out" );
+      long millis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+      long syscalls = serverWriteSyscalls( serverGroup ) - before;
+
+      int replies = CONNECTIONS * ROUNDS * BATCH;
+      System.out.println( name + ": " + replies + " replies in " + millis + " ms, " + (syscalls < 0 ? "write syscalls not available" : syscalls + " write syscalls, " + String.format( "%.2f", (double) syscalls / replies ) + " per reply") );
+
+      for( Channel client : clients )
+        client.close().sync();
+      server.close().sync();
+      return firstReply.toString();
+    }
+    finally
+    {
+      clientGroup.shutdownGracefully().sync();
+      serverGroup.shutdownGracefully().sync();
+      bossGroup.shutdownGracefully().sync();
+    }
+  }
+
+  private static ByteBuf batch()
+  {
+    StringBuilder sb = new StringBuilder();
+    for( int i = 0; i < BATCH; i++ )
+      sb.append( REQUEST );
+    return Unpooled.copiedBuffer( sb, CharsetUtil.US_ASCII );
+  }
+
+  private static int replyLength()
+  {
+    return ("STS/1.0 200 OK\r\nl: " + BODY.readableBytes() + "\r\ns: 1R\r\n\r\n").length() + BODY.readableBytes();
+  }
+
+  /**
+   * @return the write syscalls made so far by the server's only I/O thread, or -1 if they cannot be read
+   */
+  private static long serverWriteSyscalls( EventLoopGroup group ) throws Exception
+  {
+    return group.next().submit( new Callable<Long>()
+    {
+      @Override
+      public Long call() throws Exception
+      {
+        try( BufferedReader reader = new BufferedReader( new FileReader( "/proc/thread-self/io" ) ) )
+        {
+          String line;
+          while( (line = reader.readLine()) != null )
+          {
+            if( line.startsWith( "syscw:" ) )
+              return Long.parseLong( line.substring( 6 ).trim() );
+          }
+        }
+        catch( IOException e )
+        {
+          // Not Linux
+        }
+        return -1L;
+      }
+    } ).get();
+  }
+
+  /**
+   * Sends {@link #ROUNDS} batches, each once the replies to the previous one are in.
+   */
+  private static class Client extends ChannelInboundHandlerAdapter
+  {
+    private final int replyLength;
+    private final CountDownLatch done;
+    private final StringBuffer firstReply;
+    private int received;
+    private int rounds;
+
+    private Client( int replyLength, CountDownLatch done, StringBuffer firstReply )
+    {
+      this.replyLength = replyLength;
+      this.done = done;
+      this.firstReply = firstReply;
+    }
+
+    @Override
+    public void channelRead( ChannelHandlerContext ctx, Object msg ) throws Exception
+    {
+      ByteBuf buf = (ByteBuf) msg;
+      try
+      {
+        synchronized( firstReply )
+        {
+          if( firstReply.length() < replyLength )
+            firstReply.append( buf.toString( buf.readerIndex(), Math.min( buf.readableBytes(), replyLength - firstReply.length() ), CharsetUtil.US_ASCII ) );
+        }
+        received += buf.readableBytes();
+        if( received < replyLength * BATCH )
+          return;
+        if( received > replyLength * BATCH )
+          throw new AssertionError( "Unexpected reply length" );
+        received = 0;
+        if( ++rounds < ROUNDS )
+          ctx.writeAndFlush( batch() );
+        else
+          done.countDown();
+      }
+      finally
+      {
+        ReferenceCountUtil.release( msg );
+      }
+    }
+  }
+
+  /**
+   * Stands in for {@link LoginServerHandler}, with one packet for every request.
+   */
+  private static class ConnectionHandler extends ChannelInboundHandlerAdapter
+  {
+    private final PacketDispatcher dispatcher;
+    private final AbstractRequestPacket<Void> packet;
+    private int sessionNumber;
+
+    private ConnectionHandler( PacketDispatcher dispatcher, AbstractRequestPacket<Void> packet )
+    {
+      this.dispatcher = dispatcher;
+      this.packet = packet;
+    }
+
+    @Override
+    public void channelRead( ChannelHandlerContext ctx, Object msg ) throws Exception
+    {
+      try
+      {
+        if( msg instanceof StsRequest )
+          sessionNumber = Integer.parseInt( ((StsRequest) msg).headers().get( StsHeaders.Names.SESSION_NUMBER ) );
+        if( msg instanceof LastStsContent )
+          dispatcher.dispatch( packet, null, sessionNumber );
+      }
+      finally
+      {
+        ReferenceCountUtil.release( msg );
+      }
+    }
+
+    @Override
+    public void channelReadComplete( ChannelHandlerContext ctx ) throws Exception
+    {
+      ctx.flush();
+    }
+  }
+
+  /**
+   * Replies with {@link #BODY}, the way packets used to or with {@link RequestContext#reply}, on the I/O thread.
+   */
+  private static class ReplyPacket extends AbstractRequestPacket<Void>
+  {
+    private final boolean legacy;
+
+    private ReplyPacket( boolean legacy )
+    {
+      this.legacy = legacy;
+    }
+
+    @Override
+    public Void read( ByteBuf buf )
+    {
+      return null;
+    }
+
+    @Override
+    public void execute( RequestContext context, Void request )
+    {
+      if( legacy )
+      {
+        DefaultStsResponse resp = new DefaultStsResponse( StsResponseStatus.OK, new CompactStsHeaders() );
+        resp.headers().add( StsHeaders.Names.CONTENT_LENGTH, BODY.readableBytes() );
+        resp.headers().add( StsHeaders.Names.SESSION_NUMBER, context.getSessionNumber() + "R" );
+        context.channel().writeAndFlush( resp );
+        context.channel().writeAndFlush( new DefaultLastStsContent( BODY.duplicate() ) );
+      }
+      else
+        context.reply( StsResponseStatus.OK, BODY.duplicate() );
+    }
+  }
+
+  /**
+   * Runs a {@link ReplyPacket} on {@code db}, as a database lookup would complete.
+   */
+  private static class AsyncReplyPacket extends AsyncRequestPacket<Void>
+  {
+    private final ReplyPacket reply;
+    private final EventExecutorGroup db;
+
+    private AsyncReplyPacket( ReplyPacket reply, EventExecutorGroup db )
+    {
+      this.reply = reply;
+      this.db = db;
+    }
+
+    @Override
+    public Void read( ByteBuf buf )
+    {
+      return null;
+    }
+
+    @Override
+    public Future<?> executeAsync( final RequestContext context, final Void request )
+    {
+      final Promise<Void> done = context.channel().eventLoop().newPromise();
+      db.execute( new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          reply.execute( context, request );
+          done.setSuccess( null );
+        }
+      } );
+      return done;
+    }
+  }
+}
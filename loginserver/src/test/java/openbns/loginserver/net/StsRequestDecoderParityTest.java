@@ -0,0 +1,260 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import openbns.commons.net.codec.sts.*;
+
+import java.util.*;
+
+/**
+ * Feeds the same requests to {@link StsRequestDecoder} and {@link IncrementalStsRequestDecoder}, whole and split
+ * into fragments of various sizes, and checks both decode the same requests, headers, content and failures, with
+ * content copied and sliced, and with headers in {@link DefaultStsHeaders} and {@link CompactStsHeaders}. Every
+ * received buffer must be released once the decoded messages are, and the leak detector runs in paranoid mode.
+ * Also checks the incremental decoder shares the Strings it recognizes.
+ */
+public class StsRequestDecoderParityTest
+{
+  private static final int MAX_INITIAL_LINE = 64;
+  private static final int MAX_HEADER_SIZE = 128;
+  private static final int MAX_CHUNK_SIZE = 256;
+
+  public static void main( String[] args ) throws InterruptedException
+  {
+    LeakCheck.start();
+
+    Map<String, String> inputs = new LinkedHashMap<>();
+    inputs.put( "connect", request( "POST /Sts/Connect STS/1.0", "<Connect>\n<ConnType>400</ConnType>\n</Connect>\n", "s:1" ) );
+    inputs.put( "no content length", "POST /Sts/Ping STS/1.0\r\n\r\n" );
+    inputs.put( "zero content length", "POST /Sts/Ping STS/1.0\r\nl:0\r\n\r\n" );
+    inputs.put( "pipelined", request( "POST /Sts/Connect STS/1.0", "<Connect/>" ) + "POST /Sts/Ping STS/1.0\r\n\r\n" + request( "POST /Auth/LoginStart STS/1.0", "<Request>\n<LoginName>bob</LoginName>\n</Request>\n", "s:2" ) );
+    inputs.put( "leading blank lines", "\r\n\r\n \t" + request( "POST /Sts/Ping STS/1.0", "x" ) );
+    inputs.put( "bare LF", "POST /Sts/Ping STS/1.0\nl:3\ns:5\n\nabc" );
+    inputs.put( "folded header", "POST /Sts/Ping STS/1.0\r\nx-long: one\r\n  two\r\n\tthree\r\nl:1\r\n\r\nz" );
+    inputs.put( "empty header value", "POST /Sts/Ping STS/1.0\r\nx:\r\n y : z \r\n\r\n" );
+    inputs.put( "content over chunk size", request( "POST /Auth/KeyData STS/1.0", repeat( 'k', MAX_CHUNK_SIZE * 2 + 17 ) ) );
+    inputs.put( "initial line too long", "POST /" + repeat( 'u', MAX_INITIAL_LINE ) + " STS/1.0\r\n\r\n" );
+    inputs.put( "initial line at limit", "POST /" + repeat( 'u', MAX_INITIAL_LINE - 14 ) + " STS/1.0\r\n\r\n" );
+    inputs.put( "headers too long", "POST /Sts/Ping STS/1.0\r\nx:" + repeat( 'h', MAX_HEADER_SIZE ) + "\r\n\r\n" );
+    inputs.put( "headers at limit", "POST /Sts/Ping STS/1.0\r\nx:" + repeat( 'h', MAX_HEADER_SIZE - 8 ) + "\r\n\r\n" );
+    inputs.put( "bad version", "POST /Sts/Ping STS 1.0\r\n\r\nPOST /Sts/Ping STS/1.0\r\n\r\n" );
+    inputs.put( "bad header name", "POST /Sts/Ping STS/1.0\r\nbad name: x\r\n\r\n" );
+    inputs.put( "truncated content", "POST /Sts/Ping STS/1.0\r\nl:100\r\n\r\nshort" );
+    inputs.put( "unknown tokens", "GET /Sts/Ping STS/1.0\r\n\r\npost /Sts/Ping sts/1.0\r\nL:2\r\nS:4096\r\n\r\nabPUT /Sts/Ping STS/2.1\r\nl:007\r\ns:0\r\n\r\n1234567" );
+    StringBuilder uris = new StringBuilder();
+    for( int i = 0; i < 40; i++ )
+      uris.append( "POST /Sts/" ).append( i % 36 ).append( " STS/1.0\r\n\r\n" );
+    inputs.put( "many URIs", uris.toString() );
+
+    int[] fragmentSizes = { Integer.MAX_VALUE, 1, 2, 3, 7, 16, 100 };
+    Random random = new Random( 7 );
+    int runs = 0;
+    for( Map.Entry<String, String> input : inputs.entrySet() )
+    {
+      byte[] bytes = input.getValue().getBytes( CharsetUtil.US_ASCII );
+      List<String> expected = decode( new StsRequestDecoder( MAX_INITIAL_LINE, MAX_HEADER_SIZE, MAX_CHUNK_SIZE ), bytes, fixed( bytes.length, Integer.MAX_VALUE ), null );
+      for( int size : fragmentSizes )
+      {
+        compare( input.getKey() + ", fragments of " + size, expected, bytes, fixed( bytes.length, size ) );
+        runs++;
+      }
+      for( int i = 0; i < 20; i++ )
+      {
+        compare( input.getKey() + ", random fragments #" + i, expected, bytes, randomSplit( random, bytes.length ) );
+        runs++;
+      }
+    }
+
+    checkSliced( new StsRequestDecoder( MAX_INITIAL_LINE, MAX_HEADER_SIZE, MAX_CHUNK_SIZE, true, true ), inputs.get( "connect" ) );
+    checkSliced( new IncrementalStsRequestDecoder( MAX_INITIAL_LINE, MAX_HEADER_SIZE, MAX_CHUNK_SIZE, true, true ), inputs.get( "connect" ) );
+    checkShared( inputs.get( "connect" ) );
+
+    LeakCheck.check();
+    System.out.println( "STS decoders agree on " + inputs.size() + " inputs, " + runs + " fragmentations, copied, sliced and with compact headers" );
+  }
+
+  private static void compare( String what, List<String> expected, byte[] bytes, int[] fragments )
+  {
+    ByteToMessageDecoder[] decoders = {
+            new StsRequestDecoder( MAX_INITIAL_LINE, MAX_HEADER_SIZE, MAX_CHUNK_SIZE ),
+            new IncrementalStsRequestDecoder( MAX_INITIAL_LINE, MAX_HEADER_SIZE, MAX_CHUNK_SIZE ),
+            new StsRequestDecoder( MAX_INITIAL_LINE, MAX_HEADER_SIZE, MAX_CHUNK_SIZE, true, true ),
+            new IncrementalStsRequestDecoder( MAX_INITIAL_LINE, MAX_HEADER_SIZE, MAX_CHUNK_SIZE, true, true ),
+            new StsRequestDecoder( MAX_INITIAL_LINE, MAX_HEADER_SIZE, MAX_CHUNK_SIZE, true, false, true ),
+            new IncrementalStsRequestDecoder( MAX_INITIAL_LINE, MAX_HEADER_SIZE, MAX_CHUNK_SIZE, true, false, true ) };
+    String[] variants = { "", "", " (sliced)", " (sliced)", " (compact headers)", " (compact headers)" };
+    for( int i = 0; i < decoders.length; i++ )
+    {
+      String name = decoders[ i ].getClass().getSimpleName() + variants[ i ];
+      List<String> actual = decode( decoders[ i ], bytes, fragments, name + ", " + what );
+      if( !expected.equals( actual ) )
+        throw new AssertionError( name + ", " + what + ":\n  expected: " + expected + "\n  actual:   " + actual );
+    }
+  }
+
+  /**
+   * Checks a body received in one read is handed out without a copy.
+   */
+  private static void checkSliced( ByteToMessageDecoder decoder, String input )
+  {
+    byte[] bytes = input.getBytes( CharsetUtil.US_ASCII );
+    ByteBuf in = Unpooled.wrappedBuffer( bytes );
+    EmbeddedChannel channel = new EmbeddedChannel( decoder );
+    channel.writeInbound( in );
+    ReferenceCountUtil.release( channel.readInbound() );
+    LastStsContent content = (LastStsContent) channel.readInbound();
+    if( !content.content().hasArray() || content.content().array() != bytes )
+      throw new AssertionError( decoder.getClass().getSimpleName() + " copied the content" );
+    if( in.refCnt() == 0 )
+      throw new AssertionError( decoder.getClass().getSimpleName() + " released the received buffer under a slice" );
+    content.release();
+    channel.finish();
+    if( in.refCnt() != 0 )
+      throw new AssertionError( decoder.getClass().getSimpleName() + " did not release the received buffer" );
+  }
+
+  /**
+   * Checks {@link IncrementalStsRequestDecoder} uses the shared constants for known tokens and repeats a connection's
+   * URI and numeric header values instead of making new Strings.
+   */
+  private static void checkShared( String input )
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new IncrementalStsRequestDecoder() );
+    channel.writeInbound( Unpooled.copiedBuffer( input + input, CharsetUtil.US_ASCII ) );
+    StsRequest[] requests = new StsRequest[ 2 ];
+    for( int i = 0; i < requests.length; i++ )
+    {
+      requests[ i ] = (StsRequest) channel.readInbound();
+      ReferenceCountUtil.release( channel.readInbound() );
+      StsRequest req = requests[ i ];
+      if( req.getMethod() != StsMethod.POST || req.getProtocolVersion() != StsVersion.STS_1_0 )
+        throw new AssertionError( "known method or version not shared: " + req );
+      for( Map.Entry<String, String> header : req.headers() )
+      {
+        if( header.getKey() != StsHeaders.Names.CONTENT_LENGTH && header.getKey() != StsHeaders.Names.SESSION_NUMBER )
+          throw new AssertionError( "known header name not shared: " + header.getKey() );
+      }
+    }
+    if( requests[ 0 ].getUri() != requests[ 1 ].getUri() )
+      throw new AssertionError( "URI not repeated" );
+    if( requests[ 0 ].headers().get( StsHeaders.Names.CONTENT_LENGTH ) != requests[ 1 ].headers().get( StsHeaders.Names.CONTENT_LENGTH ) )
+      throw new AssertionError( "numeric header value not shared" );
+    channel.finish();
+  }
+
+  /**
+   * Decodes everything before reading any output, so sliced content stays alive while more bytes arrive.
+   *
+   * @param what if not {@code null}, checks every received buffer is released along with the output
+   * @return decoded objects as text, with each request's content joined so chunk boundaries do not matter
+   */
+  private static List<String> decode( ByteToMessageDecoder decoder, byte[] bytes, int[] fragments, String what )
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( decoder );
+    List<ByteBuf> received = new ArrayList<>();
+    int offset = 0;
+    for( int fragment : fragments )
+    {
+      ByteBuf buf = Unpooled.wrappedBuffer( bytes, offset, fragment );
+      received.add( buf );
+      channel.writeInbound( buf );
+      offset += fragment;
+    }
+    channel.finish();
+
+    List<String> result = new ArrayList<>();
+    StringBuilder content = null;
+    Object msg;
+    while( (msg = channel.readInbound()) != null )
+    {
+      try
+      {
+        if( msg instanceof StsRequest )
+        {
+          StsRequest req = (StsRequest) msg;
+          if( content != null )
+            result.add( "unfinished content " + content );
+          content = new StringBuilder();
+          StringBuilder sb = new StringBuilder( req.getMethod() + " " + req.getUri() + " " + req.getProtocolVersion() );
+          sb.append( " l=" ).append( StsHeaders.getContentLength( req, -1 ) );
+          for( Map.Entry<String, String> header : req.headers() )
+            sb.append( " [" ).append( header.getKey() ).append( '=' ).append( header.getValue() ).append( ']' );
+          if( req.getDecoderResult().isFailure() )
+            sb.append( " failed: " ).append( req.getDecoderResult().cause().getClass().getSimpleName() );
+          result.add( sb.toString() );
+        }
+        if( msg instanceof StsContent )
+        {
+          ByteBuf buf = ((StsContent) msg).content();
+          if( content == null )
+            content = new StringBuilder( "<no request>" );
+          content.append( buf.toString( CharsetUtil.US_ASCII ) );
+          if( msg instanceof LastStsContent )
+          {
+            result.add( "content " + content );
+            content = null;
+          }
+        }
+      }
+      finally
+      {
+        ReferenceCountUtil.release( msg );
+      }
+    }
+    if( content != null && content.length() > 0 )
+      result.add( "unfinished content " + content );
+
+    if( what != null )
+    {
+      for( ByteBuf buf : received )
+      {
+        if( buf.refCnt() != 0 )
+          throw new AssertionError( what + ": received buffer not released, refCnt " + buf.refCnt() );
+      }
+    }
+    return result;
+  }
+
+  private static int[] fixed( int length, int size )
+  {
+    int[] fragments = new int[ (length + Math.min( size, length ) - 1) / Math.max( Math.min( size, length ), 1 ) ];
+    for( int i = 0, offset = 0; i < fragments.length; i++, offset += size )
+      fragments[ i ] = Math.min( size, length - offset );
+    return fragments;
+  }
+
+  private static int[] randomSplit( Random random, int length )
+  {
+    List<Integer> sizes = new ArrayList<>();
+    for( int offset = 0; offset < length; )
+    {
+      int size = Math.min( 1 + random.nextInt( 24 ), length - offset );
+      sizes.add( size );
+      offset += size;
+    }
+    int[] fragments = new int[ sizes.size() ];
+    for( int i = 0; i < fragments.length; i++ )
+      fragments[ i ] = sizes.get( i );
+    return fragments;
+  }
+
+  private static String request( String initialLine, String body, String... headers )
+  {
+    StringBuilder sb = new StringBuilder( initialLine ).append( "\r\n" );
+    sb.append( "l:" ).append( body.length() ).append( "\r\n" );
+    for( String header : headers )
+      sb.append( header ).append( "\r\n" );
+    return sb.append( "\r\n" ).append( body ).toString();
+  }
+
+  private static String repeat( char c, int count )
+  {
+    char[] chars = new char[ count ];
+    Arrays.fill( chars, c );
+    return new String( chars );
+  }
+}
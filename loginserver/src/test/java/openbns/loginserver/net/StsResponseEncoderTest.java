@@ -0,0 +1,146 @@
+package openbns.loginserver.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import openbns.commons.net.codec.sts.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks {@link StsResponseEncoder} writes the same bytes from its cached heads as for statuses it does not cache, that
+ * a reply without headers reuses one head buffer, and that a small body goes out in the same buffer as its head. Also
+ * checks {@link StsResponseDecoder} reads replies with and without a body back.
+ */
+public class StsResponseEncoderTest
+{
+  public static void main( String[] args ) throws InterruptedException
+  {
+    LeakCheck.start();
+    for( StsResponseStatus status : new StsResponseStatus[]{ StsResponseStatus.OK, StsResponseStatus.NOT_ONLINE, StsResponseStatus.NOT_FOUND, StsResponseStatus.valueOf( 299 ) } )
+    {
+      StsResponseStatus uncached = new StsResponseStatus( status.code(), status.reasonPhrase() );
+      check( text( encode( new DefaultFullStsResponse( status ) ) ).equals( text( encode( new DefaultFullStsResponse( uncached ) ) ) ), "head without headers, " + status );
+
+      FullStsResponse cachedReply = reply( status );
+      FullStsResponse uncachedReply = reply( uncached );
+      String expected = uncached.code() + " " + uncached.reasonPhrase() + "\r\nl: 5\r\ns: 1R\r\n\r\nhello";
+      check( text( encode( cachedReply ) ).equals( "STS/1.0 " + expected ), "reply, " + status + ": " + text( encode( reply( status ) ) ) );
+      check( text( encode( uncachedReply ) ).equals( "STS/1.0 " + expected ), "uncached reply, " + status );
+    }
+
+    List<ByteBuf> first = encode( new DefaultFullStsResponse( StsResponseStatus.OK ) );
+    List<ByteBuf> second = encode( new DefaultFullStsResponse( StsResponseStatus.OK ) );
+    check( first.size() == 1 && second.size() == 1, "one buffer without headers" );
+    check( root( first.get( 0 ) ) == root( second.get( 0 ) ), "head buffer shared" );
+    first.get( 0 ).release();
+    check( second.get( 0 ).isReadable(), "shared head survives a release" );
+
+    check( release( encode( reply( StsResponseStatus.OK ) ) ) == 1, "small body merged into the head's buffer" );
+    byte[] large = new byte[ 8192 ];
+    FullStsResponse largeReply = new DefaultFullStsResponse( StsResponseStatus.OK, Unpooled.wrappedBuffer( large ), new CompactStsHeaders() );
+    largeReply.headers().add( StsHeaders.Names.CONTENT_LENGTH, large.length );
+    check( release( encode( largeReply ) ) == 2, "large body written as is" );
+
+    decode();
+
+    LeakCheck.check();
+    System.out.println( "Response heads OK" );
+  }
+
+  /**
+   * A reply without headers followed by one with a body, as the server writes them for pipelined requests.
+   */
+  private static void decode()
+  {
+    ByteBuf bytes = Unpooled.buffer();
+    for( ByteBuf buf : encode( new DefaultFullStsResponse( StsResponseStatus.OK ) ) )
+    {
+      bytes.writeBytes( buf );
+      buf.release();
+    }
+    for( ByteBuf buf : encode( reply( StsResponseStatus.NOT_FOUND ) ) )
+    {
+      bytes.writeBytes( buf );
+      buf.release();
+    }
+
+    EmbeddedChannel channel = new EmbeddedChannel( new StsResponseDecoder(), new HttpObjectAggregator( 1024 ) );
+    channel.writeInbound( bytes );
+    FullStsResponse empty = (FullStsResponse) channel.readInbound();
+    FullStsResponse full = (FullStsResponse) channel.readInbound();
+    check( empty != null && empty.getStatus().code() == 200 && !empty.content().isReadable(), "reply without headers decodes with no body" );
+    check( full != null && full.getStatus().code() == 404 && full.content().toString( CharsetUtil.US_ASCII ).equals( "hello" ), "reply with a body after it" );
+    check( channel.readInbound() == null, "two replies" );
+    empty.release();
+    full.release();
+    channel.finish();
+  }
+
+  private static FullStsResponse reply( StsResponseStatus status )
+  {
+    FullStsResponse response = new DefaultFullStsResponse( status, Unpooled.copiedBuffer( "hello", CharsetUtil.US_ASCII ), new CompactStsHeaders() );
+    response.headers().add( StsHeaders.Names.CONTENT_LENGTH, 5 );
+    response.headers().add( StsHeaders.Names.SESSION_NUMBER, "1R" );
+    return response;
+  }
+
+  /**
+   * @return the readable buffers written for the response
+   */
+  private static List<ByteBuf> encode( StsResponse response )
+  {
+    EmbeddedChannel channel = new EmbeddedChannel( new StsResponseEncoder() );
+    channel.writeOutbound( response );
+    List<ByteBuf> buffers = new ArrayList<>();
+    Object out;
+    while( (out = channel.readOutbound()) != null )
+    {
+      if( ((ByteBuf) out).isReadable() )
+        buffers.add( (ByteBuf) out );
+      else
+        ((ByteBuf) out).release();
+    }
+    channel.finish();
+    return buffers;
+  }
+
+  /**
+   * @return the buffer {@code buf} derives from, past the duplicate and any unreleasable or leak-tracking wrappers
+   */
+  private static ByteBuf root( ByteBuf buf )
+  {
+    while( buf.unwrap() != null )
+      buf = buf.unwrap();
+    return buf;
+  }
+
+  /**
+   * @return the number of buffers
+   */
+  private static int release( List<ByteBuf> buffers )
+  {
+    for( ByteBuf buf : buffers )
+      buf.release();
+    return buffers.size();
+  }
+
+  private static String text( List<ByteBuf> buffers )
+  {
+    StringBuilder sb = new StringBuilder();
+    for( ByteBuf buf : buffers )
+    {
+      sb.append( buf.toString( CharsetUtil.US_ASCII ) );
+      buf.release();
+    }
+    return sb.toString();
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}
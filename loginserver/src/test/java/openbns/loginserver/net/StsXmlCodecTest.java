@@ -0,0 +1,115 @@
+package openbns.loginserver.net;
+
+import com.thoughtworks.xstream.io.StreamException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import openbns.commons.xml.StsXStream;
+import openbns.commons.xml.StsXStreamRegistry;
+import openbns.commons.xml.codec.StsXmlCodec;
+import openbns.loginserver.net.client.dto.ConnectDTO;
+import openbns.loginserver.net.client.dto.ConnectDTOXmlCodec;
+import openbns.loginserver.net.client.dto.LoginStartDTO;
+import openbns.loginserver.net.client.dto.LoginStartDTOXmlCodec;
+import openbns.loginserver.net.server.dto.ReplyErrorDTO;
+import openbns.loginserver.net.server.dto.ReplyErrorDTOXmlCodec;
+import openbns.loginserver.net.server.dto.ReplyKeyData;
+import openbns.loginserver.net.server.dto.ReplyKeyDataXmlCodec;
+
+import java.util.Arrays;
+
+/**
+ * Checks that the generated codecs write the same bytes as XStream with {@link openbns.commons.xml.StsPrintWriter}
+ * and read back what XStream reads.
+ */
+public class StsXmlCodecTest
+{
+  private static final String[] TEXTS = { "", "plain", "a<b>&c\"d'e", "cr\rlf\ntab\tnul\0", "\u0001\u007f\u0085", "ж中😀", "\ud800" };
+
+  public static void main( String[] args ) throws InterruptedException
+  {
+    LeakCheck.start();
+    for( String text : TEXTS )
+    {
+      ReplyKeyData keyData = new ReplyKeyData();
+      keyData.setKeyData( text );
+      checkEncode( keyData, ReplyKeyDataXmlCodec.INSTANCE );
+
+      ConnectDTO connect = new ConnectDTO();
+      connect.setAddress( text );
+      connect.setEpoch( Long.MIN_VALUE );
+      connect.setBuild( -42 );
+      checkEncode( connect, ConnectDTOXmlCodec.INSTANCE );
+    }
+    checkEncode( new ReplyKeyData(), ReplyKeyDataXmlCodec.INSTANCE );
+
+    ReplyErrorDTO error = new ReplyErrorDTO();
+    error.setCode( 3002 );
+    error.setServer( 1001 );
+    error.setModule( 1 );
+    error.setLine( 458 );
+    checkEncode( error, ReplyErrorDTOXmlCodec.INSTANCE );
+
+    checkDecode( "<Request>\n<LoginName>test@plaync.co.kr</LoginName>\n</Request>\n", LoginStartDTO.class, LoginStartDTOXmlCodec.INSTANCE );
+    checkDecode( "<?xml version=\"1.0\"?>\r\n<Request><!-- c --><LoginName>a&amp;b&#x41;&#66;<![CDATA[<x>]]></LoginName></Request>", LoginStartDTO.class, LoginStartDTOXmlCodec.INSTANCE );
+    checkDecode( "<Connect>\n<ConnType>400</ConnType>\n<Address>127.0.0.1</Address>\n<ProductType>0</ProductType>\n<AppIndex>1</AppIndex>\n<Epoch>1391272467</Epoch>\n<Program>2</Program>\n<Build>3061</Build>\n<Process>3296</Process>\n</Connect>\n", ConnectDTO.class, ConnectDTOXmlCodec.INSTANCE );
+    checkDecode( "<Error code=\"3002\" server='1001' module=\"1\" line=\"458\"/>", ReplyErrorDTO.class, ReplyErrorDTOXmlCodec.INSTANCE );
+    checkDecode( "<Request><LoginName>a</LoginName \r\n></Request >", LoginStartDTO.class, LoginStartDTOXmlCodec.INSTANCE );
+
+    checkRejected( "<Request><LoginName>a</LoginNameX></Request>", LoginStartDTOXmlCodec.INSTANCE );
+    checkRejected( "<Request><LoginName>a</LoginName></Requests>", LoginStartDTOXmlCodec.INSTANCE );
+    checkRejected( "<Request><LoginName>&#x110000;</LoginName></Request>", LoginStartDTOXmlCodec.INSTANCE );
+    checkRejected( "<Request><LoginName>&#4294967361;</LoginName></Request>", LoginStartDTOXmlCodec.INSTANCE );
+    checkRejected( "<Request><LoginName>&#x;</LoginName></Request>", LoginStartDTOXmlCodec.INSTANCE );
+
+    LeakCheck.check();
+    System.out.println( "All codecs match XStream" );
+  }
+
+  private static <T> void checkEncode( T value, StsXmlCodec<T> codec )
+  {
+    byte[] expected = StsXStreamRegistry.getInstance().get( value.getClass() ).toXML( value ).getBytes( CharsetUtil.UTF_8 );
+
+    ByteBuf buf = Unpooled.buffer();
+    codec.encode( value, buf );
+    byte[] actual = new byte[ buf.readableBytes() ];
+    buf.readBytes( actual );
+    buf.release();
+
+    if( !Arrays.equals( expected, actual ) )
+      throw new AssertionError( "Encoding mismatch:\n" + new String( expected, CharsetUtil.UTF_8 ) + "\n---\n" + new String( actual, CharsetUtil.UTF_8 ) );
+  }
+
+  private static <T> void checkDecode( String xml, Class<T> type, StsXmlCodec<T> codec )
+  {
+    StsXStream stream = StsXStreamRegistry.getInstance().get( type );
+    String expected = stream.toXML( stream.fromXML( xml ) );
+    ByteBuf buf = Unpooled.copiedBuffer( xml, CharsetUtil.UTF_8 );
+    String actual = stream.toXML( codec.decode( buf ) );
+    boolean consumed = !buf.isReadable();
+    buf.release();
+
+    if( !expected.equals( actual ) )
+      throw new AssertionError( "Decoding mismatch:\n" + expected + "\n---\n" + actual );
+    if( !consumed )
+      throw new AssertionError( "Buffer not consumed" );
+  }
+
+  private static void checkRejected( String xml, StsXmlCodec<?> codec )
+  {
+    ByteBuf buf = Unpooled.copiedBuffer( xml, CharsetUtil.UTF_8 );
+    try
+    {
+      codec.decode( buf );
+      throw new AssertionError( "Accepted malformed document: " + xml );
+    }
+    catch( StreamException e )
+    {
+      // expected
+    }
+    finally
+    {
+      buf.release();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package openbns.loginserver.net.client;
+
+import io.netty.util.CharsetUtil;
+import openbns.commons.net.codec.sts.StsContentAggregator;
+import openbns.commons.util.ByteTrie;
+import openbns.loginserver.net.client.impl.RequestConnect;
+import openbns.loginserver.net.client.impl.RequestKeyData;
+import openbns.loginserver.net.client.impl.RequestLoginStart;
+import openbns.loginserver.net.client.impl.RequestPing;
+
+/**
+ * Checks that the scanned packets resolve by URI and are shared, that unknown URIs miss, the content limits, and the
+ * edge cases of the {@link ByteTrie} the decoder looks up request lines with. Lookup speed is measured by
+ * {@code RequestDispatchBenchmark} in the benchmarks module.
+ */
+public class RequestPacketHandlerTest
+{
+  public static void main( String[] args )
+  {
+    RequestPacketHandler handler = new RequestPacketHandler( "openbns.loginserver.net.client.impl", 16384 );
+    check( handler.getPacket( "/Sts/Connect" ) instanceof RequestConnect, "/Sts/Connect" );
+    check( handler.getPacket( "/Sts/Ping" ) instanceof RequestPing, "/Sts/Ping" );
+    check( handler.getPacket( "/Auth/LoginStart" ) instanceof RequestLoginStart, "/Auth/LoginStart" );
+    check( handler.getPacket( "/Auth/KeyData" ) instanceof RequestKeyData, "/Auth/KeyData" );
+    check( handler.getPacket( "/Sts/Ping" ) == handler.getPacket( "/Sts/Ping" ), "packets are shared" );
+    check( handler.getPacket( "/Auth/LoginFinish" ) == null, "unregistered URI" );
+    check( handler.getPacket( "/Sts/Pin" ) == null, "prefix of a URI" );
+    check( handler.getPacket( "/Sts/Pings" ) == null, "URI with a suffix" );
+    check( handler.getUnknownUriPacket() != null, "unknown URI packet" );
+    check( RequestPacketHandler.getMaxContentLength( handler.getPacket( "/Auth/LoginStart" ) ) == 16384, "default content limit" );
+    check( RequestPacketHandler.getMaxContentLength( handler.getPacket( "/Nope" ) ) == StsContentAggregator.ContentLimits.STREAM, "unknown URI body streamed" );
+    check( RequestPacketHandler.getMaxContentLength( handler.getUnknownUriPacket() ) == StsContentAggregator.ContentLimits.STREAM, "error packet body streamed" );
+
+    ByteTrie<String> trie = new ByteTrie<>();
+    trie.put( bytes( "/a/bc" ), "abc" );
+    trie.put( bytes( "/a/b" ), "ab" );
+    trie.put( bytes( "/a/bd" ), "abd" );
+    trie.put( bytes( "" ), "root" );
+    trie.put( bytes( "/a/b" ), "ab2" );
+    check( trie.size() == 4, "size" );
+    check( "ab2".equals( trie.get( bytes( "/a/b" ) ) ), "replaced value on a split node" );
+    check( "abc".equals( trie.get( bytes( "/a/bc" ) ) ), "leaf below a split" );
+    check( "abd".equals( trie.get( bytes( "/a/bd" ) ) ), "sibling leaf" );
+    check( "root".equals( trie.get( bytes( "" ) ) ), "empty key" );
+    check( trie.get( bytes( "/a/" ) ) == null, "inner node without a value" );
+    check( "abd".equals( trie.get( bytes( "x/a/bdy" ), 1, 5 ) ), "lookup of a range" );
+
+    System.out.println( "Dispatch table OK" );
+  }
+
+  private static byte[] bytes( String s )
+  {
+    return s.getBytes( CharsetUtil.US_ASCII );
+  }
+
+  private static void check( boolean condition, String what )
+  {
+    if( !condition )
+      throw new AssertionError( what );
+  }
+}